@@ -0,0 +1,29 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the suite with the GC profiler attached, so every result also reports bytes
+// allocated per operation (gc.alloc.rate.norm). Arguments are JMH's own, e.g.
+//
+//   java -cp <classes and jmh jars> benchmarks.BenchmarkMain QueryBenchmark -p rows=100000
+//   java -cp <classes and jmh jars> benchmarks.BenchmarkMain -rf json -rff results.json
+//
+// A regex argument selects benchmarks; without one all of them run.
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(BenchmarkMain.class.getPackageName() + "\\.");
+        }
+        options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import database.BulkLoader;
+import database.SimpleDatabase;
+import database.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds the tables the benchmarks run against. Every table has an INT key "id", a
+// low-cardinality text column "category" with CATEGORIES values, and extra columns up
+// to the requested count alternating between DOUBLE and text, so wider tables cost
+// more to write and to materialize without changing what the queries select.
+final class BenchmarkTables {
+    static final String TABLE = "bench";
+    static final int CATEGORIES = 100;
+
+    private BenchmarkTables() {
+    }
+
+    static List<String> columnDefinitions(int columnCount) {
+        List<String> columns = new ArrayList<>(columnCount);
+        columns.add("id INT");
+        columns.add("category");
+        for (int c = 2; c < columnCount; c++) {
+            columns.add(c % 2 == 0 ? "value" + c + " DOUBLE" : "text" + c);
+        }
+        return columns;
+    }
+
+    static List<String> columnNames(int columnCount) {
+        List<String> names = new ArrayList<>(columnCount);
+        for (String definition : columnDefinitions(columnCount)) {
+            names.add(definition.split(" ")[0]);
+        }
+        return names;
+    }
+
+    // The values of row i; the same row always gets the same values
+    static List<String> row(int i, int columnCount) {
+        List<String> values = new ArrayList<>(columnCount);
+        values.add(Integer.toString(i));
+        values.add(category(i));
+        for (int c = 2; c < columnCount; c++) {
+            values.add(c % 2 == 0 ? Double.toString(i * 0.5 + c) : "text" + (i % 1000));
+        }
+        return values;
+    }
+
+    static String category(int i) {
+        return "category" + (i % CATEGORIES);
+    }
+
+    static Table newTable(int columnCount) {
+        Table table = new Table();
+        table.createTable(columnDefinitions(columnCount));
+        return table;
+    }
+
+    // A database holding one table of the given shape, loaded in batches
+    static SimpleDatabase newDatabase(int rows, int columnCount) {
+        SimpleDatabase db = new SimpleDatabase("benchmarks");
+        db.createTable(TABLE, columnDefinitions(columnCount));
+        try (BulkLoader loader = db.openBulkLoader(TABLE, columnNames(columnCount))) {
+            for (int i = 0; i < rows; i++) {
+                loader.add(row(i, columnCount));
+            }
+        }
+        return db;
+    }
+}
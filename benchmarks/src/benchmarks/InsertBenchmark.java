@@ -0,0 +1,53 @@
+package benchmarks;
+
+import database.Table;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Single-row inserts through Table.insertData, the path every INSERT statement takes.
+// Each iteration starts from an empty table, so the figures include the column arrays
+// and dictionaries growing as rows arrive.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+    // A fresh table is started after this many rows, keeping the heap bounded
+    private static final int ROWS_PER_TABLE = 1_000_000;
+    private static final int DISTINCT_ROWS = 4096;
+
+    @Param({"4", "16"})
+    public int columns;
+
+    private List<String>[] rows;
+    private Table table;
+    private int inserted;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void prepareRows() {
+        // Values are built up front so only the insert itself is measured
+        rows = new List[DISTINCT_ROWS];
+        for (int i = 0; i < DISTINCT_ROWS; i++) {
+            rows[i] = BenchmarkTables.row(i, columns);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createTable() {
+        table = BenchmarkTables.newTable(columns);
+        inserted = 0;
+    }
+
+    @Benchmark
+    public boolean insertData() {
+        if (inserted == ROWS_PER_TABLE) {
+            createTable();
+        }
+        return table.insertData(rows[inserted++ % DISTINCT_ROWS]);
+    }
+}
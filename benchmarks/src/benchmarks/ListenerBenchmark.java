@@ -0,0 +1,81 @@
+package benchmarks;
+
+import database.DatabaseListener;
+import database.SimpleDatabase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Single-row inserts through SimpleDatabase with the engine silent (no listener) and
+// with the console listener the CLI uses. Each benchmark thread writes its own table, so
+// running with -t shows what formatting and the shared, synchronized System.out cost
+// several writers. Console output goes to a discarding stream, so the figures leave out
+// the terminal.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ListenerBenchmark {
+    private static final int COLUMNS = 4;
+    // A writer starts a fresh table after this many rows, keeping the heap bounded
+    private static final int ROWS_PER_TABLE = 1_000_000;
+    private static final int DISTINCT_ROWS = 4096;
+
+    @Param({"none", "console"})
+    public String listener;
+
+    private SimpleDatabase db;
+    private List<String> names;
+    private List<String>[] rows;
+    private final AtomicInteger tables = new AtomicInteger();
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void createDatabase() {
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        db = new SimpleDatabase("benchmarks");
+        db.setListener(listener.equals("console") ? DatabaseListener.console() : null);
+        names = BenchmarkTables.columnNames(COLUMNS);
+        rows = new List[DISTINCT_ROWS];
+        for (int i = 0; i < DISTINCT_ROWS; i++) {
+            rows[i] = BenchmarkTables.row(i, COLUMNS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreOutput() {
+        System.setOut(out);
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private String table;
+        private int inserted;
+
+        @Setup(Level.Iteration)
+        public void createTable(ListenerBenchmark benchmark) {
+            if (table != null) {
+                benchmark.db.dropTable(table);
+            }
+            table = BenchmarkTables.TABLE + benchmark.tables.incrementAndGet();
+            benchmark.db.createTable(table, BenchmarkTables.columnDefinitions(COLUMNS));
+            inserted = 0;
+        }
+    }
+
+    @Benchmark
+    public boolean insertDataWithColumns(Writer writer) {
+        if (writer.inserted == ROWS_PER_TABLE) {
+            writer.createTable(this);
+        }
+        return db.insertDataWithColumns(writer.table, names, rows[writer.inserted++ % DISTINCT_ROWS]);
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import database.SimpleDatabase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Writing and reading the text database file with saveToFile and loadFromFile. Each
+// invocation handles the whole table, so these run as single shots per iteration.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistenceBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"4", "16"})
+    public int columns;
+
+    private SimpleDatabase db;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        db = BenchmarkTables.newDatabase(rows, columns);
+        file = Files.createTempFile("benchmarks", ".txt");
+        // loadFromFile reads what saveToFile wrote during setup
+        db.saveToFile(file.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void saveToFile() {
+        db.saveToFile(file.toString());
+    }
+
+    @Benchmark
+    public SimpleDatabase loadFromFile() {
+        SimpleDatabase loaded = new SimpleDatabase("benchmarks");
+        loaded.loadFromFile(file.toString());
+        return loaded;
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import database.Condition;
+import database.IndexType;
+import database.Predicate;
+import database.SimpleDatabase;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Read queries against a loaded table: full scans with and without a filter, a point
+// lookup through a hash index, DISTINCT and a grouped count. The table is built once
+// per trial and never modified, so every invocation reads the same snapshot. The result
+// cache is turned off, as it would otherwise answer every repeated DISTINCT and count.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class QueryBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"4", "16"})
+    public int columns;
+
+    private SimpleDatabase db;
+    private Predicate categoryEquals;
+    private List<String> distinctColumns;
+    private int nextKey;
+
+    @Setup(Level.Trial)
+    public void load() {
+        db = BenchmarkTables.newDatabase(rows, columns);
+        db.setResultCacheBudget(0);
+        db.createIndex(BenchmarkTables.TABLE, "bench_id", "id", IndexType.HASH);
+        categoryEquals = Condition.equal("category", BenchmarkTables.category(7));
+        distinctColumns = List.of("category");
+    }
+
+    @Benchmark
+    public List<Map<String, String>> selectAll() {
+        return db.selectData(BenchmarkTables.TABLE, Predicate.all());
+    }
+
+    @Benchmark
+    public List<Map<String, String>> selectWhereEquals() {
+        return db.selectData(BenchmarkTables.TABLE, categoryEquals);
+    }
+
+    // Keys step through the table by a prime so lookups don't hit the same rows
+    @Benchmark
+    public List<Map<String, String>> pointLookup() {
+        nextKey = (nextKey + 7919) % rows;
+        return db.selectData(BenchmarkTables.TABLE, Condition.equal("id", Integer.toString(nextKey)));
+    }
+
+    @Benchmark
+    public List<Map<String, String>> selectDistinctColumns() {
+        return db.selectDistinctColumns(BenchmarkTables.TABLE, distinctColumns);
+    }
+
+    @Benchmark
+    public void selectCountGroupByOrderBy(Blackhole blackhole) {
+        blackhole.consume(db.selectCountGroupByOrderBy(BenchmarkTables.TABLE, "id", "category"));
+    }
+}
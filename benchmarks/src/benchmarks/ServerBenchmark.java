@@ -0,0 +1,101 @@
+package benchmarks;
+
+import database.IndexType;
+import database.SimpleDatabase;
+import database.net.DatabaseClient;
+import database.net.DatabaseServer;
+import database.net.RemoteResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Statements sent to a DatabaseServer on the loopback interface: 80% point queries on
+// an indexed column and 20% single-row inserts, each benchmark thread on a connection
+// of its own. Runs three ways: one statement per round trip, DEPTH requests pipelined
+// before the first reply is awaited, and DEPTH statements batched into one request.
+// Scores are statements per second; -bm sample gives round-trip latency percentiles.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(4)
+public class ServerBenchmark {
+    private static final int ROWS = 100_000;
+    private static final int DEPTH = 16;
+
+    private DatabaseServer server;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        SimpleDatabase db = BenchmarkTables.newDatabase(ROWS, 4);
+        db.createIndex(BenchmarkTables.TABLE, "bench_id", "id", IndexType.HASH);
+        server = new DatabaseServer(db, 0);
+        server.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        private DatabaseClient client;
+
+        @Setup(Level.Trial)
+        public void connect(ServerBenchmark benchmark) throws IOException {
+            client = DatabaseClient.connect("localhost", benchmark.server.getPort());
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public RemoteResult sync(Connection connection) throws IOException {
+        return connection.client.execute(statement());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEPTH)
+    public int pipelined(Connection connection) throws IOException {
+        List<CompletableFuture<List<RemoteResult>>> inFlight = new ArrayList<>(DEPTH);
+        for (int i = 0; i < DEPTH; i++) {
+            inFlight.add(connection.client.submit(statement()));
+        }
+        int results = 0;
+        for (CompletableFuture<List<RemoteResult>> reply : inFlight) {
+            results += reply.join().size();
+        }
+        return results;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEPTH)
+    public List<RemoteResult> batched(Connection connection) throws IOException {
+        List<String> batch = new ArrayList<>(DEPTH);
+        for (int i = 0; i < DEPTH; i++) {
+            batch.add(statement());
+        }
+        return connection.client.executeBatch(batch);
+    }
+
+    private static String statement() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(5) == 0) {
+            int id = ROWS + random.nextInt(ROWS);
+            return "INSERT INTO " + BenchmarkTables.TABLE + " (id, category) VALUES (" + id + ", '"
+                    + BenchmarkTables.category(id) + "')";
+        }
+        return "SELECT * FROM " + BenchmarkTables.TABLE + " WHERE id = " + random.nextInt(ROWS);
+    }
+}
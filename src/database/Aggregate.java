@@ -0,0 +1,91 @@
+package database;
+
+import java.util.Locale;
+import java.util.Objects;
+
+// One aggregate of a grouped query, e.g. SUM(amount). COUNT without a column counts
+// rows; the other aggregates skip rows without a value in their column and give no
+// value for a group in which every row lacks one. SUM and AVG need a numeric column.
+public class Aggregate {
+    public enum Function {
+        COUNT,
+        SUM,
+        AVG,
+        MIN,
+        MAX;
+
+        // Returns null for an unknown function name
+        public static Function parse(String name) {
+            for (Function function : values()) {
+                if (function.name().equals(name.toUpperCase(Locale.ROOT))) {
+                    return function;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Function function;
+    private final String column;
+
+    // column is null only for COUNT(*)
+    public Aggregate(Function function, String column) {
+        if (column == null && function != Function.COUNT) {
+            throw new IllegalArgumentException(function + " needs a column");
+        }
+        this.function = function;
+        this.column = column;
+    }
+
+    public static Aggregate count() {
+        return new Aggregate(Function.COUNT, null);
+    }
+
+    public static Aggregate count(String column) {
+        return new Aggregate(Function.COUNT, column);
+    }
+
+    public static Aggregate sum(String column) {
+        return new Aggregate(Function.SUM, column);
+    }
+
+    public static Aggregate avg(String column) {
+        return new Aggregate(Function.AVG, column);
+    }
+
+    public static Aggregate min(String column) {
+        return new Aggregate(Function.MIN, column);
+    }
+
+    public static Aggregate max(String column) {
+        return new Aggregate(Function.MAX, column);
+    }
+
+    public Function getFunction() {
+        return function;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    // The name of the aggregate's column in a result, e.g. "SUM(amount)" or "COUNT(*)"
+    public String getName() {
+        return function.name() + "(" + (column == null ? "*" : column) + ")";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Aggregate aggregate && function == aggregate.function && Objects.equals(column, aggregate.column);
+    }
+
+    @Override
+    public int hashCode() {
+        return function.hashCode() * 31 + Objects.hashCode(column);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,80 @@
+package database;
+
+import java.util.*;
+
+// Rows passing every child. Each child only sees the rows the ones before it kept,
+// so children are run cheapest-per-row-removed first.
+class AndFilter extends Filter {
+    final List<Filter> children;
+    private double cost;
+
+    AndFilter(List<Filter> children) {
+        this.children = children;
+    }
+
+    @Override
+    void estimate(Snapshot snapshot, TableStatistics statistics) {
+        for (Filter child : children) {
+            child.estimate(snapshot, statistics);
+        }
+        summarize();
+    }
+
+    // Orders children that have been estimated and combines their estimates
+    void summarize() {
+        children.sort(Comparator.comparingDouble(child -> -(1 - child.selectivity) / Math.max(child.cost(), 1e-9)));
+        selectivity = 1.0;
+        cost = 0;
+        for (Filter child : children) {
+            cost += selectivity * child.cost();
+            selectivity *= child.selectivity;
+        }
+    }
+
+    @Override
+    double cost() {
+        return cost;
+    }
+
+    @Override
+    int leafCount() {
+        int leaves = 0;
+        for (Filter child : children) {
+            leaves += child.leafCount();
+        }
+        return leaves;
+    }
+
+    @Override
+    int filter(Snapshot snapshot, int[] rows, int count) {
+        for (Filter child : children) {
+            if (count == 0) {
+                break;
+            }
+            count = child.filter(snapshot, rows, count);
+        }
+        return count;
+    }
+
+    @Override
+    boolean skips(ZoneMap[] zoneMaps, int block) {
+        for (Filter child : children) {
+            if (child.skips(zoneMaps, block)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    String describe() {
+        if (children.isEmpty()) {
+            return "TRUE";
+        }
+        StringJoiner text = new StringJoiner(" AND ", "(", ")");
+        for (Filter child : children) {
+            text.add(child.toString());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,10 @@
+package database;
+
+// A selection vector: up to SIZE row positions of one snapshot that are still in play.
+// Operators pass one Batch along and compact it in place instead of copying rows.
+class Batch {
+    static final int SIZE = 2048;
+
+    final int[] rows = new int[SIZE];
+    int count;
+}
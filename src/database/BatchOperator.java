@@ -0,0 +1,7 @@
+package database;
+
+// Pull-based operator of a query pipeline. Each call returns the next non-empty batch,
+// or null when the input is exhausted; the returned batch is only valid until the next call.
+interface BatchOperator {
+    Batch next();
+}
@@ -0,0 +1,76 @@
+package database;
+
+// column [NOT] BETWEEN low AND high, both bounds inclusive
+class BetweenFilter extends Filter {
+    private static final double DEFAULT_SELECTIVITY = 0.25;
+
+    final int column;
+    // Null when the bound cannot occur in the column
+    final Object low;
+    final Object high;
+    final boolean negated;
+    private final String text;
+    private double cost;
+
+    BetweenFilter(int column, Object low, Object high, boolean negated, String text) {
+        this.column = column;
+        this.low = low;
+        this.high = high;
+        this.negated = negated;
+        this.text = text;
+    }
+
+    @Override
+    void estimate(Snapshot snapshot, TableStatistics statistics) {
+        cost = 2 * compareCost(snapshot, column);
+        if (statistics == null) {
+            selectivity = negated ? 1.0 - DEFAULT_SELECTIVITY : DEFAULT_SELECTIVITY;
+            return;
+        }
+        ColumnStatistics columnStatistics = statistics.column(snapshot, column);
+        double inside = columnStatistics.valueBetween(low, high);
+        selectivity = withNulls(columnStatistics, negated ? 1.0 - inside : inside);
+    }
+
+    @Override
+    double cost() {
+        return cost;
+    }
+
+    @Override
+    int leafCount() {
+        return 1;
+    }
+
+    @Override
+    int filter(Snapshot snapshot, int[] rows, int count) {
+        Column values = snapshot.column(column);
+        if (low == null || high == null) {
+            // Nothing lies between bounds that cannot occur
+            return negated ? BoundCondition.keepValues(values, rows, count) : 0;
+        }
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (!values.isNull(row)
+                    && (values.compareKey(row, low) >= 0 && values.compareKey(row, high) <= 0) != negated) {
+                rows[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    @Override
+    boolean skips(ZoneMap[] zoneMaps, int block) {
+        ZoneMap zones = zoneMaps[column];
+        if (low == null || high == null) {
+            return !negated || zones.min(block) == null;
+        }
+        return negated ? zones.within(block, low, high) : zones.excludesRange(block, low, true, high, true);
+    }
+
+    @Override
+    String describe() {
+        return text;
+    }
+}
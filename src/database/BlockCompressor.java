@@ -0,0 +1,146 @@
+package database;
+
+import java.util.Arrays;
+
+// Fast byte compression in the manner of LZ4, for the blocks of column segments (see
+// Segments). The output is a series of sequences, each a token, a run of literal bytes
+// and a match to copy from earlier output. The token's high four bits hold the literal
+// count and its low four bits the match length less MIN_MATCH; a field of 15 continues
+// in following bytes, each added in, until one is below 255. The match is given as a
+// two-byte little-endian offset back from the current position. The last sequence has
+// literals only. Matches are found through a hash table of four-byte prefixes, so both
+// directions are a single pass without any entropy coding.
+final class BlockCompressor {
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 14;
+    private static final int MAX_OFFSET = 65535;
+    // The input ends with at least this many literals, so the last sequence has no match
+    private static final int LAST_LITERALS = 5;
+    // No match starts within this many bytes of the end
+    private static final int MATCH_LIMIT = 12;
+    // After this many misses in a row the search steps over more bytes at a time, so
+    // input that does not compress costs little
+    private static final int SKIP_SHIFT = 6;
+
+    private BlockCompressor() {
+    }
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    static byte[] compress(byte[] source, int length) {
+        byte[] target = new byte[maxCompressedLength(length)];
+        int written = 0;
+        int anchor = 0;
+        if (length > MATCH_LIMIT) {
+            int[] table = new int[1 << HASH_BITS];
+            Arrays.fill(table, -1);
+            int limit = length - MATCH_LIMIT;
+            int matchEnd = length - LAST_LITERALS;
+            int position = 0;
+            int misses = 0;
+            while (position < limit) {
+                int prefix = readInt(source, position);
+                int hash = (prefix * -1640531535) >>> (32 - HASH_BITS);
+                int candidate = table[hash];
+                table[hash] = position;
+                if (candidate < 0 || position - candidate > MAX_OFFSET || readInt(source, candidate) != prefix) {
+                    position += 1 + (misses++ >> SKIP_SHIFT);
+                    continue;
+                }
+                misses = 0;
+                int matchLength = MIN_MATCH;
+                while (position + matchLength < matchEnd && source[candidate + matchLength] == source[position + matchLength]) {
+                    matchLength++;
+                }
+                written = writeSequence(target, written, source, anchor, position - anchor, position - candidate, matchLength);
+                position += matchLength;
+                anchor = position;
+            }
+        }
+        written = writeSequence(target, written, source, anchor, length - anchor, 0, 0);
+        return Arrays.copyOf(target, written);
+    }
+
+    // A match length of 0 writes the closing sequence of literals only
+    private static int writeSequence(byte[] target, int written, byte[] source, int from, int literals, int offset, int matchLength) {
+        int matchField = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        target[written++] = (byte) (Math.min(literals, 15) << 4 | Math.min(matchField, 15));
+        written = writeLength(target, written, literals);
+        System.arraycopy(source, from, target, written, literals);
+        written += literals;
+        if (matchLength > 0) {
+            target[written++] = (byte) offset;
+            target[written++] = (byte) (offset >>> 8);
+            written = writeLength(target, written, matchField);
+        }
+        return written;
+    }
+
+    // The part of a length field beyond the token's 15
+    private static int writeLength(byte[] target, int written, int length) {
+        if (length >= 15) {
+            int rest = length - 15;
+            for (; rest >= 255; rest -= 255) {
+                target[written++] = (byte) 255;
+            }
+            target[written++] = (byte) rest;
+        }
+        return written;
+    }
+
+    // Fills the target, whose length must be that of the original input
+    static void decompress(byte[] source, int length, byte[] target) {
+        int read = 0;
+        int written = 0;
+        while (true) {
+            int token = source[read++] & 0xff;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int next;
+                do {
+                    next = source[read++] & 0xff;
+                    literals += next;
+                } while (next == 255);
+            }
+            System.arraycopy(source, read, target, written, literals);
+            read += literals;
+            written += literals;
+            if (read >= length) {
+                break;
+            }
+            int offset = (source[read++] & 0xff) | (source[read++] & 0xff) << 8;
+            int matchLength = token & 15;
+            if (matchLength == 15) {
+                int next;
+                do {
+                    next = source[read++] & 0xff;
+                    matchLength += next;
+                } while (next == 255);
+            }
+            matchLength += MIN_MATCH;
+            int from = written - offset;
+            if (offset == 0 || from < 0) {
+                throw new IllegalStateException("Corrupt compressed block: offset " + offset + " at " + written);
+            }
+            if (offset >= matchLength) {
+                System.arraycopy(target, from, target, written, matchLength);
+            } else {
+                // The match overlaps the bytes it produces, e.g. a run of one repeated byte
+                for (int i = 0; i < matchLength; i++) {
+                    target[written + i] = target[from + i];
+                }
+            }
+            written += matchLength;
+        }
+        if (written != target.length) {
+            throw new IllegalStateException("Corrupt compressed block: " + written + " of " + target.length + " bytes");
+        }
+    }
+
+    private static int readInt(byte[] source, int position) {
+        return (source[position] & 0xff) | (source[position + 1] & 0xff) << 8
+                | (source[position + 2] & 0xff) << 16 | (source[position + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,96 @@
+package database;
+
+// A comparison resolved against a table: the column position, the query value parsed
+// to the column's key type and, once estimated, the fraction of rows that pass
+class BoundCondition extends Filter {
+    // Textbook guesses used when a query is planned without statistics
+    static final double DEFAULT_EQUALITY_SELECTIVITY = 0.1;
+    static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+    final Condition condition;
+    final int column;
+    // Null when the value cannot occur in the column
+    final Object key;
+    private double cost;
+
+    BoundCondition(Condition condition, int column, Object key) {
+        this.condition = condition;
+        this.column = column;
+        this.key = key;
+    }
+
+    Condition.Operator operator() {
+        return condition.getOperator();
+    }
+
+    @Override
+    void estimate(Snapshot snapshot, TableStatistics statistics) {
+        cost = compareCost(snapshot, column);
+        if (statistics != null) {
+            selectivity = statistics.column(snapshot, column).selectivity(operator(), key);
+        } else if (operator() == Condition.Operator.EQ) {
+            selectivity = DEFAULT_EQUALITY_SELECTIVITY;
+        } else if (operator() == Condition.Operator.NE) {
+            selectivity = 1.0 - DEFAULT_EQUALITY_SELECTIVITY;
+        } else {
+            selectivity = DEFAULT_RANGE_SELECTIVITY;
+        }
+    }
+
+    @Override
+    double cost() {
+        return cost;
+    }
+
+    @Override
+    int leafCount() {
+        return 1;
+    }
+
+    @Override
+    int filter(Snapshot snapshot, int[] rows, int count) {
+        Column values = snapshot.column(column);
+        if (key != null) {
+            return values.filter(condition.getOperator(), key, rows, count);
+        }
+        // The value cannot occur in the column, so every row with a value differs from it
+        return condition.getOperator() == Condition.Operator.NE ? keepValues(values, rows, count) : 0;
+    }
+
+    @Override
+    boolean skips(ZoneMap[] zoneMaps, int block) {
+        ZoneMap zones = zoneMaps[column];
+        if (key == null) {
+            return operator() != Condition.Operator.NE || zones.min(block) == null;
+        }
+        switch (operator()) {
+            case EQ:
+                return zones.excludesRange(block, key, true, key, true);
+            case NE:
+                return zones.within(block, key, key);
+            case LT:
+                return zones.excludesRange(block, null, true, key, false);
+            case LE:
+                return zones.excludesRange(block, null, true, key, true);
+            case GT:
+                return zones.excludesRange(block, key, false, null, true);
+            default:
+                return zones.excludesRange(block, key, true, null, true);
+        }
+    }
+
+    static int keepValues(Column values, int[] rows, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (!values.isNull(rows[i])) {
+                rows[kept++] = rows[i];
+            }
+        }
+        return kept;
+    }
+
+    @Override
+    String describe() {
+        return condition.toString();
+    }
+}
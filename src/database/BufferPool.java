@@ -0,0 +1,204 @@
+package database;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Decides which tables stay in memory when the database is larger than its memory budget.
+// A table is read from its page file as a whole and kept as columns, so the unit cached
+// here is a table: every table in memory has a frame. When the frames take more than the
+// budget, a CLOCK hand sweeps them. A frame used since the hand last passed gets a second
+// chance, a frame pinned by a running query, cursor or bulk load is skipped, and any other
+// frame is evicted, after its table is written back if it changed. Tables enter with their
+// reference bit clear, so a table read once for a scan is the first to leave again rather
+// than pushing out the tables used all the time.
+//
+// Since the unit is a table, the budget bounds how many tables stay in memory, not how much
+// of one table does. A table is read in full even when it is larger than the budget, and
+// stays while it is in use; a table larger than the heap cannot be served at all. The
+// pool lets a database hold more tables than fit in memory, each of which must fit.
+public class BufferPool {
+    static final class Frame {
+        final String name;
+        final Table table;
+        // The file the table was read from and its version right after reading, which lets
+        // it be evicted without writing it while unchanged; null for tables built in memory
+        final StoredTable source;
+        final long sourceVersion;
+        private final AtomicInteger pins = new AtomicInteger();
+        private volatile boolean referenced;
+
+        Frame(String name, Table table, StoredTable source) {
+            this.name = name;
+            this.table = table;
+            this.source = source;
+            this.sourceVersion = table.getVersion();
+        }
+
+        boolean isPinned() {
+            return pins.get() > 0;
+        }
+
+        void unpin() {
+            pins.decrementAndGet();
+        }
+    }
+
+    private final Map<String, Frame> frames = new ConcurrentHashMap<>();
+    // The frames in the order they entered, swept by the hand; guarded by this
+    private final List<Frame> clock = new ArrayList<>();
+    private int hand;
+    private volatile long budget = Long.MAX_VALUE;
+    private final LongAdder hits = new LongAdder();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong writeBacks = new AtomicLong();
+
+    // Bytes of table data kept in memory before tables are evicted; unlimited by default
+    public long getMemoryBudget() {
+        return budget;
+    }
+
+    void setMemoryBudget(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + bytes);
+        }
+        budget = bytes;
+    }
+
+    // Approximate heap taken by the tables in memory
+    public long getResidentBytes() {
+        long bytes = 0;
+        for (Frame frame : frames.values()) {
+            bytes += frame.table.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    public int getResidentTables() {
+        return frames.size();
+    }
+
+    // Uses of a table that found it in memory
+    public long getHits() {
+        return hits.sum();
+    }
+
+    // Uses of a table that had to read it from its page file
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // Evictions that first had to write a changed table back
+    public long getWriteBacks() {
+        return writeBacks.get();
+    }
+
+    // A table created or replaced in memory
+    synchronized void add(String name, Table table) {
+        enter(new Frame(name, table, null));
+    }
+
+    // A table just read from the file it was stored in
+    synchronized void loaded(String name, Table table, StoredTable source) {
+        misses.incrementAndGet();
+        enter(new Frame(name, table, source));
+    }
+
+    private void enter(Frame frame) {
+        Frame previous = frames.put(frame.name, frame);
+        if (previous != null) {
+            leave(previous);
+        }
+        clock.add(frame);
+    }
+
+    synchronized void remove(String name) {
+        Frame frame = frames.remove(name);
+        if (frame != null) {
+            leave(frame);
+        }
+    }
+
+    // Removes the frame of an evicted table unless the name has a new table by now
+    synchronized void evicted(Frame frame, boolean writtenBack) {
+        if (frames.remove(frame.name, frame)) {
+            leave(frame);
+        }
+        evictions.incrementAndGet();
+        if (writtenBack) {
+            writeBacks.incrementAndGet();
+        }
+    }
+
+    private void leave(Frame frame) {
+        int position = clock.indexOf(frame);
+        clock.remove(position);
+        if (position < hand) {
+            hand--;
+        }
+        if (hand >= clock.size()) {
+            hand = 0;
+        }
+    }
+
+    // Marks a table found in memory as used; called for every use, so it only writes when
+    // the bit is clear
+    void touch(String name) {
+        Frame frame = frames.get(name);
+        if (frame != null) {
+            hits.increment();
+            if (!frame.referenced) {
+                frame.referenced = true;
+            }
+        }
+    }
+
+    // Keeps the table in memory until the frame is unpinned; null if it is not in memory.
+    // Pinning does not count as a use: the query that read the table pins it too.
+    Frame pin(String name) {
+        Frame frame = frames.get(name);
+        if (frame != null) {
+            frame.pins.incrementAndGet();
+        }
+        return frame;
+    }
+
+    // Advances the hand until the frames passed over as victims would bring the tables in
+    // memory within the budget, or every frame has been seen twice. The table to keep is
+    // one the caller is about to use. Victims stay in the clock until they are evicted.
+    synchronized List<Frame> victims(Table keep) {
+        long excess = getResidentBytes() - budget;
+        if (excess <= 0) {
+            return Collections.emptyList();
+        }
+        List<Frame> victims = new ArrayList<>();
+        for (int step = 0, steps = clock.size() * 2; step < steps && excess > 0; step++) {
+            Frame frame = clock.get(hand);
+            hand = (hand + 1) % clock.size();
+            if (frame.table == keep || frame.isPinned() || victims.contains(frame)) {
+                continue;
+            }
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            victims.add(frame);
+            excess -= frame.table.getMemoryBytes();
+        }
+        return victims;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d tables, %d of %s bytes, %d hits, %d misses, %d evictions (%d written back)",
+                getResidentTables(), getResidentBytes(), budget == Long.MAX_VALUE ? "unlimited" : Long.toString(budget),
+                getHits(), getMisses(), getEvictions(), getWriteBacks());
+    }
+}
@@ -0,0 +1,112 @@
+package database;
+
+import java.util.List;
+
+// Appends rows to one table in large batches. Each batch is validated, appended and
+// committed under a single lock acquisition and logged as one record, and the table's
+// indexes are rebuilt once when the loader is closed instead of updated row by row.
+// Rows are visible to queries batch by batch. A loader is used by one thread.
+public class BulkLoader implements AutoCloseable {
+    public static final int BATCH_SIZE = 4096;
+
+    private final SimpleDatabase database;
+    private final String tableName;
+    private final Table table;
+    // Keeps the table in memory while it loads; null if it was not in the buffer pool
+    private final BufferPool.Frame frame;
+    private final List<String> columns;
+    private final int[] positions;
+    private final String[] batch;
+    private int count;
+    private long loaded;
+    private long rejected;
+    private final long started = System.nanoTime();
+    private long elapsed = -1;
+
+    BulkLoader(SimpleDatabase database, String tableName, Table table, List<String> columns, int[] positions,
+               BufferPool.Frame frame) {
+        this.database = database;
+        this.tableName = tableName;
+        this.table = table;
+        this.frame = frame;
+        this.columns = columns;
+        this.positions = positions;
+        this.batch = new String[BATCH_SIZE * positions.length];
+        table.suspendIndexes();
+    }
+
+    // Values for the loader's columns, in order; missing trailing values are left empty
+    public void add(List<String> values) {
+        if (values.size() > positions.length) {
+            rejected++;
+            return;
+        }
+        int offset = count * positions.length;
+        for (int i = 0; i < positions.length; i++) {
+            batch[offset + i] = i < values.size() ? values.get(i) : null;
+        }
+        added();
+    }
+
+    // Adds the current record of a CSV reader without copying its fields into a list
+    public void add(CsvReader record) {
+        int fields = record.getFieldCount();
+        if (fields > positions.length) {
+            rejected++;
+            return;
+        }
+        int offset = count * positions.length;
+        for (int i = 0; i < positions.length; i++) {
+            batch[offset + i] = i < fields ? record.getField(i) : null;
+        }
+        added();
+    }
+
+    private void added() {
+        if (++count == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (count == 0) {
+            return;
+        }
+        int appended = database.appendBatch(tableName, table, columns, positions, batch, count);
+        loaded += appended;
+        rejected += count - appended;
+        count = 0;
+    }
+
+    // Writes the last batch and rebuilds the indexes; the counters stay readable afterwards
+    @Override
+    public void close() {
+        if (elapsed >= 0) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            table.resumeIndexes();
+            elapsed = System.nanoTime() - started;
+            database.release(frame);
+        }
+    }
+
+    public long getRowsLoaded() {
+        return loaded;
+    }
+
+    public long getRowsRejected() {
+        return rejected;
+    }
+
+    public long getElapsedMillis() {
+        return (elapsed >= 0 ? elapsed : System.nanoTime() - started) / 1_000_000;
+    }
+
+    public long getRowsPerSecond() {
+        long nanos = elapsed >= 0 ? elapsed : System.nanoTime() - started;
+        return nanos == 0 ? loaded : loaded * 1_000_000_000L / nanos;
+    }
+}
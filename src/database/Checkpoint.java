@@ -0,0 +1,154 @@
+package database;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// The manifest of a data directory, which holds
+//
+//   MANIFEST            the latest checkpoint: its number, the log sequence number it was
+//                       taken at, and per table the page file with its rows and the sequence
+//                       number of the last logged change those rows include
+//   table-<n>-<i>.db    page files written by checkpoint n, one table each
+//   wal-<base>.log      log segments; their records are numbered on from base
+//
+// A checkpoint only writes the tables that changed since the previous one and refers to
+// the files of the others. The manifest is replaced atomically, so a crash while a
+// checkpoint is written leaves the previous one in place.
+class Checkpoint {
+    static final String MANIFEST = "MANIFEST";
+    private static final String FORMAT = "checkpoint 1";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TABLE_PREFIX = "table-";
+    private static final String TABLE_SUFFIX = ".db";
+
+    static class Entry {
+        final String table;
+        final String file;
+        // Log records on the table up to this one are in the file
+        final long sequence;
+
+        Entry(String table, String file, long sequence) {
+            this.table = table;
+            this.file = file;
+            this.sequence = sequence;
+        }
+    }
+
+    final long number;
+    // Log records up to this one are in the checkpoint, for every table
+    final long sequence;
+    final List<Entry> tables;
+
+    Checkpoint(long number, long sequence, List<Entry> tables) {
+        this.number = number;
+        this.sequence = sequence;
+        this.tables = tables;
+    }
+
+    static String segmentName(long base) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX);
+    }
+
+    static String tableFileName(long checkpoint, int table) {
+        return TABLE_PREFIX + checkpoint + "-" + table + TABLE_SUFFIX;
+    }
+
+    // The log segments in the directory by base sequence number
+    static SortedMap<Long, Path> segments(Path directory) throws IOException {
+        SortedMap<Long, Path> segments = new TreeMap<>();
+        for (Path file : list(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            String name = file.getFileName().toString();
+            try {
+                segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+            } catch (NumberFormatException e) {
+                // Not a segment this class wrote
+            }
+        }
+        return segments;
+    }
+
+    static List<Path> tableFiles(Path directory) throws IOException {
+        return list(directory, TABLE_PREFIX, TABLE_SUFFIX);
+    }
+
+    private static List<Path> list(Path directory, String prefix, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    // The checkpoint in the directory, or an empty one numbered 0 if none was written yet
+    static Checkpoint read(Path directory) throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return new Checkpoint(0, 0, new ArrayList<>());
+        }
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        try {
+            if (lines.size() < 3 || !lines.get(0).equals(FORMAT)) {
+                throw new IOException("Not a checkpoint manifest: " + manifest);
+            }
+            long number = Long.parseLong(value(lines.get(1), "number"));
+            long sequence = Long.parseLong(value(lines.get(2), "sequence"));
+            List<Entry> tables = new ArrayList<>();
+            for (String line : lines.subList(3, lines.size())) {
+                // table <sequence> <file> <name>; the name comes last as it may contain spaces
+                String[] parts = value(line, "table").split(" ", 3);
+                if (parts.length < 3) {
+                    throw new IOException("Corrupt checkpoint manifest line: " + line);
+                }
+                tables.add(new Entry(parts[2], parts[1], Long.parseLong(parts[0])));
+            }
+            return new Checkpoint(number, sequence, tables);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt checkpoint manifest: " + manifest, e);
+        }
+    }
+
+    private static String value(String line, String key) throws IOException {
+        if (!line.startsWith(key + " ")) {
+            throw new IOException("Expected " + key + " in checkpoint manifest but found: " + line);
+        }
+        return line.substring(key.length() + 1);
+    }
+
+    // Writes the manifest next to the current one, forces it to disk and then moves it
+    // over the current one
+    void write(Path directory) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append(FORMAT).append('\n');
+        text.append("number ").append(number).append('\n');
+        text.append("sequence ").append(sequence).append('\n');
+        for (Entry entry : tables) {
+            text.append("table ").append(entry.sequence).append(' ').append(entry.file).append(' ').append(entry.table).append('\n');
+        }
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory);
+    }
+
+    // Makes the rename durable where the platform allows forcing a directory
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the rename is still atomic
+        }
+    }
+}
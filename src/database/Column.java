@@ -0,0 +1,92 @@
+package database;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+// Append-only storage for the values of one table column, addressed by row position.
+// A null value means the row has no value for the column. Values are never changed in
+// place, so readers may scan rows below a published row count while a writer appends.
+// An array the writer outgrows is copied and swapped in through a volatile field: a
+// reader may pick up an array grown after the row count it read, and only the volatile
+// read guarantees it also sees the values copied into it.
+abstract class Column implements Serializable {
+    protected int size;
+
+    abstract ColumnType type();
+
+    // Whether the value can be stored in this column
+    abstract boolean accepts(String value);
+
+    abstract void append(String value);
+
+    // Appends the value of a row of another column of the same type
+    abstract void appendFrom(Column source, int row);
+
+    abstract String get(int row);
+
+    abstract boolean isNull(int row);
+
+    // Orders a row that has a value against a key returned by parseKey
+    abstract int compareKey(int row, Object key);
+
+    // Keeps the rows of a selection vector that have a value and whose value passes the
+    // comparison with the key, moving them to the front. Returns how many remain.
+    int filter(Condition.Operator operator, Object key, int[] rows, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (!isNull(row) && operator.test(compareKey(row, key))) {
+                rows[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    // 64-bit hash of a row's value, equal for rows holding equal values and 0 for rows without one
+    abstract long hashAt(int row);
+
+    // Whether two rows hold the same value, or both have none
+    abstract boolean rowsEqual(int row, int other);
+
+    // Orders two rows by value, a row without a value before every value
+    int compareRows(int row, int other) {
+        boolean isNull = isNull(row);
+        if (isNull || isNull(other)) {
+            return Boolean.compare(!isNull, !isNull(other));
+        }
+        return compareKey(row, keyAt(other));
+    }
+
+    // Typed, comparable value used as an index key; null when the row has no value
+    abstract Object keyAt(int row);
+
+    // Converts a query value to the key type, or null if it cannot occur in this column
+    abstract Object parseKey(String value);
+
+    // Binary image of the column used by the page file
+    abstract ByteBuffer encode();
+
+    // Replaces the contents with rows read from a buffer produced by encode()
+    abstract void decode(ByteBuffer buffer, int rows);
+
+    // Approximate heap taken by the values, including capacity not used yet
+    abstract long memoryBytes();
+
+    int size() {
+        return size;
+    }
+
+    // Finalizer of MurmurHash3: spreads every input bit over the whole hash
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    static int grow(int capacity) {
+        return Math.max(16, capacity + (capacity >> 1));
+    }
+}
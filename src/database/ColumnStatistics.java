@@ -0,0 +1,155 @@
+package database;
+
+import java.util.*;
+
+// Summary of the values of one column, used by the planner to estimate how many rows
+// a condition keeps. Built from a snapshot in one pass; the histogram holds equi-depth
+// bucket boundaries taken from an evenly spaced sample of the rows, and the distinct
+// count comes from the column's sketch instead of a set of every value.
+class ColumnStatistics {
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int BUCKETS = 64;
+
+    final int rowCount;
+    final int nullCount;
+    final int distinctCount;
+    final Object min;
+    final Object max;
+    private final Object[] histogram;
+
+    private ColumnStatistics(int rowCount, int nullCount, int distinctCount, Object min, Object max, Object[] histogram) {
+        this.rowCount = rowCount;
+        this.nullCount = nullCount;
+        this.distinctCount = distinctCount;
+        this.min = min;
+        this.max = max;
+        this.histogram = histogram;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static ColumnStatistics analyze(Snapshot snapshot, int position) {
+        Column column = snapshot.column(position);
+        int stride = Math.max(1, snapshot.size / SAMPLE_SIZE);
+        List<Comparable> sample = new ArrayList<>();
+        int rows = 0;
+        int nulls = 0;
+        Comparable min = null;
+        Comparable max = null;
+        for (int row = 0; row < snapshot.size; row++) {
+            if (!snapshot.isVisible(row)) {
+                continue;
+            }
+            rows++;
+            Comparable key = (Comparable) column.keyAt(row);
+            if (key == null) {
+                nulls++;
+                continue;
+            }
+            if (min == null || key.compareTo(min) < 0) {
+                min = key;
+            }
+            if (max == null || key.compareTo(max) > 0) {
+                max = key;
+            }
+            if (row % stride == 0) {
+                sample.add(key);
+            }
+        }
+
+        Collections.sort(sample);
+        int buckets = Math.min(BUCKETS, sample.size());
+        Object[] histogram = new Object[buckets];
+        for (int i = 0; i < buckets; i++) {
+            histogram[i] = sample.get((int) ((long) (i + 1) * sample.size() / buckets) - 1);
+        }
+        // The sketch also counts values of deleted versions, so it can overshoot
+        int distinct = (int) Math.min(rows - nulls, snapshot.store.sketches[position].estimate());
+        return new ColumnStatistics(rows, nulls, Math.max(distinct, min == null ? 0 : 1), min, max, histogram);
+    }
+
+    // Estimated fraction of rows that pass the condition, which no row without a value does
+    double selectivity(Condition.Operator operator, Object key) {
+        if (rowCount == 0) {
+            return 1.0;
+        }
+        return Filter.withNulls(this, valueSelectivity(operator, key));
+    }
+
+    double nullFraction() {
+        return rowCount == 0 ? 0.0 : (double) nullCount / rowCount;
+    }
+
+    // Fraction of the rows with a value that pass
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    double valueSelectivity(Condition.Operator operator, Object key) {
+        if (key == null || distinctCount == 0) {
+            return operator == Condition.Operator.NE ? 1.0 : 0.0;
+        }
+        switch (operator) {
+            case EQ:
+                if (((Comparable) key).compareTo(min) < 0 || ((Comparable) key).compareTo(max) > 0) {
+                    return 0.0;
+                }
+                return 1.0 / distinctCount;
+            case NE:
+                return 1.0 - 1.0 / distinctCount;
+            case LT:
+                return fractionBelow(key, false);
+            case LE:
+                return fractionBelow(key, true);
+            case GT:
+                return 1.0 - fractionBelow(key, true);
+            default:
+                return 1.0 - fractionBelow(key, false);
+        }
+    }
+
+    // Fraction of the rows with a value between the keys, both inclusive
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    double valueBetween(Object low, Object high) {
+        if (low == null || high == null || distinctCount == 0 || ((Comparable) low).compareTo(high) > 0) {
+            return 0.0;
+        }
+        if (((Comparable) low).compareTo(high) == 0) {
+            return valueSelectivity(Condition.Operator.EQ, low);
+        }
+        return Math.max(0.0, fractionBelow(high, true) - fractionBelow(low, false));
+    }
+
+    // Fraction of values below the key (or equal to it, when inclusive): whole buckets
+    // below the key, plus a linear share of the bucket it falls into for numeric keys
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private double fractionBelow(Object key, boolean inclusive) {
+        int low = 0;
+        int high = histogram.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = ((Comparable) histogram[middle]).compareTo(key);
+            if (comparison < 0 || (inclusive && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == histogram.length) {
+            return 1.0;
+        }
+        if (((Comparable) key).compareTo(min) < 0) {
+            return 0.0;
+        }
+        double share = 0.5;
+        Object from = low == 0 ? min : histogram[low - 1];
+        Object to = histogram[low];
+        if (key instanceof Number && ((Number) to).doubleValue() > ((Number) from).doubleValue()) {
+            share = (((Number) key).doubleValue() - ((Number) from).doubleValue())
+                    / (((Number) to).doubleValue() - ((Number) from).doubleValue());
+            share = Math.max(0.0, Math.min(1.0, share));
+        }
+        return (low + share) / histogram.length;
+    }
+
+    @Override
+    public String toString() {
+        return "rows=" + rowCount + " nulls=" + nullCount + " distinct=" + distinctCount + " min=" + min + " max=" + max;
+    }
+}
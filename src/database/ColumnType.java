@@ -0,0 +1,46 @@
+package database;
+
+import java.util.Locale;
+
+public enum ColumnType {
+    TEXT,
+    INT,
+    LONG,
+    DOUBLE;
+
+    // Accepts the usual SQL spellings; returns null for an unknown type name
+    public static ColumnType parse(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "text":
+            case "string":
+            case "varchar":
+            case "char":
+                return TEXT;
+            case "int":
+            case "integer":
+                return INT;
+            case "long":
+            case "bigint":
+                return LONG;
+            case "double":
+            case "float":
+            case "real":
+                return DOUBLE;
+            default:
+                return null;
+        }
+    }
+
+    Column newColumn(int capacity) {
+        switch (this) {
+            case INT:
+                return new IntColumn(capacity);
+            case LONG:
+                return new LongColumn(capacity);
+            case DOUBLE:
+                return new DoubleColumn(capacity);
+            default:
+                return new StringColumn(capacity);
+        }
+    }
+}
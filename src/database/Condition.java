@@ -0,0 +1,100 @@
+package database;
+
+// One comparison of a column with a value, e.g. "age >= 18"
+public class Condition extends Predicate {
+    public enum Operator {
+        EQ("="),
+        NE("!="),
+        LT("<"),
+        LE("<="),
+        GT(">"),
+        GE(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        // Returns null for an unknown symbol
+        public static Operator fromSymbol(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            return symbol.equals("<>") ? NE : null;
+        }
+
+        // The operator that passes exactly the values this one fails
+        Operator negate() {
+            switch (this) {
+                case EQ:
+                    return NE;
+                case NE:
+                    return EQ;
+                case LT:
+                    return GE;
+                case LE:
+                    return GT;
+                case GT:
+                    return LE;
+                default:
+                    return LT;
+            }
+        }
+
+        // Whether a stored value that compares to the query value like this passes
+        boolean test(int comparison) {
+            switch (this) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+    }
+
+    private final String column;
+    private final Operator operator;
+    private final String value;
+
+    public Condition(String column, Operator operator, String value) {
+        this.column = column;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    public static Condition equal(String column, String value) {
+        return new Condition(column, Operator.EQ, value);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return column + " " + operator.getSymbol() + " " + value;
+    }
+}
@@ -0,0 +1,140 @@
+package database;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// Streaming reader for comma-separated values. Fields may be quoted with double quotes,
+// in which case they can hold commas, line breaks and doubled quotes, and must end at
+// their closing quote; anything else before the next comma is an error. An empty unquoted
+// field reads as null and an empty quoted one as the empty string; blank lines are
+// skipped. The input is read through one fixed buffer and the field array is reused
+// from record to record, so reading allocates little beyond the field strings.
+public class CsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private String[] fields = new String[16];
+    private int fieldCount;
+    private final StringBuilder field = new StringBuilder();
+    // Line being read, and the line the current record started on
+    private long line = 1;
+    private long recordLine;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Reads the next record; false at the end of the input
+    public boolean next() throws IOException {
+        fieldCount = 0;
+        int c;
+        do {
+            c = read();
+        } while (c == '\n' || c == '\r');
+        if (c < 0) {
+            return false;
+        }
+        recordLine = line;
+        while (true) {
+            boolean quoted = c == '"';
+            field.setLength(0);
+            if (quoted) {
+                c = readQuoted();
+            } else {
+                while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                    field.append((char) c);
+                    c = read();
+                }
+            }
+            addField(quoted || field.length() > 0 ? field.toString() : null);
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+            if (c == '\r' && peek() == '\n') {
+                read();
+            }
+            return true;
+        }
+    }
+
+    // Reads a quoted field after its opening quote; returns the character after it, which
+    // must end the field
+    private int readQuoted() throws IOException {
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("Unterminated quoted field in record starting on line " + recordLine);
+            }
+            if (c == '"') {
+                if (peek() != '"') {
+                    int next = read();
+                    if (next >= 0 && next != ',' && next != '\n' && next != '\r') {
+                        throw new IOException("Unexpected character after quoted field in record starting on line " + recordLine);
+                    }
+                    return next;
+                }
+                read();
+            }
+            field.append((char) c);
+        }
+    }
+
+    private void addField(String value) {
+        if (fieldCount == fields.length) {
+            fields = Arrays.copyOf(fields, fieldCount * 2);
+        }
+        fields[fieldCount++] = value;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public String getField(int index) {
+        return fields[index];
+    }
+
+    // Line on which the current record starts, counting from 1
+    public long getLineNumber() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,153 @@
+package database;
+
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Streams the rows of a query in row order, building at most a fetch size of row maps
+// ahead of the caller. The cursor reads from the snapshot taken when it was opened, so
+// it sees none of the changes made while it is open. Rows skipped by the offset are
+// counted off whole batches without being built, and the pipeline stops pulling
+// batches once the limit is reached. A cursor is used by one thread.
+public class Cursor implements Iterator<Map<String, String>>, AutoCloseable {
+    public static final int DEFAULT_FETCH_SIZE = 1024;
+
+    private BatchOperator input;
+    private final List<String> names;
+    // Null entries stand for columns the table does not have
+    private final Column[] columns;
+    // Whole rows leave out columns without a value; projections keep them as null
+    private final boolean wholeRows;
+    private long skip;
+    private long remaining;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private final ArrayDeque<Map<String, String>> buffer = new ArrayDeque<>();
+    private Batch batch;
+    private int batchPosition;
+    private long rowsReturned;
+    // Run once when the pipeline is released
+    private Runnable onClose;
+
+    // A negative limit means no limit
+    Cursor(BatchOperator input, List<String> names, Column[] columns, boolean wholeRows, long offset, long limit) {
+        this.input = input;
+        this.names = names;
+        this.columns = columns;
+        this.wholeRows = wholeRows;
+        this.skip = Math.max(0, offset);
+        this.remaining = limit < 0 ? Long.MAX_VALUE : limit;
+    }
+
+    // Rows built per trip down the pipeline, and the most kept in memory at once
+    public Cursor setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (buffer.isEmpty()) {
+            fill();
+        }
+        return !buffer.isEmpty();
+    }
+
+    @Override
+    public Map<String, String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return buffer.poll();
+    }
+
+    // The next rows, up to the fetch size; empty once the cursor is exhausted
+    public List<Map<String, String>> fetch() {
+        if (buffer.isEmpty()) {
+            fill();
+        }
+        List<Map<String, String>> rows = new ArrayList<>(buffer);
+        buffer.clear();
+        return rows;
+    }
+
+    // The remaining rows as a sequential stream; closing the stream closes the cursor
+    public Stream<Map<String, String>> stream() {
+        Spliterator<Map<String, String>> rows = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(rows, false).onClose(this::close);
+    }
+
+    private void fill() {
+        while (buffer.size() < fetchSize && remaining > 0 && input != null) {
+            if (batch == null || batchPosition == batch.count) {
+                batch = input.next();
+                batchPosition = 0;
+                if (batch == null) {
+                    close();
+                    return;
+                }
+            }
+            if (skip > 0) {
+                int skipped = (int) Math.min(skip, batch.count - batchPosition);
+                batchPosition += skipped;
+                skip -= skipped;
+                continue;
+            }
+            buffer.add(build(batch.rows[batchPosition++]));
+            remaining--;
+            rowsReturned++;
+        }
+        if (remaining == 0) {
+            close();
+        }
+    }
+
+    private Map<String, String> build(int row) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int c = 0; c < columns.length; c++) {
+            String value = columns[c] == null ? null : columns[c].get(row);
+            if (value != null || !wholeRows) {
+                result.put(names.get(c), value);
+            }
+        }
+        return result;
+    }
+
+    // The columns of the result, in order, including those of the table's columns a row has no value in
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    // Whether rows are whole table rows, which leave out their null values
+    public boolean isWholeRows() {
+        return wholeRows;
+    }
+
+    // Rows built so far, after the offset
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    Cursor onClose(Runnable action) {
+        this.onClose = action;
+        return this;
+    }
+
+    // Releases the pipeline; rows already fetched can still be read
+    @Override
+    public void close() {
+        input = null;
+        batch = null;
+        Runnable action = onClose;
+        onClose = null;
+        if (action != null) {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package database;
+
+// Receives what the engine has to report: the rows written by single-row inserts,
+// confirmations of changes such as "Table "t" created.", and requests it rejected.
+// The engine asks isEnabled before building any message text, so with no listener
+// installed, or one that declines an event, mutations do no formatting or I/O at all.
+// Listeners are called on the thread making the change, sometimes holding a table's
+// write lock, and must not call back into the database.
+public interface DatabaseListener {
+    enum Event {
+        // A row written by an insert, with its values; one per inserted row
+        ROW_WRITTEN,
+        // A change that was applied
+        CHANGED,
+        // A request that was rejected or failed
+        REJECTED
+    }
+
+    void message(Event event, String text);
+
+    default boolean isEnabled(Event event) {
+        return true;
+    }
+
+    // Prints every message on standard output, as the command line has always done
+    static DatabaseListener console() {
+        return (event, text) -> System.out.println(text);
+    }
+}
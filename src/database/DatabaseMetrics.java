@@ -0,0 +1,385 @@
+package database;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// What a database has been doing: per table and operation, how many calls were made,
+// the rows they scanned and returned, the time spent waiting for the table's write lock
+// and a latency histogram. Calls at or above the slow query threshold are also kept in
+// a slow query log, with their statement and plan, and written to the logger. Recording
+// a call costs two clock reads and a few uncontended atomic adds; the statement and plan
+// are only described for slow calls. Disabled metrics record nothing at all.
+public class DatabaseMetrics implements DatabaseMetricsMXBean {
+    private static final Logger logger = Logger.getLogger(DatabaseMetrics.class.getName());
+    // The slow query log keeps the most recent entries
+    public static final int SLOW_QUERY_LOG_SIZE = 100;
+
+    public enum Operation {
+        INSERT,
+        BULK_LOAD,
+        // Row queries, including cursors, which are recorded when they are closed
+        SELECT,
+        // Joins of two tables, recorded on the left one
+        JOIN,
+        // DISTINCT, COUNT and GROUP BY
+        AGGREGATE,
+        UPDATE,
+        DELETE,
+        // Creating and dropping tables and indexes
+        DDL
+    }
+
+    public static class SlowQuery {
+        private final long timestamp;
+        private final String table;
+        private final Operation operation;
+        private final String statement;
+        private final String plan;
+        private final long nanos;
+        private final long rowsScanned;
+        private final long rowsReturned;
+
+        SlowQuery(long timestamp, String table, Operation operation, String statement, String plan,
+                  long nanos, long rowsScanned, long rowsReturned) {
+            this.timestamp = timestamp;
+            this.table = table;
+            this.operation = operation;
+            this.statement = statement;
+            this.plan = plan;
+            this.nanos = nanos;
+            this.rowsScanned = rowsScanned;
+            this.rowsReturned = rowsReturned;
+        }
+
+        // When the call finished, in milliseconds since the epoch
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        // The plan the call ran; null for operations that do not run through the planner
+        // and for results served from the result cache
+        public String getPlan() {
+            return plan;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getRowsScanned() {
+            return rowsScanned;
+        }
+
+        public long getRowsReturned() {
+            return rowsReturned;
+        }
+
+        @Override
+        public String toString() {
+            String text = String.format("%s %.3f ms, %d rows scanned, %d returned: %s",
+                    new Date(timestamp), nanos / 1e6, rowsScanned, rowsReturned, statement);
+            return plan == null ? text : text + System.lineSeparator() + "  Plan: " + plan;
+        }
+    }
+
+    private final Map<String, OperationStats[]> tables = new ConcurrentHashMap<>();
+    // The database's result cache, whose counters are shown with these; null for none
+    private final ResultCache resultCache;
+    private final ArrayDeque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private long slowQueryCount;
+    private volatile long slowQueryThresholdNanos = -1;
+    private volatile boolean enabled = true;
+
+    public DatabaseMetrics() {
+        this(null);
+    }
+
+    DatabaseMetrics(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Metrics are on by default; turning them off keeps the counters recorded so far
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Statements taking at least this long are logged; negative, the default, turns the
+    // slow query log off
+    public void setSlowQueryThreshold(long duration, TimeUnit unit) {
+        slowQueryThresholdNanos = duration < 0 ? -1 : unit.toNanos(duration);
+    }
+
+    // The counters of one operation on a table; all zero if it never ran
+    public OperationStats get(String table, Operation operation) {
+        OperationStats[] stats = tables.get(table);
+        return stats == null ? new OperationStats() : stats[operation.ordinal()];
+    }
+
+    public List<String> getTables() {
+        List<String> names = new ArrayList<>(tables.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    // Most recent last
+    public List<SlowQuery> getSlowQueryLog() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    // One row per table and operation that ran, tables in name order, times in milliseconds,
+    // followed by a RESULT_CACHE row with the result cache's counters
+    public List<Map<String, String>> statistics() {
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (String table : getTables()) {
+            OperationStats[] stats = tables.get(table);
+            for (Operation operation : Operation.values()) {
+                OperationStats operationStats = stats[operation.ordinal()];
+                long count = operationStats.getCount();
+                if (count == 0) {
+                    continue;
+                }
+                LatencyHistogram latency = operationStats.getLatency();
+                Map<String, String> row = new LinkedHashMap<>();
+                row.put("table", table);
+                row.put("operation", operation.name());
+                row.put("count", Long.toString(count));
+                row.put("rows_scanned", Long.toString(operationStats.getRowsScanned()));
+                row.put("rows_returned", Long.toString(operationStats.getRowsReturned()));
+                row.put("lock_wait_ms", millis(operationStats.getLockWaitNanos()));
+                row.put("mean_ms", millis(latency.getMean()));
+                row.put("p50_ms", millis(latency.getPercentile(0.5)));
+                row.put("p99_ms", millis(latency.getPercentile(0.99)));
+                row.put("max_ms", millis(latency.getMax()));
+                rows.add(row);
+            }
+        }
+        if (resultCache != null) {
+            Map<String, String> row = new LinkedHashMap<>();
+            row.put("operation", "RESULT_CACHE");
+            row.put("hits", Long.toString(resultCache.getHits()));
+            row.put("misses", Long.toString(resultCache.getMisses()));
+            row.put("invalidations", Long.toString(resultCache.getInvalidations()));
+            row.put("evictions", Long.toString(resultCache.getEvictions()));
+            row.put("results", Integer.toString(resultCache.size()));
+            row.put("cached_bytes", Long.toString(resultCache.getCachedBytes()));
+            row.put("budget_bytes", Long.toString(resultCache.getMemoryBudget()));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String millis(double nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    // A trace for a call that scans rows, current on this thread until closed; null when disabled
+    QueryTrace open() {
+        return enabled ? QueryTrace.open() : null;
+    }
+
+    // A trace for a call that does not scan; null when disabled
+    QueryTrace start() {
+        return enabled ? QueryTrace.start() : null;
+    }
+
+    // Records a finished call. The statement and plan are only described when it was slow.
+    // Without a plan to describe, the plan the call made while its trace was current is logged.
+    void record(String table, Operation operation, QueryTrace trace, long rowsReturned,
+                Supplier<String> statement, Supplier<String> plan) {
+        if (trace == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - trace.startNanos;
+        long scanned = trace.getRowsScanned();
+        statsFor(table)[operation.ordinal()].record(nanos, scanned, rowsReturned, trace.getLockWaitNanos());
+        long threshold = slowQueryThresholdNanos;
+        if (threshold >= 0 && nanos >= threshold) {
+            SlowQuery slow = new SlowQuery(System.currentTimeMillis(), table, operation, statement.get(),
+                    plan == null ? trace.explainPlan() : plan.get(), nanos, scanned, rowsReturned);
+            synchronized (slowQueries) {
+                if (slowQueries.size() == SLOW_QUERY_LOG_SIZE) {
+                    slowQueries.removeFirst();
+                }
+                slowQueries.addLast(slow);
+                slowQueryCount++;
+            }
+            logger.log(Level.WARNING, "Slow query on " + table + ": " + slow);
+        }
+    }
+
+    private OperationStats[] statsFor(String table) {
+        OperationStats[] stats = tables.get(table);
+        if (stats == null) {
+            stats = tables.computeIfAbsent(table, name -> {
+                OperationStats[] created = new OperationStats[Operation.values().length];
+                for (int i = 0; i < created.length; i++) {
+                    created[i] = new OperationStats();
+                }
+                return created;
+            });
+        }
+        return stats;
+    }
+
+    // Publishes these metrics on the platform MBean server as database:type=Metrics,name=<name>,
+    // replacing metrics registered earlier under that name
+    public void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.log(Level.SEVERE, "Error registering metrics MBean: " + e.getMessage(), e);
+        }
+    }
+
+    public void unregister(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.log(Level.SEVERE, "Error unregistering metrics MBean: " + e.getMessage(), e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws MalformedObjectNameException {
+        return new ObjectName("database:type=Metrics,name=" + ObjectName.quote(name));
+    }
+
+    private long sum(ToLongFunction<OperationStats> counter) {
+        long total = 0;
+        for (OperationStats[] stats : tables.values()) {
+            for (OperationStats operationStats : stats) {
+                total += counter.applyAsLong(operationStats);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public long getStatementCount() {
+        return sum(OperationStats::getCount);
+    }
+
+    @Override
+    public long getRowsScanned() {
+        return sum(OperationStats::getRowsScanned);
+    }
+
+    @Override
+    public long getRowsReturned() {
+        return sum(OperationStats::getRowsReturned);
+    }
+
+    @Override
+    public long getLockWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(sum(OperationStats::getLockWaitNanos));
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        synchronized (slowQueries) {
+            return slowQueryCount;
+        }
+    }
+
+    @Override
+    public long getResultCacheHits() {
+        return resultCache == null ? 0 : resultCache.getHits();
+    }
+
+    @Override
+    public long getResultCacheMisses() {
+        return resultCache == null ? 0 : resultCache.getMisses();
+    }
+
+    @Override
+    public long getResultCacheInvalidations() {
+        return resultCache == null ? 0 : resultCache.getInvalidations();
+    }
+
+    @Override
+    public long getResultCacheEvictions() {
+        return resultCache == null ? 0 : resultCache.getEvictions();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        long threshold = slowQueryThresholdNanos;
+        return threshold < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        setSlowQueryThreshold(millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String[] getStatistics() {
+        List<Map<String, String>> rows = statistics();
+        String[] lines = new String[rows.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = rows.get(i).toString();
+        }
+        return lines;
+    }
+
+    @Override
+    public String[] getSlowQueries() {
+        List<SlowQuery> log = getSlowQueryLog();
+        String[] lines = new String[log.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = log.get(i).toString();
+        }
+        return lines;
+    }
+
+    // Clears every counter, the result cache's included, and the slow query log; the
+    // threshold and the cached results are kept
+    @Override
+    public void reset() {
+        for (OperationStats[] stats : tables.values()) {
+            for (OperationStats operationStats : stats) {
+                operationStats.reset();
+            }
+        }
+        if (resultCache != null) {
+            resultCache.resetCounters();
+        }
+        synchronized (slowQueries) {
+            slowQueries.clear();
+            slowQueryCount = 0;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package database;
+
+// Management view of a database's metrics, registered by DatabaseMetrics.register under
+// database:type=Metrics,name=<database>. Statistics are one line per table and operation,
+// in the same layout as SHOW STATS, followed by the result cache's counters.
+public interface DatabaseMetricsMXBean {
+    long getStatementCount();
+
+    long getRowsScanned();
+
+    long getRowsReturned();
+
+    long getLockWaitMillis();
+
+    long getSlowQueryCount();
+
+    long getResultCacheHits();
+
+    long getResultCacheMisses();
+
+    long getResultCacheInvalidations();
+
+    long getResultCacheEvictions();
+
+    // Statements taking at least this long are logged; negative turns the log off
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long millis);
+
+    String[] getStatistics();
+
+    String[] getSlowQueries();
+
+    void reset();
+}
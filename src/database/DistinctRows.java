@@ -0,0 +1,112 @@
+package database;
+
+// Hash set of rows, where two rows are the same when they hold equal values in the
+// projected columns. Rows are hashed and compared straight from the columns, so no
+// row is materialized until the distinct ones are returned. The table is open
+// addressing with linear probing over row positions.
+class DistinctRows {
+    private final Column[] columns;
+    private final IntList rows = new IntList();
+    // Slot holds row + 1, or 0 when empty
+    private int[] slots = new int[64];
+    private long[] hashes = new long[64];
+
+    // Null entries stand for unknown columns, which hold no value in any row
+    DistinctRows(Column[] columns) {
+        int known = 0;
+        for (Column column : columns) {
+            if (column != null) {
+                known++;
+            }
+        }
+        this.columns = new Column[known];
+        int i = 0;
+        for (Column column : columns) {
+            if (column != null) {
+                this.columns[i++] = column;
+            }
+        }
+    }
+
+    void add(Batch batch) {
+        for (int i = 0; i < batch.count; i++) {
+            add(batch.rows[i]);
+        }
+    }
+
+    void addAll(BatchOperator input) {
+        for (Batch batch = input.next(); batch != null; batch = input.next()) {
+            add(batch);
+        }
+    }
+
+    void add(int row) {
+        long hash = hash(row);
+        int mask = slots.length - 1;
+        int slot = (int) hash & mask;
+        while (slots[slot] != 0) {
+            if (hashes[slot] == hash && sameValues(slots[slot] - 1, row)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = row + 1;
+        hashes[slot] = hash;
+        rows.add(row);
+        if (rows.size() * 2 > slots.length) {
+            resize();
+        }
+    }
+
+    // Adds the rows of another partial set over the same columns, keeping this set's order first
+    DistinctRows merge(DistinctRows other) {
+        for (int i = 0; i < other.rows.size(); i++) {
+            add(other.rows.get(i));
+        }
+        return this;
+    }
+
+    // Distinct rows in the order they were first seen
+    IntList rows() {
+        return rows;
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    private long hash(int row) {
+        long hash = 17;
+        for (Column column : columns) {
+            hash = hash * 31 + column.hashAt(row);
+        }
+        return Column.mix(hash);
+    }
+
+    private boolean sameValues(int row, int other) {
+        for (Column column : columns) {
+            if (!column.rowsEqual(row, other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resize() {
+        int[] oldSlots = slots;
+        long[] oldHashes = hashes;
+        slots = new int[oldSlots.length * 2];
+        hashes = new long[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != 0) {
+                int slot = (int) oldHashes[i] & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = oldSlots[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+}
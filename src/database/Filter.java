@@ -0,0 +1,51 @@
+package database;
+
+// Compiled form of a Predicate, bound to the columns of one table and evaluated a batch
+// at a time. A test on a row without a value is unknown, neither true nor false, and
+// NOT is pushed down into the leaves when compiling (a negated unknown is still
+// unknown), so every filter simply keeps the rows it finds definitely true. A row
+// without a value thus passes neither a test nor its negation.
+abstract class Filter {
+    // Relative costs of testing one row
+    static final double NUMERIC_COMPARE_COST = 0.2;
+    static final double TEXT_COMPARE_COST = 0.5;
+    static final double PATTERN_MATCH_COST = 1.0;
+
+    // Estimated fraction of rows kept
+    double selectivity = 1.0;
+
+    // Keeps the rows of an ascending selection vector that pass, moving them to the front,
+    // and returns how many remain. Filters are shared by the threads of a parallel query.
+    abstract int filter(Snapshot snapshot, int[] rows, int count);
+
+    // Whether no row of a block of a store can pass, judging by the zone maps of its
+    // columns alone; the zone maps cover the block
+    boolean skips(ZoneMap[] zoneMaps, int block) {
+        return false;
+    }
+
+    // Fills in the selectivity, from statistics when there are any
+    abstract void estimate(Snapshot snapshot, TableStatistics statistics);
+
+    // Estimated cost of running the filter on one row
+    abstract double cost();
+
+    abstract int leafCount();
+
+    // The test itself; toString adds the estimated selectivity
+    abstract String describe();
+
+    // Selectivity of a test on a column: rows without a value are never kept
+    static double withNulls(ColumnStatistics statistics, double valueSelectivity) {
+        return (1 - statistics.nullFraction()) * valueSelectivity;
+    }
+
+    static double compareCost(Snapshot snapshot, int column) {
+        return snapshot.column(column).type() == ColumnType.TEXT ? TEXT_COMPARE_COST : NUMERIC_COMPARE_COST;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%.3f]", describe(), selectivity);
+    }
+}
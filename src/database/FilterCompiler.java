@@ -0,0 +1,147 @@
+package database;
+
+import java.util.*;
+
+// Turns a Predicate into filters bound to one table's columns. NOT is pushed down to
+// the leaves (De Morgan for AND and OR, the opposite operator for comparisons), nested
+// ANDs and ORs are flattened, and query values are parsed to column keys once. A test
+// on a column the table does not have compiles to FALSE and is remembered, so the
+// caller can reject the whole query rather than run it with the test left out.
+class FilterCompiler {
+    private final Map<String, Integer> columnIndex;
+    private final Snapshot snapshot;
+    // Positions of the columns the predicate tests
+    final BitSet columns = new BitSet();
+    // The first tested column the table does not have, or null
+    String unknownColumn;
+
+    FilterCompiler(Map<String, Integer> columnIndex, Snapshot snapshot) {
+        this.columnIndex = columnIndex;
+        this.snapshot = snapshot;
+    }
+
+    Filter compile(Predicate predicate) {
+        return compile(predicate, false);
+    }
+
+    private Filter compile(Predicate predicate, boolean negated) {
+        if (predicate instanceof Predicate.Not not) {
+            return compile(not.getOperand(), !negated);
+        }
+        String column = column(predicate);
+        if (column != null && !columnIndex.containsKey(column)) {
+            if (unknownColumn == null) {
+                unknownColumn = column;
+            }
+            return new OrFilter(new ArrayList<>());
+        }
+        if (predicate instanceof Predicate.And and) {
+            return combine(and.getOperands(), negated, !negated);
+        }
+        if (predicate instanceof Predicate.Or or) {
+            return combine(or.getOperands(), negated, negated);
+        }
+        if (predicate instanceof Condition condition) {
+            if (negated) {
+                condition = new Condition(condition.getColumn(), condition.getOperator().negate(), condition.getValue());
+            }
+            int position = position(condition.getColumn());
+            return new BoundCondition(condition, position, key(position, condition.getValue()));
+        }
+        if (predicate instanceof Predicate.Between between) {
+            int position = position(between.getColumn());
+            return new BetweenFilter(position, key(position, between.getLow()), key(position, between.getHigh()),
+                    negated, text(between, negated));
+        }
+        if (predicate instanceof Predicate.In in) {
+            return in(in, negated);
+        }
+        Predicate.Like like = (Predicate.Like) predicate;
+        if (like.getPattern() == null) {
+            // Like a comparison with a value that cannot occur
+            Condition.Operator operator = negated ? Condition.Operator.NE : Condition.Operator.EQ;
+            return new BoundCondition(new Condition(like.getColumn(), operator, null), position(like.getColumn()), null);
+        }
+        return new LikeFilter(position(like.getColumn()), LikePattern.compile(like.getPattern()), negated, text(like, negated));
+    }
+
+    private Filter combine(List<Predicate> operands, boolean negated, boolean conjunction) {
+        List<Filter> children = new ArrayList<>(operands.size());
+        for (Predicate operand : operands) {
+            Filter child = compile(operand, negated);
+            // TRUE decides an OR and FALSE an AND
+            if (!conjunction && child instanceof AndFilter and && and.children.isEmpty()
+                    || conjunction && child instanceof OrFilter or && or.children.isEmpty()) {
+                return child;
+            }
+            if (conjunction && child instanceof AndFilter and) {
+                children.addAll(and.children);
+            } else if (!conjunction && child instanceof OrFilter or) {
+                children.addAll(or.children);
+            } else {
+                children.add(child);
+            }
+        }
+        if (children.size() == 1) {
+            return children.get(0);
+        }
+        return conjunction ? new AndFilter(children) : new OrFilter(children);
+    }
+
+    private static String column(Predicate predicate) {
+        if (predicate instanceof Condition condition) {
+            return condition.getColumn();
+        }
+        if (predicate instanceof Predicate.Between between) {
+            return between.getColumn();
+        }
+        if (predicate instanceof Predicate.In in) {
+            return in.getColumn();
+        }
+        return predicate instanceof Predicate.Like like ? like.getColumn() : null;
+    }
+
+    private Filter in(Predicate.In in, boolean negated) {
+        int position = position(in.getColumn());
+        SortedSet<Object> keys = new TreeSet<>();
+        for (String value : in.getValues()) {
+            Object key = key(position, value);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        boolean[] codes = null;
+        if (snapshot.column(position) instanceof StringColumn strings) {
+            int[] known = new int[keys.size()];
+            int count = 0;
+            int maximum = -1;
+            for (Object key : keys) {
+                int code = strings.codeFor((String) key);
+                if (code >= 0) {
+                    known[count++] = code;
+                    maximum = Math.max(maximum, code);
+                }
+            }
+            codes = new boolean[maximum + 1];
+            for (int i = 0; i < count; i++) {
+                codes[known[i]] = true;
+            }
+        }
+        return new InFilter(position, keys.toArray(), negated, text(in, negated), codes);
+    }
+
+    private int position(String column) {
+        int position = columnIndex.get(column);
+        columns.set(position);
+        return position;
+    }
+
+    // Null when the value cannot occur in the column
+    private Object key(int position, String value) {
+        return value == null ? null : snapshot.column(position).parseKey(value);
+    }
+
+    private static String text(Predicate predicate, boolean negated) {
+        return negated ? "NOT " + predicate : predicate.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package database;
+
+// Applies a filter to whole batches; the filter tests one column at a time, so each
+// test only looks at the rows the earlier ones kept
+class FilterOperator implements BatchOperator {
+    private final BatchOperator input;
+    private final Snapshot snapshot;
+    private final Filter filter;
+
+    FilterOperator(BatchOperator input, Snapshot snapshot, Filter filter) {
+        this.input = input;
+        this.snapshot = snapshot;
+        this.filter = filter;
+    }
+
+    @Override
+    public Batch next() {
+        Batch batch;
+        while ((batch = input.next()) != null) {
+            int count = filter.filter(snapshot, batch.rows, batch.count);
+            if (count > 0) {
+                batch.count = count;
+                return batch;
+            }
+        }
+        return null;
+    }
+}
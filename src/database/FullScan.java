@@ -0,0 +1,17 @@
+package database;
+
+class FullScan extends Plan {
+    FullScan(Filter filter, double estimatedRows, double cost) {
+        super(filter, estimatedRows, cost);
+    }
+
+    @Override
+    IntList candidates(Snapshot snapshot) {
+        return null;
+    }
+
+    @Override
+    String describe() {
+        return "Full scan";
+    }
+}
@@ -0,0 +1,506 @@
+package database;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+// Aggregation sink computing aggregates per group of rows with equal values in the
+// group columns. Groups live in an open addressing table with linear probing over a
+// representative row per group, hashed and compared straight from the columns, so a
+// composite key is never built as an object. Each aggregate keeps its running value in
+// a primitive array indexed by group and is fed a batch at a time. Partial aggregates
+// of parallel morsels merge group by group.
+class GroupAggregate {
+    private final Column[] keys;
+    private final Accumulator[] accumulators;
+    // Representative row of each group, in the order the groups were first seen
+    private final IntList groups = new IntList();
+    // Slot holds group + 1, or 0 when empty
+    private int[] slots = new int[64];
+    private long[] hashes = new long[64];
+    private int capacity = 16;
+    private final int[] batchGroups = new int[Batch.SIZE];
+
+    // Null group columns stand for unknown ones, which hold no value in any row. An
+    // aggregate's column is null for COUNT(*) or a column the table does not have.
+    GroupAggregate(Column[] groupColumns, List<Aggregate> aggregates, Column[] aggregateColumns) {
+        this.keys = Arrays.stream(groupColumns).filter(column -> column != null).toArray(Column[]::new);
+        this.accumulators = new Accumulator[aggregates.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = accumulator(aggregates.get(i), aggregateColumns[i]);
+            accumulators[i].resize(capacity);
+        }
+        if (groupColumns.length == 0) {
+            // Without group columns every row is in the one group, which exists even for no rows
+            group(0);
+        }
+    }
+
+    // Whether the aggregate can be computed over the column
+    static boolean accepts(Aggregate aggregate, Column column) {
+        Aggregate.Function function = aggregate.getFunction();
+        return column == null || column.type() != ColumnType.TEXT
+                || function != Aggregate.Function.SUM && function != Aggregate.Function.AVG;
+    }
+
+    private static Accumulator accumulator(Aggregate aggregate, Column column) {
+        if (column == null) {
+            // COUNT(*) counts rows; anything else over an unknown column has nothing to see
+            return aggregate.getColumn() == null ? new Count(null) : new Nothing(aggregate.getFunction());
+        }
+        boolean floating = column.type() == ColumnType.DOUBLE;
+        switch (aggregate.getFunction()) {
+            case COUNT:
+                return new Count(column);
+            case SUM:
+            case AVG:
+                boolean average = aggregate.getFunction() == Aggregate.Function.AVG;
+                return floating ? new DoubleSum(column, average) : new LongSum(column, average);
+            default:
+                boolean max = aggregate.getFunction() == Aggregate.Function.MAX;
+                return new Extreme(column, max);
+        }
+    }
+
+    void add(Batch batch) {
+        int[] rows = batch.rows;
+        int count = batch.count;
+        for (int i = 0; i < count; i++) {
+            batchGroups[i] = group(rows[i]);
+        }
+        for (Accumulator accumulator : accumulators) {
+            accumulator.add(batchGroups, rows, count);
+        }
+    }
+
+    void addAll(BatchOperator input) {
+        for (Batch batch = input.next(); batch != null; batch = input.next()) {
+            add(batch);
+        }
+    }
+
+    // Adds the groups of another partial aggregate over the same columns and returns this
+    GroupAggregate merge(GroupAggregate other) {
+        for (int g = 0; g < other.groups.size(); g++) {
+            int group = group(other.groups.get(g));
+            for (int a = 0; a < accumulators.length; a++) {
+                accumulators[a].merge(group, other.accumulators[a], g);
+            }
+        }
+        return this;
+    }
+
+    int size() {
+        return groups.size();
+    }
+
+    // A row of the group, from which its group column values are read
+    int representative(int group) {
+        return groups.get(group);
+    }
+
+    // The aggregate's value for the group as text, or null when it has none
+    String result(int group, int aggregate) {
+        return accumulators[aggregate].result(group);
+    }
+
+    // Orders two groups by an aggregate, a group without a value first
+    int compare(int group, int other, int aggregate) {
+        return accumulators[aggregate].compare(group, other);
+    }
+
+    // The first limit groups in the order, or all when limit is negative or above the
+    // number of groups. A bounded heap holds the best groups seen so far, so finding the
+    // top few costs a comparison or two per group rather than a sort of all of them.
+    // Groups the order finds equal stay in the order they were first seen.
+    int[] top(IntBinaryOperator order, long limit) {
+        int total = groups.size();
+        int n = limit < 0 || limit > total ? total : (int) limit;
+        IntBinaryOperator stable = (group, other) -> {
+            int c = order.applyAsInt(group, other);
+            return c != 0 ? c : Integer.compare(group, other);
+        };
+        // Max-heap: the worst of the groups kept is at the root
+        int[] heap = new int[n];
+        int size = 0;
+        for (int group = 0; group < total && n > 0; group++) {
+            if (size < n) {
+                heap[size] = group;
+                siftUp(heap, size++, stable);
+            } else if (stable.applyAsInt(group, heap[0]) < 0) {
+                heap[0] = group;
+                siftDown(heap, size, stable);
+            }
+        }
+        for (int last = size - 1; last > 0; last--) {
+            int worst = heap[0];
+            heap[0] = heap[last];
+            heap[last] = worst;
+            siftDown(heap, last, stable);
+        }
+        return heap;
+    }
+
+    private static void siftUp(int[] heap, int index, IntBinaryOperator order) {
+        int value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (order.applyAsInt(heap[parent], value) >= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(int[] heap, int size, IntBinaryOperator order) {
+        int value = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && order.applyAsInt(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (order.applyAsInt(heap[child], value) <= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+
+    private int group(int row) {
+        long hash = hash(row);
+        int mask = slots.length - 1;
+        int slot = (int) hash & mask;
+        while (slots[slot] != 0) {
+            int group = slots[slot] - 1;
+            if (hashes[slot] == hash && sameKey(groups.get(group), row)) {
+                return group;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int group = groups.size();
+        slots[slot] = group + 1;
+        hashes[slot] = hash;
+        groups.add(row);
+        if (groups.size() > capacity) {
+            capacity *= 2;
+            for (Accumulator accumulator : accumulators) {
+                accumulator.resize(capacity);
+            }
+        }
+        if (groups.size() * 2 > slots.length) {
+            resize();
+        }
+        return group;
+    }
+
+    private long hash(int row) {
+        long hash = 17;
+        for (Column column : keys) {
+            hash = hash * 31 + column.hashAt(row);
+        }
+        return Column.mix(hash);
+    }
+
+    private boolean sameKey(int row, int other) {
+        for (Column column : keys) {
+            if (!column.rowsEqual(row, other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resize() {
+        int[] oldSlots = slots;
+        long[] oldHashes = hashes;
+        slots = new int[oldSlots.length * 2];
+        hashes = new long[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != 0) {
+                int slot = (int) oldHashes[i] & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = oldSlots[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    // Running value of one aggregate for every group
+    private abstract static class Accumulator {
+        abstract void resize(int capacity);
+
+        abstract void add(int[] groups, int[] rows, int count);
+
+        // Folds a group of another accumulator of the same aggregate into a group of this one
+        abstract void merge(int group, Accumulator other, int otherGroup);
+
+        abstract String result(int group);
+
+        abstract int compare(int group, int other);
+    }
+
+    // COUNT(*) when the column is null, otherwise the rows with a value in the column
+    private static class Count extends Accumulator {
+        private final Column column;
+        private long[] counts = new long[0];
+
+        Count(Column column) {
+            this.column = column;
+        }
+
+        @Override
+        void resize(int capacity) {
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(int[] groups, int[] rows, int count) {
+            long[] current = counts;
+            for (int i = 0; i < count; i++) {
+                if (column == null || !column.isNull(rows[i])) {
+                    current[groups[i]]++;
+                }
+            }
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            counts[group] += ((Count) other).counts[otherGroup];
+        }
+
+        @Override
+        String result(int group) {
+            return Long.toString(counts[group]);
+        }
+
+        @Override
+        int compare(int group, int other) {
+            return Long.compare(counts[group], counts[other]);
+        }
+    }
+
+    // SUM and AVG of an INT or LONG column, summed exactly in a long
+    private static class LongSum extends Accumulator {
+        private final Column column;
+        private final boolean average;
+        private long[] sums = new long[0];
+        private long[] counts = new long[0];
+
+        LongSum(Column column, boolean average) {
+            this.column = column;
+            this.average = average;
+        }
+
+        @Override
+        void resize(int capacity) {
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(int[] groups, int[] rows, int count) {
+            long[] currentSums = sums;
+            long[] currentCounts = counts;
+            if (column instanceof IntColumn ints) {
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (!ints.isNull(row)) {
+                        currentSums[groups[i]] += ints.getInt(row);
+                        currentCounts[groups[i]]++;
+                    }
+                }
+            } else {
+                LongColumn longs = (LongColumn) column;
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (!longs.isNull(row)) {
+                        currentSums[groups[i]] += longs.getLong(row);
+                        currentCounts[groups[i]]++;
+                    }
+                }
+            }
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            LongSum partial = (LongSum) other;
+            sums[group] += partial.sums[otherGroup];
+            counts[group] += partial.counts[otherGroup];
+        }
+
+        @Override
+        String result(int group) {
+            if (counts[group] == 0) {
+                return null;
+            }
+            return average ? Double.toString(average(group)) : Long.toString(sums[group]);
+        }
+
+        private double average(int group) {
+            return (double) sums[group] / counts[group];
+        }
+
+        @Override
+        int compare(int group, int other) {
+            if (counts[group] == 0 || counts[other] == 0) {
+                return Boolean.compare(counts[group] != 0, counts[other] != 0);
+            }
+            return average ? Double.compare(average(group), average(other)) : Long.compare(sums[group], sums[other]);
+        }
+    }
+
+    // SUM and AVG of a DOUBLE column
+    private static class DoubleSum extends Accumulator {
+        private final DoubleColumn column;
+        private final boolean average;
+        private double[] sums = new double[0];
+        private long[] counts = new long[0];
+
+        DoubleSum(Column column, boolean average) {
+            this.column = (DoubleColumn) column;
+            this.average = average;
+        }
+
+        @Override
+        void resize(int capacity) {
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(int[] groups, int[] rows, int count) {
+            double[] currentSums = sums;
+            long[] currentCounts = counts;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                if (!column.isNull(row)) {
+                    currentSums[groups[i]] += column.getDouble(row);
+                    currentCounts[groups[i]]++;
+                }
+            }
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            DoubleSum partial = (DoubleSum) other;
+            sums[group] += partial.sums[otherGroup];
+            counts[group] += partial.counts[otherGroup];
+        }
+
+        @Override
+        String result(int group) {
+            return counts[group] == 0 ? null : Double.toString(value(group));
+        }
+
+        private double value(int group) {
+            return average ? sums[group] / counts[group] : sums[group];
+        }
+
+        @Override
+        int compare(int group, int other) {
+            if (counts[group] == 0 || counts[other] == 0) {
+                return Boolean.compare(counts[group] != 0, counts[other] != 0);
+            }
+            return Double.compare(value(group), value(other));
+        }
+    }
+
+    // MIN or MAX of any column, kept as the row holding the value so far: the column
+    // compares rows without boxing, and text is compared without copying strings
+    private static class Extreme extends Accumulator {
+        private final Column column;
+        private final boolean max;
+        // Row holding the group's value plus one, or 0 while the group has none
+        private int[] rows = new int[0];
+
+        Extreme(Column column, boolean max) {
+            this.column = column;
+            this.max = max;
+        }
+
+        @Override
+        void resize(int capacity) {
+            rows = Arrays.copyOf(rows, capacity);
+        }
+
+        @Override
+        void add(int[] groups, int[] batchRows, int count) {
+            for (int i = 0; i < count; i++) {
+                offer(groups[i], batchRows[i]);
+            }
+        }
+
+        private void offer(int group, int row) {
+            if (column.isNull(row)) {
+                return;
+            }
+            int current = rows[group] - 1;
+            if (current < 0 || (max ? column.compareRows(row, current) > 0 : column.compareRows(row, current) < 0)) {
+                rows[group] = row + 1;
+            }
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            int row = ((Extreme) other).rows[otherGroup] - 1;
+            if (row >= 0) {
+                offer(group, row);
+            }
+        }
+
+        @Override
+        String result(int group) {
+            return rows[group] == 0 ? null : column.get(rows[group] - 1);
+        }
+
+        @Override
+        int compare(int group, int other) {
+            if (rows[group] == 0 || rows[other] == 0) {
+                return Boolean.compare(rows[group] != 0, rows[other] != 0);
+            }
+            return column.compareRows(rows[group] - 1, rows[other] - 1);
+        }
+    }
+
+    // An aggregate over a column the table does not have: COUNT is 0, the rest have no value
+    private static class Nothing extends Accumulator {
+        private final Aggregate.Function function;
+
+        Nothing(Aggregate.Function function) {
+            this.function = function;
+        }
+
+        @Override
+        void resize(int capacity) {
+        }
+
+        @Override
+        void add(int[] groups, int[] rows, int count) {
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+        }
+
+        @Override
+        String result(int group) {
+            return function == Aggregate.Function.COUNT ? "0" : null;
+        }
+
+        @Override
+        int compare(int group, int other) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package database;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class HashIndex extends Index {
+    private final Map<Object, PostingList> entries = new ConcurrentHashMap<>();
+
+    HashIndex(String name, int column) {
+        super(name, column);
+    }
+
+    @Override
+    IndexType type() {
+        return IndexType.HASH;
+    }
+
+    @Override
+    protected Map<Object, PostingList> entries() {
+        return entries;
+    }
+
+    @Override
+    Index emptyCopy() {
+        return new HashIndex(getName(), getColumn());
+    }
+}
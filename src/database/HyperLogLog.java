@@ -0,0 +1,49 @@
+package database;
+
+import java.io.Serializable;
+
+// Cardinality sketch: 4096 one-byte registers, each keeping the longest run of leading
+// zeros seen among the hashes routed to it. Estimates the number of distinct values
+// added with about 1.6% standard error in 4 KB, whatever the number of values.
+class HyperLogLog implements Serializable {
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    // Registers only grow, so concurrent readers at worst see a slightly older estimate
+    void add(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // The guard bit caps the rank for hashes whose remaining bits are all zero
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    long estimate() {
+        double sum = 0;
+        int empty = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                empty++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // Linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * REGISTERS && empty > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / empty);
+        }
+        return Math.round(estimate);
+    }
+}
@@ -0,0 +1,111 @@
+package database;
+
+// column [NOT] IN (value, ...). Text columns test the row's dictionary code against a
+// bitmap of the listed codes; other columns binary search the sorted keys.
+class InFilter extends Filter {
+    final int column;
+    // Sorted and distinct; values that cannot occur in the column are left out
+    final Object[] keys;
+    final boolean negated;
+    private final String text;
+    // For text columns, indexed by dictionary code
+    private final boolean[] codes;
+    private double cost;
+
+    InFilter(int column, Object[] keys, boolean negated, String text, boolean[] codes) {
+        this.column = column;
+        this.keys = keys;
+        this.negated = negated;
+        this.text = text;
+        this.codes = codes;
+    }
+
+    @Override
+    void estimate(Snapshot snapshot, TableStatistics statistics) {
+        cost = codes != null ? NUMERIC_COMPARE_COST
+                : compareCost(snapshot, column) * Math.max(1.0, Math.log(keys.length + 1) / Math.log(2));
+        double inside;
+        if (statistics == null) {
+            inside = Math.min(1.0, keys.length * BoundCondition.DEFAULT_EQUALITY_SELECTIVITY);
+            selectivity = negated ? 1.0 - inside : inside;
+            return;
+        }
+        ColumnStatistics columnStatistics = statistics.column(snapshot, column);
+        inside = 0.0;
+        for (Object key : keys) {
+            inside += columnStatistics.valueSelectivity(Condition.Operator.EQ, key);
+        }
+        inside = Math.min(1.0, inside);
+        selectivity = withNulls(columnStatistics, negated ? 1.0 - inside : inside);
+    }
+
+    @Override
+    double cost() {
+        return cost;
+    }
+
+    @Override
+    int leafCount() {
+        return 1;
+    }
+
+    @Override
+    int filter(Snapshot snapshot, int[] rows, int count) {
+        Column values = snapshot.column(column);
+        int kept = 0;
+        if (codes != null) {
+            StringColumn strings = (StringColumn) values;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                int code = strings.codeAt(row);
+                if (code >= 0 && (code < codes.length && codes[code]) != negated) {
+                    rows[kept++] = row;
+                }
+            }
+            return kept;
+        }
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (!values.isNull(row) && contains(values, row) != negated) {
+                rows[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    @Override
+    boolean skips(ZoneMap[] zoneMaps, int block) {
+        ZoneMap zones = zoneMaps[column];
+        if (zones.min(block) == null) {
+            return true;
+        }
+        for (Object key : keys) {
+            if (negated ? zones.within(block, key, key) : !zones.excludesRange(block, key, true, key, true)) {
+                return negated;
+            }
+        }
+        return !negated;
+    }
+
+    private boolean contains(Column values, int row) {
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = values.compareKey(row, keys[middle]);
+            if (comparison > 0) {
+                low = middle + 1;
+            } else if (comparison < 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    String describe() {
+        return text;
+    }
+}
@@ -0,0 +1,51 @@
+package database;
+
+import java.io.Serializable;
+import java.util.Map;
+
+// Secondary index from column values to row positions. Entries are only ever added: the
+// index covers every row version in the table's RowStore, and readers check visibility
+// themselves. Rows without a value are left out, as no condition on the column can
+// match them.
+abstract class Index implements Serializable {
+    private final String name;
+    private final int column;
+
+    Index(String name, int column) {
+        this.name = name;
+        this.column = column;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getColumn() {
+        return column;
+    }
+
+    abstract IndexType type();
+
+    protected abstract Map<Object, PostingList> entries();
+
+    abstract Index emptyCopy();
+
+    // Called by the single writer of the table
+    void add(Object key, int row) {
+        if (key != null) {
+            entries().computeIfAbsent(key, k -> new PostingList()).add(row);
+        }
+    }
+
+    // Adds the rows holding exactly this key to the target list, in no particular order
+    void lookup(Object key, IntList target) {
+        PostingList rows = key == null ? null : entries().get(key);
+        if (rows != null) {
+            rows.copyTo(target);
+        }
+    }
+
+    int distinctKeys() {
+        return entries().size();
+    }
+}
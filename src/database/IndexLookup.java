@@ -0,0 +1,32 @@
+package database;
+
+import java.util.List;
+
+// Rows holding one of a few keys, read from a hash or sorted index
+class IndexLookup extends Plan {
+    private final Index index;
+    // Distinct keys, so no row is read twice
+    private final List<Object> keys;
+    private final Filter lookup;
+
+    IndexLookup(Index index, List<Object> keys, Filter lookup, Filter filter, double estimatedRows, double cost) {
+        super(filter, estimatedRows, cost);
+        this.index = index;
+        this.keys = keys;
+        this.lookup = lookup;
+    }
+
+    @Override
+    IntList candidates(Snapshot snapshot) {
+        IntList rows = new IntList();
+        for (Object key : keys) {
+            index.lookup(key, rows);
+        }
+        return inRowOrder(rows, snapshot);
+    }
+
+    @Override
+    String describe() {
+        return "Index lookup using " + index.getName() + " (" + index.type() + ") on " + lookup.describe();
+    }
+}
@@ -0,0 +1,22 @@
+package database;
+
+import java.util.Locale;
+
+public enum IndexType {
+    HASH,
+    SORTED;
+
+    // Returns null for an unknown index type name
+    public static IndexType parse(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "hash":
+                return HASH;
+            case "btree":
+            case "sorted":
+            case "skiplist":
+                return SORTED;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package database;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Growable list of primitive ints, used for row positions
+class IntList implements Serializable {
+    private int[] values;
+    private int size;
+
+    IntList() {
+        this(8);
+    }
+
+    IntList(int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    void addAll(IntList other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.values[i]);
+        }
+    }
+
+    void addAll(int[] source, int count) {
+        if (size + count > values.length) {
+            values = Arrays.copyOf(values, Math.max(size + count, values.length * 2));
+        }
+        System.arraycopy(source, 0, values, size, count);
+        size += count;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void sort() {
+        Arrays.sort(values, 0, size);
+    }
+
+    // Drops every value not below the limit from a sorted list
+    void truncateAt(int limit) {
+        while (size > 0 && values[size - 1] >= limit) {
+            size--;
+        }
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
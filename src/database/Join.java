@@ -0,0 +1,538 @@
+package database;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+// Inner equi-join of two tables: every pair of visible rows, one from each side, whose
+// join columns hold equal values. Each side has its own predicate, planned as a query on
+// its table. There are two ways to join, and the one cheaper by estimate is used:
+//
+//   hash   The side expected to match fewer rows is built into a hash table on its join
+//          key, and the matching rows of the other side probe it, in parallel morsels
+//          when the table has an executor. A build side too large for the memory budget
+//          turns this into a Grace hash join: the row positions of both sides are
+//          partitioned by key hash into files, and the partitions are joined one at a
+//          time, so only one partition's hash table is in memory at once.
+//   merge  When both join columns have a sorted index of the same type, the index
+//          entries are walked side by side in key order. Neither table is scanned or
+//          hashed; a side with a predicate only filters its rows through its plan.
+//
+// Rows without a value in the join column never match. Columns of different types match
+// when their values are equal as numbers or, next to a text column, as text. Pairs come
+// out in the order of the left side's rows, then the right side's, whichever way they
+// were found.
+final class Join {
+    enum Method {
+        HASH,
+        MERGE
+    }
+
+    // Relative costs per row: inserting into the hash table, probing it, and stepping
+    // through an index entry during a merge
+    private static final double HASH_BUILD_COST = 2.0;
+    private static final double HASH_PROBE_COST = 1.0;
+    private static final double MERGE_COST = 1.0;
+    // Heap taken by one build row: its boxed key, the hash map entry and its row list
+    static final long BUILD_ROW_BYTES = 96;
+    // Partition files per side are open at the same time while spilling
+    private static final int MAX_PARTITIONS = 64;
+
+    // One side of a join, read from a single snapshot of its table
+    static final class Input {
+        final String table;
+        final List<String> columns;
+        final Snapshot snapshot;
+        final Plan plan;
+        final int column;
+        final ExecutorService executor;
+
+        Input(String table, List<String> columns, Snapshot snapshot, Plan plan, int column, ExecutorService executor) {
+            this.table = table;
+            this.columns = columns;
+            this.snapshot = snapshot;
+            this.plan = plan;
+            this.column = column;
+            this.executor = executor;
+        }
+
+        Column values() {
+            return snapshot.column(column);
+        }
+
+        double estimatedRows() {
+            return plan.estimatedRows * (plan.filter == null ? 1.0 : plan.filter.selectivity);
+        }
+
+        boolean isFiltered() {
+            return !(plan instanceof FullScan) || plan.filter != null;
+        }
+
+        // A sorted index on the join column, or null
+        SortedIndex sortedIndex() {
+            for (Index index : snapshot.store.indexes.values()) {
+                if (index instanceof SortedIndex sorted && index.getColumn() == column) {
+                    return sorted;
+                }
+            }
+            return null;
+        }
+
+        // The visible rows matching the side's predicate, in row order
+        IntList rows() {
+            return Morsels.run(executor, plan, snapshot, input -> {
+                IntList rows = new IntList();
+                for (Batch batch = input.next(); batch != null; batch = input.next()) {
+                    rows.addAll(batch.rows, batch.count);
+                }
+                return rows;
+            }, (first, second) -> {
+                first.addAll(second);
+                return first;
+            });
+        }
+
+        String name() {
+            return table + "." + columns.get(column);
+        }
+    }
+
+    // How join keys of the two columns are compared
+    private enum KeyType {
+        // Both columns have the same type, other than DOUBLE, and their keys compare as they are
+        NATIVE,
+        LONG,
+        DOUBLE,
+        TEXT
+    }
+
+    private final Input left;
+    private final Input right;
+    private final long memoryBudget;
+    private final KeyType keyType;
+    private final Method method;
+    // The side the hash join builds on
+    private final boolean buildLeft;
+    private final double cost;
+
+    Join(Input left, Input right, long memoryBudget) {
+        this.left = left;
+        this.right = right;
+        this.memoryBudget = memoryBudget;
+        this.keyType = keyType(left.values().type(), right.values().type());
+        this.buildLeft = left.estimatedRows() < right.estimatedRows();
+
+        double build = Math.min(left.estimatedRows(), right.estimatedRows());
+        double probe = Math.max(left.estimatedRows(), right.estimatedRows());
+        double hashCost = left.plan.cost + right.plan.cost + build * HASH_BUILD_COST + probe * HASH_PROBE_COST;
+        double mergeCost = Double.POSITIVE_INFINITY;
+        if (keyType == KeyType.NATIVE && left.sortedIndex() != null && right.sortedIndex() != null) {
+            mergeCost = (left.snapshot.size + right.snapshot.size) * MERGE_COST
+                    + (left.isFiltered() ? left.plan.cost : 0) + (right.isFiltered() ? right.plan.cost : 0);
+        }
+        this.method = mergeCost < hashCost ? Method.MERGE : Method.HASH;
+        this.cost = Math.min(hashCost, mergeCost);
+    }
+
+    private static KeyType keyType(ColumnType first, ColumnType second) {
+        if (first == ColumnType.TEXT || second == ColumnType.TEXT) {
+            return first == second ? KeyType.NATIVE : KeyType.TEXT;
+        }
+        if (first == ColumnType.DOUBLE || second == ColumnType.DOUBLE) {
+            return KeyType.DOUBLE;
+        }
+        return first == second ? KeyType.NATIVE : KeyType.LONG;
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    // Join key of a row, or null when the row has no value
+    private Object key(Column column, int row) {
+        switch (keyType) {
+            case NATIVE:
+                return column.keyAt(row);
+            case TEXT:
+                return column.get(row);
+            default:
+                Number value = (Number) column.keyAt(row);
+                if (value == null) {
+                    return null;
+                }
+                // Adding zero turns -0.0 into 0.0, which Double.equals tells apart
+                return keyType == KeyType.LONG ? (Object) value.longValue() : (Object) (value.doubleValue() + 0.0);
+        }
+    }
+
+    // The matching pairs of rows, each a left row in the high and a right row in the low
+    // half of a long, sorted
+    Pairs execute() {
+        Pairs pairs = method == Method.MERGE ? mergeJoin() : hashJoin();
+        pairs.sort();
+        return pairs;
+    }
+
+    private Pairs hashJoin() {
+        Input build = buildLeft ? left : right;
+        Input probe = buildLeft ? right : left;
+        IntList buildRows = build.rows();
+        if ((long) buildRows.size() * BUILD_ROW_BYTES > memoryBudget) {
+            return graceHashJoin(build, buildRows, probe);
+        }
+        Map<Object, IntList> table = buildTable(build, buildRows);
+        Column keys = probe.values();
+        return Morsels.run(probe.executor, probe.plan, probe.snapshot, input -> {
+            Pairs pairs = new Pairs();
+            for (Batch batch = input.next(); batch != null; batch = input.next()) {
+                for (int i = 0; i < batch.count; i++) {
+                    probe(table, keys, batch.rows[i], pairs);
+                }
+            }
+            return pairs;
+        }, Pairs::addAll);
+    }
+
+    private Map<Object, IntList> buildTable(Input build, IntList rows) {
+        Map<Object, IntList> table = new HashMap<>(Math.max(16, rows.size() * 4 / 3));
+        Column keys = build.values();
+        for (int i = 0; i < rows.size(); i++) {
+            int row = rows.get(i);
+            Object key = key(keys, row);
+            if (key != null) {
+                table.computeIfAbsent(key, k -> new IntList(1)).add(row);
+            }
+        }
+        return table;
+    }
+
+    private void probe(Map<Object, IntList> table, Column keys, int row, Pairs pairs) {
+        Object key = key(keys, row);
+        IntList matches = key == null ? null : table.get(key);
+        if (matches == null) {
+            return;
+        }
+        for (int m = 0; m < matches.size(); m++) {
+            if (buildLeft) {
+                pairs.add(matches.get(m), row);
+            } else {
+                pairs.add(row, matches.get(m));
+            }
+        }
+    }
+
+    // Spills the row positions of both sides into partitions by key hash, then joins each
+    // pair of partitions in memory. Equal keys always land in the same partition; a
+    // partition holding many rows of one key may still exceed the budget.
+    private Pairs graceHashJoin(Input build, IntList buildRows, Input probe) {
+        long buildBytes = (long) buildRows.size() * BUILD_ROW_BYTES;
+        int partitions = (int) Math.min(MAX_PARTITIONS, 2 * (buildBytes / Math.max(1, memoryBudget) + 1));
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("join");
+            Path[] buildFiles = files(directory, "build", partitions);
+            Path[] probeFiles = files(directory, "probe", partitions);
+
+            DataOutputStream[] outputs = open(buildFiles);
+            try {
+                Column keys = build.values();
+                for (int i = 0; i < buildRows.size(); i++) {
+                    spill(keys, buildRows.get(i), outputs);
+                }
+            } finally {
+                close(outputs);
+            }
+            buildRows = null;
+
+            outputs = open(probeFiles);
+            try {
+                Column keys = probe.values();
+                BatchOperator input = probe.plan.open(probe.snapshot);
+                for (Batch batch = input.next(); batch != null; batch = input.next()) {
+                    for (int i = 0; i < batch.count; i++) {
+                        spill(keys, batch.rows[i], outputs);
+                    }
+                }
+            } finally {
+                close(outputs);
+            }
+
+            Pairs pairs = new Pairs();
+            Column keys = probe.values();
+            for (int p = 0; p < partitions; p++) {
+                Map<Object, IntList> table = buildTable(build, read(buildFiles[p]));
+                if (table.isEmpty()) {
+                    continue;
+                }
+                IntList probeRows = read(probeFiles[p]);
+                for (int i = 0; i < probeRows.size(); i++) {
+                    probe(table, keys, probeRows.get(i), pairs);
+                }
+            }
+            return pairs;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error spilling join to disk", e);
+        } finally {
+            if (directory != null) {
+                delete(directory);
+            }
+        }
+    }
+
+    private static Path[] files(Path directory, String side, int partitions) {
+        Path[] files = new Path[partitions];
+        for (int p = 0; p < partitions; p++) {
+            files[p] = directory.resolve(side + "-" + p);
+        }
+        return files;
+    }
+
+    private static DataOutputStream[] open(Path[] files) throws IOException {
+        DataOutputStream[] outputs = new DataOutputStream[files.length];
+        try {
+            for (int p = 0; p < files.length; p++) {
+                outputs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[p])));
+            }
+        } catch (IOException e) {
+            close(outputs);
+            throw e;
+        }
+        return outputs;
+    }
+
+    private static void close(DataOutputStream[] outputs) throws IOException {
+        IOException failure = null;
+        for (DataOutputStream output : outputs) {
+            if (output == null) {
+                continue;
+            }
+            try {
+                output.close();
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Writes the row to the partition of its key; rows without a key match nothing and are dropped
+    private void spill(Column keys, int row, DataOutputStream[] outputs) throws IOException {
+        Object key = key(keys, row);
+        if (key != null) {
+            // The high bits of the mixed hash, so the partition says nothing about the hash map's buckets
+            int partition = (int) ((Column.mix(key.hashCode()) >>> 32) % outputs.length);
+            outputs[partition].writeInt(row);
+        }
+    }
+
+    private static IntList read(Path file) throws IOException {
+        IntList rows = new IntList((int) (Files.size(file) / Integer.BYTES));
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            for (long i = Files.size(file) / Integer.BYTES; i > 0; i--) {
+                rows.add(input.readInt());
+            }
+        }
+        return rows;
+    }
+
+    private static void delete(Path directory) {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            // Left to the temporary directory's cleanup
+        }
+    }
+
+    // Walks the sorted indexes of both join columns in key order. Indexes also hold row
+    // versions the snapshots cannot see; those are skipped, as are rows a side's predicate
+    // rejects.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Pairs mergeJoin() {
+        BitSet leftMatches = left.isFiltered() ? matches(left) : null;
+        BitSet rightMatches = right.isFiltered() ? matches(right) : null;
+        Iterator<Map.Entry<Object, PostingList>> leftEntries = left.sortedIndex().entries().entrySet().iterator();
+        Iterator<Map.Entry<Object, PostingList>> rightEntries = right.sortedIndex().entries().entrySet().iterator();
+        IntList leftRows = new IntList();
+        IntList rightRows = new IntList();
+        Pairs pairs = new Pairs();
+        long stepped = 0;
+
+        Map.Entry<Object, PostingList> l = leftEntries.hasNext() ? leftEntries.next() : null;
+        Map.Entry<Object, PostingList> r = rightEntries.hasNext() ? rightEntries.next() : null;
+        while (l != null && r != null) {
+            int order = ((Comparable) l.getKey()).compareTo(r.getKey());
+            if (order == 0) {
+                visible(left, l.getValue(), leftMatches, leftRows);
+                visible(right, r.getValue(), rightMatches, rightRows);
+                stepped += leftRows.size() + rightRows.size();
+                for (int i = 0; i < leftRows.size(); i++) {
+                    for (int j = 0; j < rightRows.size(); j++) {
+                        pairs.add(leftRows.get(i), rightRows.get(j));
+                    }
+                }
+            }
+            if (order <= 0) {
+                l = leftEntries.hasNext() ? leftEntries.next() : null;
+            }
+            if (order >= 0) {
+                r = rightEntries.hasNext() ? rightEntries.next() : null;
+            }
+        }
+        if (left.snapshot.trace != null) {
+            left.snapshot.trace.scanned((int) Math.min(Integer.MAX_VALUE, stepped));
+        }
+        return pairs;
+    }
+
+    private static BitSet matches(Input side) {
+        IntList rows = side.rows();
+        BitSet matches = new BitSet(side.snapshot.size);
+        for (int i = 0; i < rows.size(); i++) {
+            matches.set(rows.get(i));
+        }
+        return matches;
+    }
+
+    private static void visible(Input side, PostingList entry, BitSet matches, IntList target) {
+        target.clear();
+        entry.copyTo(target);
+        int kept = 0;
+        int[] rows = new int[target.size()];
+        for (int i = 0; i < target.size(); i++) {
+            int row = target.get(i);
+            if (row < side.snapshot.size && side.snapshot.isVisible(row) && (matches == null || matches.get(row))) {
+                rows[kept++] = row;
+            }
+        }
+        target.clear();
+        target.addAll(rows, kept);
+    }
+
+    // Turns pairs into rows keyed by qualified column names, "table.column". Columns null
+    // selects every column of both tables, leaving out missing values; otherwise a name
+    // neither table has is null in every row.
+    List<Map<String, String>> materialize(Pairs pairs, List<String> columns) {
+        List<Map<String, String>> result = new ArrayList<>(pairs.size());
+        if (columns == null) {
+            for (int p = 0; p < pairs.size(); p++) {
+                Map<String, String> row = new LinkedHashMap<>();
+                addAll(left, pairs.left(p), row);
+                addAll(right, pairs.right(p), row);
+                result.add(row);
+            }
+            return result;
+        }
+        Column[] projected = new Column[columns.size()];
+        boolean[] fromLeft = new boolean[columns.size()];
+        for (int c = 0; c < projected.length; c++) {
+            projected[c] = column(left, columns.get(c));
+            fromLeft[c] = projected[c] != null;
+            if (projected[c] == null) {
+                projected[c] = column(right, columns.get(c));
+            }
+        }
+        for (int p = 0; p < pairs.size(); p++) {
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int c = 0; c < projected.length; c++) {
+                row.put(columns.get(c), projected[c] == null ? null
+                        : projected[c].get(fromLeft[c] ? pairs.left(p) : pairs.right(p)));
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    private static void addAll(Input side, int row, Map<String, String> target) {
+        for (int c = 0; c < side.columns.size(); c++) {
+            String value = side.snapshot.column(c).get(row);
+            if (value != null) {
+                target.put(side.table + "." + side.columns.get(c), value);
+            }
+        }
+    }
+
+    // The side's column with this qualified name, or null
+    private static Column column(Input side, String name) {
+        if (!name.startsWith(side.table + ".")) {
+            return null;
+        }
+        int position = side.columns.indexOf(name.substring(side.table.length() + 1));
+        return position < 0 ? null : side.snapshot.column(position);
+    }
+
+    String explain() {
+        String nl = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        if (method == Method.MERGE) {
+            text.append("Merge join on ").append(left.name()).append(" = ").append(right.name())
+                    .append(String.format(" over sorted indexes %s and %s [cost %.1f]",
+                            left.sortedIndex().getName(), right.sortedIndex().getName(), cost));
+            for (Input side : List.of(left, right)) {
+                if (side.isFiltered()) {
+                    text.append(nl).append("  Filter ").append(side.table).append(": ").append(indent(side.plan.explain()));
+                }
+            }
+            return text.toString();
+        }
+        Input build = buildLeft ? left : right;
+        Input probe = buildLeft ? right : left;
+        double buildBytes = build.estimatedRows() * BUILD_ROW_BYTES;
+        text.append("Hash join on ").append(left.name()).append(" = ").append(right.name())
+                .append(String.format(" [estimated build rows %.0f, cost %.1f]", build.estimatedRows(), cost));
+        if (buildBytes > memoryBudget) {
+            text.append(nl).append(String.format("  Spills to disk: the build side exceeds the %d byte budget", memoryBudget));
+        }
+        text.append(nl).append("  Build ").append(build.table).append(": ").append(indent(build.plan.explain()));
+        text.append(nl).append("  Probe ").append(probe.table).append(": ").append(indent(probe.plan.explain()));
+        return text.toString();
+    }
+
+    private static String indent(String plan) {
+        return plan.replace(System.lineSeparator(), System.lineSeparator() + "  ");
+    }
+
+    // Growable list of row pairs packed into longs
+    static final class Pairs {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(int left, int right) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = (long) left << 32 | right;
+        }
+
+        Pairs addAll(Pairs other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + other.size, values.length * 2));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+            return this;
+        }
+
+        void sort() {
+            Arrays.sort(values, 0, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        int left(int index) {
+            return (int) (values[index] >>> 32);
+        }
+
+        int right(int index) {
+            return (int) values[index];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package database;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency distribution in nanoseconds with HDR-style log-linear buckets: values below
+// 16 have a bucket each, and every power of two above is split into 8 buckets, so any
+// percentile is accurate to within 1/8 of its value from 1 ns up to Long.MAX_VALUE in
+// 488 counters. Recording is lock-free and safe from any number of threads.
+public class LatencyHistogram {
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    // Summed from the buckets, so recording does not pay for a separate counter
+    public long getCount() {
+        long n = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            n += counts.get(bucket);
+        }
+        return n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    // The smallest recorded value at or above the given fraction of all values, rounded
+    // up to the top of its bucket; 0 when nothing was recorded
+    public long getPercentile(double fraction) {
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestIn(bucket), max.get());
+            }
+        }
+        // Counts recorded while we were reading; the maximum is the safe answer
+        return max.get();
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        total.reset();
+        max.reset();
+    }
+
+    // Keeps the four most significant bits: the leading one picks the power of two and
+    // the three below it the bucket within it
+    static int bucketOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 3;
+        int sub = (int) (value >>> shift);
+        return LINEAR + (shift - 1) * SUB_BUCKETS + sub - SUB_BUCKETS;
+    }
+
+    static long highestIn(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        long next = (sub + 1) << shift;
+        // The last bucket ends at Long.MAX_VALUE, where next wraps around
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+}
@@ -0,0 +1,98 @@
+package database;
+
+import java.util.Arrays;
+
+// column [NOT] LIKE pattern. On text columns each dictionary value is matched once and
+// the outcome remembered by code, so a scan costs little more than an equality test.
+class LikeFilter extends Filter {
+    private static final double DEFAULT_SELECTIVITY = 0.1;
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte NO_MATCH = 2;
+
+    final int column;
+    final LikePattern pattern;
+    final boolean negated;
+    private final String text;
+    // Outcome per dictionary code. Threads of a parallel scan may race to grow it, which
+    // at worst loses some remembered outcomes; they are matched again.
+    private volatile byte[] outcomes = new byte[0];
+    private double cost;
+
+    LikeFilter(int column, LikePattern pattern, boolean negated, String text) {
+        this.column = column;
+        this.pattern = pattern;
+        this.negated = negated;
+        this.text = text;
+    }
+
+    @Override
+    void estimate(Snapshot snapshot, TableStatistics statistics) {
+        boolean strings = snapshot.column(column) instanceof StringColumn;
+        cost = strings ? NUMERIC_COMPARE_COST : PATTERN_MATCH_COST;
+        double matching = DEFAULT_SELECTIVITY;
+        ColumnStatistics columnStatistics = null;
+        if (statistics != null) {
+            columnStatistics = statistics.column(snapshot, column);
+            if (strings && pattern.isExact()) {
+                matching = columnStatistics.valueSelectivity(Condition.Operator.EQ, pattern.prefix);
+            } else if (strings && !pattern.prefix.isEmpty()) {
+                matching = columnStatistics.valueBetween(pattern.prefix, pattern.prefix + Character.MAX_VALUE);
+            }
+        }
+        double kept = negated ? 1.0 - matching : matching;
+        selectivity = columnStatistics == null ? kept : withNulls(columnStatistics, kept);
+    }
+
+    @Override
+    double cost() {
+        return cost;
+    }
+
+    @Override
+    int leafCount() {
+        return 1;
+    }
+
+    @Override
+    int filter(Snapshot snapshot, int[] rows, int count) {
+        Column values = snapshot.column(column);
+        int kept = 0;
+        if (values instanceof StringColumn strings) {
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                int code = strings.codeAt(row);
+                if (code >= 0 && matches(strings, code) != negated) {
+                    rows[kept++] = row;
+                }
+            }
+            return kept;
+        }
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (!values.isNull(row) && pattern.matches(values.get(row)) != negated) {
+                rows[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    private boolean matches(StringColumn strings, int code) {
+        byte[] current = outcomes;
+        if (code < current.length && current[code] != UNKNOWN) {
+            return current[code] == MATCH;
+        }
+        boolean matches = pattern.matches(strings.valueOf(code));
+        if (code >= current.length) {
+            current = Arrays.copyOf(current, Math.max(code + 1, current.length * 2));
+            outcomes = current;
+        }
+        current[code] = matches ? MATCH : NO_MATCH;
+        return matches;
+    }
+
+    @Override
+    String describe() {
+        return text;
+    }
+}
@@ -0,0 +1,82 @@
+package database;
+
+import java.util.regex.Pattern;
+
+// A LIKE pattern, where % matches any run of characters and _ any single character.
+// The common shapes ('abc', 'abc%', '%abc', '%abc%') are matched with plain string
+// methods; anything else is translated to a regular expression.
+class LikePattern {
+    private enum Kind { EXACT, PREFIX, SUFFIX, CONTAINS, REGEX }
+
+    private final Kind kind;
+    private final String literal;
+    private final Pattern regex;
+    // The characters every match starts with, usable as an index range
+    final String prefix;
+
+    private LikePattern(Kind kind, String literal, Pattern regex, String prefix) {
+        this.kind = kind;
+        this.literal = literal;
+        this.regex = regex;
+        this.prefix = prefix;
+    }
+
+    static LikePattern compile(String pattern) {
+        int firstWildcard = firstWildcard(pattern);
+        String prefix = pattern.substring(0, firstWildcard);
+        if (pattern.indexOf('_') < 0) {
+            boolean leading = pattern.startsWith("%");
+            boolean trailing = pattern.length() > (leading ? 1 : 0) && pattern.endsWith("%");
+            String inner = pattern.substring(leading ? 1 : 0, pattern.length() - (trailing ? 1 : 0));
+            if (inner.indexOf('%') < 0) {
+                Kind kind = leading ? (trailing ? Kind.CONTAINS : Kind.SUFFIX) : (trailing ? Kind.PREFIX : Kind.EXACT);
+                return new LikePattern(kind, inner, null, prefix);
+            }
+        }
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '%' || c == '_') {
+                if (i > start) {
+                    regex.append(Pattern.quote(pattern.substring(start, i)));
+                }
+                regex.append(c == '%' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < pattern.length()) {
+            regex.append(Pattern.quote(pattern.substring(start)));
+        }
+        return new LikePattern(Kind.REGEX, null, Pattern.compile(regex.toString(), Pattern.DOTALL), prefix);
+    }
+
+    private static int firstWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '%' || pattern.charAt(i) == '_') {
+                return i;
+            }
+        }
+        return pattern.length();
+    }
+
+    // True when the pattern has no wildcards and is an equality test
+    boolean isExact() {
+        return kind == Kind.EXACT;
+    }
+
+    boolean matches(String value) {
+        switch (kind) {
+            case EXACT:
+                return value.equals(literal);
+            case PREFIX:
+                return value.startsWith(literal);
+            case SUFFIX:
+                return value.endsWith(literal);
+            case CONTAINS:
+                return value.contains(literal);
+            default:
+                return regex.matcher(value).matches();
+        }
+    }
+}
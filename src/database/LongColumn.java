@@ -0,0 +1,140 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+class LongColumn extends PrimitiveColumn {
+    private volatile long[] values;
+
+    LongColumn(int capacity) {
+        this.values = new long[capacity];
+    }
+
+    @Override
+    ColumnType type() {
+        return ColumnType.LONG;
+    }
+
+    @Override
+    boolean accepts(String value) {
+        if (isBlank(value)) {
+            return true;
+        }
+        try {
+            Long.parseLong(value.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    void append(String value) {
+        if (isBlank(value)) {
+            appendValue(0, true);
+        } else {
+            appendValue(Long.parseLong(value.trim()), false);
+        }
+    }
+
+    @Override
+    void appendFrom(Column source, int row) {
+        LongColumn other = (LongColumn) source;
+        appendValue(other.values[row], other.isNull(row));
+    }
+
+    private void appendValue(long value, boolean isNull) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, grow(values.length));
+        }
+        values[size] = value;
+        setNull(size, isNull);
+        size++;
+    }
+
+    @Override
+    String get(int row) {
+        return isNull(row) ? null : Long.toString(values[row]);
+    }
+
+    long getLong(int row) {
+        return values[row];
+    }
+
+    @Override
+    int compareKey(int row, Object key) {
+        return Long.compare(values[row], (Long) key);
+    }
+
+    // Same as the generic version, without boxing a value per row
+    @Override
+    int filter(Condition.Operator operator, Object key, int[] rows, int count) {
+        long[] current = values;
+        long value = (Long) key;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (!isNull(row) && operator.test(Long.compare(current[row], value))) {
+                rows[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    @Override
+    long hashAt(int row) {
+        return isNull(row) ? 0 : mix(values[row]);
+    }
+
+    @Override
+    boolean rowsEqual(int row, int other) {
+        boolean isNull = isNull(row);
+        return isNull == isNull(other) && (isNull || values[row] == values[other]);
+    }
+
+    // Same as the generic version, without boxing the other row's value
+    @Override
+    int compareRows(int row, int other) {
+        boolean isNull = isNull(row);
+        if (isNull || isNull(other)) {
+            return Boolean.compare(!isNull, !isNull(other));
+        }
+        return Long.compare(values[row], values[other]);
+    }
+
+    @Override
+    Object keyAt(int row) {
+        return isNull(row) ? null : Long.valueOf(values[row]);
+    }
+
+    @Override
+    Object parseKey(String value) {
+        try {
+            return Long.valueOf(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    long memoryBytes() {
+        return values.length * 8L + nullBytes();
+    }
+
+    @Override
+    ByteBuffer encode() {
+        // [null word count][null bitmap words][values]
+        ByteBuffer buffer = encodeNulls(size * 8);
+        buffer.asLongBuffer().put(values, 0, size);
+        buffer.position(0);
+        return buffer;
+    }
+
+    @Override
+    void decode(ByteBuffer buffer, int rows) {
+        decodeNulls(buffer);
+        values = new long[Math.max(16, rows)];
+        buffer.asLongBuffer().get(values, 0, rows);
+        size = rows;
+    }
+}
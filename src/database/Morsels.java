@@ -0,0 +1,50 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+// Runs a plan in parallel: the rows (or index candidates) are cut into morsels of
+// consecutive positions, each morsel is pushed through its own pipeline on the
+// executor, and the partial results are merged in morsel order, so results come out
+// in the same order as a serial run.
+class Morsels {
+    static final int SIZE = 16 * 1024;
+
+    private Morsels() {
+    }
+
+    // Without an executor, or for fewer than two morsels, the task runs on the caller's thread
+    static <R> R run(ExecutorService executor, Plan plan, Snapshot snapshot,
+                     Function<BatchOperator, R> task, BinaryOperator<R> merge) {
+        IntList candidates = plan.candidates(snapshot);
+        int total = candidates == null ? snapshot.size : candidates.size();
+        if (executor == null || total < 2 * SIZE) {
+            return task.apply(plan.open(snapshot, candidates, 0, total));
+        }
+
+        List<Callable<R>> morsels = new ArrayList<>();
+        for (int from = 0; from < total; from += SIZE) {
+            int start = from;
+            int end = Math.min(total, from + SIZE);
+            morsels.add(() -> task.apply(plan.open(snapshot, candidates, start, end)));
+        }
+        try {
+            R result = null;
+            for (Future<R> partial : executor.invokeAll(morsels)) {
+                result = result == null ? partial.get() : merge.apply(result, partial.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a parallel query");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Parallel query failed", e.getCause());
+        }
+    }
+}
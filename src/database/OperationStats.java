@@ -0,0 +1,53 @@
+package database;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for one kind of operation on one table. Rows scanned are the row versions
+// the access path examined; rows returned are the rows a read produced or a write
+// inserted, updated or deleted, so their ratio shows how well queries are served.
+public class OperationStats {
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder rowsReturned = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void record(long nanos, long scanned, long returned, long lockWait) {
+        if (scanned > 0) {
+            rowsScanned.add(scanned);
+        }
+        if (returned > 0) {
+            rowsReturned.add(returned);
+        }
+        if (lockWait > 0) {
+            lockWaitNanos.add(lockWait);
+        }
+        latency.record(nanos);
+    }
+
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned.sum();
+    }
+
+    public long getRowsReturned() {
+        return rowsReturned.sum();
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    void reset() {
+        rowsScanned.reset();
+        rowsReturned.reset();
+        lockWaitNanos.reset();
+        latency.reset();
+    }
+}
@@ -0,0 +1,100 @@
+package database;
+
+import java.util.*;
+
+// Rows passing any child. Each child only sees the rows no child before it accepted,
+// so children are run most-rows-accepted-per-cost first.
+class OrFilter extends Filter {
+    final List<Filter> children;
+    private double cost;
+
+    OrFilter(List<Filter> children) {
+        this.children = children;
+    }
+
+    @Override
+    void estimate(Snapshot snapshot, TableStatistics statistics) {
+        for (Filter child : children) {
+            child.estimate(snapshot, statistics);
+        }
+        children.sort(Comparator.comparingDouble(child -> -child.selectivity / Math.max(child.cost(), 1e-9)));
+        double rejected = 1.0;
+        cost = 0;
+        for (Filter child : children) {
+            cost += rejected * child.cost();
+            rejected *= 1 - child.selectivity;
+        }
+        selectivity = 1.0 - rejected;
+    }
+
+    @Override
+    double cost() {
+        return cost;
+    }
+
+    @Override
+    int leafCount() {
+        int leaves = 0;
+        for (Filter child : children) {
+            leaves += child.leafCount();
+        }
+        return leaves;
+    }
+
+    @Override
+    int filter(Snapshot snapshot, int[] rows, int count) {
+        int[] remaining = Arrays.copyOf(rows, count);
+        int remainingCount = count;
+        int[] trial = new int[count];
+        int[] accepted = new int[count];
+        int acceptedCount = 0;
+        for (Filter child : children) {
+            if (remainingCount == 0) {
+                break;
+            }
+            System.arraycopy(remaining, 0, trial, 0, remainingCount);
+            int passed = child.filter(snapshot, trial, remainingCount);
+            if (passed == 0) {
+                continue;
+            }
+            System.arraycopy(trial, 0, accepted, acceptedCount, passed);
+            acceptedCount += passed;
+            // Both lists are ascending, so the accepted rows are removed in one pass
+            int kept = 0;
+            int next = 0;
+            for (int i = 0; i < remainingCount; i++) {
+                if (next < passed && trial[next] == remaining[i]) {
+                    next++;
+                } else {
+                    remaining[kept++] = remaining[i];
+                }
+            }
+            remainingCount = kept;
+        }
+        Arrays.sort(accepted, 0, acceptedCount);
+        System.arraycopy(accepted, 0, rows, 0, acceptedCount);
+        return acceptedCount;
+    }
+
+    @Override
+    boolean skips(ZoneMap[] zoneMaps, int block) {
+        for (Filter child : children) {
+            if (!child.skips(zoneMaps, block)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    String describe() {
+        if (children.isEmpty()) {
+            return "FALSE";
+        }
+        StringJoiner text = new StringJoiner(" OR ", "(", ")");
+        for (Filter child : children) {
+            text.add(child.toString());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,182 @@
+package database;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Supplier;
+
+// Binary, page-oriented database file. Column data is written in fixed-size pages,
+// each column chunk starting on a page boundary:
+//
+//   page 0            header: magic, version, page size, directory page, directory length
+//   pages 1..n        column chunks, compressed segments with zone maps (see Segments)
+//   directory pages   per table: name, column definitions, index definitions,
+//                     row count and the first page and length of every column chunk
+//
+// Opening a file only reads the header and directory; column chunks are memory-mapped
+// and faulted in when a table is first used.
+public class PageFile {
+    static final int PAGE_SIZE = 8192;
+    private static final int MAGIC = 0x53444231; // "SDB1"
+    // Version 1 stores plain column images, text as one length-prefixed string per row;
+    // version 2 stores text columns as a dictionary followed by per-row codes; version 3
+    // stores every column as compressed segments. Files of every version are read.
+    static final int VERSION = 3;
+    static final int PLAIN_VERSION = 2;
+    static final int FIRST_VERSION = 1;
+
+    private PageFile() {
+    }
+
+    // What the file keeps of one table. The rows are copied when the table is written, so
+    // only one table's copy is in memory at a time.
+    static final class Image {
+        final String name;
+        final List<String> columns;
+        final List<String> indexes;
+        final Supplier<RowStore> rows;
+
+        Image(String name, List<String> columns, List<String> indexes, Supplier<RowStore> rows) {
+            this.name = name;
+            this.columns = columns;
+            this.indexes = indexes;
+            this.rows = rows;
+        }
+    }
+
+    public static void write(Map<String, Table> tables, String fileName) throws IOException {
+        // Snapshot the catalog so the table count matches the entries written
+        List<Image> images = new ArrayList<>();
+        for (Map.Entry<String, Table> entry : new LinkedHashMap<>(tables).entrySet()) {
+            // Written from a copy of the visible rows, so writers are never blocked
+            Table table = entry.getValue();
+            images.add(new Image(entry.getKey(), table.getColumnDefinitions(), table.getIndexDefinitions(), table::compactSnapshot));
+        }
+        write(images, fileName);
+    }
+
+    static void write(List<Image> images, String fileName) throws IOException {
+        Path target = Path.of(fileName);
+        Path temporary = Path.of(fileName + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+            DataOutputStream directory = new DataOutputStream(directoryBytes);
+            directory.writeInt(images.size());
+
+            long page = 1;
+            for (Image image : images) {
+                RowStore rows = image.rows.get();
+                writeString(directory, image.name);
+                writeList(directory, image.columns);
+                writeList(directory, image.indexes);
+                directory.writeInt(rows.size);
+                ZoneMap[] zoneMaps = rows.zoneMaps;
+                for (int i = 0; i < rows.columns.length; i++) {
+                    Column column = rows.columns[i];
+                    ZoneMap zones = zoneMaps != null && zoneMaps[i].rows == rows.size ? zoneMaps[i] : ZoneMap.build(column, rows.size);
+                    ByteBuffer chunk = Segments.write(column, rows.size, zones);
+                    int length = chunk.remaining();
+                    writeFully(channel, chunk, page * PAGE_SIZE);
+                    directory.writeLong(page);
+                    directory.writeInt(length);
+                    page += pagesFor(length);
+                }
+            }
+
+            byte[] directoryData = directoryBytes.toByteArray();
+            writeFully(channel, ByteBuffer.wrap(directoryData), page * PAGE_SIZE);
+
+            ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(PAGE_SIZE);
+            header.putLong(page);
+            header.putInt(directoryData.length);
+            header.flip();
+            writeFully(channel, header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads the directory and maps every column chunk without touching its pages
+    public static Map<String, StoredTable> open(String fileName) throws IOException {
+        Map<String, StoredTable> result = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(PAGE_SIZE, channel.size()));
+            if (header.remaining() < 24 || header.getInt() != MAGIC) {
+                throw new IOException("Not a database page file: " + fileName);
+            }
+            int version = header.getInt();
+            int pageSize = header.getInt();
+            if (version < FIRST_VERSION || version > VERSION) {
+                throw new IOException("Unsupported page file version " + version + " in " + fileName
+                        + "; this build reads versions " + FIRST_VERSION + " to " + VERSION
+                        + ", so save the data again with the build that wrote it");
+            }
+            if (pageSize != PAGE_SIZE) {
+                throw new IOException("Unsupported page size " + pageSize + " in " + fileName);
+            }
+            long directoryPage = header.getLong();
+            int directoryLength = header.getInt();
+
+            ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryPage * PAGE_SIZE, directoryLength);
+            int tableCount = directory.getInt();
+            for (int t = 0; t < tableCount; t++) {
+                String tableName = readString(directory);
+                List<String> columns = readList(directory);
+                List<String> indexes = readList(directory);
+                int rowCount = directory.getInt();
+                ByteBuffer[] chunks = new ByteBuffer[columns.size()];
+                for (int i = 0; i < chunks.length; i++) {
+                    long page = directory.getLong();
+                    int length = directory.getInt();
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, page * PAGE_SIZE, length);
+                }
+                result.put(tableName, new StoredTable(columns, indexes, rowCount, chunks, version));
+            }
+        }
+        return result;
+    }
+
+    private static long pagesFor(int length) {
+        return Math.max(1, (length + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeList(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readList(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(buffer));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,60 @@
+package database;
+
+// How a query finds its rows: an access path producing candidate rows, followed by a
+// filter for the rest of the predicate. Plans are built per query by QueryPlanner.
+abstract class Plan {
+    // Null when the access path yields exactly the matching rows
+    final Filter filter;
+    // Estimated row versions the access path produces, and the cost of producing and filtering them
+    final double estimatedRows;
+    final double cost;
+
+    Plan(Filter filter, double estimatedRows, double cost) {
+        this.filter = filter;
+        this.estimatedRows = estimatedRows;
+        this.cost = cost;
+    }
+
+    // Candidate rows in ascending order, all below the snapshot size, or null to scan every row
+    abstract IntList candidates(Snapshot snapshot);
+
+    abstract String describe();
+
+    // Pipeline producing the visible rows that pass the predicate, in row order
+    BatchOperator open(Snapshot snapshot) {
+        IntList candidates = candidates(snapshot);
+        return open(snapshot, candidates, 0, candidates == null ? snapshot.size : candidates.size());
+    }
+
+    // Pipeline over one morsel: positions from..to of the candidates, or rows when there are none
+    BatchOperator open(Snapshot snapshot, IntList candidates, int from, int to) {
+        BatchOperator scan = new ScanOperator(snapshot, candidates, from, to, filter);
+        return filter == null ? scan : new FilterOperator(scan, snapshot, filter);
+    }
+
+    IntList execute(Snapshot snapshot) {
+        IntList matches = new IntList();
+        BatchOperator rows = open(snapshot);
+        for (Batch batch = rows.next(); batch != null; batch = rows.next()) {
+            matches.addAll(batch.rows, batch.count);
+        }
+        return matches;
+    }
+
+    String explain() {
+        StringBuilder text = new StringBuilder(describe());
+        text.append(String.format(" [estimated rows %.0f, cost %.1f]", estimatedRows, cost));
+        if (filter != null) {
+            text.append(System.lineSeparator()).append("  Filter: ").append(filter);
+        }
+        return text.toString();
+    }
+
+    // Puts rows read from an index back in row order. The index may hold versions newer
+    // than the snapshot; those are cut off here.
+    static IntList inRowOrder(IntList rows, Snapshot snapshot) {
+        rows.sort();
+        rows.truncateAt(snapshot.size);
+        return rows;
+    }
+}
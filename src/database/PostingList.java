@@ -0,0 +1,38 @@
+package database;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Append-only list of row positions for one index key. The writer fills the slot before
+// publishing the new size, so readers can iterate up to size() without locking. A grown
+// array is published through a volatile field before the size, so a reader that reads
+// the size first sees the copied rows too (see Column).
+class PostingList implements Serializable {
+    private volatile int[] rows = new int[1];
+    private volatile int size;
+
+    void add(int row) {
+        int[] current = rows;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            current[size] = row;
+            rows = current;
+        } else {
+            current[size] = row;
+        }
+        size = size + 1;
+    }
+
+    // Appends all rows to the target list
+    void copyTo(IntList target) {
+        int count = size;
+        int[] current = rows;
+        for (int i = 0; i < count; i++) {
+            target.add(current[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,191 @@
+package database;
+
+import java.util.*;
+
+// A WHERE clause: comparisons, BETWEEN, IN and LIKE on columns, combined with AND, OR
+// and NOT. A row without a value for a column neither passes nor fails a test on that
+// column; such unknown results are dropped, so a row is only kept by a predicate that
+// is definitely true, and never by both a predicate and its NOT. A test on a column the
+// table does not have is rejected. Tables compile a predicate into vectorized filters
+// per query.
+public abstract class Predicate {
+
+    Predicate() {
+    }
+
+    // Matches every row
+    public static Predicate all() {
+        return new And(Collections.emptyList());
+    }
+
+    public static Predicate and(List<? extends Predicate> operands) {
+        return operands.size() == 1 ? operands.get(0) : new And(new ArrayList<>(operands));
+    }
+
+    public static Predicate or(List<? extends Predicate> operands) {
+        return operands.size() == 1 ? operands.get(0) : new Or(new ArrayList<>(operands));
+    }
+
+    public static Predicate not(Predicate operand) {
+        return new Not(operand);
+    }
+
+    public static Predicate between(String column, String low, String high) {
+        return new Between(column, low, high);
+    }
+
+    public static Predicate in(String column, List<String> values) {
+        return new In(column, new ArrayList<>(values));
+    }
+
+    // % matches any run of characters and _ any single character
+    public static Predicate like(String column, String pattern) {
+        return new Like(column, pattern);
+    }
+
+    // Equality conditions in the form the Map based query methods take
+    public static Predicate equalities(Map<String, String> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            return all();
+        }
+        List<Condition> operands = new ArrayList<>(conditions.size());
+        for (Map.Entry<String, String> entry : conditions.entrySet()) {
+            operands.add(Condition.equal(entry.getKey(), entry.getValue()));
+        }
+        return and(operands);
+    }
+
+    public static class And extends Predicate {
+        private final List<Predicate> operands;
+
+        And(List<Predicate> operands) {
+            this.operands = operands;
+        }
+
+        public List<Predicate> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public String toString() {
+            return operands.isEmpty() ? "TRUE" : join(operands, " AND ");
+        }
+    }
+
+    public static class Or extends Predicate {
+        private final List<Predicate> operands;
+
+        Or(List<Predicate> operands) {
+            this.operands = operands;
+        }
+
+        public List<Predicate> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " OR ");
+        }
+    }
+
+    public static class Not extends Predicate {
+        private final Predicate operand;
+
+        Not(Predicate operand) {
+            this.operand = operand;
+        }
+
+        public Predicate getOperand() {
+            return operand;
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + operand;
+        }
+    }
+
+    public static class Between extends Predicate {
+        private final String column;
+        private final String low;
+        private final String high;
+
+        Between(String column, String low, String high) {
+            this.column = column;
+            this.low = low;
+            this.high = high;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getLow() {
+            return low;
+        }
+
+        public String getHigh() {
+            return high;
+        }
+
+        @Override
+        public String toString() {
+            return column + " BETWEEN " + low + " AND " + high;
+        }
+    }
+
+    public static class In extends Predicate {
+        private final String column;
+        private final List<String> values;
+
+        In(String column, List<String> values) {
+            this.column = column;
+            this.values = values;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return column + " IN (" + String.join(", ", values) + ")";
+        }
+    }
+
+    public static class Like extends Predicate {
+        private final String column;
+        private final String pattern;
+
+        Like(String column, String pattern) {
+            this.column = column;
+            this.pattern = pattern;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        @Override
+        public String toString() {
+            return column + " LIKE " + pattern;
+        }
+    }
+
+    private static String join(List<Predicate> operands, String separator) {
+        StringJoiner text = new StringJoiner(separator, "(", ")");
+        for (Predicate operand : operands) {
+            text.add(operand.toString());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Base for numeric columns: values live in a primitive array and nulls in a bitmap.
+// The bitmap is a long[] rather than a BitSet so that readers never observe it
+// half-resized while a writer appends; like the values it is swapped in through a
+// volatile field when it grows (see Column).
+abstract class PrimitiveColumn extends Column {
+    private volatile long[] nullWords = new long[1];
+
+    // Called by the writer before the row is published; the volatile swap of a grown
+    // bitmap happens only when it grows, not on every append
+    protected void setNull(int row, boolean isNull) {
+        long[] words = nullWords;
+        int word = row >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+            nullWords = words;
+        }
+        if (isNull) {
+            words[word] |= 1L << row;
+        } else {
+            words[word] &= ~(1L << row);
+        }
+    }
+
+    @Override
+    boolean isNull(int row) {
+        long[] words = nullWords;
+        int word = row >>> 6;
+        return word < words.length && (words[word] & (1L << row)) != 0;
+    }
+
+    // Blank strings are stored as null: numeric columns have no empty value
+    protected static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    protected long nullBytes() {
+        return nullWords.length * 8L;
+    }
+
+    // Writes [null word count][null words] and returns the buffer positioned after them
+    protected ByteBuffer encodeNulls(int valueBytes) {
+        int words = (size + 63) >>> 6;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + words * 8 + valueBytes);
+        buffer.putInt(words);
+        buffer.asLongBuffer().put(nullWords, 0, Math.min(words, nullWords.length));
+        buffer.position(buffer.position() + words * 8);
+        return buffer;
+    }
+
+    protected void decodeNulls(ByteBuffer buffer) {
+        long[] words = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + words.length * 8);
+        nullWords = words.length == 0 ? new long[1] : words;
+    }
+}
@@ -0,0 +1,145 @@
+package database;
+
+import java.util.*;
+
+// Chooses how a query reads its rows. Every index that can answer one of the top-level
+// conjuncts of the predicate (an equality, an IN list, a range, BETWEEN or a LIKE prefix)
+// is costed against a full scan, using column statistics to estimate how many row
+// versions each path yields. Whatever the access path does not answer stays in the
+// filter, whose tests are ordered so that cheap, selective ones run first.
+class QueryPlanner {
+    // Relative costs per row version: reading in row order and fetching through an index
+    private static final double SCAN_COST = 1.0;
+    private static final double INDEX_FETCH_COST = 2.0;
+
+    private QueryPlanner() {
+    }
+
+    // Statistics may be null, in which case default selectivities are used
+    static Plan plan(Snapshot snapshot, TableStatistics statistics, Filter filter) {
+        filter.estimate(snapshot, statistics);
+        List<Filter> conjuncts = filter instanceof AndFilter and ? and.children : List.of(filter);
+        double versions = snapshot.size;
+        Filter residual = residual(conjuncts, null, null);
+        Plan best = new FullScan(residual, versions, versions * SCAN_COST + filterCost(versions, residual));
+
+        for (Index index : snapshot.store.indexes.values()) {
+            for (Filter conjunct : conjuncts) {
+                List<Object> keys = lookupKeys(conjunct, index.getColumn());
+                if (keys != null) {
+                    Filter remaining = residual(conjuncts, conjunct, null);
+                    double rows = versions * conjunct.selectivity;
+                    double cost = accessCost(rows) + filterCost(rows, remaining);
+                    // A hash lookup is preferred over an equally costly sorted one
+                    if (cost < best.cost || (cost == best.cost && index.type() == IndexType.HASH)) {
+                        best = new IndexLookup(index, keys, conjunct, remaining, rows, cost);
+                    }
+                }
+            }
+            if (index instanceof SortedIndex) {
+                RangeScan.Bound lower = bound(snapshot, conjuncts, index.getColumn(), true);
+                RangeScan.Bound upper = bound(snapshot, conjuncts, index.getColumn(), false);
+                if (lower != null || upper != null) {
+                    // A LIKE prefix only narrows the range; the pattern itself is still tested
+                    Filter remaining = residual(conjuncts, consumed(lower), consumed(upper));
+                    double selectivity = lower == null ? upper.source.selectivity
+                            : upper == null || upper.source == lower.source ? lower.source.selectivity
+                            : Math.max(0.0, lower.source.selectivity + upper.source.selectivity - 1.0);
+                    double rows = versions * selectivity;
+                    double cost = accessCost(rows) + filterCost(rows, remaining);
+                    if (cost < best.cost) {
+                        best = new RangeScan((SortedIndex) index, lower, upper, remaining, rows, cost);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // Fetching rows through an index, plus sorting them back into row order
+    private static double accessCost(double rows) {
+        return rows * INDEX_FETCH_COST + rows * Math.log(rows + 1) * Filter.NUMERIC_COMPARE_COST;
+    }
+
+    private static double filterCost(double rows, Filter filter) {
+        return filter == null ? 0 : rows * filter.cost();
+    }
+
+    // The keys an index lookup on the column can answer the conjunct with, or null
+    private static List<Object> lookupKeys(Filter conjunct, int column) {
+        if (conjunct instanceof BoundCondition condition && condition.column == column
+                && condition.operator() == Condition.Operator.EQ && condition.key != null) {
+            return List.of(condition.key);
+        }
+        if (conjunct instanceof InFilter in && in.column == column && !in.negated) {
+            return Arrays.asList(in.keys);
+        }
+        return null;
+    }
+
+    // The most selective lower or upper bound on a column, for a range scan
+    private static RangeScan.Bound bound(Snapshot snapshot, List<Filter> conjuncts, int column, boolean lower) {
+        RangeScan.Bound best = null;
+        for (Filter conjunct : conjuncts) {
+            RangeScan.Bound bound = null;
+            if (conjunct instanceof BoundCondition condition && condition.column == column && condition.key != null) {
+                Condition.Operator operator = condition.operator();
+                if (lower ? operator == Condition.Operator.GT || operator == Condition.Operator.GE
+                        : operator == Condition.Operator.LT || operator == Condition.Operator.LE) {
+                    bound = new RangeScan.Bound(condition.key,
+                            operator == Condition.Operator.GE || operator == Condition.Operator.LE, condition);
+                }
+            } else if (conjunct instanceof BetweenFilter between && between.column == column && !between.negated
+                    && between.low != null && between.high != null) {
+                bound = new RangeScan.Bound(lower ? between.low : between.high, true, between);
+            } else if (conjunct instanceof LikeFilter like && like.column == column && !like.negated
+                    && !like.pattern.prefix.isEmpty() && snapshot.column(column).type() == ColumnType.TEXT) {
+                String prefix = like.pattern.prefix;
+                String end = prefixEnd(prefix);
+                if (lower) {
+                    bound = new RangeScan.Bound(prefix, true, like);
+                } else if (end != null) {
+                    bound = new RangeScan.Bound(end, false, like);
+                }
+            }
+            if (bound != null && (best == null || conjunct.selectivity < best.source.selectivity)) {
+                best = bound;
+            }
+        }
+        return best;
+    }
+
+    // The smallest string above every string starting with the prefix, or null if there is none
+    private static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (c + 1);
+            }
+        }
+        return null;
+    }
+
+    private static Filter consumed(RangeScan.Bound bound) {
+        return bound == null || bound.source instanceof LikeFilter ? null : bound.source;
+    }
+
+    // The conjuncts an access path leaves to the filter, still in their estimated order
+    private static Filter residual(List<Filter> conjuncts, Filter first, Filter second) {
+        List<Filter> remaining = new ArrayList<>(conjuncts.size());
+        for (Filter conjunct : conjuncts) {
+            if (conjunct != first && conjunct != second) {
+                remaining.add(conjunct);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return null;
+        }
+        if (remaining.size() == 1) {
+            return remaining.get(0);
+        }
+        AndFilter and = new AndFilter(remaining);
+        and.summarize();
+        return and;
+    }
+}
@@ -0,0 +1,90 @@
+package database;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Measures one call into SimpleDatabase: when it started, how long it waited for the
+// table's write lock and how many row versions its scans examined. Opening a trace makes
+// it current on the calling thread until it is closed; snapshots taken meanwhile keep a
+// reference, so morsels scanned on other threads and cursors read later still count.
+// Calls that never scan, such as inserts, start a trace without making it current. The
+// plan a call actually ran is kept with its trace, so a slow call is logged with that plan
+// rather than one made again afterwards.
+final class QueryTrace implements AutoCloseable {
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+    private static final VarHandle ROWS_SCANNED;
+
+    static {
+        try {
+            ROWS_SCANNED = MethodHandles.lookup().findVarHandle(QueryTrace.class, "rowsScanned", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final long startNanos = System.nanoTime();
+    private final QueryTrace previous;
+    private final boolean attached;
+    // Added to once per batch, by whichever thread scans it
+    private volatile long rowsScanned;
+    private long lockWaitNanos;
+    // The first plan made while the trace was current; a cursor may be closed on another thread
+    private volatile Plan plan;
+
+    private QueryTrace(QueryTrace previous, boolean attached) {
+        this.previous = previous;
+        this.attached = attached;
+    }
+
+    static QueryTrace open() {
+        QueryTrace trace = new QueryTrace(CURRENT.get(), true);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    static QueryTrace start() {
+        return new QueryTrace(null, false);
+    }
+
+    // The trace of the call running on this thread, or null outside of one
+    static QueryTrace current() {
+        return CURRENT.get();
+    }
+
+    void scanned(int rows) {
+        ROWS_SCANNED.getAndAdd(this, (long) rows);
+    }
+
+    long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    // Only the thread that started the trace takes locks for it
+    void waitedForLock(long nanos) {
+        lockWaitNanos += nanos;
+    }
+
+    long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    void planned(Plan plan) {
+        if (this.plan == null) {
+            this.plan = plan;
+        }
+    }
+
+    // Null when the call made no plan, as when its result came from the result cache
+    String explainPlan() {
+        Plan executed = plan;
+        return executed == null ? null : executed.explain();
+    }
+
+    // Stops attributing new snapshots to this trace; it can still be recorded afterwards
+    @Override
+    public void close() {
+        if (attached) {
+            CURRENT.set(previous);
+        }
+    }
+}
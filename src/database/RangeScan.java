@@ -0,0 +1,52 @@
+package database;
+
+// Rows whose key lies between bounds, read from a sorted index. Either bound may be missing.
+class RangeScan extends Plan {
+    // One end of the range and the test it was taken from
+    static class Bound {
+        final Object key;
+        final boolean inclusive;
+        final Filter source;
+
+        Bound(Object key, boolean inclusive, Filter source) {
+            this.key = key;
+            this.inclusive = inclusive;
+            this.source = source;
+        }
+    }
+
+    private final SortedIndex index;
+    private final Bound lower;
+    private final Bound upper;
+
+    RangeScan(SortedIndex index, Bound lower, Bound upper, Filter filter, double estimatedRows, double cost) {
+        super(filter, estimatedRows, cost);
+        this.index = index;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    IntList candidates(Snapshot snapshot) {
+        IntList rows = new IntList();
+        if (lower != null && upper != null) {
+            int comparison = ((Comparable) lower.key).compareTo(upper.key);
+            if (comparison > 0 || (comparison == 0 && (!lower.inclusive || !upper.inclusive))) {
+                // Empty range
+                return rows;
+            }
+        }
+        index.range(lower == null ? null : lower.key, lower != null && lower.inclusive,
+                upper == null ? null : upper.key, upper != null && upper.inclusive, rows);
+        return inRowOrder(rows, snapshot);
+    }
+
+    @Override
+    String describe() {
+        String bounds = lower == null ? upper.source.describe()
+                : upper == null || upper.source == lower.source ? lower.source.describe()
+                : lower.source.describe() + " AND " + upper.source.describe();
+        return "Range scan using " + index.getName() + " on " + bounds;
+    }
+}
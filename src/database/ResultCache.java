@@ -0,0 +1,264 @@
+package database;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Results of repeated aggregating reads, keyed by a normalized form of the query. Each
+// result remembers the table it was computed on and that table's version (see
+// Table.getVersion). A result is only served while the table under its name is still the
+// same object at the same version, so a change to the rows, a new index, a replaced,
+// dropped or evicted table all make it miss; nothing is ever served stale. Results are
+// evicted least recently used first once they take more than the memory budget. The
+// table is held weakly, so a cached result never keeps a dropped or evicted table alive.
+public class ResultCache {
+    public static final long DEFAULT_MEMORY_BUDGET = 16L << 20;
+    // Rough heap of an entry and of a row besides the strings in it
+    private static final long ENTRY_BYTES = 120;
+    private static final long ROW_BYTES = 80;
+    private static final long VALUE_BYTES = 48;
+
+    private static final class Entry {
+        final WeakReference<Table> table;
+        final long version;
+        final Object result;
+        final long bytes;
+
+        Entry(Table table, long version, Object result, long bytes) {
+            this.table = new WeakReference<>(table);
+            this.version = version;
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    // Guarded by this
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long budget = DEFAULT_MEMORY_BUDGET;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public synchronized long getMemoryBudget() {
+        return budget;
+    }
+
+    // Zero turns the cache off and empties it
+    synchronized void setMemoryBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative: " + bytes);
+        }
+        budget = bytes;
+        evict();
+    }
+
+    // Approximate heap taken by the cached results
+    public synchronized long getCachedBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Reads answered from the cache
+    public long getHits() {
+        return hits.sum();
+    }
+
+    // Reads that had to run the query, including those that found a result made stale
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // Results dropped because their table changed or was replaced since they were cached
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    // Results dropped to stay within the memory budget
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Zeroes the counters; the cached results are kept
+    void resetCounters() {
+        hits.reset();
+        misses.reset();
+        invalidations.reset();
+        evictions.reset();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    // Returns the cached rows for the key if they are current for the table, or runs the
+    // query and caches its rows. Empty results are not cached: a query rejected for an
+    // unknown column returns nothing, and must be reported again every time it is made.
+    List<Map<String, String>> rows(String key, Table table, Supplier<List<Map<String, String>>> query) {
+        Object cached = lookup(key, table);
+        if (cached != null) {
+            return copy(castRows(cached));
+        }
+        long version = table.getVersion();
+        List<Map<String, String>> rows = query.get();
+        if (!rows.isEmpty()) {
+            List<Map<String, String>> kept = copy(rows);
+            store(key, table, version, kept, rowBytes(kept));
+        }
+        return rows;
+    }
+
+    // As rows, for queries returning one number; zero is not cached
+    long number(String key, Table table, Supplier<? extends Number> query) {
+        Object cached = lookup(key, table);
+        if (cached != null) {
+            return (Long) cached;
+        }
+        long version = table.getVersion();
+        long number = query.get().longValue();
+        if (number != 0) {
+            store(key, table, version, number, 0);
+        }
+        return number;
+    }
+
+    private synchronized Object lookup(String key, Table table) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.table.get() == table && entry.version == table.getVersion()) {
+                hits.increment();
+                return entry.result;
+            }
+            entries.remove(key);
+            bytes -= entry.bytes;
+            invalidations.increment();
+        }
+        misses.increment();
+        return null;
+    }
+
+    // The version is the one read before the query ran. Every commit up to it was
+    // published before the version was bumped, so the result holds at least those; a
+    // commit made while the query ran bumps the version and the result is never served.
+    private synchronized void store(String key, Table table, long version, Object result, long resultBytes) {
+        long size = ENTRY_BYTES + 2L * key.length() + resultBytes;
+        if (size > budget || table.getVersion() != version) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(table, version, result, size));
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += size;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > budget && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, String>> castRows(Object result) {
+        return (List<Map<String, String>>) result;
+    }
+
+    // Callers may change the rows they are given, so the cache keeps and hands out copies
+    private static List<Map<String, String>> copy(List<Map<String, String>> rows) {
+        List<Map<String, String>> copy = new ArrayList<>(rows.size());
+        for (Map<String, String> row : rows) {
+            copy.add(new LinkedHashMap<>(row));
+        }
+        return copy;
+    }
+
+    private static long rowBytes(List<Map<String, String>> rows) {
+        long size = 0;
+        for (Map<String, String> row : rows) {
+            size += ROW_BYTES;
+            for (String value : row.values()) {
+                size += VALUE_BYTES + (value == null ? 0 : 2L * value.length());
+            }
+        }
+        return size;
+    }
+
+    // The key of a query: its kind and table followed by its arguments. Names and values
+    // are quoted, so no value can make two different queries read the same; predicates
+    // are written out in full, as their toString leaves values unquoted.
+    static String key(String query, String tableName, Object... arguments) {
+        StringBuilder key = new StringBuilder(query).append(' ');
+        append(key, tableName);
+        for (Object argument : arguments) {
+            key.append(' ');
+            append(key, argument);
+        }
+        return key.toString();
+    }
+
+    private static void append(StringBuilder key, Object argument) {
+        if (argument == null) {
+            key.append("NULL");
+        } else if (argument instanceof String text) {
+            key.append('\'').append(text.replace("'", "''")).append('\'');
+        } else if (argument instanceof Collection<?> items) {
+            key.append('[');
+            for (Object item : items) {
+                append(key, item);
+                key.append(',');
+            }
+            key.append(']');
+        } else if (argument instanceof Aggregate aggregate) {
+            key.append(aggregate.getFunction()).append('(');
+            append(key, aggregate.getColumn());
+            key.append(')');
+        } else if (argument instanceof SortKey sortKey) {
+            append(key, sortKey.getName());
+            key.append(sortKey.isDescending() ? " DESC" : " ASC");
+        } else if (argument instanceof Predicate predicate) {
+            appendPredicate(key, predicate);
+        } else {
+            key.append(argument);
+        }
+    }
+
+    private static void appendPredicate(StringBuilder key, Predicate predicate) {
+        if (predicate instanceof Predicate.And and) {
+            key.append("AND");
+            append(key, and.getOperands());
+        } else if (predicate instanceof Predicate.Or or) {
+            key.append("OR");
+            append(key, or.getOperands());
+        } else if (predicate instanceof Predicate.Not not) {
+            key.append("NOT(");
+            appendPredicate(key, not.getOperand());
+            key.append(')');
+        } else if (predicate instanceof Predicate.Between between) {
+            append(key, List.of("BETWEEN", between.getColumn(), between.getLow(), between.getHigh()));
+        } else if (predicate instanceof Predicate.In in) {
+            append(key, List.of("IN", in.getColumn(), in.getValues()));
+        } else if (predicate instanceof Predicate.Like like) {
+            append(key, List.of("LIKE", like.getColumn(), like.getPattern()));
+        } else if (predicate instanceof Condition condition) {
+            append(key, Arrays.asList(condition.getOperator().name(), condition.getColumn(), condition.getValue()));
+        } else {
+            throw new IllegalArgumentException("Unknown predicate: " + predicate.getClass().getName());
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d results, %d of %d bytes, %d hits, %d misses, %d invalidated, %d evicted",
+                entries.size(), bytes, budget, getHits(), getMisses(), getInvalidations(), getEvictions());
+    }
+}
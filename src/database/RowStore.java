@@ -0,0 +1,121 @@
+package database;
+
+import java.io.Serializable;
+import java.util.*;
+
+// Column data and version timestamps of a table. Every row position holds one row
+// version, visible to snapshots taken at or after createdAt and before deletedAt.
+// Only the table's writer (holding its write lock) modifies a RowStore; it fills in
+// a new version before publishing the new size, and publishes a change as a whole by
+// advancing commitTimestamp. The timestamp arrays are swapped for larger copies as
+// rows are added, through volatile fields, so a snapshot that reads them after the
+// size and commit timestamp sees every version and deletion those cover (see Column).
+// Vacuum replaces the whole RowStore instead of editing it, so readers holding an
+// older store are never disturbed.
+class RowStore implements Serializable {
+    static final long LIVE = Long.MAX_VALUE;
+
+    final Column[] columns;
+    // Distinct values per column over every version ever stored here, kept up to date on append
+    final HyperLogLog[] sketches;
+    volatile long[] createdAt;
+    volatile long[] deletedAt;
+    volatile int size;
+    volatile long commitTimestamp;
+    volatile Map<String, Index> indexes = Collections.emptyMap();
+    // Maintained by the writer; readers only use them as estimates
+    volatile int liveRows;
+    volatile int deadRows;
+    // Planner statistics, analyzed on demand
+    transient volatile TableStatistics statistics;
+    // Per column, for the rows the store was compacted or loaded with; null for a store
+    // that started empty
+    transient volatile ZoneMap[] zoneMaps;
+
+    RowStore(List<ColumnType> types, int capacity) {
+        this.columns = new Column[types.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = types.get(i).newColumn(capacity);
+        }
+        this.sketches = newSketches(columns.length);
+        this.createdAt = new long[Math.max(16, capacity)];
+        this.deletedAt = new long[Math.max(16, capacity)];
+    }
+
+    RowStore(Column[] columns, int rows) {
+        this.columns = columns;
+        this.createdAt = new long[Math.max(16, rows)];
+        this.deletedAt = new long[Math.max(16, rows)];
+        Arrays.fill(deletedAt, 0, rows, LIVE);
+        this.size = rows;
+        this.liveRows = rows;
+        this.sketches = newSketches(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            for (int row = 0; row < rows; row++) {
+                if (!columns[i].isNull(row)) {
+                    sketches[i].add(columns[i].hashAt(row));
+                }
+            }
+        }
+    }
+
+    private static HyperLogLog[] newSketches(int count) {
+        HyperLogLog[] sketches = new HyperLogLog[count];
+        for (int i = 0; i < count; i++) {
+            sketches[i] = new HyperLogLog();
+        }
+        return sketches;
+    }
+
+    // Records the version just appended to every column at position size
+    void publishVersion(long timestamp) {
+        int row = size;
+        if (row == createdAt.length) {
+            createdAt = Arrays.copyOf(createdAt, Column.grow(row));
+            deletedAt = Arrays.copyOf(deletedAt, Column.grow(row));
+        }
+        // Filled in before the size that lets readers reach the row is published
+        createdAt[row] = timestamp;
+        deletedAt[row] = LIVE;
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].isNull(row)) {
+                sketches[i].add(columns[i].hashAt(row));
+            }
+        }
+        for (Index index : indexes.values()) {
+            index.add(columns[index.getColumn()].keyAt(row), row);
+        }
+        size = row + 1;
+    }
+
+    // Approximate heap taken by the rows and indexes. An index entry costs a map node, a
+    // boxed key and a posting list; every row adds its position to one posting list.
+    long memoryBytes() {
+        long bytes = createdAt.length * 16L;
+        for (Column column : columns) {
+            bytes += column.memoryBytes();
+        }
+        for (Index index : indexes.values()) {
+            bytes += size * 4L + index.distinctKeys() * 96L;
+        }
+        return bytes;
+    }
+
+    // A copy holding only the rows visible in the snapshot, without indexes
+    static RowStore compact(Snapshot snapshot, List<ColumnType> types) {
+        RowStore source = snapshot.store;
+        RowStore copy = new RowStore(types, snapshot.size);
+        for (int row = 0; row < snapshot.size; row++) {
+            if (snapshot.isVisible(row)) {
+                for (int i = 0; i < copy.columns.length; i++) {
+                    copy.columns[i].appendFrom(source.columns[i], row);
+                }
+                copy.publishVersion(source.createdAt[row]);
+            }
+        }
+        copy.liveRows = copy.size;
+        copy.commitTimestamp = snapshot.timestamp;
+        copy.zoneMaps = ZoneMap.build(copy.columns, copy.size);
+        return copy;
+    }
+}
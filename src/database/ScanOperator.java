@@ -0,0 +1,59 @@
+package database;
+
+// Produces the visible rows of a snapshot in row order, either every row in a range of
+// positions or a range of a candidate list returned by an index. A scan over every row
+// that is given the plan's filter passes over the blocks its zone maps rule out.
+class ScanOperator implements BatchOperator {
+    private final Snapshot snapshot;
+    private final IntList candidates;
+    private final int end;
+    private int position;
+    private final Batch batch = new Batch();
+    // Null unless blocks can be skipped
+    private final Filter filter;
+    private final ZoneMap[] zoneMaps;
+    private final int covered;
+
+    // With candidates, from and to index into the candidate list; otherwise they are rows
+    ScanOperator(Snapshot snapshot, IntList candidates, int from, int to, Filter filter) {
+        this.snapshot = snapshot;
+        this.candidates = candidates;
+        this.position = from;
+        this.end = to;
+        ZoneMap[] zones = snapshot.store.zoneMaps;
+        boolean skipping = candidates == null && filter != null && zones != null && zones.length > 0;
+        this.filter = skipping ? filter : null;
+        this.zoneMaps = skipping ? zones : null;
+        this.covered = skipping ? zones[0].rows : 0;
+    }
+
+    @Override
+    public Batch next() {
+        int[] rows = batch.rows;
+        while (position < end) {
+            if (position < covered) {
+                int block = position / ZoneMap.BLOCK_ROWS;
+                if (filter.skips(zoneMaps, block)) {
+                    position = Math.min(end, Math.min(covered, (block + 1) * ZoneMap.BLOCK_ROWS));
+                    continue;
+                }
+            }
+            int limit = Math.min(end, position + Batch.SIZE);
+            if (snapshot.trace != null) {
+                snapshot.trace.scanned(limit - position);
+            }
+            int count = 0;
+            for (; position < limit; position++) {
+                int row = candidates == null ? position : candidates.get(position);
+                if (snapshot.isVisible(row)) {
+                    rows[count++] = row;
+                }
+            }
+            if (count > 0) {
+                batch.count = count;
+                return batch;
+            }
+        }
+        return null;
+    }
+}
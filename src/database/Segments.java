@@ -0,0 +1,475 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Compressed, immutable image of a column in a page file. The rows are cut into blocks
+// of ZoneMap.BLOCK_ROWS, and each block is stored with its zone map entry followed by
+// its values:
+//
+//   [block count]
+//   TEXT only: the column's dictionary, compressed as a block
+//   per block: [flags: has nulls, has values][min][max, when it has values][block]
+//
+// A numeric block holds the null bitmap words of its rows, when it has nulls, and its
+// values; a text block holds its rows' dictionary codes, -1 for no value. Values are
+// stored as a sequence of longs (doubles by their bits) in whichever encoding comes out
+// smallest: run lengths, offsets from the smallest value (frame of reference), offsets
+// of each value from the one before it (delta) or codes into a sorted dictionary of the
+// block's values. Offsets and codes are bit-packed to the width of the largest. Every
+// block is then compressed with BlockCompressor unless that saves too little.
+//
+// Segments are made from the column image of Column.encode and read back into one, so
+// the columns themselves do not know about them.
+final class Segments {
+    private static final byte RUN_LENGTH = 0;
+    private static final byte FRAME_OF_REFERENCE = 1;
+    private static final byte DELTA = 2;
+    private static final byte DICTIONARY = 3;
+    private static final byte STORED = 0;
+    private static final byte COMPRESSED = 1;
+    private static final int HAS_NULLS = 1;
+    private static final int HAS_VALUES = 2;
+    // Blocks with more distinct values are not considered for a dictionary
+    private static final int MAX_DICTIONARY = 1024;
+
+    private Segments() {
+    }
+
+    // Bytes being written, growing as needed
+    private static final class Output {
+        byte[] bytes = new byte[256];
+        int size;
+
+        private void ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + more, bytes.length * 2));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        // Zigzag, then seven bits a byte, so small values of either sign take one byte
+        void writeVarLong(long value) {
+            long bits = (value << 1) ^ (value >> 63);
+            while ((bits & ~0x7fL) != 0) {
+                writeByte((int) (bits & 0x7f) | 0x80);
+                bits >>>= 7;
+            }
+            writeByte((int) bits);
+        }
+
+        void write(byte[] source, int length) {
+            ensure(length);
+            System.arraycopy(source, 0, bytes, size, length);
+            size += length;
+        }
+
+        // The low width bits of every value less the base, least significant bit first
+        void pack(long[] values, int count, long base, int width) {
+            ensure((int) (((long) count * width + 7) / 8));
+            int current = 0;
+            int used = 0;
+            for (int i = 0; i < count; i++) {
+                long value = values[i] - base;
+                for (int shift = 0; shift < width; ) {
+                    int take = Math.min(8 - used, width - shift);
+                    current |= (int) ((value >>> shift) & ((1L << take) - 1)) << used;
+                    used += take;
+                    shift += take;
+                    if (used == 8) {
+                        bytes[size++] = (byte) current;
+                        current = 0;
+                        used = 0;
+                    }
+                }
+            }
+            if (used > 0) {
+                bytes[size++] = (byte) current;
+            }
+        }
+    }
+
+    static ByteBuffer write(Column column, int rows, ZoneMap zones) {
+        ColumnType type = column.type();
+        ByteBuffer image = column.encode();
+        Output out = new Output();
+        int blocks = ZoneMap.blocksFor(rows);
+        out.writeInt(blocks);
+
+        long[] nullWords = null;
+        IntBuffer ints = null;
+        LongBuffer longs = null;
+        if (type == ColumnType.TEXT) {
+            int dictionarySize = image.getInt();
+            for (int code = 0; code < dictionarySize; code++) {
+                int length = image.getInt();
+                image.position(image.position() + length);
+            }
+            byte[] dictionary = new byte[image.position()];
+            image.get(0, dictionary);
+            writeBlock(out, dictionary, dictionary.length);
+            ints = image.slice().asIntBuffer();
+        } else {
+            nullWords = new long[image.getInt()];
+            image.asLongBuffer().get(nullWords);
+            image.position(image.position() + nullWords.length * 8);
+            if (type == ColumnType.INT) {
+                ints = image.slice().asIntBuffer();
+            } else {
+                longs = image.slice().asLongBuffer();
+            }
+        }
+
+        long[] values = new long[ZoneMap.BLOCK_ROWS];
+        long[] scratch = new long[ZoneMap.BLOCK_ROWS];
+        Output block = new Output();
+        for (int b = 0; b < blocks; b++) {
+            int from = b * ZoneMap.BLOCK_ROWS;
+            int count = Math.min(ZoneMap.BLOCK_ROWS, rows - from);
+            boolean hasValues = zones.min(b) != null;
+            out.writeByte((zones.hasNulls(b) ? HAS_NULLS : 0) | (hasValues ? HAS_VALUES : 0));
+            if (hasValues) {
+                writeKey(out, type, zones.min(b));
+                writeKey(out, type, zones.max(b));
+            }
+
+            block.size = 0;
+            if (nullWords != null && zones.hasNulls(b)) {
+                for (int word = from >>> 6, end = (from + count + 63) >>> 6; word < end; word++) {
+                    block.writeLong(nullWords[word]);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                values[i] = ints != null ? ints.get(from + i) : longs.get(from + i);
+            }
+            encodeValues(block, values, count, scratch);
+            writeBlock(out, block.bytes, block.size);
+        }
+        return ByteBuffer.wrap(out.bytes, 0, out.size);
+    }
+
+    // Decodes a chunk made by write into the column and returns its zone map
+    static ZoneMap read(ByteBuffer chunk, Column column, int rows) {
+        ColumnType type = column.type();
+        int blocks = chunk.getInt();
+        ByteBuffer image;
+        int nullsAt = 4;
+        int valuesAt;
+        int valueBytes = type == ColumnType.INT || type == ColumnType.TEXT ? 4 : 8;
+        if (type == ColumnType.TEXT) {
+            byte[] dictionary = readBlock(chunk);
+            valuesAt = dictionary.length;
+            image = ByteBuffer.allocate(valuesAt + rows * 4);
+            image.put(dictionary);
+        } else {
+            int words = (rows + 63) >>> 6;
+            valuesAt = 4 + words * 8;
+            image = ByteBuffer.allocate(valuesAt + rows * valueBytes);
+            image.putInt(words);
+        }
+
+        Object[] min = new Object[blocks];
+        Object[] max = new Object[blocks];
+        boolean[] hasNulls = new boolean[blocks];
+        long[] values = new long[ZoneMap.BLOCK_ROWS];
+        for (int b = 0; b < blocks; b++) {
+            int from = b * ZoneMap.BLOCK_ROWS;
+            int count = Math.min(ZoneMap.BLOCK_ROWS, rows - from);
+            int flags = chunk.get();
+            hasNulls[b] = (flags & HAS_NULLS) != 0;
+            if ((flags & HAS_VALUES) != 0) {
+                min[b] = readKey(chunk, type);
+                max[b] = readKey(chunk, type);
+            }
+
+            ByteBuffer block = ByteBuffer.wrap(readBlock(chunk));
+            if (type != ColumnType.TEXT && hasNulls[b]) {
+                for (int word = from >>> 6, end = (from + count + 63) >>> 6; word < end; word++) {
+                    image.putLong(nullsAt + word * 8, block.getLong());
+                }
+            }
+            decodeValues(block, values, count);
+            for (int i = 0; i < count; i++) {
+                int at = valuesAt + (from + i) * valueBytes;
+                if (valueBytes == 4) {
+                    image.putInt(at, (int) values[i]);
+                } else {
+                    image.putLong(at, values[i]);
+                }
+            }
+        }
+        image.position(0);
+        column.decode(image, rows);
+        return new ZoneMap(rows, min, max, hasNulls);
+    }
+
+    private static void writeBlock(Output out, byte[] bytes, int length) {
+        byte[] compressed = BlockCompressor.compress(bytes, length);
+        // Decompressing costs a copy, so a block must shrink by an eighth to be worth it
+        if (compressed.length < length - length / 8) {
+            out.writeByte(COMPRESSED);
+            out.writeInt(length);
+            out.writeInt(compressed.length);
+            out.write(compressed, compressed.length);
+        } else {
+            out.writeByte(STORED);
+            out.writeInt(length);
+            out.write(bytes, length);
+        }
+    }
+
+    private static byte[] readBlock(ByteBuffer chunk) {
+        byte codec = chunk.get();
+        byte[] bytes = new byte[chunk.getInt()];
+        if (codec == STORED) {
+            chunk.get(bytes);
+        } else {
+            byte[] compressed = new byte[chunk.getInt()];
+            chunk.get(compressed);
+            BlockCompressor.decompress(compressed, compressed.length, bytes);
+        }
+        return bytes;
+    }
+
+    private static void writeKey(Output out, ColumnType type, Object key) {
+        switch (type) {
+            case INT:
+                out.writeInt((Integer) key);
+                break;
+            case LONG:
+                out.writeLong((Long) key);
+                break;
+            case DOUBLE:
+                out.writeLong(Double.doubleToRawLongBits((Double) key));
+                break;
+            default:
+                byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes, bytes.length);
+        }
+    }
+
+    private static Object readKey(ByteBuffer chunk, ColumnType type) {
+        switch (type) {
+            case INT:
+                return chunk.getInt();
+            case LONG:
+                return chunk.getLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(chunk.getLong());
+            default:
+                byte[] bytes = new byte[chunk.getInt()];
+                chunk.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Writes the values in the encoding that takes the fewest bytes
+    private static void encodeValues(Output out, long[] values, int count, long[] scratch) {
+        if (count == 0) {
+            out.writeByte(RUN_LENGTH);
+            out.writeVarLong(0);
+            return;
+        }
+        int runs = 1;
+        long runBytes = 0;
+        long min = values[0];
+        long max = values[0];
+        long minDelta = 0;
+        long maxDelta = 0;
+        int runStart = 0;
+        for (int i = 1; i < count; i++) {
+            long value = values[i];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            long delta = value - values[i - 1];
+            minDelta = i == 1 ? delta : Math.min(minDelta, delta);
+            maxDelta = i == 1 ? delta : Math.max(maxDelta, delta);
+            if (value != values[i - 1]) {
+                runBytes += varLongBytes(values[i - 1]) + varLongBytes(i - runStart);
+                runStart = i;
+                runs++;
+            }
+        }
+        runBytes += varLongBytes(values[count - 1]) + varLongBytes(count - runStart) + varLongBytes(runs);
+
+        int width = bitWidth(max - min);
+        long frameBytes = 9 + packedBytes(count, width);
+        int deltaWidth = bitWidth(maxDelta - minDelta);
+        long deltaBytes = 17 + packedBytes(count - 1, deltaWidth);
+
+        int distinct = 0;
+        long dictionaryBytes = Long.MAX_VALUE;
+        if (runs > 1 && width > 8) {
+            System.arraycopy(values, 0, scratch, 0, count);
+            Arrays.sort(scratch, 0, count);
+            long entryBytes = 0;
+            for (int i = 0; i < count && distinct <= MAX_DICTIONARY; i++) {
+                if (i == 0 || scratch[i] != scratch[i - 1]) {
+                    entryBytes += varLongBytes(distinct == 0 ? scratch[i] : scratch[i] - scratch[distinct - 1]);
+                    scratch[distinct++] = scratch[i];
+                }
+            }
+            if (distinct <= MAX_DICTIONARY) {
+                dictionaryBytes = varLongBytes(distinct) + entryBytes + 1 + packedBytes(count, bitWidth(distinct - 1));
+            }
+        }
+
+        long best = Math.min(Math.min(runBytes, frameBytes), Math.min(deltaBytes, dictionaryBytes));
+        if (best == runBytes) {
+            out.writeByte(RUN_LENGTH);
+            out.writeVarLong(runs);
+            runStart = 0;
+            for (int i = 1; i <= count; i++) {
+                if (i == count || values[i] != values[i - 1]) {
+                    out.writeVarLong(values[i - 1]);
+                    out.writeVarLong(i - runStart);
+                    runStart = i;
+                }
+            }
+        } else if (best == frameBytes) {
+            out.writeByte(FRAME_OF_REFERENCE);
+            out.writeLong(min);
+            out.writeByte(width);
+            out.pack(values, count, min, width);
+        } else if (best == deltaBytes) {
+            out.writeByte(DELTA);
+            out.writeLong(values[0]);
+            out.writeLong(minDelta);
+            out.writeByte(deltaWidth);
+            long[] deltas = new long[count - 1];
+            for (int i = 1; i < count; i++) {
+                deltas[i - 1] = values[i] - values[i - 1];
+            }
+            out.pack(deltas, count - 1, minDelta, deltaWidth);
+        } else {
+            out.writeByte(DICTIONARY);
+            out.writeVarLong(distinct);
+            for (int i = 0; i < distinct; i++) {
+                out.writeVarLong(i == 0 ? scratch[0] : scratch[i] - scratch[i - 1]);
+            }
+            int codeWidth = bitWidth(distinct - 1);
+            out.writeByte(codeWidth);
+            long[] codes = new long[count];
+            for (int i = 0; i < count; i++) {
+                codes[i] = Arrays.binarySearch(scratch, 0, distinct, values[i]);
+            }
+            out.pack(codes, count, 0, codeWidth);
+        }
+    }
+
+    private static void decodeValues(ByteBuffer in, long[] values, int count) {
+        byte encoding = in.get();
+        switch (encoding) {
+            case RUN_LENGTH: {
+                long runs = readVarLong(in);
+                int at = 0;
+                for (long run = 0; run < runs; run++) {
+                    long value = readVarLong(in);
+                    int length = (int) readVarLong(in);
+                    Arrays.fill(values, at, at + length, value);
+                    at += length;
+                }
+                break;
+            }
+            case FRAME_OF_REFERENCE: {
+                long min = in.getLong();
+                int width = in.get();
+                unpack(in, values, 0, count, width);
+                for (int i = 0; i < count; i++) {
+                    values[i] += min;
+                }
+                break;
+            }
+            case DELTA: {
+                values[0] = in.getLong();
+                long minDelta = in.getLong();
+                int width = in.get();
+                unpack(in, values, 1, count - 1, width);
+                for (int i = 1; i < count; i++) {
+                    values[i] += values[i - 1] + minDelta;
+                }
+                break;
+            }
+            case DICTIONARY: {
+                long[] dictionary = new long[(int) readVarLong(in)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = readVarLong(in) + (i == 0 ? 0 : dictionary[i - 1]);
+                }
+                int width = in.get();
+                unpack(in, values, 0, count, width);
+                for (int i = 0; i < count; i++) {
+                    values[i] = dictionary[(int) values[i]];
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown segment encoding " + encoding);
+        }
+    }
+
+    private static void unpack(ByteBuffer in, long[] values, int offset, int count, int width) {
+        int current = 0;
+        int available = 0;
+        for (int i = 0; i < count; i++) {
+            long value = 0;
+            for (int shift = 0; shift < width; ) {
+                if (available == 0) {
+                    current = in.get() & 0xff;
+                    available = 8;
+                }
+                int take = Math.min(available, width - shift);
+                value |= (long) (current & ((1 << take) - 1)) << shift;
+                current >>>= take;
+                available -= take;
+                shift += take;
+            }
+            values[offset + i] = value;
+        }
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long bits = 0;
+        for (int shift = 0; ; shift += 7) {
+            int next = in.get();
+            bits |= (long) (next & 0x7f) << shift;
+            if (next >= 0) {
+                break;
+            }
+        }
+        return (bits >>> 1) ^ -(bits & 1);
+    }
+
+    private static int varLongBytes(long value) {
+        long bits = (value << 1) ^ (value >> 63);
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(bits) + 6) / 7);
+    }
+
+    // Bits needed for values 0..range, the range taken as unsigned
+    private static int bitWidth(long range) {
+        return 64 - Long.numberOfLeadingZeros(range);
+    }
+
+    private static long packedBytes(int count, int width) {
+        return ((long) count * width + 7) / 8;
+    }
+}
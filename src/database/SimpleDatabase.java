@@ -1,7 +1,18 @@
 package database;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -9,141 +20,904 @@ public class SimpleDatabase implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
     private static final Logger logger = Logger.getLogger(SimpleDatabase.class.getName());
+    public static final long DEFAULT_JOIN_MEMORY_BUDGET = 64L << 20;
     private String dbName;
     private Map<String, Table> tables;
+    // Replaced when a log is opened or closed; writers read it without holding a lock
+    private transient volatile WriteAheadLog writeAheadLog;
+    // Tables from an opened page file that have not been read into memory yet
+    private transient Map<String, StoredTable> storedTables;
+    // Serializes changes to the set of tables; row changes only lock the table they touch
+    private final Object catalogLock = new Object();
+    private transient ScheduledExecutorService vacuumExecutor;
+    // Executor for parallel queries; null runs every query on the caller's thread
+    private transient volatile ExecutorService queryExecutor;
+    // Told about changes and rejected requests; null reports nothing
+    private transient volatile DatabaseListener listener;
+    // Results of aggregating reads, served again while their table is unchanged
+    private final transient ResultCache resultCache = new ResultCache();
+    private final transient DatabaseMetrics metrics = new DatabaseMetrics(resultCache);
+    // Which tables stay in memory; every table in the tables map has a frame in it
+    private final transient BufferPool bufferPool = new BufferPool();
+    // Set while the database is kept in a data directory; guarded by checkpointLock
+    private transient Path dataDirectory;
+    private transient Checkpoint lastCheckpoint;
+    // Tables whose rows are still those of their file in the last checkpoint. Tables are
+    // added and removed under the catalog lock; reading a stored table swaps in the result.
+    private final transient Map<String, Checkpointed> checkpointed = new ConcurrentHashMap<>();
+    private final Object checkpointLock = new Object();
+    private transient ScheduledExecutorService checkpointExecutor;
+    // Heap a join's hash table may take before the join spills to disk
+    private transient volatile long joinMemoryBudget = DEFAULT_JOIN_MEMORY_BUDGET;
+
+    // A table of the last checkpoint: the stored table it was opened as, or the table in
+    // memory and the version that was written
+    private static class Checkpointed {
+        final Checkpoint.Entry entry;
+        final Object table;
+        final long version;
+
+        Checkpointed(Checkpoint.Entry entry, Object table, long version) {
+            this.entry = entry;
+            this.table = table;
+            this.version = version;
+        }
+    }
 
     public SimpleDatabase(String dbName) {
         this.dbName = dbName;
-        this.tables = new HashMap<>();
+        this.tables = new ConcurrentHashMap<>();
+        this.storedTables = new ConcurrentHashMap<>();
     }
 
-    public void createTable(String tableName, List<String> columns) {
+    public String getName() {
+        return dbName;
+    }
+
+    // Splits scans and aggregations into morsels run on the executor, e.g. a ForkJoinPool.
+    // Passing null goes back to running each query on the calling thread.
+    public void setQueryExecutor(ExecutorService executor) {
+        this.queryExecutor = executor;
+        for (Table table : tables.values()) {
+            table.setQueryExecutor(executor);
+        }
+    }
+
+    // Receives the messages of this database and its tables. Without a listener, which is
+    // the default, nothing is reported; DatabaseListener.console() prints as the CLI does.
+    public void setListener(DatabaseListener listener) {
+        this.listener = listener;
+        for (Table table : tables.values()) {
+            table.setListener(listener);
+        }
+    }
+
+    // Builds the message only when someone is listening for the event
+    private void report(DatabaseListener.Event event, Supplier<String> text) {
+        DatabaseListener current = listener;
+        if (current != null && current.isEnabled(event)) {
+            current.message(event, text.get());
+        }
+    }
+
+    // Counters, latencies and the slow query log of the calls made on this database
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Runs a query on a table as one recorded call, keeping the table in memory meanwhile
+    private <T> T measure(String tableName, DatabaseMetrics.Operation operation, Supplier<T> query,
+                          ToLongFunction<T> rows, Supplier<String> statement, Supplier<String> plan) {
+        BufferPool.Frame frame = bufferPool.pin(tableName);
+        try (QueryTrace trace = metrics.open()) {
+            T result = query.get();
+            metrics.record(tableName, operation, trace, rows.applyAsLong(result), statement, plan);
+            return result;
+        } finally {
+            if (frame != null) {
+                frame.unpin();
+            }
+        }
+    }
+
+    // Which tables are in memory, and how often tables were read and evicted
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    // Limits the heap taken by tables to about this many bytes. Tables beyond it are evicted
+    // (see BufferPool) and read again from their page file when next used. A changed table
+    // can only be evicted while a data directory is open, as that is where it is written
+    // back; otherwise only tables unchanged since they were read from a page file are. The
+    // budget is checked when a table is read, when a bulk load ends and at every checkpoint.
+    // Tables are read and evicted whole, so each table must still fit in the heap.
+    public void setMemoryBudget(long bytes) {
+        bufferPool.setMemoryBudget(bytes);
+        evictIfNeeded(null);
+    }
+
+    // The cached results of distinct, count and grouped reads, with their hit and miss counts
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    // Limits the heap taken by cached results to about this many bytes, evicting the least
+    // recently used results beyond it; zero turns the cache off
+    public void setResultCacheBudget(long bytes) {
+        resultCache.setMemoryBudget(bytes);
+    }
+
+    private static String where(Predicate predicate) {
+        if (predicate instanceof Predicate.And and && and.getOperands().isEmpty()) {
+            return "";
+        }
+        return " WHERE " + predicate;
+    }
+
+    // The predicates of both sides of a join, each labelled with its table
+    private static String joinWhere(String leftTable, Predicate leftPredicate, String rightTable, Predicate rightPredicate) {
+        StringJoiner sides = new StringJoiner(", ", " WHERE ", "").setEmptyValue("");
+        if (leftPredicate != null && !where(leftPredicate).isEmpty()) {
+            sides.add(leftTable + ": " + leftPredicate);
+        }
+        if (rightPredicate != null && !where(rightPredicate).isEmpty()) {
+            sides.add(rightTable + ": " + rightPredicate);
+        }
+        return sides.toString();
+    }
+
+    private Table newTable() {
         Table table = new Table();
-        table.createTable(columns);
-        tables.put(tableName, table);
-        System.out.println("Table \"" + tableName + "\" created.");
+        table.setListener(listener);
+        return table;
     }
 
-    public void insertData(String tableName, List<String> values) {
+    private Table getTable(String tableName) {
         Table table = tables.get(tableName);
         if (table != null) {
-            table.insertData(values);
-            System.out.println("Data inserted into table \"" + tableName + "\".");
-        } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            bufferPool.touch(tableName);
+        } else if (!storedTables.isEmpty()) {
+            // Reading a stored table happens at most once, even with concurrent callers
+            Table[] read = new Table[1];
+            table = tables.computeIfAbsent(tableName, name -> {
+                StoredTable stored = storedTables.remove(name);
+                if (stored == null) {
+                    return null;
+                }
+                Table loaded = stored.load();
+                loaded.setQueryExecutor(queryExecutor);
+                loaded.setListener(listener);
+                checkpointed.computeIfPresent(name, (key, current) ->
+                        current.table == stored ? new Checkpointed(current.entry, loaded, loaded.getVersion()) : current);
+                bufferPool.loaded(name, loaded, stored);
+                read[0] = loaded;
+                return loaded;
+            });
+            // Eviction takes the checkpoint lock, which must not be waited for under the catalog lock
+            if (read[0] != null && !Thread.holdsLock(catalogLock)) {
+                evictIfNeeded(read[0]);
+            }
         }
+        return table;
     }
 
-    public void insertDataWithColumns(String tableName, List<String> columns, List<String> values) {
-        Table table = tables.get(tableName);
-        if (table != null) {
-            table.insertDataWithColumns(columns, values);
-            System.out.println("Data inserted into table \"" + tableName + "\" with specified columns.");
-        } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+    // Evicts tables chosen by the buffer pool until the rest fit its budget, keeping the given one
+    private void evictIfNeeded(Table keep) {
+        for (BufferPool.Frame frame : bufferPool.victims(keep)) {
+            try {
+                evict(frame);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error writing back table " + frame.name + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // Replaces a table in memory with the file holding its rows, writing it back first if it
+    // changed since it was read or last written. A table that is changed, replaced or pinned
+    // again before it is unlinked stays.
+    private void evict(BufferPool.Frame frame) throws IOException {
+        synchronized (checkpointLock) {
+            String name = frame.name;
+            Table table = frame.table;
+            long version = table.getVersion();
+            boolean writtenBack = false;
+            StoredTable stored;
+            if (dataDirectory != null) {
+                Checkpointed current = checkpointed.get(name);
+                if (current == null || current.table != table || current.version != version) {
+                    current = writeBack(name, table);
+                    if (current == null) {
+                        return;
+                    }
+                    version = current.version;
+                    writtenBack = true;
+                }
+                stored = PageFile.open(dataDirectory.resolve(current.entry.file).toString()).get(name);
+            } else if (frame.source != null && frame.sourceVersion == version) {
+                stored = frame.source;
+            } else {
+                // Nowhere to write it back to
+                return;
+            }
+
+            long expectedVersion = version;
+            synchronized (catalogLock) {
+                table.getWriteLock().lock();
+                try {
+                    if (tables.get(name) != table || table.getVersion() != expectedVersion || frame.isPinned()) {
+                        return;
+                    }
+                    tables.remove(name);
+                    storedTables.put(name, stored);
+                    checkpointed.computeIfPresent(name, (key, current) ->
+                            current.table == table ? new Checkpointed(current.entry, stored, 0) : current);
+                    bufferPool.evicted(frame, writtenBack);
+                } finally {
+                    table.getWriteLock().unlock();
+                }
+            }
+        }
+    }
+
+    // Unpins a table that a cursor or bulk loader kept in memory
+    void release(BufferPool.Frame frame) {
+        if (frame != null) {
+            frame.unpin();
+            evictIfNeeded(null);
+        }
+    }
+
+    private void loadStoredTables() {
+        for (String tableName : new ArrayList<>(storedTables.keySet())) {
+            getTable(tableName);
+        }
+    }
+
+    // Takes the table's write lock, adding any time spent waiting to the trace if there is one
+    private static void lock(Table table, QueryTrace trace) {
+        if (table.getWriteLock().tryLock()) {
+            return;
+        }
+        long start = System.nanoTime();
+        table.getWriteLock().lock();
+        if (trace != null) {
+            trace.waitedForLock(System.nanoTime() - start);
+        }
+    }
+
+    // Returns the table with its write lock held, or null if it does not exist. Logging
+    // while the lock is held keeps the log in the order changes were applied to the table.
+    private Table lockForWrite(String tableName, QueryTrace trace) {
+        Table table = getTable(tableName);
+        while (table != null) {
+            lock(table, trace);
+            if (tables.get(tableName) == table) {
+                return table;
+            }
+            // The table was dropped or replaced while we waited for the lock
+            table.getWriteLock().unlock();
+            table = getTable(tableName);
+        }
+        return null;
+    }
+
+    public void createTable(String tableName, List<String> columns) {
+        Table table = newTable();
+        if (table.createTable(columns)) {
+            try (QueryTrace trace = metrics.start()) {
+                long sequence;
+                synchronized (catalogLock) {
+                    sequence = replaceTable(tableName, table);
+                }
+                if (commit(sequence)) {
+                    report(DatabaseListener.Event.CHANGED, () -> "Table \"" + tableName + "\" created.");
+                }
+                metrics.record(tableName, DatabaseMetrics.Operation.DDL, trace, 0,
+                        () -> "CREATE TABLE " + tableName + " " + columns, null);
+            }
+        }
+    }
+
+    // Publishes a table under the given name and logs it with its current contents. Both the
+    // replaced and the new table are write-locked, so no change to either can be logged out of
+    // order around the create record. Must be called holding the catalog lock.
+    private long replaceTable(String tableName, Table table) {
+        Table previous = tables.get(tableName);
+        if (previous != null) {
+            previous.getWriteLock().lock();
+        }
+        table.getWriteLock().lock();
+        try {
+            table.setQueryExecutor(queryExecutor);
+            table.setListener(listener);
+            tables.put(tableName, table);
+            storedTables.remove(tableName);
+            bufferPool.add(tableName, table);
+            if (writeAheadLog == null) {
+                return 0;
+            }
+            long sequence = log(WalRecord.createTable(tableName, table.getColumnDefinitions()));
+            List<String> columns = table.getColumns();
+            List<String> values = new ArrayList<>();
+            for (Map<String, String> row : table.getData()) {
+                for (String column : columns) {
+                    values.add(row.get(column));
+                }
+                if (values.size() == BulkLoader.BATCH_SIZE * columns.size()) {
+                    sequence = log(WalRecord.insertBatch(tableName, columns, values));
+                    values = new ArrayList<>();
+                }
+            }
+            if (!values.isEmpty()) {
+                sequence = log(WalRecord.insertBatch(tableName, columns, values));
+            }
+            for (String index : table.getIndexDefinitions()) {
+                String[] parts = index.split(" ");
+                sequence = log(WalRecord.createIndex(tableName, parts[0], parts[1], IndexType.valueOf(parts[2])));
+            }
+            return sequence;
+        } finally {
+            table.getWriteLock().unlock();
+            if (previous != null) {
+                previous.getWriteLock().unlock();
+            }
+        }
+    }
+
+    public boolean insertData(String tableName, List<String> values) {
+        try (QueryTrace trace = metrics.start()) {
+            Table table = lockForWrite(tableName, trace);
+            if (table != null) {
+                boolean inserted;
+                long sequence;
+                try {
+                    inserted = table.insertData(values);
+                    // A rejected row is not logged, so recovery never replays it
+                    sequence = inserted ? log(WalRecord.insert(tableName, values)) : 0;
+                } finally {
+                    table.getWriteLock().unlock();
+                }
+                // A row the log could not keep is not reported as inserted
+                inserted = inserted && commit(sequence);
+                if (inserted) {
+                    report(DatabaseListener.Event.CHANGED, () -> "Data inserted into table \"" + tableName + "\".");
+                }
+                metrics.record(tableName, DatabaseMetrics.Operation.INSERT, trace, inserted ? 1 : 0,
+                        () -> "INSERT INTO " + tableName + " VALUES " + values, null);
+                return inserted;
+            }
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            return false;
+        }
+    }
+
+    public boolean insertDataWithColumns(String tableName, List<String> columns, List<String> values) {
+        try (QueryTrace trace = metrics.start()) {
+            Table table = lockForWrite(tableName, trace);
+            if (table != null) {
+                boolean inserted;
+                long sequence;
+                try {
+                    inserted = table.insertDataWithColumns(columns, values);
+                    // A rejected row is not logged, so recovery never replays it
+                    sequence = inserted ? log(WalRecord.insertWithColumns(tableName, columns, values)) : 0;
+                } finally {
+                    table.getWriteLock().unlock();
+                }
+                inserted = inserted && commit(sequence);
+                if (inserted) {
+                    report(DatabaseListener.Event.CHANGED, () -> "Data inserted into table \"" + tableName + "\" with specified columns.");
+                }
+                metrics.record(tableName, DatabaseMetrics.Operation.INSERT, trace, inserted ? 1 : 0,
+                        () -> "INSERT INTO " + tableName + " " + columns + " VALUES " + values, null);
+                return inserted;
+            }
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            return false;
+        }
+    }
+
+    // Starts a bulk load into the given columns of a table, or into all of them in table
+    // order when columns is null. Returns null if the table or a column does not exist.
+    public BulkLoader openBulkLoader(String tableName, List<String> columns) {
+        Table table = getTable(tableName);
+        if (table == null) {
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            return null;
+        }
+        List<String> loaded = columns == null ? table.getColumns() : columns;
+        int[] positions = table.positionsOf(loaded);
+        if (positions == null) {
+            report(DatabaseListener.Event.REJECTED, () -> "Unknown or repeated column in " + loaded);
+            return null;
+        }
+        return new BulkLoader(this, tableName, table, new ArrayList<>(loaded), positions, bufferPool.pin(tableName));
+    }
+
+    // Loads a CSV file into a table through a bulk loader and returns the closed loader,
+    // whose counters describe the load. With a header, the first record names the columns
+    // unless columns are given. Returns null if the load could not start.
+    public BulkLoader copyFromCsv(String tableName, List<String> columns, String fileName, boolean header) {
+        try (CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8))) {
+            if (header && reader.next() && columns == null) {
+                columns = new ArrayList<>(reader.getFieldCount());
+                for (int i = 0; i < reader.getFieldCount(); i++) {
+                    columns.add(reader.getField(i));
+                }
+            }
+            BulkLoader loader = openBulkLoader(tableName, columns);
+            if (loader == null) {
+                return null;
+            }
+            try (loader) {
+                while (reader.next()) {
+                    loader.add(reader);
+                }
+            }
+            return loader;
+        } catch (FileNotFoundException e) {
+            report(DatabaseListener.Event.REJECTED, () -> "File not found: " + fileName);
+        } catch (IOException e) {
+            report(DatabaseListener.Event.REJECTED, () -> "Error reading file: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // Appends one batch of a bulk load; its appended rows are logged as a single record with
+    // a single commit. Returns 0, counting every row as rejected, if the commit fails.
+    int appendBatch(String tableName, Table loading, List<String> columns, int[] positions, String[] values, int count) {
+        try (QueryTrace trace = metrics.start()) {
+            Table table = lockForWrite(tableName, trace);
+            if (table == null) {
+                return 0;
+            }
+            long sequence;
+            int appended;
+            try {
+                if (table != loading) {
+                    // Dropped or replaced since the load started
+                    return 0;
+                }
+                appended = table.appendRows(positions, values, count);
+                // A batch whose rows were all rejected is not logged
+                sequence = appended > 0
+                        ? log(WalRecord.insertBatch(tableName, columns, Arrays.asList(values).subList(0, appended * positions.length)))
+                        : 0;
+            } finally {
+                table.getWriteLock().unlock();
+            }
+            if (appended > 0 && !commit(sequence)) {
+                appended = 0;
+            }
+            metrics.record(tableName, DatabaseMetrics.Operation.BULK_LOAD, trace, appended,
+                    () -> "COPY " + tableName + " " + columns + ": batch of " + count + " rows", null);
+            return appended;
         }
     }
 
     public List<Map<String, String>> selectData(String tableName, Map<String, String> conditions) {
-        Table table = tables.get(tableName);
+        return selectData(tableName, Predicate.equalities(conditions));
+    }
+
+    public List<Map<String, String>> selectData(String tableName, Predicate predicate) {
+        Table table = getTable(tableName);
         if (table != null) {
-            return table.selectData(conditions);
+            return measure(tableName, DatabaseMetrics.Operation.SELECT, () -> table.selectData(predicate), List::size,
+                    () -> "SELECT * FROM " + tableName + where(predicate), null);
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
             return Collections.emptyList();
         }
     }
 
-    public void updateData(String tableName, Map<String, String> setValues, Map<String, String> conditions) {
-        Table table = tables.get(tableName);
+    // Opens a cursor over the matching rows (see Table.openCursor), or returns null if the
+    // table does not exist
+    public Cursor openCursor(String tableName, Predicate predicate, List<String> columns, long offset, long limit) {
+        Table table = getTable(tableName);
         if (table != null) {
-            table.updateData(setValues, conditions);
-            System.out.println("Data updated in table \"" + tableName + "\".");
+            // Recorded and unpinned when the cursor is closed, which it does itself once exhausted
+            BufferPool.Frame frame = bufferPool.pin(tableName);
+            try (QueryTrace trace = metrics.open()) {
+                Cursor cursor = table.openCursor(predicate, columns, offset, limit);
+                if (trace == null) {
+                    return cursor.onClose(() -> release(frame));
+                }
+                return cursor.onClose(() -> {
+                    release(frame);
+                    metrics.record(tableName, DatabaseMetrics.Operation.SELECT, trace, cursor.getRowsReturned(),
+                            () -> "SELECT " + (columns == null ? "*" : String.join(", ", columns)) + " FROM " + tableName + where(predicate)
+                                    + (limit < 0 ? "" : " LIMIT " + limit) + (offset == 0 ? "" : " OFFSET " + offset), null);
+                });
+            }
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            return null;
+        }
+    }
+
+    // Heap the hash table of one join may take, in bytes. A join whose smaller side needs
+    // more is partitioned into temporary files and joined a partition at a time.
+    public void setJoinMemoryBudget(long bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("Join memory budget must be positive: " + bytes);
+        }
+        this.joinMemoryBudget = bytes;
+    }
+
+    public long getJoinMemoryBudget() {
+        return joinMemoryBudget;
+    }
+
+    // Inner join of two tables on leftColumn = rightColumn, each side first narrowed by its
+    // own predicate (see Join). Rows are keyed by qualified names such as "orders.id";
+    // columns null selects every column of both tables. Rows come in the order of the left
+    // table's rows, then the right table's. A missing table or join column gives no rows.
+    public List<Map<String, String>> selectJoin(String leftTable, String leftColumn, Predicate leftPredicate,
+                                                String rightTable, String rightColumn, Predicate rightPredicate,
+                                                List<String> columns) {
+        Table left = getTable(leftTable);
+        BufferPool.Frame leftFrame = left == null ? null : bufferPool.pin(leftTable);
+        try {
+            Table right = getTable(rightTable);
+            BufferPool.Frame rightFrame = right == null ? null : bufferPool.pin(rightTable);
+            try (QueryTrace trace = metrics.open()) {
+                Join join = join(leftTable, left, leftColumn, leftPredicate, rightTable, right, rightColumn, rightPredicate);
+                if (join == null) {
+                    return Collections.emptyList();
+                }
+                List<Map<String, String>> result = join.materialize(join.execute(), columns);
+                metrics.record(leftTable, DatabaseMetrics.Operation.JOIN, trace, result.size(),
+                        () -> "SELECT " + (columns == null ? "*" : String.join(", ", columns)) + " FROM " + leftTable
+                                + " JOIN " + rightTable + " ON " + leftTable + "." + leftColumn + " = " + rightTable + "." + rightColumn
+                                + joinWhere(leftTable, leftPredicate, rightTable, rightPredicate),
+                        join::explain);
+                return result;
+            } catch (UncheckedIOException e) {
+                logger.log(Level.SEVERE, "Error joining " + leftTable + " and " + rightTable + ": " + e.getMessage(), e);
+                report(DatabaseListener.Event.REJECTED, () -> "Join failed: " + e.getCause().getMessage());
+                return Collections.emptyList();
+            } finally {
+                if (rightFrame != null) {
+                    rightFrame.unpin();
+                }
+            }
+        } finally {
+            if (leftFrame != null) {
+                leftFrame.unpin();
+            }
+        }
+    }
+
+    // Describes how selectJoin would join the tables with these predicates
+    public String explainJoin(String leftTable, String leftColumn, Predicate leftPredicate,
+                              String rightTable, String rightColumn, Predicate rightPredicate) {
+        Join join = join(leftTable, getTable(leftTable), leftColumn, leftPredicate,
+                rightTable, getTable(rightTable), rightColumn, rightPredicate);
+        return join == null ? "No such join." : join.explain();
+    }
+
+    // Null, after reporting why, when a table or column is missing
+    private Join join(String leftTable, Table left, String leftColumn, Predicate leftPredicate,
+                      String rightTable, Table right, String rightColumn, Predicate rightPredicate) {
+        if (left == null || right == null) {
+            String missing = left == null ? leftTable : rightTable;
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + missing + "\" does not exist.");
+            return null;
+        }
+        if (leftTable.equals(rightTable)) {
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + leftTable + "\" cannot be joined with itself.");
+            return null;
+        }
+        Join.Input leftInput = left.joinInput(leftTable, leftColumn, leftPredicate);
+        Join.Input rightInput = right.joinInput(rightTable, rightColumn, rightPredicate);
+        if (leftInput == null || rightInput == null) {
+            String missing = leftInput == null ? leftTable + "." + leftColumn : rightTable + "." + rightColumn;
+            report(DatabaseListener.Event.REJECTED, () -> "Column \"" + missing + "\" does not exist.");
+            return null;
+        }
+        return new Join(leftInput, rightInput, joinMemoryBudget);
+    }
+
+    public void updateData(String tableName, Map<String, String> setValues, Map<String, String> conditions) {
+        updateData(tableName, setValues, Predicate.equalities(conditions));
+    }
+
+    public void updateData(String tableName, Map<String, String> setValues, Predicate predicate) {
+        try (QueryTrace trace = metrics.open()) {
+            Table table = lockForWrite(tableName, trace);
+            if (table != null) {
+                long sequence;
+                int changed;
+                try {
+                    changed = table.updateData(setValues, predicate);
+                    // Nothing changed when no row matched or the statement was rejected; that is not logged
+                    sequence = changed > 0 ? log(WalRecord.update(tableName, setValues, predicate)) : 0;
+                } finally {
+                    table.getWriteLock().unlock();
+                }
+                if (changed > 0 && commit(sequence)) {
+                    report(DatabaseListener.Event.CHANGED, () -> "Data updated in table \"" + tableName + "\".");
+                }
+                metrics.record(tableName, DatabaseMetrics.Operation.UPDATE, trace, changed,
+                        () -> "UPDATE " + tableName + " SET " + setValues + where(predicate), null);
+            } else {
+                report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            }
         }
     }
 
     public void deleteData(String tableName, Map<String, String> conditions) {
-        Table table = tables.get(tableName);
+        deleteData(tableName, Predicate.equalities(conditions));
+    }
+
+    public void deleteData(String tableName, Predicate predicate) {
+        try (QueryTrace trace = metrics.open()) {
+            Table table = lockForWrite(tableName, trace);
+            if (table != null) {
+                long sequence;
+                int changed;
+                try {
+                    changed = table.deleteData(predicate);
+                    // Nothing changed when no row matched or the statement was rejected; that is not logged
+                    sequence = changed > 0 ? log(WalRecord.delete(tableName, predicate)) : 0;
+                } finally {
+                    table.getWriteLock().unlock();
+                }
+                if (changed > 0 && commit(sequence)) {
+                    report(DatabaseListener.Event.CHANGED, () -> "Data deleted from table \"" + tableName + "\".");
+                }
+                metrics.record(tableName, DatabaseMetrics.Operation.DELETE, trace, changed,
+                        () -> "DELETE FROM " + tableName + where(predicate), null);
+            } else {
+                report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            }
+        }
+    }
+
+    // Describes how a query on the table with this predicate would be executed
+    public String explain(String tableName, Predicate predicate) {
+        Table table = getTable(tableName);
         if (table != null) {
-            table.deleteData(conditions);
-            System.out.println("Data deleted from table \"" + tableName + "\".");
+            return "Table " + tableName + ": " + table.explain(predicate);
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            return "Table \"" + tableName + "\" does not exist.";
         }
     }
 
     public void dropTable(String tableName) {
-        if (tables.containsKey(tableName)) {
-            tables.remove(tableName);
-            System.out.println("Table \"" + tableName + "\" dropped.");
-        } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+        try (QueryTrace trace = metrics.start()) {
+            long sequence = -1;
+            synchronized (catalogLock) {
+                Table table = tables.get(tableName);
+                boolean stored = storedTables.remove(tableName) != null;
+                checkpointed.remove(tableName);
+                if (table != null) {
+                    lock(table, trace);
+                    try {
+                        tables.remove(tableName);
+                        bufferPool.remove(tableName);
+                        sequence = log(WalRecord.dropTable(tableName));
+                    } finally {
+                        table.getWriteLock().unlock();
+                    }
+                } else if (stored) {
+                    sequence = log(WalRecord.dropTable(tableName));
+                }
+            }
+            if (sequence >= 0) {
+                if (commit(sequence)) {
+                    report(DatabaseListener.Event.CHANGED, () -> "Table \"" + tableName + "\" dropped.");
+                }
+                metrics.record(tableName, DatabaseMetrics.Operation.DDL, trace, 0, () -> "DROP TABLE " + tableName, null);
+            } else {
+                report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            }
+        }
+    }
+
+    public void createIndex(String tableName, String indexName, String column, IndexType type) {
+        try (QueryTrace trace = metrics.start()) {
+            Table table = lockForWrite(tableName, trace);
+            if (table != null) {
+                long sequence = -1;
+                try {
+                    if (table.createIndex(indexName, column, type)) {
+                        sequence = log(WalRecord.createIndex(tableName, indexName, column, type));
+                    }
+                } finally {
+                    table.getWriteLock().unlock();
+                }
+                if (sequence >= 0) {
+                    if (commit(sequence)) {
+                        report(DatabaseListener.Event.CHANGED, () -> "Index \"" + indexName + "\" created on table \"" + tableName + "\".");
+                    }
+                    metrics.record(tableName, DatabaseMetrics.Operation.DDL, trace, 0,
+                            () -> "CREATE INDEX " + indexName + " ON " + tableName + " (" + column + ") USING " + type, null);
+                }
+            } else {
+                report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            }
+        }
+    }
+
+    public void dropIndex(String tableName, String indexName) {
+        try (QueryTrace trace = metrics.start()) {
+            Table table = lockForWrite(tableName, trace);
+            if (table != null) {
+                long sequence = -1;
+                try {
+                    if (table.dropIndex(indexName)) {
+                        sequence = log(WalRecord.dropIndex(tableName, indexName));
+                    }
+                } finally {
+                    table.getWriteLock().unlock();
+                }
+                if (sequence >= 0) {
+                    if (commit(sequence)) {
+                        report(DatabaseListener.Event.CHANGED, () -> "Index \"" + indexName + "\" dropped.");
+                    }
+                    metrics.record(tableName, DatabaseMetrics.Operation.DDL, trace, 0, () -> "DROP INDEX " + indexName + " ON " + tableName, null);
+                } else {
+                    report(DatabaseListener.Event.REJECTED, () -> "Index \"" + indexName + "\" does not exist.");
+                }
+            } else {
+                report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            }
         }
     }
 
     public List<Map<String, String>> selectColumns(String tableName, List<String> columns) {
-        Table table = tables.get(tableName);
+        Table table = getTable(tableName);
         if (table != null) {
-            return table.selectColumns(columns);
+            return measure(tableName, DatabaseMetrics.Operation.SELECT, () -> table.selectColumns(columns), List::size,
+                    () -> "SELECT " + String.join(", ", columns) + " FROM " + tableName, null);
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
             return Collections.emptyList();
         }
     }
 
     public List<Map<String, String>> selectDistinctData(String tableName) {
-        Table table = tables.get(tableName);
+        return selectDistinctData(tableName, Predicate.all());
+    }
+
+    public List<Map<String, String>> selectDistinctData(String tableName, Predicate predicate) {
+        Table table = getTable(tableName);
         if (table != null) {
-            return table.selectDistinctData();
+            return measure(tableName, DatabaseMetrics.Operation.AGGREGATE,
+                    () -> resultCache.rows(ResultCache.key("DISTINCT *", tableName, predicate), table, () -> table.selectDistinctData(predicate)),
+                    List::size,
+                    () -> "SELECT DISTINCT * FROM " + tableName + where(predicate), null);
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
             return Collections.emptyList();
         }
     }
 
     public List<Map<String, String>> selectDistinctColumns(String tableName, List<String> columns) {
-        Table table = tables.get(tableName);
+        return selectDistinctColumns(tableName, columns, Predicate.all());
+    }
+
+    public List<Map<String, String>> selectDistinctColumns(String tableName, List<String> columns, Predicate predicate) {
+        Table table = getTable(tableName);
         if (table != null) {
-            return table.selectDistinctColumns(columns);
+            return measure(tableName, DatabaseMetrics.Operation.AGGREGATE,
+                    () -> resultCache.rows(ResultCache.key("DISTINCT", tableName, columns, predicate), table,
+                            () -> table.selectDistinctColumns(columns, predicate)),
+                    List::size,
+                    () -> "SELECT DISTINCT " + String.join(", ", columns) + " FROM " + tableName + where(predicate), null);
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
             return Collections.emptyList();
         }
     }
 
     public int selectCount(String tableName, String column) {
-        Table table = tables.get(tableName);
+        return selectCount(tableName, column, Predicate.all());
+    }
+
+    // Distinct values of the column among the rows matching the predicate, with a missing
+    // value counting as one, as the command line has always counted
+    public int selectCount(String tableName, String column, Predicate predicate) {
+        Table table = getTable(tableName);
         if (table != null) {
-            return table.selectCount(column);
+            return measure(tableName, DatabaseMetrics.Operation.AGGREGATE,
+                    () -> (int) resultCache.number(ResultCache.key("COUNT DISTINCT", tableName, column, predicate), table,
+                            () -> table.selectCount(column, predicate)),
+                    count -> 1,
+                    () -> "SELECT COUNT(DISTINCT " + column + ") FROM " + tableName + where(predicate), null);
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            return 0;
+        }
+    }
+
+    // Distinct values of the column among the rows matching the predicate, not counting
+    // missing values, as SQL's COUNT(DISTINCT column) does; selectCount counts them as one
+    public int selectDistinctCount(String tableName, String column, Predicate predicate) {
+        Table table = getTable(tableName);
+        if (table != null) {
+            return measure(tableName, DatabaseMetrics.Operation.AGGREGATE,
+                    () -> (int) resultCache.number(ResultCache.key("COUNT DISTINCT NOT NULL", tableName, column, predicate), table,
+                            () -> table.selectDistinctCount(column, predicate)),
+                    count -> 1,
+                    () -> "SELECT COUNT(DISTINCT " + column + ") FROM " + tableName + where(predicate), null);
+        } else {
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            return 0;
+        }
+    }
+
+    public long selectApproximateCount(String tableName, String column) {
+        Table table = getTable(tableName);
+        if (table != null) {
+            return measure(tableName, DatabaseMetrics.Operation.AGGREGATE,
+                    () -> resultCache.number(ResultCache.key("APPROX_COUNT_DISTINCT", tableName, column), table,
+                            () -> table.selectApproximateCount(column)),
+                    count -> 1,
+                    () -> "SELECT APPROX_COUNT_DISTINCT(" + column + ") FROM " + tableName, null);
+        } else {
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
             return 0;
         }
     }
 
     public List<Map<String, String>> selectCountGroupBy(String tableName, String column1, String column2) {
-        Table table = tables.get(tableName);
+        Table table = getTable(tableName);
         if (table != null) {
-            return table.selectCountGroupBy(column1, column2);
+            return measure(tableName, DatabaseMetrics.Operation.AGGREGATE,
+                    () -> resultCache.rows(ResultCache.key("COUNT GROUP BY", tableName, column1, column2), table,
+                            () -> table.selectCountGroupBy(column1, column2)),
+                    List::size,
+                    () -> "SELECT " + column2 + ", COUNT(" + column1 + ") FROM " + tableName + " GROUP BY " + column2, null);
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
             return Collections.emptyList();
         }
     }
 
     public List<Map<String, String>> selectCountGroupByOrderBy(String tableName, String column1, String column2) {
-        Table table = tables.get(tableName);
+        Table table = getTable(tableName);
+        if (table != null) {
+            return measure(tableName, DatabaseMetrics.Operation.AGGREGATE,
+                    () -> resultCache.rows(ResultCache.key("COUNT GROUP BY ORDER BY", tableName, column1, column2), table,
+                            () -> table.selectCountGroupByOrderBy(column1, column2)),
+                    List::size,
+                    () -> "SELECT " + column2 + ", COUNT(" + column1 + ") FROM " + tableName + " GROUP BY " + column2 + " ORDER BY " + column2, null);
+        } else {
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
+            return Collections.emptyList();
+        }
+    }
+
+    // Aggregates the rows matching the predicate per group (see Table.selectAggregate)
+    public List<Map<String, String>> selectAggregate(String tableName, Predicate predicate, List<String> groupBy,
+                                                     List<Aggregate> aggregates, List<SortKey> orderBy, long limit) {
+        Table table = getTable(tableName);
         if (table != null) {
-            return table.selectCountGroupByOrderBy(column1, column2);
+            return measure(tableName, DatabaseMetrics.Operation.AGGREGATE,
+                    () -> resultCache.rows(ResultCache.key("AGGREGATE", tableName, predicate, groupBy, aggregates, orderBy, limit), table,
+                            () -> table.selectAggregate(predicate, groupBy, aggregates, orderBy, limit)),
+                    List::size,
+                    () -> "SELECT " + aggregateItems(groupBy, aggregates) + " FROM " + tableName + where(predicate)
+                            + (groupBy.isEmpty() ? "" : " GROUP BY " + String.join(", ", groupBy))
+                            + (orderBy.isEmpty() ? "" : " ORDER BY " + String.join(", ", orderBy.stream().map(SortKey::toString).toList()))
+                            + (limit < 0 ? "" : " LIMIT " + limit), null);
         } else {
-            System.out.println("Table \"" + tableName + "\" does not exist.");
+            report(DatabaseListener.Event.REJECTED, () -> "Table \"" + tableName + "\" does not exist.");
             return Collections.emptyList();
         }
     }
 
+    private static String aggregateItems(List<String> groupBy, List<Aggregate> aggregates) {
+        StringJoiner items = new StringJoiner(", ");
+        groupBy.forEach(items::add);
+        aggregates.forEach(aggregate -> items.add(aggregate.getName()));
+        return items.toString();
+    }
+
     public void saveToFile(String fileName) {
+        loadStoredTables();
         try (PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
             for (Map.Entry<String, Table> entry : tables.entrySet()) {
                 String tableName = entry.getKey();
@@ -152,7 +926,7 @@ public class SimpleDatabase implements Serializable {
                 writer.println(tableName);
 
                 if (table.getColumns() != null && !table.getColumns().isEmpty()) {
-                    writer.println(String.join(",", table.getColumns()));
+                    writer.println(String.join(",", table.getColumnDefinitions()));
                 }
 
                 for (Map<String, String> row : table.getData()) {
@@ -173,10 +947,13 @@ public class SimpleDatabase implements Serializable {
     }
 
     public void loadFromFile(String fileName) {
+        // Tables are built completely before they become visible to other threads
+        Map<String, Table> loaded = new LinkedHashMap<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
             String line;
             Table currentTable = null;
             List<String> columns = null;
+            TextBatch batch = null;
 
             while ((line = reader.readLine()) != null) {
                 if (line.isEmpty()) {
@@ -187,22 +964,521 @@ public class SimpleDatabase implements Serializable {
                 if (currentTable == null) {
                     // The line should be the table name
                     String tableName = line.trim();
-                    currentTable = new Table();
-                    tables.put(tableName, currentTable);
+                    currentTable = newTable();
+                    loaded.put(tableName, currentTable);
+                    columns = null;
                 } else if (columns == null) {
-                    // The line should contain column names
-                    columns = Arrays.asList(line.split(","));
-                    currentTable.createTable(columns);
+                    // The line should contain column definitions
+                    currentTable.createTable(Arrays.asList(line.split(",")));
+                    columns = currentTable.getColumns();
                 } else {
-                    // The line should contain row data
-                    List<String> values = Arrays.asList(line.split(","));
-                    currentTable.insertDataWithColumns(columns, values);
+                    // The line should contain row data; rows are appended a batch at a time
+                    String[] values = line.split(",", -1);
+                    if (values.length != columns.size()) {
+                        report(DatabaseListener.Event.REJECTED, () -> "Number of columns and values does not match.");
+                        continue;
+                    }
+                    if (batch == null || batch.table != currentTable) {
+                        flush(batch);
+                        batch = new TextBatch(currentTable);
+                    }
+                    batch.add(values);
                 }
             }
+            flush(batch);
         } catch (FileNotFoundException e) {
-            System.out.println("File not found: " + fileName);
+            report(DatabaseListener.Event.REJECTED, () -> "File not found: " + fileName);
+        } catch (IOException e) {
+            report(DatabaseListener.Event.REJECTED, () -> "Error reading file: " + e.getMessage());
+        }
+
+        long sequence = 0;
+        synchronized (catalogLock) {
+            for (Map.Entry<String, Table> entry : loaded.entrySet()) {
+                if (entry.getValue().getColumns() != null) {
+                    sequence = Math.max(sequence, replaceTable(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        commit(sequence);
+    }
+
+    // Rows of a text file waiting to be appended to a table that is still being loaded
+    private static class TextBatch {
+        final Table table;
+        final int[] positions;
+        final String[] values;
+        int count;
+
+        TextBatch(Table table) {
+            this.table = table;
+            this.positions = table.positionsOf(table.getColumns());
+            this.values = new String[BulkLoader.BATCH_SIZE * positions.length];
+        }
+
+        void add(String[] row) {
+            System.arraycopy(row, 0, values, count * positions.length, positions.length);
+            if (++count == BulkLoader.BATCH_SIZE) {
+                table.appendRows(positions, values, count);
+                count = 0;
+            }
+        }
+    }
+
+    private static void flush(TextBatch batch) {
+        if (batch != null && batch.count > 0) {
+            batch.table.appendRows(batch.positions, batch.values, batch.count);
+            batch.count = 0;
+        }
+    }
+
+    public void saveToBinaryFile(String fileName) {
+        loadStoredTables();
+        try {
+            PageFile.write(tables, fileName);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error saving database to file: " + e.getMessage(), e);
+        }
+    }
+
+    // Maps a page file; each table is read from it the first time it is used
+    public void openBinaryFile(String fileName) {
+        Map<String, StoredTable> opened;
+        try {
+            opened = PageFile.open(fileName);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            report(DatabaseListener.Event.REJECTED, () -> "File not found: " + fileName);
+            return;
+        } catch (IOException e) {
+            report(DatabaseListener.Event.REJECTED, () -> "Error reading file: " + e.getMessage());
+            return;
+        }
+
+        long sequence = 0;
+        synchronized (catalogLock) {
+            for (Map.Entry<String, StoredTable> entry : opened.entrySet()) {
+                if (writeAheadLog != null) {
+                    // The log must be able to rebuild the table without the page file
+                    sequence = Math.max(sequence, replaceTable(entry.getKey(), entry.getValue().load()));
+                    continue;
+                }
+                Table previous = tables.get(entry.getKey());
+                if (previous != null) {
+                    previous.getWriteLock().lock();
+                }
+                try {
+                    tables.remove(entry.getKey());
+                    bufferPool.remove(entry.getKey());
+                    storedTables.put(entry.getKey(), entry.getValue());
+                } finally {
+                    if (previous != null) {
+                        previous.getWriteLock().unlock();
+                    }
+                }
+            }
+        }
+        commit(sequence);
+    }
+
+    // Reclaims dead row versions in every table; returns the number of versions removed
+    public int vacuum() {
+        int removed = 0;
+        for (Table table : tables.values()) {
+            removed += table.vacuum();
+        }
+        return removed;
+    }
+
+    // Starts a daemon thread that vacuums tables in which at least a fifth of the row
+    // versions are dead. Vacuum blocks writers of the table it works on, never readers.
+    public synchronized void startVacuum(long intervalMillis) {
+        if (vacuumExecutor != null) {
+            return;
+        }
+        vacuumExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, dbName + "-vacuum");
+            thread.setDaemon(true);
+            return thread;
+        });
+        vacuumExecutor.scheduleWithFixedDelay(() -> {
+            for (Table table : tables.values()) {
+                if (table.needsVacuum(0.2)) {
+                    table.vacuum();
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopVacuum() {
+        if (vacuumExecutor != null) {
+            vacuumExecutor.shutdown();
+            vacuumExecutor = null;
+        }
+    }
+
+    // Replays the log into this database, then records every later mutation in it
+    public void openWriteAheadLog(String fileName) {
+        try {
+            WriteAheadLog log = new WriteAheadLog(fileName);
+            List<WalRecord> records = log.readAll();
+            for (WalRecord record : records) {
+                replay(record);
+            }
+            writeAheadLog = log;
+            report(DatabaseListener.Event.CHANGED, () -> "Replayed " + records.size() + " log records from " + fileName + ".");
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error opening write-ahead log: " + e.getMessage(), e);
+        }
+    }
+
+    public void closeWriteAheadLog() {
+        synchronized (checkpointLock) {
+            if (writeAheadLog != null) {
+                try {
+                    writeAheadLog.close();
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Error closing write-ahead log: " + e.getMessage(), e);
+                }
+                writeAheadLog = null;
+            }
+            // Without its log the directory no longer follows the database
+            dataDirectory = null;
+            lastCheckpoint = null;
+            checkpointed.clear();
+        }
+    }
+
+    // Keeps the database in a directory of checkpoints and log segments (see Checkpoint).
+    // The tables of the latest checkpoint are mapped and read when first used, only the
+    // log records written after it are replayed, and later changes are logged to a new
+    // segment. Tables already in memory and not in the checkpoint are kept.
+    public void openDataDirectory(String directory) {
+        synchronized (checkpointLock) {
+            if (writeAheadLog != null) {
+                report(DatabaseListener.Event.REJECTED, () -> "A write-ahead log is already open.");
+                return;
+            }
+            try {
+                Path path = Path.of(directory);
+                Files.createDirectories(path);
+                Checkpoint checkpoint = Checkpoint.read(path);
+                Map<String, Long> tableSequences = new HashMap<>();
+                synchronized (catalogLock) {
+                    for (Checkpoint.Entry entry : checkpoint.tables) {
+                        StoredTable stored = PageFile.open(path.resolve(entry.file).toString()).get(entry.table);
+                        if (stored == null) {
+                            throw new IOException("Checkpoint file " + entry.file + " does not hold table " + entry.table);
+                        }
+                        Table previous = tables.get(entry.table);
+                        if (previous != null) {
+                            previous.getWriteLock().lock();
+                        }
+                        try {
+                            tables.remove(entry.table);
+                            bufferPool.remove(entry.table);
+                            storedTables.put(entry.table, stored);
+                            checkpointed.put(entry.table, new Checkpointed(entry, stored, 0));
+                        } finally {
+                            if (previous != null) {
+                                previous.getWriteLock().unlock();
+                            }
+                        }
+                        tableSequences.put(entry.table, entry.sequence);
+                    }
+                }
+
+                // A record is replayed unless the checkpoint, or the file of its table, has it
+                long sequence = checkpoint.sequence;
+                int replayed = 0;
+                for (Map.Entry<Long, Path> segment : Checkpoint.segments(path).entrySet()) {
+                    long next = segment.getKey();
+                    try (WriteAheadLog log = new WriteAheadLog(segment.getValue().toString(), next)) {
+                        for (WalRecord record : log.readAll()) {
+                            next++;
+                            if (next > checkpoint.sequence && next > tableSequences.getOrDefault(record.getTableName(), 0L)) {
+                                replay(record);
+                                replayed++;
+                            }
+                        }
+                    }
+                    sequence = Math.max(sequence, next);
+                }
+
+                writeAheadLog = new WriteAheadLog(path.resolve(Checkpoint.segmentName(sequence)).toString(), sequence);
+                dataDirectory = path;
+                lastCheckpoint = checkpoint;
+                int replayedRecords = replayed;
+                report(DatabaseListener.Event.CHANGED, () -> "Opened checkpoint " + checkpoint.number + " in " + directory
+                        + " and replayed " + replayedRecords + " log records.");
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error opening data directory: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // Writes the tables changed since the last checkpoint to the data directory, each to a
+    // new page file, then replaces the manifest and deletes the files and log segments it
+    // no longer needs. This is a fuzzy checkpoint: writers only wait while the log switches
+    // to a new segment and, one table at a time, while a snapshot of the table is taken.
+    // Rows are copied and written from the snapshots without holding any lock. Returns the
+    // number of tables written.
+    public int checkpoint() {
+        synchronized (checkpointLock) {
+            if (dataDirectory == null) {
+                report(DatabaseListener.Event.REJECTED, () -> "No data directory is open.");
+                return 0;
+            }
+            int written;
+            try {
+                written = writeCheckpoint();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error writing checkpoint: " + e.getMessage(), e);
+                return 0;
+            }
+            // Tables just written can be evicted without writing them again
+            evictIfNeeded(null);
+            return written;
+        }
+    }
+
+    // A changed table as of the snapshot taken for a checkpoint
+    private static class TableCapture {
+        final String name;
+        final Table table;
+        final Snapshot snapshot;
+        final List<String> indexes;
+        final long version;
+        final long sequence;
+
+        TableCapture(String name, Table table, Snapshot snapshot, List<String> indexes, long version, long sequence) {
+            this.name = name;
+            this.table = table;
+            this.snapshot = snapshot;
+            this.indexes = indexes;
+            this.version = version;
+            this.sequence = sequence;
+        }
+    }
+
+    private int writeCheckpoint() throws IOException {
+        Path directory = dataDirectory;
+        Checkpoint previous = lastCheckpoint;
+        WriteAheadLog log = writeAheadLog;
+        long number = previous.number + 1;
+        List<Checkpoint.Entry> entries = new ArrayList<>();
+        List<TableCapture> changed = new ArrayList<>();
+        long sequence;
+        synchronized (catalogLock) {
+            // Records up to the returned one are in the closed segments, so once every table
+            // is captured below the checkpoint holds all of them
+            sequence = log.rotate(base -> directory.resolve(Checkpoint.segmentName(base)).toString());
+            Set<String> names = new TreeSet<>(tables.keySet());
+            names.addAll(storedTables.keySet());
+            names.addAll(checkpointed.keySet());
+            for (String name : names) {
+                Checkpointed current = checkpointed.get(name);
+                Table table = tables.get(name);
+                StoredTable stored = storedTables.get(name);
+                if (table == null && stored != null && (current == null || current.table != stored)) {
+                    // Opened from a page file rather than a checkpoint; it has to be read to be written
+                    table = getTable(name);
+                }
+                if (table == null) {
+                    // Not read since the last checkpoint, or being read right now
+                    if (current != null) {
+                        entries.add(current.entry);
+                    }
+                    continue;
+                }
+                table.getWriteLock().lock();
+                try {
+                    if (current != null && current.table == table && current.version == table.getVersion()) {
+                        entries.add(current.entry);
+                        continue;
+                    }
+                    changed.add(new TableCapture(name, table, table.snapshot(), table.getIndexDefinitions(),
+                            table.getVersion(), log.lastSequence()));
+                } finally {
+                    table.getWriteLock().unlock();
+                }
+            }
+        }
+        if (changed.isEmpty() && sequence == previous.sequence) {
+            return 0;
+        }
+
+        for (TableCapture capture : changed) {
+            String file = Checkpoint.tableFileName(number, entries.size());
+            PageFile.write(List.of(new PageFile.Image(capture.name, capture.table.getColumnDefinitions(), capture.indexes,
+                    () -> capture.table.compactSnapshot(capture.snapshot))), directory.resolve(file).toString());
+            entries.add(new Checkpoint.Entry(capture.name, file, capture.sequence));
+        }
+        Checkpoint checkpoint = new Checkpoint(number, sequence, entries);
+        checkpoint.write(directory);
+        lastCheckpoint = checkpoint;
+
+        synchronized (catalogLock) {
+            for (int i = entries.size() - changed.size(), c = 0; i < entries.size(); i++, c++) {
+                TableCapture capture = changed.get(c);
+                // A table dropped or replaced meanwhile is no longer the one in the checkpoint
+                if (tables.get(capture.name) == capture.table) {
+                    checkpointed.put(capture.name, new Checkpointed(entries.get(i), capture.table, capture.version));
+                }
+            }
+        }
+
+        Set<String> referenced = new HashSet<>();
+        for (Checkpoint.Entry entry : entries) {
+            referenced.add(entry.file);
+        }
+        for (Path file : Checkpoint.tableFiles(directory)) {
+            if (!referenced.contains(file.getFileName().toString())) {
+                Files.deleteIfExists(file);
+            }
+        }
+        for (Map.Entry<Long, Path> segment : Checkpoint.segments(directory).entrySet()) {
+            if (segment.getKey() < sequence) {
+                Files.deleteIfExists(segment.getValue());
+            }
+        }
+        return changed.size();
+    }
+
+    // Writes one table to a new file of the data directory under a new manifest that keeps the
+    // log position of the last checkpoint, from which its later records are still replayed.
+    // Returns what was written, or null if the table was dropped or replaced meanwhile.
+    private Checkpointed writeBack(String name, Table table) throws IOException {
+        Path directory = dataDirectory;
+        Checkpoint previous = lastCheckpoint;
+        long number = previous.number + 1;
+        Snapshot snapshot;
+        List<String> indexes;
+        long version;
+        long sequence;
+        table.getWriteLock().lock();
+        try {
+            if (tables.get(name) != table) {
+                return null;
+            }
+            snapshot = table.snapshot();
+            indexes = table.getIndexDefinitions();
+            version = table.getVersion();
+            sequence = writeAheadLog.lastSequence();
+        } finally {
+            table.getWriteLock().unlock();
+        }
+
+        String file = Checkpoint.tableFileName(number, 0);
+        PageFile.write(List.of(new PageFile.Image(name, table.getColumnDefinitions(), indexes,
+                () -> table.compactSnapshot(snapshot))), directory.resolve(file).toString());
+        Checkpoint.Entry written = new Checkpoint.Entry(name, file, sequence);
+        List<Checkpoint.Entry> entries = new ArrayList<>();
+        String replaced = null;
+        for (Checkpoint.Entry entry : previous.tables) {
+            if (entry.table.equals(name)) {
+                replaced = entry.file;
+            } else {
+                entries.add(entry);
+            }
+        }
+        entries.add(written);
+        Checkpoint checkpoint = new Checkpoint(number, previous.sequence, entries);
+        checkpoint.write(directory);
+        lastCheckpoint = checkpoint;
+        if (replaced != null) {
+            Files.deleteIfExists(directory.resolve(replaced));
+        }
+
+        Checkpointed result = new Checkpointed(written, table, version);
+        synchronized (catalogLock) {
+            if (tables.get(name) == table) {
+                checkpointed.put(name, result);
+            }
+        }
+        return result;
+    }
+
+    // Starts a daemon thread that takes a checkpoint at the given interval, which bounds
+    // how much of the log a restart has to replay
+    public synchronized void startCheckpoints(long intervalMillis) {
+        if (checkpointExecutor != null) {
+            return;
+        }
+        checkpointExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, dbName + "-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointExecutor.scheduleWithFixedDelay(this::checkpoint, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopCheckpoints() {
+        if (checkpointExecutor != null) {
+            checkpointExecutor.shutdown();
+            checkpointExecutor = null;
+        }
+    }
+
+    // Runs before the log is attached, so replayed operations are not logged again
+    private void replay(WalRecord record) {
+        String tableName = record.getTableName();
+        switch (record.getOperation()) {
+            case CREATE_TABLE:
+                createTable(tableName, record.getColumns());
+                break;
+            case DROP_TABLE:
+                dropTable(tableName);
+                break;
+            case INSERT:
+                insertData(tableName, record.getValues());
+                break;
+            case INSERT_WITH_COLUMNS:
+                insertDataWithColumns(tableName, record.getColumns(), record.getValues());
+                break;
+            case UPDATE:
+                updateData(tableName, record.getSetValues(), record.getPredicate());
+                break;
+            case DELETE:
+                deleteData(tableName, record.getPredicate());
+                break;
+            case CREATE_INDEX:
+                createIndex(tableName, record.getValues().get(0), record.getColumns().get(0), IndexType.valueOf(record.getValues().get(1)));
+                break;
+            case DROP_INDEX:
+                dropIndex(tableName, record.getValues().get(0));
+                break;
+            case INSERT_BATCH:
+                // Appended directly: going through a loader would rebuild the indexes per batch
+                Table table = getTable(tableName);
+                int[] positions = table == null ? null : table.positionsOf(record.getColumns());
+                if (positions != null && positions.length > 0) {
+                    table.appendRows(positions, record.getValues().toArray(new String[0]), record.getValues().size() / positions.length);
+                }
+                break;
+        }
+    }
+
+    // Returns the log sequence number of the record, or 0 when no log is attached
+    private long log(WalRecord record) {
+        WriteAheadLog log = writeAheadLog;
+        return log == null ? 0 : log.append(record);
+    }
+
+    // Waits until the logged record is durable; concurrent callers share one fsync. Changes
+    // are only reported once this returns true. When the log cannot be written the change
+    // stays in memory but would not survive a crash, which is reported as a rejection.
+    private boolean commit(long sequence) {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null || sequence == 0) {
+            return true;
+        }
+        try {
+            log.commit(sequence);
+            return true;
         } catch (IOException e) {
-            System.out.println("Error reading file: " + e.getMessage());
+            logger.log(Level.SEVERE, "Error writing to write-ahead log: " + e.getMessage(), e);
+            report(DatabaseListener.Event.REJECTED, () -> "The change could not be made durable: " + e);
+            return false;
         }
     }
 
@@ -0,0 +1,31 @@
+package database;
+
+// A consistent, lock-free view of a table: the row versions committed when it was taken
+class Snapshot {
+    final RowStore store;
+    final long timestamp;
+    final int size;
+    // The store's timestamp arrays, read once after the size (see RowStore)
+    private final long[] createdAt;
+    private final long[] deletedAt;
+    // The call the snapshot was taken for, counting the rows scanned; null outside of one
+    final QueryTrace trace;
+
+    Snapshot(RowStore store) {
+        this.store = store;
+        this.trace = QueryTrace.current();
+        // Read the timestamp before the size: every version committed by then lies below it
+        this.timestamp = store.commitTimestamp;
+        this.size = store.size;
+        this.createdAt = store.createdAt;
+        this.deletedAt = store.deletedAt;
+    }
+
+    boolean isVisible(int row) {
+        return createdAt[row] <= timestamp && deletedAt[row] > timestamp;
+    }
+
+    Column column(int position) {
+        return store.columns[position];
+    }
+}
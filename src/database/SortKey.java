@@ -0,0 +1,46 @@
+package database;
+
+import java.util.Objects;
+
+// One key of an ORDER BY: the name of a result column, ascending or descending. Rows
+// without a value sort before every value, so they come first in ascending order.
+public class SortKey {
+    private final String name;
+    private final boolean descending;
+
+    public SortKey(String name, boolean descending) {
+        this.name = name;
+        this.descending = descending;
+    }
+
+    public static SortKey ascending(String name) {
+        return new SortKey(name, false);
+    }
+
+    public static SortKey descending(String name) {
+        return new SortKey(name, true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SortKey key && name.equals(key.name) && descending == key.descending;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, descending);
+    }
+
+    @Override
+    public String toString() {
+        return descending ? name + " DESC" : name;
+    }
+}
@@ -0,0 +1,44 @@
+package database;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Ordered index backed by a skip list, so it can also answer range lookups
+class SortedIndex extends Index {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final NavigableMap<Object, PostingList> entries = new ConcurrentSkipListMap<>((a, b) -> ((Comparable) a).compareTo(b));
+
+    SortedIndex(String name, int column) {
+        super(name, column);
+    }
+
+    @Override
+    IndexType type() {
+        return IndexType.SORTED;
+    }
+
+    @Override
+    protected Map<Object, PostingList> entries() {
+        return entries;
+    }
+
+    @Override
+    Index emptyCopy() {
+        return new SortedIndex(getName(), getColumn());
+    }
+
+    // Adds the rows whose key lies between the bounds; a null bound leaves that side open
+    void range(Object from, boolean fromInclusive, Object to, boolean toInclusive, IntList target) {
+        NavigableMap<Object, PostingList> view = entries;
+        if (from != null) {
+            view = view.tailMap(from, fromInclusive);
+        }
+        if (to != null) {
+            view = view.headMap(to, toInclusive);
+        }
+        for (PostingList rows : view.values()) {
+            rows.copyTo(target);
+        }
+    }
+}
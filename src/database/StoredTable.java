@@ -0,0 +1,39 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// A table in a page file that has not been read yet; its column chunks are mapped
+// but only faulted in when load() decodes them
+class StoredTable {
+    private final List<String> columns;
+    private final List<String> indexes;
+    private final int rowCount;
+    private final ByteBuffer[] chunks;
+    // Version of the page file, which decides how the chunks are laid out
+    private final int version;
+
+    StoredTable(List<String> columns, List<String> indexes, int rowCount, ByteBuffer[] chunks, int version) {
+        this.columns = columns;
+        this.indexes = indexes;
+        this.rowCount = rowCount;
+        this.chunks = chunks;
+        this.version = version;
+    }
+
+    Table load() {
+        Table table = new Table();
+        ByteBuffer[] buffers = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            buffers[i] = chunks[i].duplicate();
+        }
+        table.load(columns, buffers, rowCount, version);
+
+        // Index definitions are "name column TYPE"
+        for (String index : indexes) {
+            String[] parts = index.split(" ");
+            table.createIndex(parts[0], parts[1], IndexType.valueOf(parts[2]));
+        }
+        return table;
+    }
+}
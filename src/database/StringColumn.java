@@ -0,0 +1,227 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Dictionary-encoded text: every distinct value is stored once and rows hold its int
+// code, so repeated values such as status codes cost four bytes a row. Equality
+// filters, DISTINCT and GROUP BY work on the codes without touching the strings.
+// The dictionary only grows; vacuum re-encodes the live rows into a fresh column.
+class StringColumn extends Column {
+    private static final int NULL_CODE = -1;
+    // Heap per dictionary entry besides its characters: the string, its slot in the
+    // dictionary and its entry in codeOf
+    private static final int ENTRY_BYTES = 104;
+
+    private volatile int[] codes;
+    private volatile String[] dictionary = new String[16];
+    private int dictionarySize;
+    private long dictionaryBytes;
+    // Read by queries looking up a value while the writer adds new ones
+    private final Map<String, Integer> codeOf = new ConcurrentHashMap<>();
+
+    StringColumn(int capacity) {
+        this.codes = new int[capacity];
+    }
+
+    @Override
+    ColumnType type() {
+        return ColumnType.TEXT;
+    }
+
+    @Override
+    boolean accepts(String value) {
+        return true;
+    }
+
+    @Override
+    void append(String value) {
+        appendCode(value == null ? NULL_CODE : encode(value));
+    }
+
+    @Override
+    void appendFrom(Column source, int row) {
+        StringColumn other = (StringColumn) source;
+        // Updates copy rows within the same column and can reuse the code
+        if (other == this) {
+            appendCode(codes[row]);
+        } else {
+            append(other.get(row));
+        }
+    }
+
+    private void appendCode(int code) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, grow(codes.length));
+        }
+        codes[size++] = code;
+    }
+
+    private int encode(String value) {
+        Integer code = codeOf.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (dictionarySize == dictionary.length) {
+            dictionary = Arrays.copyOf(dictionary, dictionary.length * 2);
+        }
+        // The entry is in place before any row or lookup can refer to its code
+        dictionary[dictionarySize] = value;
+        codeOf.put(value, dictionarySize);
+        dictionaryBytes += ENTRY_BYTES + value.length();
+        return dictionarySize++;
+    }
+
+    @Override
+    String get(int row) {
+        int code = codes[row];
+        return code == NULL_CODE ? null : dictionary[code];
+    }
+
+    @Override
+    boolean isNull(int row) {
+        return codes[row] == NULL_CODE;
+    }
+
+    int codeAt(int row) {
+        return codes[row];
+    }
+
+    // The value's code, or -1 when no row has ever held it
+    int codeFor(String value) {
+        Integer code = codeOf.get(value);
+        return code == null ? NULL_CODE : code;
+    }
+
+    String valueOf(int code) {
+        return dictionary[code];
+    }
+
+    @Override
+    int compareKey(int row, Object key) {
+        return dictionary[codes[row]].compareTo((String) key);
+    }
+
+    // Equality is decided on codes: the query value is looked up once per batch
+    @Override
+    int filter(Condition.Operator operator, Object key, int[] rows, int count) {
+        if (operator != Condition.Operator.EQ && operator != Condition.Operator.NE) {
+            return super.filter(operator, key, rows, count);
+        }
+        Integer code = codeOf.get((String) key);
+        boolean equal = operator == Condition.Operator.EQ;
+        if (code == null && equal) {
+            // A value missing from the dictionary matches no row
+            return 0;
+        }
+        int expected = code == null ? NULL_CODE : code;
+        int[] current = codes;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            int actual = current[row];
+            if (actual != NULL_CODE && (actual == expected) == equal) {
+                rows[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    @Override
+    long hashAt(int row) {
+        int code = codes[row];
+        return code == NULL_CODE ? 0 : mix(code + 1L);
+    }
+
+    @Override
+    boolean rowsEqual(int row, int other) {
+        return codes[row] == codes[other];
+    }
+
+    // Rows with the same code are equal without comparing their strings
+    @Override
+    int compareRows(int row, int other) {
+        int code = codes[row];
+        int otherCode = codes[other];
+        if (code == otherCode) {
+            return 0;
+        }
+        if (code == NULL_CODE || otherCode == NULL_CODE) {
+            return code == NULL_CODE ? -1 : 1;
+        }
+        return dictionary[code].compareTo(dictionary[otherCode]);
+    }
+
+    @Override
+    Object keyAt(int row) {
+        return get(row);
+    }
+
+    @Override
+    Object parseKey(String value) {
+        return value;
+    }
+
+    @Override
+    long memoryBytes() {
+        return codes.length * 4L + dictionaryBytes;
+    }
+
+    @Override
+    ByteBuffer encode() {
+        // [dictionary size][length-prefixed UTF-8 values][one code per row, -1 for null]
+        byte[][] encoded = new byte[dictionarySize][];
+        int length = 4 + size * 4;
+        for (int code = 0; code < dictionarySize; code++) {
+            encoded[code] = dictionary[code].getBytes(StandardCharsets.UTF_8);
+            length += 4 + encoded[code].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(dictionarySize);
+        for (byte[] value : encoded) {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+        buffer.asIntBuffer().put(codes, 0, size);
+        buffer.position(0);
+        return buffer;
+    }
+
+    // Replaces the contents with rows of the first page file version, each a
+    // length-prefixed UTF-8 string or -1 for a row without a value
+    void decodeValues(ByteBuffer buffer, int rows) {
+        codes = new int[Math.max(16, rows)];
+        size = 0;
+        for (int row = 0; row < rows; row++) {
+            int length = buffer.getInt();
+            if (length < 0) {
+                append(null);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                append(new String(bytes, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Override
+    void decode(ByteBuffer buffer, int rows) {
+        dictionarySize = buffer.getInt();
+        dictionary = new String[Math.max(16, dictionarySize)];
+        codeOf.clear();
+        dictionaryBytes = 0;
+        for (int code = 0; code < dictionarySize; code++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            dictionary[code] = new String(bytes, StandardCharsets.UTF_8);
+            codeOf.put(dictionary[code], code);
+            dictionaryBytes += ENTRY_BYTES + dictionary[code].length();
+        }
+        codes = new int[Math.max(16, rows)];
+        buffer.asIntBuffer().get(codes, 0, rows);
+        size = rows;
+    }
+}
@@ -1,154 +1,880 @@
 package database;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Supplier;
 
+// Rows are stored column by column in a RowStore, as versions stamped with the commit
+// that created them and the commit that deleted them. Mutations take the table's write
+// lock, append new versions and then publish a new commit timestamp. Queries take no
+// lock at all: they read from a Snapshot and only see versions committed before it.
 public class Table implements Serializable {
-    private List<Map<String, String>> data;
+    // Writers vacuum inline once dead versions outnumber live ones by this margin
+    private static final int INLINE_VACUUM_MIN_DEAD = 1024;
+
     private List<String> columns;
+    private List<ColumnType> types;
+    private Map<String, Integer> columnIndex;
+    private volatile RowStore store;
+    // Serializes writers; readers never take it
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Runs read queries as parallel morsels when set
+    private transient volatile ExecutorService queryExecutor;
+    // Told about changes and rejected requests; null reports nothing
+    private transient volatile DatabaseListener listener;
+    // Indexes set aside while bulk loads are running, and how many are. Changed under
+    // writeLock; the map is replaced rather than modified, like RowStore.indexes.
+    private transient volatile Map<String, Index> suspendedIndexes;
+    private transient int bulkLoads;
+    // Counts the changes to the rows and indexes; written under writeLock
+    private transient volatile long version;
 
-    public void createTable(List<String> columns) {
-        this.columns = columns;
-        this.data = new ArrayList<>();
-        System.out.println("Table created with columns: " + columns);
+    // Each column is declared as "name" (TEXT) or "name TYPE", e.g. "id INT"
+    public boolean createTable(List<String> columns) {
+        if (!defineColumns(columns)) {
+            return false;
+        }
+        this.store = new RowStore(types, 16);
+        report(DatabaseListener.Event.CHANGED, () -> "Table created with columns: " + getColumnDefinitions());
+        return true;
     }
 
-    public void insertData(List<String> values) {
-        Map<String, String> row = new LinkedHashMap<>();
-        for (int i = 0; i < values.size(); i++) {
-            row.put("Column" + (i + 1), values.get(i));
+    // Restores a table from column chunks read back from a page file of the given version:
+    // compressed segments, which carry their zone maps, or plain column images of an older
+    // file, whose text columns the first version stored as one string per row
+    boolean load(List<String> columns, ByteBuffer[] chunks, int rowCount, int version) {
+        if (!defineColumns(columns)) {
+            return false;
         }
-        data.add(row);
-        System.out.println("Data inserted: " + row);
+        Column[] storage = new Column[chunks.length];
+        ZoneMap[] zoneMaps = new ZoneMap[chunks.length];
+        for (int i = 0; i < storage.length; i++) {
+            storage[i] = types.get(i).newColumn(0);
+            if (version == PageFile.VERSION) {
+                zoneMaps[i] = Segments.read(chunks[i], storage[i], rowCount);
+            } else {
+                if (version == PageFile.FIRST_VERSION && storage[i] instanceof StringColumn strings) {
+                    strings.decodeValues(chunks[i], rowCount);
+                } else {
+                    storage[i].decode(chunks[i], rowCount);
+                }
+                zoneMaps[i] = ZoneMap.build(storage[i], rowCount);
+            }
+        }
+        RowStore loaded = new RowStore(storage, rowCount);
+        loaded.zoneMaps = zoneMaps;
+        this.store = loaded;
+        return true;
     }
 
-    public void insertDataWithColumns(List<String> columns, List<String> values) {
-        if (columns.size() == values.size()) {
-            Map<String, String> row = new LinkedHashMap<>();
+    private boolean defineColumns(List<String> columns) {
+        List<String> names = new ArrayList<>();
+        List<ColumnType> columnTypes = new ArrayList<>();
+        for (String definition : columns) {
+            String[] parts = definition.trim().split("\\s+");
+            ColumnType type = parts.length > 1 ? ColumnType.parse(parts[1]) : ColumnType.TEXT;
+            if (type == null || parts.length > 2) {
+                report(DatabaseListener.Event.REJECTED, () -> "Invalid column definition: " + definition);
+                return false;
+            }
+            // Every row map reuses these names; interning shares them across tables too
+            names.add(parts[0].intern());
+            columnTypes.add(type);
+        }
+
+        this.columns = names;
+        this.types = columnTypes;
+        this.columnIndex = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columnIndex.put(names.get(i), i);
+        }
+        return true;
+    }
+
+    // Returns whether the row was inserted; a rejected row is reported and leaves the table as it was
+    public boolean insertData(List<String> values) {
+        writeLock.lock();
+        try {
+            if (values.size() > columns.size()) {
+                report(DatabaseListener.Event.REJECTED, () -> "Number of columns and values does not match.");
+                return false;
+            }
+            String[] row = new String[columns.size()];
+            for (int i = 0; i < values.size(); i++) {
+                row[i] = values.get(i);
+            }
+            return insertRow(row, "Data inserted: ");
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // As insertData, for values of the named columns
+    public boolean insertDataWithColumns(List<String> columns, List<String> values) {
+        writeLock.lock();
+        try {
+            if (columns.size() != values.size()) {
+                report(DatabaseListener.Event.REJECTED, () -> "Number of columns and values does not match.");
+                return false;
+            }
+            String[] row = new String[this.columns.size()];
             for (int i = 0; i < columns.size(); i++) {
-                row.put(columns.get(i), values.get(i));
+                Integer index = columnIndex.get(columns.get(i));
+                if (index == null) {
+                    String column = columns.get(i);
+                    report(DatabaseListener.Event.REJECTED, () -> "Unknown column: " + column);
+                    return false;
+                }
+                row[index] = values.get(i);
             }
-            data.add(row);
-            System.out.println("Data inserted with specified columns: " + row);
-        } else {
-            System.out.println("Number of columns and values does not match.");
+            return insertRow(row, "Data inserted with specified columns: ");
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Positions of the named columns, or null if one is unknown or named twice
+    int[] positionsOf(List<String> names) {
+        int[] positions = new int[names.size()];
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < positions.length; i++) {
+            Integer position = columnIndex.get(names.get(i));
+            if (position == null || !seen.add(position)) {
+                return null;
+            }
+            positions[i] = position;
+        }
+        return positions;
+    }
+
+    // Appends a batch of rows as a single commit. Row r holds positions.length values,
+    // starting at values[r * positions.length], for the columns at those positions; other
+    // columns are left empty. Rows with an invalid value are skipped, and the appended rows
+    // are moved to the front of values, so the caller can log just those. Returns the number
+    // of rows appended.
+    int appendRows(int[] positions, String[] values, int count) {
+        writeLock.lock();
+        try {
+            RowStore current = store;
+            int width = positions.length;
+            int[] missing = new int[columns.size() - width];
+            boolean[] given = new boolean[columns.size()];
+            for (int position : positions) {
+                given[position] = true;
+            }
+            for (int c = 0, m = 0; c < given.length; c++) {
+                if (!given[c]) {
+                    missing[m++] = c;
+                }
+            }
+
+            long timestamp = current.commitTimestamp + 1;
+            int appended = 0;
+            rows:
+            for (int offset = 0; offset < count * width; offset += width) {
+                for (int i = 0; i < width; i++) {
+                    if (!current.columns[positions[i]].accepts(values[offset + i])) {
+                        continue rows;
+                    }
+                }
+                for (int i = 0; i < width; i++) {
+                    current.columns[positions[i]].append(values[offset + i]);
+                }
+                if (appended * width != offset) {
+                    System.arraycopy(values, offset, values, appended * width, width);
+                }
+                for (int position : missing) {
+                    current.columns[position].append(null);
+                }
+                current.publishVersion(timestamp);
+                appended++;
+            }
+            if (appended > 0) {
+                current.liveRows += appended;
+                commit(current, timestamp);
+            }
+            return appended;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Stops maintaining indexes while a bulk load runs: rows are appended without index
+    // updates and queries scan instead. The last load to finish rebuilds the indexes in one
+    // pass over the column each, which is much cheaper than inserting row by row.
+    void suspendIndexes() {
+        writeLock.lock();
+        try {
+            if (bulkLoads++ == 0) {
+                RowStore current = store;
+                suspendedIndexes = new LinkedHashMap<>(current.indexes);
+                current.indexes = Collections.emptyMap();
+            }
+        } finally {
+            writeLock.unlock();
         }
     }
 
+    void resumeIndexes() {
+        writeLock.lock();
+        try {
+            if (--bulkLoads > 0) {
+                return;
+            }
+            RowStore current = store;
+            Map<String, Index> indexes = new LinkedHashMap<>(current.indexes);
+            for (Index suspended : suspendedIndexes.values()) {
+                Index index = suspended.emptyCopy();
+                buildIndex(current, index);
+                indexes.put(index.getName(), index);
+            }
+            current.indexes = indexes;
+            suspendedIndexes = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean insertRow(String[] row, String message) {
+        RowStore current = store;
+        // Validate every value first so a bad value never leaves a partial row behind
+        for (int i = 0; i < row.length; i++) {
+            if (!current.columns[i].accepts(row[i])) {
+                int column = i;
+                report(DatabaseListener.Event.REJECTED, () -> "Invalid value for column " + columns.get(column) + " (" + types.get(column) + "): " + row[column]);
+                return false;
+            }
+        }
+        long timestamp = current.commitTimestamp + 1;
+        for (int i = 0; i < row.length; i++) {
+            current.columns[i].append(row[i]);
+        }
+        current.publishVersion(timestamp);
+        current.liveRows++;
+        commit(current, timestamp);
+        report(DatabaseListener.Event.ROW_WRITTEN, () -> message + materialize(current, current.size - 1));
+        return true;
+    }
+
     public List<Map<String, String>> selectData(Map<String, String> conditions) {
-        List<Map<String, String>> result = new ArrayList<>();
-        for (Map<String, String> row : data) {
-            if (matchConditions(row, conditions)) {
-                result.add(row);
+        return selectData(Predicate.equalities(conditions));
+    }
+
+    public List<Map<String, String>> selectData(Predicate predicate) {
+        Snapshot snapshot = snapshot();
+        return Morsels.run(queryExecutor, plan(snapshot, predicate, false), snapshot,
+                input -> materialize(snapshot, input), Table::concat);
+    }
+
+    // The plan a query with this predicate would use, with its estimates
+    public String explain(Predicate predicate) {
+        Snapshot snapshot = snapshot();
+        return plan(snapshot, predicate, true).explain();
+    }
+
+    public int updateData(Map<String, String> setValues, Map<String, String> conditions) {
+        return updateData(setValues, Predicate.equalities(conditions));
+    }
+
+    // Returns the number of rows updated
+    public int updateData(Map<String, String> setValues, Predicate predicate) {
+        writeLock.lock();
+        try {
+            RowStore current = store;
+            String[] newValues = new String[columns.size()];
+            boolean[] changed = new boolean[columns.size()];
+            for (Map.Entry<String, String> entry : setValues.entrySet()) {
+                Integer index = columnIndex.get(entry.getKey());
+                if (index == null) {
+                    // Rejected like an unknown column in the predicate, before any row gets a new version
+                    report(DatabaseListener.Event.REJECTED, () -> "Unknown column: " + entry.getKey());
+                    return 0;
+                }
+                if (!current.columns[index].accepts(entry.getValue())) {
+                    report(DatabaseListener.Event.REJECTED, () -> "Invalid value for column " + entry.getKey() + " (" + types.get(index) + "): " + entry.getValue());
+                    return 0;
+                }
+                newValues[index] = entry.getValue();
+                changed[index] = true;
+            }
+
+            IntList matches = matchingRows(predicate);
+            if (matches.isEmpty()) {
+                return 0;
+            }
+
+            // An update deletes the matching versions and appends their replacements
+            long timestamp = current.commitTimestamp + 1;
+            for (int i = 0; i < matches.size(); i++) {
+                int row = matches.get(i);
+                current.deletedAt[row] = timestamp;
+                for (int c = 0; c < current.columns.length; c++) {
+                    if (changed[c]) {
+                        current.columns[c].append(newValues[c]);
+                    } else {
+                        current.columns[c].appendFrom(current.columns[c], row);
+                    }
+                }
+                current.publishVersion(timestamp);
             }
+            current.deadRows += matches.size();
+            commit(current, timestamp);
+            return matches.size();
+        } finally {
+            writeLock.unlock();
         }
-        return result;
     }
 
-    public void updateData(Map<String, String> setValues, Map<String, String> conditions) {
-        for (Map<String, String> row : data) {
-            if (matchConditions(row, conditions)) {
-                row.putAll(setValues);
+    public int deleteData(Map<String, String> conditions) {
+        return deleteData(Predicate.equalities(conditions));
+    }
+
+    // Returns the number of rows deleted
+    public int deleteData(Predicate predicate) {
+        writeLock.lock();
+        try {
+            IntList matches = matchingRows(predicate);
+            if (matches.isEmpty()) {
+                return 0;
+            }
+            RowStore current = store;
+            long timestamp = current.commitTimestamp + 1;
+            for (int i = 0; i < matches.size(); i++) {
+                current.deletedAt[matches.get(i)] = timestamp;
             }
+            current.liveRows -= matches.size();
+            current.deadRows += matches.size();
+            commit(current, timestamp);
+            return matches.size();
+        } finally {
+            writeLock.unlock();
         }
     }
 
-    public void deleteData(Map<String, String> conditions) {
-        data.removeIf(row -> matchConditions(row, conditions));
+    // Rows currently visible that match the predicate; called by the writer
+    private IntList matchingRows(Predicate predicate) {
+        Snapshot snapshot = snapshot();
+        return plan(snapshot, predicate, false).execute(snapshot);
     }
 
-    private boolean matchConditions(Map<String, String> row, Map<String, String> conditions) {
-        if (conditions == null || conditions.isEmpty()) {
-            return true;
+    // Publishes every version stamped with the timestamp to new snapshots
+    private void commit(RowStore current, long timestamp) {
+        current.commitTimestamp = timestamp;
+        version++;
+        if (current.deadRows > INLINE_VACUUM_MIN_DEAD && current.deadRows > current.liveRows) {
+            vacuumLocked();
         }
+    }
+
+    // Reclaims row versions that no new snapshot can see. Returns the number removed.
+    public int vacuum() {
+        writeLock.lock();
+        try {
+            return vacuumLocked();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int vacuumLocked() {
+        RowStore current = store;
+        if (current.deadRows == 0) {
+            return 0;
+        }
+        // Every deleted version is committed, so new snapshots will never see it. Readers
+        // that already hold the current store keep using it until they finish.
+        RowStore compacted = RowStore.compact(new Snapshot(current), types);
+        Map<String, Index> rebuilt = new LinkedHashMap<>();
+        for (Index index : current.indexes.values()) {
+            Index copy = index.emptyCopy();
+            buildIndex(compacted, copy);
+            rebuilt.put(copy.getName(), copy);
+        }
+        compacted.indexes = rebuilt;
+        store = compacted;
+        return current.size - compacted.size;
+    }
 
-        for (Map.Entry<String, String> entry : conditions.entrySet()) {
-            String column = entry.getKey();
-            String expectedValue = entry.getValue();
+    // Whether enough dead versions have piled up for a background vacuum to be worthwhile
+    boolean needsVacuum(double deadRatio) {
+        RowStore current = store;
+        return current.deadRows > 0 && current.deadRows >= deadRatio * (current.liveRows + current.deadRows);
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(store);
+    }
 
-            if (row.containsKey(column) && !row.get(column).equals(expectedValue)) {
+    public boolean createIndex(String indexName, String column, IndexType type) {
+        writeLock.lock();
+        try {
+            RowStore current = store;
+            if (current.indexes.containsKey(indexName) || suspendedIndexes != null && suspendedIndexes.containsKey(indexName)) {
+                report(DatabaseListener.Event.REJECTED, () -> "Index \"" + indexName + "\" already exists.");
                 return false;
             }
+            Integer position = columnIndex.get(column);
+            if (position == null) {
+                report(DatabaseListener.Event.REJECTED, () -> "Unknown column: " + column);
+                return false;
+            }
+            Index index = type == IndexType.HASH ? new HashIndex(indexName, position) : new SortedIndex(indexName, position);
+            buildIndex(current, index);
+            Map<String, Index> indexes = new LinkedHashMap<>(current.indexes);
+            indexes.put(indexName, index);
+            current.indexes = indexes;
+            version++;
+            return true;
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        return true;
+    public boolean dropIndex(String indexName) {
+        writeLock.lock();
+        try {
+            RowStore current = store;
+            if (suspendedIndexes != null && suspendedIndexes.containsKey(indexName)) {
+                Map<String, Index> suspended = new LinkedHashMap<>(suspendedIndexes);
+                suspended.remove(indexName);
+                suspendedIndexes = suspended;
+                version++;
+                return true;
+            }
+            if (!current.indexes.containsKey(indexName)) {
+                return false;
+            }
+            Map<String, Index> indexes = new LinkedHashMap<>(current.indexes);
+            indexes.remove(indexName);
+            current.indexes = indexes;
+            version++;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public List<Map<String, String>> selectColumns(List<String> columns) {
+    // Index definitions as "name column TYPE", including indexes suspended by a bulk load
+    public List<String> getIndexDefinitions() {
+        // A load starting or finishing concurrently may briefly show an index in both maps
+        Map<String, Index> indexes = new LinkedHashMap<>(store.indexes);
+        Map<String, Index> suspended = suspendedIndexes;
+        if (suspended != null) {
+            indexes.putAll(suspended);
+        }
+        List<String> definitions = new ArrayList<>();
+        for (Index index : indexes.values()) {
+            definitions.add(index.getName() + " " + columns.get(index.getColumn()) + " " + index.type());
+        }
+        return definitions;
+    }
+
+    private static void buildIndex(RowStore target, Index index) {
+        Column column = target.columns[index.getColumn()];
+        int size = target.size;
+        for (int row = 0; row < size; row++) {
+            index.add(column.keyAt(row), row);
+        }
+    }
+
+    // Compiles the predicate against the columns and lets the planner pick an access path.
+    // Statistics are only consulted when there is a choice to make: an index on a tested
+    // column or several tests to order. EXPLAIN always uses them, to show real estimates.
+    private Plan plan(Snapshot snapshot, Predicate predicate, boolean analyze) {
+        FilterCompiler compiler = new FilterCompiler(columnIndex, snapshot);
+        Filter filter = compiler.compile(predicate == null ? Predicate.all() : predicate);
+        if (compiler.unknownColumn != null) {
+            // Matches no row, so a mistyped column never widens an UPDATE or DELETE
+            report(DatabaseListener.Event.REJECTED, () -> "Unknown column: " + compiler.unknownColumn);
+            filter = new OrFilter(new ArrayList<>());
+        }
+        boolean indexed = false;
+        for (Index index : snapshot.store.indexes.values()) {
+            indexed |= compiler.columns.get(index.getColumn());
+        }
+        TableStatistics statistics = analyze || indexed || filter.leafCount() > 1 ? statistics(snapshot.store) : null;
+        return traced(QueryPlanner.plan(snapshot, statistics, filter));
+    }
+
+    // Keeps the plan with the call running it, for the slow query log
+    private static Plan traced(Plan plan) {
+        QueryTrace trace = QueryTrace.current();
+        if (trace != null) {
+            trace.planned(plan);
+        }
+        return plan;
+    }
+
+    // One side of a join on the column, with the rows matching the predicate; null if the
+    // table has no such column. Planned with statistics, as the join is costed on them.
+    Join.Input joinInput(String tableName, String column, Predicate predicate) {
+        Integer position = columnIndex.get(column);
+        if (position == null) {
+            return null;
+        }
+        Snapshot snapshot = snapshot();
+        return new Join.Input(tableName, columns, snapshot, plan(snapshot, predicate, true), position, queryExecutor);
+    }
+
+    private TableStatistics statistics(RowStore current) {
+        TableStatistics statistics = current.statistics;
+        if (statistics == null || statistics.isStale(current)) {
+            statistics = new TableStatistics(current);
+            current.statistics = statistics;
+        }
+        return statistics;
+    }
+
+    // Rows are only turned into maps here, at the end of a pipeline
+    private List<Map<String, String>> materialize(Snapshot snapshot, BatchOperator input) {
         List<Map<String, String>> result = new ArrayList<>();
-        for (Map<String, String> row : data) {
-            Map<String, String> selectedRow = new LinkedHashMap<>();
-            for (String column : columns) {
-                selectedRow.put(column, row.get(column));
+        for (Batch batch = input.next(); batch != null; batch = input.next()) {
+            for (int i = 0; i < batch.count; i++) {
+                result.add(materialize(snapshot.store, batch.rows[i]));
+            }
+        }
+        return result;
+    }
+
+    // A plain scan when there is nothing to filter, so no statistics are gathered for it
+    private Plan matching(Snapshot snapshot, Predicate predicate) {
+        return predicate == null ? scanAll(snapshot) : plan(snapshot, predicate, false);
+    }
+
+    private static Plan scanAll(Snapshot snapshot) {
+        return traced(new FullScan(null, snapshot.size, snapshot.size));
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        first.addAll(second);
+        return first;
+    }
+
+    // Queries use the executor when one is set; null runs them on the calling thread
+    public void setQueryExecutor(ExecutorService executor) {
+        this.queryExecutor = executor;
+    }
+
+    public void setListener(DatabaseListener listener) {
+        this.listener = listener;
+    }
+
+    // Builds the message only when someone is listening for the event
+    private void report(DatabaseListener.Event event, Supplier<String> text) {
+        DatabaseListener current = listener;
+        if (current != null && current.isEnabled(event)) {
+            current.message(event, text.get());
+        }
+    }
+
+    private Map<String, String> materialize(RowStore source, int row) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < source.columns.length; i++) {
+            String value = source.columns[i].get(row);
+            if (value != null) {
+                result.put(columns.get(i), value);
             }
-            result.add(selectedRow);
         }
         return result;
     }
 
+    // Streams the rows matching the predicate, in row order; columns null selects whole
+    // rows. Cursors run their pipeline on the caller's thread, a batch at a time, rather
+    // than as parallel morsels, so that only what the caller fetches is ever built. A
+    // negative limit means no limit.
+    public Cursor openCursor(Predicate predicate, List<String> columns, long offset, long limit) {
+        Snapshot snapshot = snapshot();
+        BatchOperator input = plan(snapshot, predicate, false).open(snapshot);
+        if (columns == null) {
+            return new Cursor(input, this.columns, snapshot.store.columns, true, offset, limit);
+        }
+        return new Cursor(input, new ArrayList<>(columns), project(snapshot, columns), false, offset, limit);
+    }
+
+    public List<Map<String, String>> selectColumns(List<String> columns) {
+        Snapshot snapshot = snapshot();
+        Column[] projected = project(snapshot, columns);
+        return Morsels.run(queryExecutor, scanAll(snapshot), snapshot, input -> {
+            List<Map<String, String>> result = new ArrayList<>();
+            for (Batch batch = input.next(); batch != null; batch = input.next()) {
+                for (int i = 0; i < batch.count; i++) {
+                    Map<String, String> selectedRow = new LinkedHashMap<>();
+                    for (int c = 0; c < projected.length; c++) {
+                        selectedRow.put(columns.get(c), projected[c] == null ? null : projected[c].get(batch.rows[i]));
+                    }
+                    result.add(selectedRow);
+                }
+            }
+            return result;
+        }, Table::concat);
+    }
+
     public List<Map<String, String>> selectDistinctData() {
-        Set<Map<String, String>> distinctRows = new LinkedHashSet<>(data);
-        return new ArrayList<>(distinctRows);
+        return selectDistinctData(null);
+    }
+
+    // Distinct rows among those matching the predicate; null matches every row
+    public List<Map<String, String>> selectDistinctData(Predicate predicate) {
+        Snapshot snapshot = snapshot();
+        IntList rows = distinctRows(snapshot, matching(snapshot, predicate), snapshot.store.columns);
+        List<Map<String, String>> result = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            result.add(materialize(snapshot.store, rows.get(i)));
+        }
+        return result;
     }
 
     public List<Map<String, String>> selectDistinctColumns(List<String> columns) {
-        List<Map<String, String>> result = new ArrayList<>();
-        for (Map<String, String> row : data) {
+        return selectDistinctColumns(columns, null);
+    }
+
+    public List<Map<String, String>> selectDistinctColumns(List<String> columns, Predicate predicate) {
+        Snapshot snapshot = snapshot();
+        Column[] projected = project(snapshot, columns);
+        IntList rows = distinctRows(snapshot, matching(snapshot, predicate), projected);
+        List<Map<String, String>> result = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
             Map<String, String> selectedRow = new LinkedHashMap<>();
-            for (String column : columns) {
-                selectedRow.put(column, row.get(column));
-            }
-            if (!result.contains(selectedRow)) {
-                result.add(selectedRow);
+            for (int c = 0; c < projected.length; c++) {
+                selectedRow.put(columns.get(c), projected[c] == null ? null : projected[c].get(rows.get(i)));
             }
+            result.add(selectedRow);
         }
         return result;
     }
 
+    // One row per distinct combination of values, first occurrences in plan order.
+    // Each morsel deduplicates its own rows before the partial sets are merged.
+    private IntList distinctRows(Snapshot snapshot, Plan plan, Column[] columns) {
+        return Morsels.run(queryExecutor, plan, snapshot, input -> {
+            DistinctRows rows = new DistinctRows(columns);
+            rows.addAll(input);
+            return rows;
+        }, DistinctRows::merge).rows();
+    }
+
+    // Columns of the table by name, with null for names the table does not have
+    private Column[] project(Snapshot snapshot, List<String> columns) {
+        Column[] projected = new Column[columns.size()];
+        for (int i = 0; i < projected.length; i++) {
+            Integer index = columnIndex.get(columns.get(i));
+            projected[i] = index == null ? null : snapshot.column(index);
+        }
+        return projected;
+    }
+
+    // Counts the distinct values of the column, with a missing value counting as one
     public int selectCount(String column) {
-        Set<String> uniqueValues = new HashSet<>();
-        for (Map<String, String> row : data) {
-            uniqueValues.add(row.get(column));
+        return selectCount(column, null);
+    }
+
+    // The same, over the rows matching the predicate; null matches every row
+    public int selectCount(String column, Predicate predicate) {
+        Snapshot snapshot = snapshot();
+        return distinctRows(snapshot, matching(snapshot, predicate), project(snapshot, List.of(column))).size();
+    }
+
+    // Distinct values of the column among the rows matching the predicate, not counting
+    // missing values, as SQL's COUNT(DISTINCT column) does; null matches every row
+    public int selectDistinctCount(String column, Predicate predicate) {
+        Snapshot snapshot = snapshot();
+        Column[] projected = project(snapshot, List.of(column));
+        if (projected[0] == null) {
+            return 0;
+        }
+        IntList rows = distinctRows(snapshot, matching(snapshot, predicate), projected);
+        for (int i = 0; i < rows.size(); i++) {
+            // Missing values are one group, so there is at most one such row
+            if (projected[0].isNull(rows.get(i))) {
+                return rows.size() - 1;
+            }
         }
-        return uniqueValues.size();
+        return rows.size();
     }
 
+    // Estimated number of distinct values in the column, not counting missing values,
+    // read from the column's sketch without scanning. Values of updated or deleted rows
+    // still count until the next vacuum.
+    public long selectApproximateCount(String column) {
+        Integer index = columnIndex.get(column);
+        return index == null ? 0 : store.sketches[index].estimate();
+    }
+
+    // Rows per value of column2, as {column1: count, column2: value}
     public List<Map<String, String>> selectCountGroupBy(String column1, String column2) {
-        Map<String, Integer> countMap = new HashMap<>();
-        for (Map<String, String> row : data) {
-            String key = row.get(column2);
-            countMap.put(key, countMap.getOrDefault(key, 0) + 1);
-        }
+        return countGroups(column1, column2, false);
+    }
 
-        List<Map<String, String>> result = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : countMap.entrySet()) {
+    // The same, sorted by the value of column2, as the column's type orders it
+    public List<Map<String, String>> selectCountGroupByOrderBy(String column1, String column2) {
+        return countGroups(column1, column2, true);
+    }
+
+    private List<Map<String, String>> countGroups(String countColumn, String groupColumn, boolean sorted) {
+        Snapshot snapshot = snapshot();
+        Column[] values = project(snapshot, List.of(groupColumn));
+        GroupAggregate groups = aggregate(snapshot, scanAll(snapshot), values, List.of(Aggregate.count()), new Column[1]);
+        int[] order;
+        if (sorted && values[0] != null) {
+            order = groups.top((group, other) -> values[0].compareRows(groups.representative(group), groups.representative(other)), -1);
+        } else {
+            order = new int[groups.size()];
+            Arrays.setAll(order, group -> group);
+        }
+        List<Map<String, String>> result = new ArrayList<>(order.length);
+        for (int group : order) {
             Map<String, String> row = new LinkedHashMap<>();
-            row.put(column1, String.valueOf(entry.getValue()));
-            row.put(column2, entry.getKey());
+            row.put(countColumn, groups.result(group, 0));
+            row.put(groupColumn, values[0] == null ? null : values[0].get(groups.representative(group)));
             result.add(row);
         }
-
         return result;
     }
 
-    public List<Map<String, String>> selectCountGroupByOrderBy(String column1, String column2) {
-        List<Map<String, String>> groupedData = selectCountGroupBy(column1, column2);
+    // Groups the rows matching the predicate by the values of the group columns and
+    // computes the aggregates of each group (see GroupAggregate). A row holds the group
+    // columns, then the aggregates under their names. Rows are sorted by the order keys,
+    // each naming a group column or an aggregate, and a non-negative limit keeps only the
+    // first rows, picked with a bounded heap rather than by sorting every group. With no
+    // group columns, all matching rows form one group, which is there even if none match.
+    public List<Map<String, String>> selectAggregate(Predicate predicate, List<String> groupBy, List<Aggregate> aggregates,
+                                                     List<SortKey> orderBy, long limit) {
+        Snapshot snapshot = snapshot();
+        Column[] groupColumns = project(snapshot, groupBy);
+        Column[] aggregateColumns = new Column[aggregates.size()];
+        for (int i = 0; i < aggregateColumns.length; i++) {
+            Aggregate aggregate = aggregates.get(i);
+            Integer index = aggregate.getColumn() == null ? null : columnIndex.get(aggregate.getColumn());
+            aggregateColumns[i] = index == null ? null : snapshot.column(index);
+            if (!GroupAggregate.accepts(aggregate, aggregateColumns[i])) {
+                report(DatabaseListener.Event.REJECTED, () -> aggregate.getFunction() + " needs a numeric column, not " + aggregate.getColumn() + ".");
+                return Collections.emptyList();
+            }
+        }
+        List<IntBinaryOperator> keys = new ArrayList<>(orderBy.size());
+        for (SortKey key : orderBy) {
+            if (!groupBy.contains(key.getName()) && aggregateNamed(aggregates, key.getName()) < 0) {
+                report(DatabaseListener.Event.REJECTED, () -> "Cannot order by " + key.getName() + ": it is not grouped or aggregated.");
+                return Collections.emptyList();
+            }
+        }
+
+        GroupAggregate groups = aggregate(snapshot, plan(snapshot, predicate, false), groupColumns, aggregates, aggregateColumns);
+        for (SortKey key : orderBy) {
+            int position = groupBy.indexOf(key.getName());
+            IntBinaryOperator order;
+            if (position >= 0) {
+                Column column = groupColumns[position];
+                order = (group, other) -> column == null ? 0
+                        : column.compareRows(groups.representative(group), groups.representative(other));
+            } else {
+                int aggregate = aggregateNamed(aggregates, key.getName());
+                order = (group, other) -> groups.compare(group, other, aggregate);
+            }
+            keys.add(key.isDescending() ? (group, other) -> order.applyAsInt(other, group) : order);
+        }
+
+        int[] selected;
+        if (keys.isEmpty()) {
+            selected = new int[(int) (limit < 0 ? groups.size() : Math.min(limit, groups.size()))];
+            Arrays.setAll(selected, group -> group);
+        } else {
+            selected = groups.top((group, other) -> {
+                for (IntBinaryOperator key : keys) {
+                    int order = key.applyAsInt(group, other);
+                    if (order != 0) {
+                        return order;
+                    }
+                }
+                return 0;
+            }, limit);
+        }
+        List<Map<String, String>> result = new ArrayList<>(selected.length);
+        for (int group : selected) {
+            Map<String, String> row = new LinkedHashMap<>();
+            int representative = groups.representative(group);
+            for (int c = 0; c < groupColumns.length; c++) {
+                row.put(groupBy.get(c), groupColumns[c] == null ? null : groupColumns[c].get(representative));
+            }
+            for (int a = 0; a < aggregateColumns.length; a++) {
+                row.put(aggregates.get(a).getName(), groups.result(group, a));
+            }
+            result.add(row);
+        }
+        return result;
+    }
 
-        // Sort the result by the specified column
-        groupedData.sort((row1, row2) -> {
-            String value1 = row1.get(column2);
-            String value2 = row2.get(column2);
-            return value1.compareTo(value2);
-        });
+    private static int aggregateNamed(List<Aggregate> aggregates, String name) {
+        for (int i = 0; i < aggregates.size(); i++) {
+            if (aggregates.get(i).getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-        return groupedData;
+    // Per-morsel groups are merged into one table
+    private GroupAggregate aggregate(Snapshot snapshot, Plan plan, Column[] groupColumns,
+                                     List<Aggregate> aggregates, Column[] aggregateColumns) {
+        return Morsels.run(queryExecutor, plan, snapshot, input -> {
+            GroupAggregate groups = new GroupAggregate(groupColumns, aggregates, aggregateColumns);
+            groups.addAll(input);
+            return groups;
+        }, GroupAggregate::merge);
     }
 
     public List<String> getColumns() {
         return columns;
     }
 
+    public List<ColumnType> getColumnTypes() {
+        return types;
+    }
+
+    // Column declarations in the form accepted by createTable
+    public List<String> getColumnDefinitions() {
+        List<String> definitions = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnType type = types.get(i);
+            definitions.add(type == ColumnType.TEXT ? columns.get(i) : columns.get(i) + " " + type);
+        }
+        return definitions;
+    }
+
+    ReentrantLock getWriteLock() {
+        return writeLock;
+    }
+
+    // Copy of the rows visible right now, taken without blocking writers
+    RowStore compactSnapshot() {
+        return compactSnapshot(snapshot());
+    }
+
+    RowStore compactSnapshot(Snapshot snapshot) {
+        return RowStore.compact(snapshot, types);
+    }
+
+    // Changes whenever a commit changes the rows or an index is created or dropped, so a
+    // copy of the table taken at one version is still current while the version is the same
+    public long getVersion() {
+        return version;
+    }
+
+    // Approximate heap taken by the current rows and indexes
+    public long getMemoryBytes() {
+        return store.memoryBytes();
+    }
+
+    public int getRowCount() {
+        return store.liveRows;
+    }
+
     public List<Map<String, String>> getData() {
-        return data;
+        Snapshot snapshot = snapshot();
+        return Morsels.run(queryExecutor, scanAll(snapshot), snapshot, input -> materialize(snapshot, input), Table::concat);
     }
 }
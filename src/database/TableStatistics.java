@@ -0,0 +1,38 @@
+package database;
+
+// Column statistics of one RowStore, analyzed lazily column by column. The whole set is
+// replaced once the table has changed by more than a tenth of its rows since analysis.
+class TableStatistics {
+    private static final double STALE_FRACTION = 0.1;
+    private static final int STALE_MIN_CHANGES = 100;
+
+    private final long analyzedChanges;
+    private final int analyzedRows;
+    // Filled in racily; ColumnStatistics is immutable, so a reader sees a whole entry or none
+    private final ColumnStatistics[] columns;
+
+    TableStatistics(RowStore store) {
+        this.analyzedChanges = changes(store);
+        this.analyzedRows = store.liveRows;
+        this.columns = new ColumnStatistics[store.columns.length];
+    }
+
+    // Inserts and updates append versions and updates and deletes retire them,
+    // so this grows with every changed row
+    private static long changes(RowStore store) {
+        return (long) store.size + store.deadRows;
+    }
+
+    boolean isStale(RowStore store) {
+        return changes(store) - analyzedChanges > STALE_FRACTION * analyzedRows + STALE_MIN_CHANGES;
+    }
+
+    ColumnStatistics column(Snapshot snapshot, int position) {
+        ColumnStatistics statistics = columns[position];
+        if (statistics == null) {
+            statistics = ColumnStatistics.analyze(snapshot, position);
+            columns[position] = statistics;
+        }
+        return statistics;
+    }
+}
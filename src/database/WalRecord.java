@@ -0,0 +1,304 @@
+package database;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// One logged mutation of the database, in the order it was applied
+public class WalRecord {
+    public enum Operation {
+        CREATE_TABLE,
+        DROP_TABLE,
+        INSERT,
+        INSERT_WITH_COLUMNS,
+        UPDATE,
+        DELETE,
+        CREATE_INDEX,
+        DROP_INDEX,
+        INSERT_BATCH
+    }
+
+    private static final int PREDICATE = -2;
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int NOT = 2;
+    private static final int COMPARISON = 3;
+    private static final int BETWEEN = 4;
+    private static final int IN = 5;
+    private static final int LIKE = 6;
+
+    private final Operation operation;
+    private final String tableName;
+    private final List<String> columns;
+    private final List<String> values;
+    private final Map<String, String> setValues;
+    private final Predicate predicate;
+
+    WalRecord(Operation operation, String tableName, List<String> columns, List<String> values,
+              Map<String, String> setValues, Predicate predicate) {
+        this.operation = operation;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.values = values;
+        this.setValues = setValues;
+        this.predicate = predicate;
+    }
+
+    static WalRecord createTable(String tableName, List<String> columns) {
+        return new WalRecord(Operation.CREATE_TABLE, tableName, columns, null, null, null);
+    }
+
+    static WalRecord dropTable(String tableName) {
+        return new WalRecord(Operation.DROP_TABLE, tableName, null, null, null, null);
+    }
+
+    static WalRecord insert(String tableName, List<String> values) {
+        return new WalRecord(Operation.INSERT, tableName, null, values, null, null);
+    }
+
+    static WalRecord insertWithColumns(String tableName, List<String> columns, List<String> values) {
+        return new WalRecord(Operation.INSERT_WITH_COLUMNS, tableName, columns, values, null, null);
+    }
+
+    // A bulk-loaded batch: values holds the rows one after another, columns.size() values each
+    static WalRecord insertBatch(String tableName, List<String> columns, List<String> values) {
+        return new WalRecord(Operation.INSERT_BATCH, tableName, columns, values, null, null);
+    }
+
+    static WalRecord update(String tableName, Map<String, String> setValues, Predicate predicate) {
+        return new WalRecord(Operation.UPDATE, tableName, null, null, setValues, predicate);
+    }
+
+    static WalRecord delete(String tableName, Predicate predicate) {
+        return new WalRecord(Operation.DELETE, tableName, null, null, null, predicate);
+    }
+
+    // Index records keep the index name and type in values and the indexed column in columns
+    static WalRecord createIndex(String tableName, String indexName, String column, IndexType type) {
+        return new WalRecord(Operation.CREATE_INDEX, tableName, List.of(column), List.of(indexName, type.name()), null, null);
+    }
+
+    static WalRecord dropIndex(String tableName, String indexName) {
+        return new WalRecord(Operation.DROP_INDEX, tableName, null, List.of(indexName), null, null);
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public Map<String, String> getSetValues() {
+        return setValues;
+    }
+
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(operation.ordinal());
+            writeString(out, tableName);
+            writeList(out, columns);
+            writeList(out, values);
+            writeMap(out, setValues);
+            writePredicate(out, predicate);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static WalRecord decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Operation operation = Operation.values()[in.readUnsignedByte()];
+        String tableName = readString(in);
+        List<String> columns = readList(in);
+        List<String> values = readList(in);
+        Map<String, String> setValues = readMap(in);
+        Predicate predicate = readPredicate(in);
+        return new WalRecord(operation, tableName, columns, values, setValues, predicate);
+    }
+
+    // Strings are length-prefixed UTF-8, with -1 standing for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list == null ? -1 : list.size());
+        if (list != null) {
+            for (String value : list) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map == null ? -1 : map.size());
+        if (map != null) {
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    // A predicate is marked by a count of -2, so logs holding the older list of AND-ed
+    // comparisons (a count of them, or -1 for none) still replay. It is then written as
+    // a tree: a node kind followed by the operands or the column and values.
+    private static void writePredicate(DataOutputStream out, Predicate predicate) throws IOException {
+        if (predicate == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(PREDICATE);
+        writeNode(out, predicate);
+    }
+
+    private static void writeNode(DataOutputStream out, Predicate predicate) throws IOException {
+        if (predicate instanceof Predicate.And and) {
+            out.writeByte(AND);
+            writeOperands(out, and.getOperands());
+        } else if (predicate instanceof Predicate.Or or) {
+            out.writeByte(OR);
+            writeOperands(out, or.getOperands());
+        } else if (predicate instanceof Predicate.Not not) {
+            out.writeByte(NOT);
+            writeNode(out, not.getOperand());
+        } else if (predicate instanceof Condition condition) {
+            out.writeByte(COMPARISON);
+            writeString(out, condition.getColumn());
+            writeString(out, condition.getOperator().getSymbol());
+            writeString(out, condition.getValue());
+        } else if (predicate instanceof Predicate.Between between) {
+            out.writeByte(BETWEEN);
+            writeString(out, between.getColumn());
+            writeString(out, between.getLow());
+            writeString(out, between.getHigh());
+        } else if (predicate instanceof Predicate.In in) {
+            out.writeByte(IN);
+            writeString(out, in.getColumn());
+            writeList(out, in.getValues());
+        } else {
+            Predicate.Like like = (Predicate.Like) predicate;
+            out.writeByte(LIKE);
+            writeString(out, like.getColumn());
+            writeString(out, like.getPattern());
+        }
+    }
+
+    private static void writeOperands(DataOutputStream out, List<Predicate> operands) throws IOException {
+        out.writeInt(operands.size());
+        for (Predicate operand : operands) {
+            writeNode(out, operand);
+        }
+    }
+
+    private static Predicate readPredicate(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size == PREDICATE) {
+            return readNode(in);
+        }
+        if (size < 0) {
+            return null;
+        }
+        List<Condition> conditions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            conditions.add(readCondition(in));
+        }
+        return Predicate.and(conditions);
+    }
+
+    private static Predicate readNode(DataInputStream in) throws IOException {
+        int kind = in.readUnsignedByte();
+        switch (kind) {
+            case AND:
+                return Predicate.and(readOperands(in));
+            case OR:
+                return Predicate.or(readOperands(in));
+            case NOT:
+                return Predicate.not(readNode(in));
+            case COMPARISON:
+                return readCondition(in);
+            case BETWEEN:
+                return Predicate.between(readString(in), readString(in), readString(in));
+            case IN:
+                return Predicate.in(readString(in), readList(in));
+            case LIKE:
+                return Predicate.like(readString(in), readString(in));
+            default:
+                throw new IOException("Unknown predicate node " + kind + " in log record");
+        }
+    }
+
+    private static List<Predicate> readOperands(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Predicate> operands = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            operands.add(readNode(in));
+        }
+        return operands;
+    }
+
+    private static Condition readCondition(DataInputStream in) throws IOException {
+        String column = readString(in);
+        Condition.Operator operator = Condition.Operator.fromSymbol(readString(in));
+        if (operator == null) {
+            throw new IOException("Unknown condition operator in log record");
+        }
+        return new Condition(column, operator, readString(in));
+    }
+}
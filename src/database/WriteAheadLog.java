@@ -0,0 +1,210 @@
+package database;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.zip.CRC32;
+
+// Append-only log of database mutations. Each record is framed as
+// [length][crc32][payload]. Writers append records to an in-memory buffer and
+// then wait in commit(); whichever writer gets there first writes and fsyncs
+// everything buffered so far, so concurrent writers share one fsync (group commit).
+// A log can be rotated into a new file; sequence numbers then carry on from the old one.
+public class WriteAheadLog implements Closeable {
+    private static final int HEADER_SIZE = 8;
+
+    private FileChannel channel;
+    private final Object lock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean flushing;
+    private IOException flushFailure;
+
+    public WriteAheadLog(String fileName) throws IOException {
+        this(fileName, 0);
+    }
+
+    // A log whose first new record gets sequence number baseSequence + 1
+    WriteAheadLog(String fileName, long baseSequence) throws IOException {
+        this.channel = open(fileName);
+        this.appendedSequence = baseSequence;
+        this.durableSequence = baseSequence;
+    }
+
+    private static FileChannel open(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    // Reads every complete record in the log. A torn or corrupt tail left by a crash
+    // is cut off so that new records are appended after the last valid one.
+    public List<WalRecord> readAll() throws IOException {
+        List<WalRecord> records = new ArrayList<>();
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_SIZE);
+            if (checksum(payload.array()) != checksum) {
+                break;
+            }
+            records.add(WalRecord.decode(payload.array()));
+            position += HEADER_SIZE + length;
+        }
+        channel.truncate(position);
+        channel.position(position);
+        return records;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    // Buffers a record and returns its sequence number for commit()
+    public long append(WalRecord record) {
+        byte[] payload = record.encode();
+        synchronized (lock) {
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeInt(payload.length);
+                out.writeInt(checksum(payload));
+                out.write(payload);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return ++appendedSequence;
+        }
+    }
+
+    // The sequence number of the last record appended
+    long lastSequence() {
+        synchronized (lock) {
+            return appendedSequence;
+        }
+    }
+
+    // Makes every record appended so far durable in the current file, then continues in a
+    // new one, named from the last sequence number in the old file, which is returned.
+    // Appends wait for the switch; the old file is closed and can be deleted afterwards.
+    long rotate(LongFunction<String> fileForBase) throws IOException {
+        synchronized (lock) {
+            while (flushing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the log to be flushed");
+                }
+            }
+            if (flushFailure != null) {
+                throw flushFailure;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // A partly written batch must not be written again
+                flushFailure = e;
+                lock.notifyAll();
+                throw e;
+            }
+            pending = new ByteArrayOutputStream();
+            durableSequence = appendedSequence;
+            lock.notifyAll();
+            FileChannel next = open(fileForBase.apply(appendedSequence));
+            channel.close();
+            channel = next;
+            return appendedSequence;
+        }
+    }
+
+    // Blocks until the record with the given sequence number is on disk. Only one
+    // writer flushes at a time; the others keep appending and are covered by the next flush.
+    public void commit(long sequence) throws IOException {
+        ByteArrayOutputStream batch;
+        long batchSequence;
+        synchronized (lock) {
+            while (durableSequence < sequence && flushing && flushFailure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the log to be flushed");
+                }
+            }
+            if (flushFailure != null) {
+                throw flushFailure;
+            }
+            if (durableSequence >= sequence) {
+                return;
+            }
+            flushing = true;
+            batch = pending;
+            batchSequence = appendedSequence;
+            pending = new ByteArrayOutputStream();
+        }
+
+        IOException failure = null;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (lock) {
+            flushing = false;
+            if (failure == null) {
+                durableSequence = batchSequence;
+            } else {
+                flushFailure = failure;
+            }
+            lock.notifyAll();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        long sequence;
+        synchronized (lock) {
+            sequence = appendedSequence;
+        }
+        commit(sequence);
+        channel.close();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,111 @@
+package database;
+
+// Smallest and largest value of one column in every block of BLOCK_ROWS consecutive
+// rows, and whether the block has rows without a value. Rows are never changed in
+// place, so a zone map stays true for the rows it covers however many rows are
+// appended after them; those rows are simply not covered. Zone maps are built when a
+// store is compacted and stored with the column's segments in a page file (see
+// Segments), and let a full scan skip blocks a filter rules out (see Filter.skips).
+final class ZoneMap {
+    static final int BLOCK_ROWS = 4096;
+
+    // Rows covered, from position 0
+    final int rows;
+    // Typed keys as returned by Column.keyAt; null for a block without any value
+    private final Object[] min;
+    private final Object[] max;
+    private final boolean[] hasNulls;
+
+    ZoneMap(int rows, Object[] min, Object[] max, boolean[] hasNulls) {
+        this.rows = rows;
+        this.min = min;
+        this.max = max;
+        this.hasNulls = hasNulls;
+    }
+
+    static int blocksFor(int rows) {
+        return (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+    }
+
+    static ZoneMap build(Column column, int rows) {
+        int blocks = blocksFor(rows);
+        Object[] min = new Object[blocks];
+        Object[] max = new Object[blocks];
+        boolean[] hasNulls = new boolean[blocks];
+        for (int block = 0; block < blocks; block++) {
+            int minRow = -1;
+            int maxRow = -1;
+            for (int row = block * BLOCK_ROWS, end = Math.min(rows, row + BLOCK_ROWS); row < end; row++) {
+                if (column.isNull(row)) {
+                    hasNulls[block] = true;
+                } else if (minRow < 0) {
+                    minRow = row;
+                    maxRow = row;
+                } else if (column.compareRows(row, minRow) < 0) {
+                    minRow = row;
+                } else if (column.compareRows(row, maxRow) > 0) {
+                    maxRow = row;
+                }
+            }
+            if (minRow >= 0) {
+                min[block] = column.keyAt(minRow);
+                max[block] = column.keyAt(maxRow);
+            }
+        }
+        return new ZoneMap(rows, min, max, hasNulls);
+    }
+
+    static ZoneMap[] build(Column[] columns, int rows) {
+        ZoneMap[] zoneMaps = new ZoneMap[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            zoneMaps[i] = build(columns[i], rows);
+        }
+        return zoneMaps;
+    }
+
+    // Rows without a value pass no test (see Filter), so they never stop a block being
+    // skipped; the page file uses this to leave out the block's null bitmap
+    boolean hasNulls(int block) {
+        return hasNulls[block];
+    }
+
+    // Null for a block whose rows all lack a value
+    Object min(int block) {
+        return min[block];
+    }
+
+    Object max(int block) {
+        return max[block];
+    }
+
+    // Whether no value in the block lies between low and high, each bound inclusive or
+    // not; a null bound leaves that side open
+    boolean excludesRange(int block, Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        if (min[block] == null) {
+            return true;
+        }
+        if (low != null) {
+            int comparison = compare(max[block], low);
+            if (comparison < 0 || comparison == 0 && !lowInclusive) {
+                return true;
+            }
+        }
+        if (high != null) {
+            int comparison = compare(min[block], high);
+            return comparison > 0 || comparison == 0 && !highInclusive;
+        }
+        return false;
+    }
+
+    // Whether every value in the block lies within low..high, both inclusive; true for a
+    // block without any value
+    boolean within(int block, Object low, Object high) {
+        return min[block] == null || compare(min[block], low) >= 0 && compare(max[block], high) <= 0;
+    }
+
+    // Keys of one column share a type whose natural order is the column's order
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compare(Object key, Object other) {
+        return ((Comparable) key).compareTo(other);
+    }
+}
@@ -0,0 +1,241 @@
+package database.net;
+
+import database.sql.SqlException;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// A connection to a DatabaseServer. execute runs one statement and waits for its result.
+// submit and submitBatch only send, returning a future for the results, so any number
+// of requests can be in flight on the connection at once (pipelining); a batch sends
+// its statements in a single request. Results arrive in the order the statements were
+// sent and are read by a virtual thread of the connection. A client may be shared by
+// threads.
+public class DatabaseClient implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final Protocol.FrameWriter writer = new Protocol.FrameWriter();
+    // Requests waiting for their results, oldest first; guarded by itself. The reader never
+    // takes the writer's lock, so it keeps draining results while a send waits for the
+    // server to read.
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final Thread reader;
+    // Why the connection failed; null while it works
+    private volatile IOException failure;
+
+    // The results a request is waiting for
+    private static class Pending {
+        final List<RemoteResult> results;
+        final int expected;
+        final CompletableFuture<List<RemoteResult>> future = new CompletableFuture<>();
+
+        Pending(int expected) {
+            this.expected = expected;
+            this.results = new ArrayList<>(expected);
+        }
+    }
+
+    private DatabaseClient(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        this.reader = Thread.ofVirtual().name("database-client-" + socket.getLocalPort()).start(this::readResults);
+    }
+
+    public static DatabaseClient connect(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port));
+            return new DatabaseClient(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // Runs a statement with values for its ? parameters and returns its result. A statement
+    // the server rejects throws SqlException, as it does when run locally.
+    public RemoteResult execute(String sql, String... parameters) throws IOException {
+        RemoteResult result = await(submit(sql, parameters)).get(0);
+        if (result.isError()) {
+            throw new SqlException(result.getError());
+        }
+        return result;
+    }
+
+    // Runs statements in one round trip; each has its own result, failed ones included
+    public List<RemoteResult> executeBatch(List<String> statements) throws IOException {
+        return await(submitBatch(statements));
+    }
+
+    // Sends a statement without waiting; the future completes with its single result
+    public CompletableFuture<List<RemoteResult>> submit(String sql, String... parameters) throws IOException {
+        synchronized (writer) {
+            Protocol.writeStatement(writer.body, sql, parameters);
+            return send(Protocol.EXECUTE, 1);
+        }
+    }
+
+    // Sends statements without parameters as one batch; the future completes with a
+    // result per statement
+    public CompletableFuture<List<RemoteResult>> submitBatch(List<String> statements) throws IOException {
+        synchronized (writer) {
+            writer.body.writeInt(statements.size());
+            for (String sql : statements) {
+                Protocol.writeStatement(writer.body, sql, new String[0]);
+            }
+            return send(Protocol.BATCH, statements.size());
+        }
+    }
+
+    // Called holding the writer, so requests are queued in the order they are sent
+    private CompletableFuture<List<RemoteResult>> send(byte type, int results) throws IOException {
+        Pending request = new Pending(results);
+        if (results == 0) {
+            writer.discard();
+            request.future.complete(request.results);
+            return request.future;
+        }
+        synchronized (pending) {
+            if (failure != null) {
+                writer.discard();
+                throw failure;
+            }
+            pending.addLast(request);
+        }
+        try {
+            writer.send(out, type);
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+        return request.future;
+    }
+
+    private static List<RemoteResult> await(CompletableFuture<List<RemoteResult>> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    private void readResults() {
+        try {
+            while (true) {
+                RemoteResult result = readResult();
+                if (result == null) {
+                    throw new EOFException("Connection closed by the server");
+                }
+                Pending request;
+                synchronized (pending) {
+                    request = pending.peekFirst();
+                    if (request == null) {
+                        throw new IOException("Result received with no request waiting");
+                    }
+                    request.results.add(result);
+                    if (request.results.size() < request.expected) {
+                        continue;
+                    }
+                    pending.removeFirst();
+                }
+                request.future.complete(request.results);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Reads one statement's result, which for rows may span several frames; null at the end
+    private RemoteResult readResult() throws IOException {
+        Protocol.Frame frame = Protocol.read(in);
+        if (frame == null) {
+            return null;
+        }
+        switch (frame.type) {
+            case Protocol.COUNT:
+                return new RemoteResult(null, frame.body.readLong(), null, null);
+            case Protocol.MESSAGE:
+                return new RemoteResult(null, null, Protocol.readString(frame.body), null);
+            case Protocol.ERROR:
+                return new RemoteResult(null, null, null, Protocol.readString(frame.body));
+            case Protocol.ROWS:
+                List<Map<String, String>> rows = new ArrayList<>();
+                while (!readRows(frame.body, rows)) {
+                    frame = Protocol.read(in);
+                    if (frame == null || frame.type != Protocol.ROWS) {
+                        throw new IOException("Rows of a result ended early");
+                    }
+                }
+                return new RemoteResult(rows, null, null, null);
+            default:
+                throw new IOException("Unknown result type " + frame.type);
+        }
+    }
+
+    // Adds the rows of a ROWS frame; returns whether it was the last of its result
+    private static boolean readRows(DataInputStream body, List<Map<String, String>> rows) throws IOException {
+        boolean last = body.readBoolean();
+        boolean wholeRows = body.readBoolean();
+        String[] names = new String[Protocol.readCount(body, 4)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = Protocol.readString(body);
+        }
+        int count = body.readInt();
+        for (int r = 0; r < count; r++) {
+            Map<String, String> row = new LinkedHashMap<>();
+            for (String name : names) {
+                String value = Protocol.readString(body);
+                // Whole rows leave out their null values, as they do locally
+                if (value != null || !wholeRows) {
+                    row.put(name, value);
+                }
+            }
+            rows.add(row);
+        }
+        return last;
+    }
+
+    // Fails every waiting request and any later one with the error
+    private void fail(IOException e) {
+        List<Pending> failed;
+        synchronized (pending) {
+            if (failure == null) {
+                failure = e;
+            }
+            failed = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (Pending request : failed) {
+            request.future.completeExceptionally(e);
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+    }
+
+    // Closes the connection; requests still waiting fail
+    @Override
+    public void close() throws IOException {
+        fail(new IOException("Client closed"));
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package database.net;
+
+import database.Cursor;
+import database.SimpleDatabase;
+import database.sql.PreparedStatement;
+import database.sql.Result;
+import database.sql.SqlEngine;
+import database.sql.SqlException;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Serves one database to any number of clients over TCP (see Protocol). Each connection
+// gets a virtual thread that reads requests and runs their statements in order, so a
+// connection blocked on a table lock or a log commit costs no platform thread. Replies
+// are buffered and only flushed once every request received so far is answered, which
+// lets pipelined and batched requests share writes. All connections share one SqlEngine
+// and so one plan cache. Clients are not authenticated, so by default the server only
+// listens on the loopback interface and rejects SAVE, LOAD and COPY, whose file names the
+// client chooses; other addresses and file access have to be asked for explicitly.
+public class DatabaseServer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(DatabaseServer.class.getName());
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SqlEngine engine;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong connectionsAccepted = new AtomicLong();
+    private final AtomicLong statementsExecuted = new AtomicLong();
+    private Thread acceptor;
+    private volatile boolean closed;
+    private volatile boolean fileAccess;
+
+    // Listens on the port of the loopback interface; port 0 picks a free one (see getPort)
+    public DatabaseServer(SimpleDatabase database, int port) throws IOException {
+        this(new SqlEngine(database), new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    // Listens on the given address; one other than loopback lets any host that reaches it in
+    public DatabaseServer(SqlEngine engine, InetSocketAddress address) throws IOException {
+        this.engine = engine;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public InetAddress getAddress() {
+        return serverSocket.getInetAddress();
+    }
+
+    // Lets clients run SAVE, LOAD and COPY, which read and write files named by the client
+    // with the permissions of the server; off by default
+    public void setFileAccess(boolean fileAccess) {
+        this.fileAccess = fileAccess;
+    }
+
+    public boolean isFileAccess() {
+        return fileAccess;
+    }
+
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.get();
+    }
+
+    public int getOpenConnections() {
+        return connections.size();
+    }
+
+    public long getStatementsExecuted() {
+        return statementsExecuted.get();
+    }
+
+    // Starts accepting connections on a thread of its own
+    public synchronized void start() {
+        if (acceptor != null) {
+            return;
+        }
+        acceptor = Thread.ofPlatform().name("database-server-" + getPort()).start(this::accept);
+    }
+
+    private void accept() {
+        Thread.Builder connectionThreads = Thread.ofVirtual().name("database-connection-", 1);
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.log(Level.SEVERE, "Error accepting connection: " + e.getMessage(), e);
+                }
+                continue;
+            }
+            connections.add(socket);
+            connectionsAccepted.incrementAndGet();
+            connectionThreads.start(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE))) {
+            socket.setTcpNoDelay(true);
+            Protocol.FrameWriter writer = new Protocol.FrameWriter();
+            Protocol.Frame frame;
+            while ((frame = Protocol.read(in)) != null) {
+                switch (frame.type) {
+                    case Protocol.EXECUTE -> execute(frame.body, 1, writer, out);
+                    case Protocol.BATCH -> {
+                        int count;
+                        try {
+                            // A statement takes at least its string length and parameter count
+                            count = Protocol.readCount(frame.body, 8);
+                        } catch (Protocol.MalformedFrameException | EOFException e) {
+                            error(writer, out, "Malformed request: " + e.getMessage());
+                            break;
+                        }
+                        execute(frame.body, count, writer, out);
+                    }
+                    default -> throw new IOException("Unknown request type " + frame.type);
+                }
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (SocketException e) {
+            // The client went away, or the server is closing
+        } catch (IOException e) {
+            if (!closed) {
+                logger.log(Level.WARNING, "Closing connection from " + socket.getRemoteSocketAddress() + ": " + e.getMessage(), e);
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    // Runs the statements of a request, answering each. Once a statement does not fit in
+    // the frame, it and the ones after it are answered with an error, so the client still
+    // gets a result for every statement it sent.
+    private void execute(DataInputStream request, int count, Protocol.FrameWriter writer, DataOutputStream out) throws IOException {
+        for (int i = 0; i < count; i++) {
+            try {
+                execute(request, writer, out);
+            } catch (Protocol.MalformedFrameException | EOFException e) {
+                writer.discard();
+                for (; i < count; i++) {
+                    error(writer, out, "Malformed request: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Runs one statement read from a request and writes its result
+    private void execute(DataInputStream request, Protocol.FrameWriter writer, DataOutputStream out) throws IOException {
+        String sql = Protocol.readString(request);
+        // A parameter takes at least its string length
+        String[] parameters = new String[Protocol.readCount(request, 4)];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = Protocol.readString(request);
+        }
+        Result result;
+        try {
+            PreparedStatement statement = engine.prepare(sql);
+            if (statement.accessesFiles() && !fileAccess) {
+                error(writer, out, "SAVE, LOAD and COPY are disabled for clients of this server");
+                return;
+            }
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setParameter(i + 1, parameters[i]);
+            }
+            result = statement.execute();
+        } catch (SqlException e) {
+            error(writer, out, e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Error executing " + sql + ": " + e.getMessage(), e);
+            error(writer, out, e.toString());
+            return;
+        } finally {
+            statementsExecuted.incrementAndGet();
+        }
+
+        Cursor cursor = result.getCursor();
+        if (cursor != null) {
+            try (cursor) {
+                List<String> names = cursor.getColumnNames();
+                List<Map<String, String>> rows = cursor.fetch();
+                while (true) {
+                    List<Map<String, String>> next = rows.isEmpty() ? rows : cursor.fetch();
+                    writeRows(writer, out, names, cursor.isWholeRows(), rows, next.isEmpty());
+                    if (next.isEmpty()) {
+                        return;
+                    }
+                    rows = next;
+                }
+            }
+        }
+        if (result.hasRows()) {
+            List<Map<String, String>> rows = result.getRows();
+            List<String> names = result.getColumnNames();
+            int fetchSize = Cursor.DEFAULT_FETCH_SIZE;
+            int from = 0;
+            do {
+                int to = Math.min(rows.size(), from + fetchSize);
+                writeRows(writer, out, names, result.isWholeRows(), rows.subList(from, to), to == rows.size());
+                from = to;
+            } while (from < rows.size());
+        } else if (result.getCount() != null) {
+            writer.body.writeLong(result.getCount());
+            writer.send(out, Protocol.COUNT);
+        } else {
+            Protocol.writeString(writer.body, result.toString());
+            writer.send(out, Protocol.MESSAGE);
+        }
+    }
+
+    // Every frame names all the columns of the result; a row without a value in one sends null
+    private static void writeRows(Protocol.FrameWriter writer, DataOutputStream out, List<String> names, boolean wholeRows,
+                                  List<Map<String, String>> rows, boolean last) throws IOException {
+        DataOutputStream body = writer.body;
+        body.writeBoolean(last);
+        body.writeBoolean(wholeRows);
+        body.writeInt(names.size());
+        for (String name : names) {
+            Protocol.writeString(body, name);
+        }
+        body.writeInt(rows.size());
+        for (Map<String, String> row : rows) {
+            for (String name : names) {
+                Protocol.writeString(body, row.get(name));
+            }
+        }
+        writer.send(out, Protocol.ROWS);
+    }
+
+    private static void error(Protocol.FrameWriter writer, DataOutputStream out, String message) throws IOException {
+        Protocol.writeString(writer.body, message);
+        writer.send(out, Protocol.ERROR);
+    }
+
+    // Stops accepting, closes every connection and waits for the acceptor to finish.
+    // Statements already running complete, but their results are not delivered.
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+        Thread current;
+        synchronized (this) {
+            current = acceptor;
+        }
+        if (current != null) {
+            try {
+                current.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
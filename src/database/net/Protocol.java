@@ -0,0 +1,141 @@
+package database.net;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// The wire protocol between DatabaseClient and DatabaseServer. Every message is a frame
+//
+//   [int length][byte type][body]      length counts the type byte and the body
+//
+// Requests, client to server:
+//
+//   EXECUTE  [string sql][int n][n strings: ? parameters]
+//   BATCH    [int count][count times: string sql, int n, n strings]
+//
+// The server answers every statement with one result, in the order the statements
+// arrived, so a client may send any number of requests before reading (pipelining):
+//
+//   ROWS     [boolean last][boolean whole rows][int columns][column names][int rows]
+//            [rows * columns values]
+//            rows come in one or more ROWS frames of up to a fetch each, the last flagged,
+//            so a large result is streamed rather than built in memory. Every frame names
+//            all the columns of the result and a row without a value sends null; the rows
+//            of a whole-row result (SELECT *) leave null values out, as they do locally
+//   COUNT    [long]
+//   MESSAGE  [string]                  text for the user, or null for none
+//   ERROR    [string]                  why the statement failed
+//
+// Integers are big-endian and a string is [int byte length][UTF-8 bytes], with length
+// -1 for null. Lengths and counts are checked against the bytes left in their frame
+// before anything is allocated for them.
+final class Protocol {
+    static final byte EXECUTE = 1;
+    static final byte BATCH = 2;
+
+    static final byte ROWS = 10;
+    static final byte COUNT = 11;
+    static final byte MESSAGE = 12;
+    static final byte ERROR = 13;
+
+    // Larger frames are taken for a corrupt stream rather than allocated
+    static final int MAX_FRAME = 64 << 20;
+
+    private Protocol() {
+    }
+
+    // A frame whose lengths or counts do not fit in it; the frame is dropped, but the
+    // stream is still in step and can be read on
+    static final class MalformedFrameException extends IOException {
+        MalformedFrameException(String message) {
+            super(message);
+        }
+    }
+
+    // A frame that was read, with its body ready to be decoded
+    static final class Frame {
+        final byte type;
+        final DataInputStream body;
+
+        Frame(byte type, DataInputStream body) {
+            this.type = type;
+            this.body = body;
+        }
+    }
+
+    // Returns null when the stream ends between frames
+    static Frame read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 1 || length > MAX_FRAME) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte type = in.readByte();
+        byte[] body = new byte[length - 1];
+        in.readFully(body);
+        return new Frame(type, new DataInputStream(new ByteArrayInputStream(body)));
+    }
+
+    // Builds the body of one frame and writes it out as a whole
+    static final class FrameWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream body = new DataOutputStream(bytes);
+
+        void send(DataOutputStream out, byte type) throws IOException {
+            out.writeInt(bytes.size() + 1);
+            out.writeByte(type);
+            bytes.writeTo(out);
+            bytes.reset();
+        }
+
+        // Drops a body that will not be sent
+        void discard() {
+            bytes.reset();
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.available()) {
+            throw new MalformedFrameException("String of " + length + " bytes with " + in.available() + " left in the frame");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Reads the count of the items that follow in a frame body, each taking at least
+    // itemBytes, so no count can claim more items than the frame holds
+    static int readCount(DataInputStream in, int itemBytes) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available() / itemBytes) {
+            throw new MalformedFrameException("Count of " + count + " with " + in.available() + " bytes left in the frame");
+        }
+        return count;
+    }
+
+    // A statement with its parameters, as sent in EXECUTE and BATCH
+    static void writeStatement(DataOutputStream out, String sql, String[] parameters) throws IOException {
+        writeString(out, sql);
+        out.writeInt(parameters.length);
+        for (String parameter : parameters) {
+            writeString(out, parameter);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package database.net;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Outcome of a statement run by a DatabaseServer, as the client received it: rows,
+// a count, a message or an error. Rows are read completely before the result is handed
+// out. toString shows the result as the local engine's Result does.
+public class RemoteResult {
+    private final List<Map<String, String>> rows;
+    private final Long count;
+    private final String message;
+    private final String error;
+
+    RemoteResult(List<Map<String, String>> rows, Long count, String message, String error) {
+        this.rows = rows;
+        this.count = count;
+        this.message = message;
+        this.error = error;
+    }
+
+    public boolean hasRows() {
+        return rows != null;
+    }
+
+    public List<Map<String, String>> getRows() {
+        return rows == null ? Collections.emptyList() : rows;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    // Text for the user, or null when there is none
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isError() {
+        return error != null;
+    }
+
+    // Why the statement failed; null if it succeeded
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) {
+            return "Error: " + error;
+        }
+        if (rows != null) {
+            return rows.toString();
+        }
+        if (count != null) {
+            return count.toString();
+        }
+        return message;
+    }
+}
@@ -0,0 +1,140 @@
+package database.sql;
+
+import java.util.List;
+
+// WHERE clause syntax tree
+public abstract class Expression {
+
+    public static class Comparison extends Expression {
+        private final String column;
+        private final String operator;
+        private final Value value;
+
+        Comparison(String column, String operator, Value value) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        // One of = != < <= > >= LIKE
+        public String getOperator() {
+            return operator;
+        }
+
+        public Value getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return column + " " + operator + " " + value;
+        }
+    }
+
+    public static class Between extends Expression {
+        private final String column;
+        private final Value low;
+        private final Value high;
+
+        Between(String column, Value low, Value high) {
+            this.column = column;
+            this.low = low;
+            this.high = high;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public Value getLow() {
+            return low;
+        }
+
+        public Value getHigh() {
+            return high;
+        }
+
+        @Override
+        public String toString() {
+            return column + " BETWEEN " + low + " AND " + high;
+        }
+    }
+
+    public static class In extends Expression {
+        private final String column;
+        private final List<Value> values;
+
+        In(String column, List<Value> values) {
+            this.column = column;
+            this.values = values;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public List<Value> getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return column + " IN (" + String.join(", ", values.stream().map(Object::toString).toList()) + ")";
+        }
+    }
+
+    public static class And extends Expression {
+        private final List<Expression> operands;
+
+        And(List<Expression> operands) {
+            this.operands = operands;
+        }
+
+        public List<Expression> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + String.join(" AND ", operands.stream().map(Object::toString).toList()) + ")";
+        }
+    }
+
+    public static class Or extends Expression {
+        private final List<Expression> operands;
+
+        Or(List<Expression> operands) {
+            this.operands = operands;
+        }
+
+        public List<Expression> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + String.join(" OR ", operands.stream().map(Object::toString).toList()) + ")";
+        }
+    }
+
+    public static class Not extends Expression {
+        private final Expression operand;
+
+        Not(Expression operand) {
+            this.operand = operand;
+        }
+
+        public Expression getOperand() {
+            return operand;
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + operand;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package database.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits SQL text into tokens in a single pass over the characters
+public class Lexer {
+    private final String sql;
+    private int position;
+
+    public Lexer(String sql) {
+        this.sql = sql;
+    }
+
+    public List<Token> tokenize() {
+        List<Token> tokens = new ArrayList<>();
+        while (true) {
+            skipWhitespace();
+            if (position >= sql.length()) {
+                tokens.add(new Token(Token.Type.END, "", position));
+                return tokens;
+            }
+            tokens.add(next());
+        }
+    }
+
+    private Token next() {
+        int start = position;
+        char c = sql.charAt(position);
+        if (Character.isLetter(c) || c == '_') {
+            while (position < sql.length() && isIdentifierPart(sql.charAt(position))) {
+                position++;
+            }
+            return new Token(Token.Type.IDENTIFIER, sql.substring(start, position), start);
+        }
+        if (Character.isDigit(c) || (c == '-' && position + 1 < sql.length() && Character.isDigit(sql.charAt(position + 1)))) {
+            position++;
+            while (position < sql.length() && (Character.isDigit(sql.charAt(position)) || sql.charAt(position) == '.')) {
+                position++;
+            }
+            // Values such as 12abc are read as a single word, like the old whitespace splitting did
+            if (position < sql.length() && isIdentifierPart(sql.charAt(position))) {
+                while (position < sql.length() && isIdentifierPart(sql.charAt(position))) {
+                    position++;
+                }
+                return new Token(Token.Type.IDENTIFIER, sql.substring(start, position), start);
+            }
+            return new Token(Token.Type.NUMBER, sql.substring(start, position), start);
+        }
+        if (c == '\'' || c == '"') {
+            return quoted(c);
+        }
+        if (c == '?') {
+            position++;
+            return new Token(Token.Type.PARAMETER, "?", start);
+        }
+        if (position + 1 < sql.length()) {
+            String pair = sql.substring(position, position + 2);
+            if (pair.equals("<=") || pair.equals(">=") || pair.equals("<>") || pair.equals("!=")) {
+                position += 2;
+                return new Token(Token.Type.SYMBOL, pair, start);
+            }
+        }
+        if ("(),;*=<>.%".indexOf(c) >= 0) {
+            position++;
+            return new Token(Token.Type.SYMBOL, String.valueOf(c), start);
+        }
+        throw new SqlException("Unexpected character '" + c + "' at position " + start);
+    }
+
+    // Quoted string; a doubled quote character stands for the quote itself
+    private Token quoted(char quote) {
+        int start = position++;
+        StringBuilder value = new StringBuilder();
+        while (position < sql.length()) {
+            char c = sql.charAt(position++);
+            if (c == quote) {
+                if (position < sql.length() && sql.charAt(position) == quote) {
+                    value.append(quote);
+                    position++;
+                } else {
+                    return new Token(Token.Type.STRING, value.toString(), start);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw new SqlException("Unterminated string starting at position " + start);
+    }
+
+    private void skipWhitespace() {
+        while (position < sql.length() && Character.isWhitespace(sql.charAt(position))) {
+            position++;
+        }
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
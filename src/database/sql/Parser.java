@@ -0,0 +1,464 @@
+package database.sql;
+
+import database.Aggregate;
+import database.SortKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Recursive-descent parser producing one Statement per SQL string:
+//
+//   CREATE TABLE t (column [type], ...)
+//   CREATE INDEX i ON t (column) [USING HASH|BTREE]
+//   DROP TABLE t | DROP INDEX i ON t
+//   INSERT INTO t [(column, ...)] VALUES (value, ...)
+//   SELECT [DISTINCT] * | item, ... FROM t [[INNER] JOIN u ON t.column = u.column] [WHERE expr]
+//     [GROUP BY column, ...] [ORDER BY key [ASC|DESC], ...] [LIMIT n] [OFFSET n]
+//     where an item is a column, COUNT(*), COUNT([DISTINCT] column), SUM, AVG, MIN or
+//     MAX(column) or APPROX_COUNT_DISTINCT(column), an order key is a column or aggregate
+//     and expr combines column op value, column [NOT] LIKE pattern, column [NOT] IN (value, ...)
+//     and column [NOT] BETWEEN value AND value with AND, OR, NOT and parentheses. A column
+//     may be qualified with its table, as t.column, which a JOIN requires.
+//   UPDATE t SET column = value, ... [WHERE expr]
+//   DELETE FROM t [WHERE expr]
+//   COPY t [(column, ...)] FROM 'file.csv' [HEADER]
+//   SAVE [BINARY] [file] | LOAD [BINARY] [file] | VACUUM | CHECKPOINT
+//   SHOW STATS | SHOW SLOW QUERIES
+//   EXPLAIN SELECT ... | EXPLAIN UPDATE ... | EXPLAIN DELETE ...
+//
+// Values may be quoted strings, numbers, ? parameters or, as the old command syntax
+// allowed, bare words. In VALUES and SET, NULL leaves the value missing, as an empty CSV
+// field does; 'NULL' quoted is text. A trailing semicolon is optional. Syntax errors give the position
+// of the offending token, counted in characters from 0.
+public class Parser {
+    private final List<Token> tokens;
+    private int position;
+    private int parameterCount;
+
+    private Parser(String sql) {
+        this.tokens = new Lexer(sql).tokenize();
+    }
+
+    public static Statement parse(String sql) {
+        Parser parser = new Parser(sql);
+        Statement statement = parser.statement();
+        parser.acceptSymbol(";");
+        if (parser.peek().getType() != Token.Type.END) {
+            throw parser.unexpected("end of statement");
+        }
+        statement.setParameterCount(parser.parameterCount);
+        return statement;
+    }
+
+    private Statement statement() {
+        Token token = peek();
+        if (acceptKeyword("CREATE")) {
+            if (acceptKeyword("INDEX")) {
+                return createIndex();
+            }
+            expectKeyword("TABLE");
+            return createTable();
+        }
+        if (acceptKeyword("DROP")) {
+            if (acceptKeyword("INDEX")) {
+                String index = identifier();
+                expectKeyword("ON");
+                return new Statement.DropIndex(index, identifier());
+            }
+            expectKeyword("TABLE");
+            return new Statement.DropTable(identifier());
+        }
+        if (acceptKeyword("INSERT")) {
+            return insert();
+        }
+        if (acceptKeyword("SELECT")) {
+            return select();
+        }
+        if (acceptKeyword("UPDATE")) {
+            return update();
+        }
+        if (acceptKeyword("DELETE")) {
+            expectKeyword("FROM");
+            String table = identifier();
+            return new Statement.Delete(table, where());
+        }
+        if (acceptKeyword("SAVE")) {
+            return persist(true);
+        }
+        if (acceptKeyword("LOAD")) {
+            return persist(false);
+        }
+        if (acceptKeyword("COPY")) {
+            return copy();
+        }
+        if (acceptKeyword("VACUUM")) {
+            return new Statement.Vacuum();
+        }
+        if (acceptKeyword("CHECKPOINT")) {
+            return new Statement.Checkpoint();
+        }
+        if (acceptKeyword("SHOW")) {
+            if (acceptKeyword("SLOW")) {
+                expectKeyword("QUERIES");
+                return new Statement.Show(true);
+            }
+            expectKeyword("STATS");
+            return new Statement.Show(false);
+        }
+        if (acceptKeyword("EXPLAIN")) {
+            Token explained = peek();
+            if (!explained.isKeyword("SELECT") && !explained.isKeyword("UPDATE") && !explained.isKeyword("DELETE")) {
+                throw unexpected("SELECT, UPDATE or DELETE");
+            }
+            return new Statement.Explain(statement());
+        }
+        throw new SqlException("Unknown command " + token + " at position " + token.getPosition());
+    }
+
+    private Statement createTable() {
+        String table = identifier();
+        expectSymbol("(");
+        List<String> columns = new ArrayList<>();
+        do {
+            String column = identifier();
+            if (peek().getType() == Token.Type.IDENTIFIER) {
+                column += " " + next().getText();
+            }
+            columns.add(column);
+        } while (acceptSymbol(","));
+        expectSymbol(")");
+        return new Statement.CreateTable(table, columns);
+    }
+
+    private Statement createIndex() {
+        String index = identifier();
+        expectKeyword("ON");
+        String table = identifier();
+        expectSymbol("(");
+        String column = identifier();
+        expectSymbol(")");
+        String type = acceptKeyword("USING") ? identifier() : null;
+        return new Statement.CreateIndex(index, table, column, type);
+    }
+
+    private Statement insert() {
+        expectKeyword("INTO");
+        String table = identifier();
+        List<String> columns = null;
+        if (acceptSymbol("(")) {
+            columns = new ArrayList<>();
+            do {
+                columns.add(identifier());
+            } while (acceptSymbol(","));
+            expectSymbol(")");
+        }
+        expectKeyword("VALUES");
+        expectSymbol("(");
+        List<Value> values = new ArrayList<>();
+        do {
+            values.add(storedValue());
+        } while (acceptSymbol(","));
+        expectSymbol(")");
+        return new Statement.Insert(table, columns, values);
+    }
+
+    private Statement copy() {
+        String table = identifier();
+        List<String> columns = null;
+        if (acceptSymbol("(")) {
+            columns = new ArrayList<>();
+            do {
+                columns.add(identifier());
+            } while (acceptSymbol(","));
+            expectSymbol(")");
+        }
+        expectKeyword("FROM");
+        if (peek().getType() != Token.Type.STRING) {
+            throw unexpected("a quoted file name");
+        }
+        String fileName = next().getText();
+        return new Statement.Copy(table, columns, fileName, acceptKeyword("HEADER"));
+    }
+
+    private Statement select() {
+        boolean distinct = acceptKeyword("DISTINCT");
+        List<String> items = new ArrayList<>();
+        List<String> columns = new ArrayList<>();
+        List<Aggregate> aggregates = new ArrayList<>();
+        boolean distinctCount = false;
+        boolean approximate = false;
+        if (!acceptSymbol("*")) {
+            do {
+                if (isAggregate()) {
+                    Token function = next();
+                    next();
+                    Aggregate aggregate;
+                    if (function.isKeyword("APPROX_COUNT_DISTINCT")) {
+                        approximate = true;
+                        aggregate = Aggregate.count(column());
+                    } else if (function.isKeyword("COUNT") && acceptKeyword("DISTINCT")) {
+                        distinctCount = true;
+                        aggregate = Aggregate.count(column());
+                    } else {
+                        aggregate = aggregate(Aggregate.Function.parse(function.getText()));
+                    }
+                    expectSymbol(")");
+                    aggregates.add(aggregate);
+                    items.add(aggregate.getName());
+                } else {
+                    String column = column();
+                    columns.add(column);
+                    items.add(column);
+                }
+            } while (acceptSymbol(","));
+        }
+        if ((distinctCount || approximate) && aggregates.size() > 1) {
+            throw new SqlException("COUNT(DISTINCT ...) and APPROX_COUNT_DISTINCT must be the only aggregate of a query");
+        }
+        expectKeyword("FROM");
+        String table = identifier();
+        Statement.Join join = null;
+        if (acceptKeyword("INNER") || peek().isKeyword("JOIN")) {
+            expectKeyword("JOIN");
+            String joined = identifier();
+            expectKeyword("ON");
+            String first = column();
+            expectSymbol("=");
+            join = new Statement.Join(joined, first, column());
+        }
+        Expression where = where();
+        List<String> groupBy = new ArrayList<>();
+        if (acceptKeyword("GROUP")) {
+            expectKeyword("BY");
+            do {
+                groupBy.add(column());
+            } while (acceptSymbol(","));
+        }
+        List<SortKey> orderBy = new ArrayList<>();
+        if (acceptKeyword("ORDER")) {
+            expectKeyword("BY");
+            do {
+                String name;
+                if (isAggregate() && !peek().isKeyword("APPROX_COUNT_DISTINCT")) {
+                    Aggregate.Function function = Aggregate.Function.parse(next().getText());
+                    next();
+                    name = aggregate(function).getName();
+                    expectSymbol(")");
+                } else {
+                    name = column();
+                }
+                boolean descending = acceptKeyword("DESC");
+                if (!descending) {
+                    acceptKeyword("ASC");
+                }
+                orderBy.add(new SortKey(name, descending));
+            } while (acceptSymbol(","));
+        }
+        Value limit = acceptKeyword("LIMIT") ? value() : null;
+        Value offset = acceptKeyword("OFFSET") ? value() : null;
+        return new Statement.Select(distinct, items, columns, aggregates, distinctCount, approximate, table, join, where,
+                groupBy, orderBy, limit, offset);
+    }
+
+    // A function call such as SUM(x) or APPROX_COUNT_DISTINCT(x) comes next
+    private boolean isAggregate() {
+        return peek().getType() == Token.Type.IDENTIFIER && peek(1).isSymbol("(")
+                && (Aggregate.Function.parse(peek().getText()) != null || peek().isKeyword("APPROX_COUNT_DISTINCT"));
+    }
+
+    // The argument of an aggregate after its opening parenthesis: a column, or * for COUNT
+    private Aggregate aggregate(Aggregate.Function function) {
+        if (function == Aggregate.Function.COUNT && acceptSymbol("*")) {
+            return Aggregate.count();
+        }
+        return new Aggregate(function, column());
+    }
+
+    private Statement update() {
+        String table = identifier();
+        expectKeyword("SET");
+        List<String> columns = new ArrayList<>();
+        List<Value> values = new ArrayList<>();
+        do {
+            columns.add(identifier());
+            expectSymbol("=");
+            values.add(storedValue());
+        } while (acceptSymbol(","));
+        return new Statement.Update(table, columns, values, where());
+    }
+
+    private Statement persist(boolean save) {
+        boolean binary = acceptKeyword("BINARY");
+        String fileName = null;
+        if (peek().getType() == Token.Type.STRING) {
+            fileName = next().getText();
+        }
+        return new Statement.Persist(save, binary, fileName);
+    }
+
+    private Expression where() {
+        return acceptKeyword("WHERE") ? or() : null;
+    }
+
+    private Expression or() {
+        Expression first = and();
+        if (!peek().isKeyword("OR")) {
+            return first;
+        }
+        List<Expression> operands = new ArrayList<>();
+        operands.add(first);
+        while (acceptKeyword("OR")) {
+            operands.add(and());
+        }
+        return new Expression.Or(operands);
+    }
+
+    private Expression and() {
+        Expression first = not();
+        if (!peek().isKeyword("AND")) {
+            return first;
+        }
+        List<Expression> operands = new ArrayList<>();
+        operands.add(first);
+        while (acceptKeyword("AND")) {
+            operands.add(not());
+        }
+        return new Expression.And(operands);
+    }
+
+    private Expression not() {
+        if (acceptKeyword("NOT")) {
+            return new Expression.Not(not());
+        }
+        if (acceptSymbol("(")) {
+            Expression expression = or();
+            expectSymbol(")");
+            return expression;
+        }
+        String column = column();
+        // column NOT LIKE|IN|BETWEEN ... is the negation of the positive form
+        boolean negated = acceptKeyword("NOT");
+        Expression test;
+        if (acceptKeyword("LIKE")) {
+            test = new Expression.Comparison(column, "LIKE", value());
+        } else if (acceptKeyword("IN")) {
+            expectSymbol("(");
+            List<Value> values = new ArrayList<>();
+            do {
+                values.add(value());
+            } while (acceptSymbol(","));
+            expectSymbol(")");
+            test = new Expression.In(column, values);
+        } else if (acceptKeyword("BETWEEN")) {
+            Value low = value();
+            expectKeyword("AND");
+            test = new Expression.Between(column, low, value());
+        } else if (negated) {
+            throw unexpected("LIKE, IN or BETWEEN");
+        } else {
+            test = null;
+        }
+        if (test != null) {
+            return negated ? new Expression.Not(test) : test;
+        }
+        Token operator = next();
+        if (operator.getType() != Token.Type.SYMBOL || !isComparison(operator.getText())) {
+            throw unexpected(operator, "a comparison operator");
+        }
+        String text = operator.getText().equals("<>") ? "!=" : operator.getText();
+        return new Expression.Comparison(column, text, value());
+    }
+
+    private static boolean isComparison(String symbol) {
+        return switch (symbol) {
+            case "=", "!=", "<>", "<", "<=", ">", ">=" -> true;
+            default -> false;
+        };
+    }
+
+    // A value to store, where the keyword NULL leaves it missing
+    private Value storedValue() {
+        return acceptKeyword("NULL") ? Value.missing() : value();
+    }
+
+    private Value value() {
+        Token token = next();
+        switch (token.getType()) {
+            case PARAMETER:
+                return Value.parameter(parameterCount++);
+            case STRING:
+            case NUMBER:
+            case IDENTIFIER:
+                return Value.literal(token.getText());
+            default:
+                throw unexpected(token, "a value");
+        }
+    }
+
+    private String identifier() {
+        Token token = next();
+        if (token.getType() != Token.Type.IDENTIFIER) {
+            throw unexpected(token, "a name");
+        }
+        return token.getText();
+    }
+
+    // A column name, kept as table.column when qualified
+    private String column() {
+        String name = identifier();
+        return acceptSymbol(".") ? name + "." + identifier() : name;
+    }
+
+    private Token peek() {
+        return peek(0);
+    }
+
+    private Token peek(int ahead) {
+        return tokens.get(Math.min(position + ahead, tokens.size() - 1));
+    }
+
+    private Token next() {
+        Token token = peek();
+        if (token.getType() != Token.Type.END) {
+            position++;
+        }
+        return token;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (peek().isKeyword(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw unexpected(keyword);
+        }
+    }
+
+    private boolean acceptSymbol(String symbol) {
+        if (peek().isSymbol(symbol)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectSymbol(String symbol) {
+        if (!acceptSymbol(symbol)) {
+            throw unexpected("'" + symbol + "'");
+        }
+    }
+
+    private SqlException unexpected(String expected) {
+        return unexpected(peek(), expected);
+    }
+
+    // Positions count characters from the start of the statement, from 0
+    private static SqlException unexpected(Token token, String expected) {
+        return new SqlException("Expected " + expected + " but found " + token + " at position " + token.getPosition());
+    }
+}
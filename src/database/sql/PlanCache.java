@@ -0,0 +1,61 @@
+package database.sql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Parsed statements keyed by their SQL text, evicting the least recently used entry
+// once the cache is full. Statements are immutable, so a cached one is shared freely.
+// The key is the text exactly as given, literals included: statements that differ only
+// in their values are parsed and cached separately. Only statements written with ?
+// parameters, prepared once and executed with new values, share one plan.
+public class PlanCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Map<String, Statement> statements;
+    private long hits;
+    private long misses;
+
+    public PlanCache(int capacity) {
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public Statement get(String sql) {
+        synchronized (statements) {
+            Statement statement = statements.get(sql);
+            if (statement != null) {
+                hits++;
+                return statement;
+            }
+            misses++;
+        }
+        // Parse outside the lock; two threads racing on the same text both parse it once
+        Statement statement = Parser.parse(sql);
+        synchronized (statements) {
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    public long getHits() {
+        synchronized (statements) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (statements) {
+            return misses;
+        }
+    }
+
+    public int size() {
+        synchronized (statements) {
+            return statements.size();
+        }
+    }
+}
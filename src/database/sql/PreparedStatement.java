@@ -0,0 +1,51 @@
+package database.sql;
+
+import java.util.Arrays;
+
+// A parsed statement with its own ? parameter values. Instances are cheap and not
+// thread-safe; threads executing the same SQL each prepare their own.
+public class PreparedStatement {
+    private final SqlEngine engine;
+    private final Statement statement;
+    private final String[] parameters;
+
+    PreparedStatement(SqlEngine engine, Statement statement) {
+        this.engine = engine;
+        this.statement = statement;
+        this.parameters = new String[statement.getParameterCount()];
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    // SAVE, LOAD and COPY, which read or write files of the machine running the database
+    public boolean accessesFiles() {
+        return statement.accessesFiles();
+    }
+
+    // Parameters are numbered from 1, as in JDBC
+    public PreparedStatement setParameter(int index, String value) {
+        if (index < 1 || index > parameters.length) {
+            throw new SqlException("Parameter index " + index + " is out of range 1.." + parameters.length);
+        }
+        parameters[index - 1] = value;
+        return this;
+    }
+
+    public PreparedStatement setParameter(int index, long value) {
+        return setParameter(index, Long.toString(value));
+    }
+
+    public PreparedStatement setParameter(int index, double value) {
+        return setParameter(index, Double.toString(value));
+    }
+
+    public void clearParameters() {
+        Arrays.fill(parameters, null);
+    }
+
+    public Result execute() {
+        return engine.execute(statement, parameters);
+    }
+}
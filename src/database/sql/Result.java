@@ -0,0 +1,103 @@
+package database.sql;
+
+import database.Cursor;
+
+import java.util.*;
+
+// Outcome of executing a statement: rows for queries, a number for COUNT,
+// and nothing for statements that report their own progress. Plain SELECTs
+// return a cursor, which getRows drains into a list for callers that want one.
+// Whole-row results, as of SELECT * and SELECT DISTINCT *, leave null values out of
+// their rows; projections keep them.
+public class Result {
+    private static final Result EMPTY = new Result(null, false, null, null, null);
+
+    private List<Map<String, String>> rows;
+    private final boolean wholeRows;
+    private final Cursor cursor;
+    private final Long count;
+    private final String message;
+
+    private Result(List<Map<String, String>> rows, boolean wholeRows, Cursor cursor, Long count, String message) {
+        this.rows = rows;
+        this.wholeRows = wholeRows;
+        this.cursor = cursor;
+        this.count = count;
+        this.message = message;
+    }
+
+    static Result rows(List<Map<String, String>> rows) {
+        return rows(rows, false);
+    }
+
+    static Result rows(List<Map<String, String>> rows, boolean wholeRows) {
+        return new Result(rows, wholeRows, null, null, null);
+    }
+
+    static Result cursor(Cursor cursor) {
+        return new Result(null, cursor.isWholeRows(), cursor, null, null);
+    }
+
+    static Result count(long count) {
+        return new Result(null, false, null, count, null);
+    }
+
+    static Result message(String message) {
+        return new Result(null, false, null, null, message);
+    }
+
+    static Result empty() {
+        return EMPTY;
+    }
+
+    public boolean hasRows() {
+        return rows != null || cursor != null;
+    }
+
+    // Streams the rows of a plain SELECT; null for other results
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    public List<Map<String, String>> getRows() {
+        if (rows == null && cursor != null) {
+            List<Map<String, String>> drained = new ArrayList<>();
+            cursor.forEachRemaining(drained::add);
+            rows = drained;
+        }
+        return rows == null ? Collections.emptyList() : rows;
+    }
+
+    public boolean isWholeRows() {
+        return wholeRows;
+    }
+
+    // Every column of the rows, in order. A cursor knows them up front; for a list they are
+    // gathered from all of its rows, as a whole row lacks the columns it has no value in.
+    public List<String> getColumnNames() {
+        if (cursor != null) {
+            return cursor.getColumnNames();
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (Map<String, String> row : getRows()) {
+            names.addAll(row.keySet());
+        }
+        return new ArrayList<>(names);
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    // Text to show the user, or null when there is nothing to show
+    @Override
+    public String toString() {
+        if (hasRows()) {
+            return getRows().toString();
+        }
+        if (count != null) {
+            return count.toString();
+        }
+        return message;
+    }
+}
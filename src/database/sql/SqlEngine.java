@@ -0,0 +1,408 @@
+package database.sql;
+
+import database.BulkLoader;
+import database.Condition;
+import database.Cursor;
+import database.DatabaseMetrics;
+import database.IndexType;
+import database.Predicate;
+import database.SimpleDatabase;
+
+import java.util.*;
+
+// Runs SQL text against a database. Parsed statements are kept in a plan cache, so
+// executing the same text again, or preparing it with new parameters, skips parsing.
+// Text with literal values is cached as written; statements run repeatedly with changing
+// values should use ? parameters to share one plan (see PlanCache).
+public class SqlEngine {
+    private final SimpleDatabase db;
+    private final PlanCache planCache;
+    private volatile int fetchSize = Cursor.DEFAULT_FETCH_SIZE;
+
+    public SqlEngine(SimpleDatabase db) {
+        this(db, PlanCache.DEFAULT_CAPACITY);
+    }
+
+    public SqlEngine(SimpleDatabase db, int planCacheCapacity) {
+        this.db = db;
+        this.planCache = new PlanCache(planCacheCapacity);
+    }
+
+    public PreparedStatement prepare(String sql) {
+        return new PreparedStatement(this, planCache.get(sql.trim()));
+    }
+
+    public Result execute(String sql) {
+        Statement statement = planCache.get(sql.trim());
+        return execute(statement, new String[statement.getParameterCount()]);
+    }
+
+    public PlanCache getPlanCache() {
+        return planCache;
+    }
+
+    // Rows a SELECT's cursor builds at a time; bounds the memory a large read needs
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    Result execute(Statement statement, String[] parameters) {
+        if (statement instanceof Statement.Select select) {
+            return select(select, parameters);
+        }
+        if (statement instanceof Statement.Insert insert) {
+            List<String> values = resolve(insert.values, parameters);
+            if (insert.columns == null) {
+                db.insertData(insert.table, values);
+            } else {
+                db.insertDataWithColumns(insert.table, insert.columns, values);
+            }
+        } else if (statement instanceof Statement.Update update) {
+            Map<String, String> setValues = new LinkedHashMap<>();
+            for (int i = 0; i < update.columns.size(); i++) {
+                setValues.put(update.columns.get(i), update.values.get(i).resolve(parameters));
+            }
+            db.updateData(update.table, setValues, predicate(update.where, parameters));
+        } else if (statement instanceof Statement.Delete delete) {
+            db.deleteData(delete.table, predicate(delete.where, parameters));
+        } else if (statement instanceof Statement.CreateTable create) {
+            db.createTable(create.table, create.columns);
+        } else if (statement instanceof Statement.CreateIndex create) {
+            IndexType type = create.type == null ? IndexType.SORTED : IndexType.parse(create.type);
+            if (type == null) {
+                throw new SqlException("Unknown index type " + create.type + "; use HASH or BTREE");
+            }
+            db.createIndex(create.table, create.index, create.column, type);
+        } else if (statement instanceof Statement.DropTable drop) {
+            db.dropTable(drop.table);
+        } else if (statement instanceof Statement.DropIndex drop) {
+            db.dropIndex(drop.table, drop.index);
+        } else if (statement instanceof Statement.Persist persist) {
+            return persist(persist);
+        } else if (statement instanceof Statement.Explain explain) {
+            return explain(explain.statement, parameters);
+        } else if (statement instanceof Statement.Copy copy) {
+            return copy(copy);
+        } else if (statement instanceof Statement.Vacuum) {
+            return Result.message("Removed " + db.vacuum() + " dead row versions.");
+        } else if (statement instanceof Statement.Checkpoint) {
+            int written = db.checkpoint();
+            return Result.message("Checkpoint wrote " + written + (written == 1 ? " changed table." : " changed tables."));
+        } else if (statement instanceof Statement.Show show) {
+            return show(show);
+        }
+        return Result.empty();
+    }
+
+    private Result select(Statement.Select select, String[] parameters) {
+        long limit = rowCount(select.limit, "LIMIT", parameters, -1);
+        long offset = rowCount(select.offset, "OFFSET", parameters, 0);
+        if (select.join != null) {
+            JoinQuery join = new JoinQuery(select, parameters);
+            return Result.rows(window(db.selectJoin(join.left, join.leftColumn, join.leftPredicate,
+                    join.right, join.rightColumn, join.rightPredicate, select.columns.isEmpty() ? null : select.columns), offset, limit),
+                    select.columns.isEmpty());
+        }
+        if (!select.aggregates.isEmpty() || !select.groupBy.isEmpty()) {
+            return aggregate(select, parameters, offset, limit);
+        }
+        if (!select.orderBy.isEmpty()) {
+            throw new SqlException("ORDER BY is only supported with GROUP BY or aggregates");
+        }
+
+        if (select.distinct) {
+            Predicate predicate = predicate(select.where, parameters);
+            return Result.rows(window(select.columns.isEmpty()
+                    ? db.selectDistinctData(select.table, predicate)
+                    : db.selectDistinctColumns(select.table, select.columns, predicate), offset, limit), select.columns.isEmpty());
+        }
+        Cursor cursor = db.openCursor(select.table, predicate(select.where, parameters),
+                select.columns.isEmpty() ? null : select.columns, offset, limit);
+        return cursor == null ? Result.rows(Collections.emptyList()) : Result.cursor(cursor.setFetchSize(fetchSize));
+    }
+
+    // COUNT(DISTINCT column) and APPROX_COUNT_DISTINCT count distinct values (see
+    // count); anything else is a general aggregation (see Table.selectAggregate), in
+    // which COUNT(column) counts the rows with a value in the column.
+    private Result aggregate(Statement.Select select, String[] parameters, long offset, long limit) {
+        if (select.distinctCount || select.approximate) {
+            return count(select, select.aggregates.get(0).getColumn(), parameters);
+        }
+        if (select.distinct) {
+            throw new SqlException("DISTINCT cannot be combined with aggregates");
+        }
+        for (String column : select.columns) {
+            if (!select.groupBy.contains(column)) {
+                throw new SqlException("Column " + column + " must be listed in GROUP BY");
+            }
+        }
+        List<Map<String, String>> rows = window(db.selectAggregate(select.table, predicate(select.where, parameters),
+                select.groupBy, select.aggregates, select.orderBy,
+                limit < 0 || offset > Long.MAX_VALUE - limit ? -1 : offset + limit), offset, limit);
+        if (select.items.isEmpty()) {
+            return Result.rows(rows);
+        }
+        // Rows hold the group columns, then the aggregates; keep what was selected, in its order
+        List<Map<String, String>> selected = new ArrayList<>(rows.size());
+        for (Map<String, String> row : rows) {
+            Map<String, String> item = new LinkedHashMap<>();
+            for (String name : select.items) {
+                item.put(name, row.get(name));
+            }
+            selected.add(item);
+        }
+        return Result.rows(selected);
+    }
+
+    // A distinct count is a single number: it cannot be grouped or ordered, and the
+    // approximate one is read from a sketch of the whole column, so it takes no WHERE
+    private Result count(Statement.Select select, String countColumn, String[] parameters) {
+        if (!select.groupBy.isEmpty()) {
+            throw new SqlException("COUNT(DISTINCT ...) and APPROX_COUNT_DISTINCT cannot be grouped");
+        }
+        if (!select.columns.isEmpty()) {
+            throw new SqlException("COUNT(DISTINCT ...) and APPROX_COUNT_DISTINCT cannot be selected next to columns");
+        }
+        if (!select.orderBy.isEmpty()) {
+            throw new SqlException("COUNT(DISTINCT ...) and APPROX_COUNT_DISTINCT give one row, which cannot be ordered");
+        }
+        if (select.approximate) {
+            if (select.where != null) {
+                throw new SqlException("APPROX_COUNT_DISTINCT does not support WHERE");
+            }
+            return Result.count(db.selectApproximateCount(select.table, countColumn));
+        }
+        // Like the sketch, SQL leaves missing values out of a distinct count
+        return Result.count(db.selectDistinctCount(select.table, countColumn, predicate(select.where, parameters)));
+    }
+
+    private static long rowCount(Value value, String clause, String[] parameters, long absent) {
+        if (value == null) {
+            return absent;
+        }
+        String text = value.resolve(parameters);
+        try {
+            long count = Long.parseLong(text.trim());
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new SqlException(clause + " needs a non-negative whole number, not " + text);
+    }
+
+    // Applies OFFSET and LIMIT to a result that is computed as a whole
+    private static List<Map<String, String>> window(List<Map<String, String>> rows, long offset, long limit) {
+        int from = (int) Math.min(offset, rows.size());
+        int to = limit < 0 ? rows.size() : from + (int) Math.min(rows.size() - from, limit);
+        return from == 0 && to == rows.size() ? rows : rows.subList(from, to);
+    }
+
+    // A SELECT with a JOIN taken apart for the database: the join columns, and the WHERE
+    // conditions of each table as a predicate on that table alone. Every column must be
+    // qualified, and each AND-ed condition may only name columns of one table.
+    private static class JoinQuery {
+        final String left;
+        final String right;
+        String leftColumn;
+        String rightColumn;
+        final Predicate leftPredicate;
+        final Predicate rightPredicate;
+
+        JoinQuery(Statement.Select select, String[] parameters) {
+            if (!select.aggregates.isEmpty() || select.distinct || !select.groupBy.isEmpty() || !select.orderBy.isEmpty()) {
+                throw new SqlException("Aggregates, DISTINCT, GROUP BY and ORDER BY are not supported with JOIN");
+            }
+            left = select.table;
+            right = select.join.table;
+            if (left.equals(right)) {
+                throw new SqlException("A table cannot be joined with itself");
+            }
+            for (String column : List.of(select.join.first, select.join.second)) {
+                boolean first = side(column);
+                if (first ? leftColumn != null : rightColumn != null) {
+                    throw new SqlException("JOIN ON must compare a column of each table, as in "
+                            + left + ".x = " + right + ".y");
+                }
+                if (first) {
+                    leftColumn = unqualified(column);
+                } else {
+                    rightColumn = unqualified(column);
+                }
+            }
+            for (String column : select.columns) {
+                side(column);
+            }
+
+            List<Predicate> leftConditions = new ArrayList<>();
+            List<Predicate> rightConditions = new ArrayList<>();
+            List<Expression> conjuncts = select.where == null ? List.of()
+                    : select.where instanceof Expression.And and ? and.getOperands() : List.of(select.where);
+            for (Expression conjunct : conjuncts) {
+                Set<Boolean> sides = new HashSet<>();
+                columns(conjunct, sides);
+                if (sides.size() > 1) {
+                    throw new SqlException("Each condition ANDed in the WHERE of a join may only name columns of one table");
+                }
+                (sides.contains(true) ? leftConditions : rightConditions).add(predicate(conjunct, parameters, true));
+            }
+            leftPredicate = Predicate.and(leftConditions);
+            rightPredicate = Predicate.and(rightConditions);
+        }
+
+        // Whether the qualified column belongs to the left table rather than the right one
+        boolean side(String column) {
+            int dot = column.indexOf('.');
+            String table = dot < 0 ? null : column.substring(0, dot);
+            if (left.equals(table) || right.equals(table)) {
+                return left.equals(table);
+            }
+            throw new SqlException(dot < 0
+                    ? "Column " + column + " must be qualified with its table in a join, as in " + left + "." + column
+                    : "Table " + table + " is not part of the join");
+        }
+
+        private void columns(Expression expression, Set<Boolean> sides) {
+            if (expression instanceof Expression.And and) {
+                and.getOperands().forEach(operand -> columns(operand, sides));
+            } else if (expression instanceof Expression.Or or) {
+                or.getOperands().forEach(operand -> columns(operand, sides));
+            } else if (expression instanceof Expression.Not not) {
+                columns(not.getOperand(), sides);
+            } else if (expression instanceof Expression.Between between) {
+                sides.add(side(between.getColumn()));
+            } else if (expression instanceof Expression.In in) {
+                sides.add(side(in.getColumn()));
+            } else {
+                sides.add(side(((Expression.Comparison) expression).getColumn()));
+            }
+        }
+    }
+
+    private static String unqualified(String column) {
+        return column.substring(column.indexOf('.') + 1);
+    }
+
+    private Result explain(Statement statement, String[] parameters) {
+        if (statement instanceof Statement.Select select && select.join != null) {
+            JoinQuery join = new JoinQuery(select, parameters);
+            return Result.message(db.explainJoin(join.left, join.leftColumn, join.leftPredicate,
+                    join.right, join.rightColumn, join.rightPredicate));
+        }
+        if (statement instanceof Statement.Select select) {
+            return Result.message(db.explain(select.table, predicate(select.where, parameters)));
+        }
+        if (statement instanceof Statement.Update update) {
+            return Result.message(db.explain(update.table, predicate(update.where, parameters)));
+        }
+        Statement.Delete delete = (Statement.Delete) statement;
+        return Result.message(db.explain(delete.table, predicate(delete.where, parameters)));
+    }
+
+    private Result copy(Statement.Copy copy) {
+        BulkLoader loader = db.copyFromCsv(copy.table, copy.columns, copy.fileName, copy.header);
+        if (loader == null) {
+            return Result.empty();
+        }
+        String rejected = loader.getRowsRejected() == 0 ? "" : ", " + loader.getRowsRejected() + " rejected";
+        return Result.message("Copied " + loader.getRowsLoaded() + " rows in " + loader.getElapsedMillis() + " ms ("
+                + loader.getRowsPerSecond() + " rows/sec)" + rejected + ".");
+    }
+
+    private Result show(Statement.Show show) {
+        DatabaseMetrics metrics = db.getMetrics();
+        if (!show.slowQueries) {
+            return Result.rows(metrics.statistics());
+        }
+        List<DatabaseMetrics.SlowQuery> log = metrics.getSlowQueryLog();
+        if (log.isEmpty()) {
+            return Result.message(metrics.getSlowQueryThresholdMillis() < 0
+                    ? "The slow query log is off."
+                    : "No queries took " + metrics.getSlowQueryThresholdMillis() + " ms or longer.");
+        }
+        StringJoiner text = new StringJoiner(System.lineSeparator());
+        for (DatabaseMetrics.SlowQuery query : log) {
+            text.add(query.toString());
+        }
+        return Result.message(text.toString());
+    }
+
+    private Result persist(Statement.Persist persist) {
+        String fileName = persist.fileName != null
+                ? persist.fileName
+                : db.getName() + (persist.binary ? ".db" : ".txt");
+        if (persist.save) {
+            if (persist.binary) {
+                db.saveToBinaryFile(fileName);
+            } else {
+                db.saveToFile(fileName);
+            }
+            return Result.message("Data saved to file.");
+        }
+        if (persist.binary) {
+            db.openBinaryFile(fileName);
+        } else {
+            db.loadFromFile(fileName);
+        }
+        return Result.message("Data loaded from file.");
+    }
+
+    // Translates the WHERE clause into the table API's predicate, filling in parameters
+    private static Predicate predicate(Expression where, String[] parameters) {
+        return predicate(where, parameters, false);
+    }
+
+    // Qualified drops the table from the column names, for a condition of one side of a join
+    private static Predicate predicate(Expression where, String[] parameters, boolean qualified) {
+        if (where == null) {
+            return Predicate.all();
+        }
+        if (where instanceof Expression.And and) {
+            return Predicate.and(predicates(and.getOperands(), parameters, qualified));
+        }
+        if (where instanceof Expression.Or or) {
+            return Predicate.or(predicates(or.getOperands(), parameters, qualified));
+        }
+        if (where instanceof Expression.Not not) {
+            return Predicate.not(predicate(not.getOperand(), parameters, qualified));
+        }
+        if (where instanceof Expression.Between between) {
+            return Predicate.between(column(between.getColumn(), qualified),
+                    between.getLow().resolve(parameters), between.getHigh().resolve(parameters));
+        }
+        if (where instanceof Expression.In in) {
+            return Predicate.in(column(in.getColumn(), qualified), resolve(in.getValues(), parameters));
+        }
+        Expression.Comparison comparison = (Expression.Comparison) where;
+        String value = comparison.getValue().resolve(parameters);
+        String column = column(comparison.getColumn(), qualified);
+        if (comparison.getOperator().equals("LIKE")) {
+            return Predicate.like(column, value);
+        }
+        return new Condition(column, Condition.Operator.fromSymbol(comparison.getOperator()), value);
+    }
+
+    private static List<Predicate> predicates(List<Expression> operands, String[] parameters, boolean qualified) {
+        List<Predicate> predicates = new ArrayList<>(operands.size());
+        for (Expression operand : operands) {
+            predicates.add(predicate(operand, parameters, qualified));
+        }
+        return predicates;
+    }
+
+    private static String column(String name, boolean qualified) {
+        return qualified ? unqualified(name) : name;
+    }
+
+    private static List<String> resolve(List<Value> values, String[] parameters) {
+        List<String> resolved = new ArrayList<>(values.size());
+        for (Value value : values) {
+            resolved.add(value.resolve(parameters));
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,8 @@
+package database.sql;
+
+// Raised for statements that cannot be tokenized, parsed or bound
+public class SqlException extends RuntimeException {
+    public SqlException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,219 @@
+package database.sql;
+
+import database.Aggregate;
+import database.SortKey;
+
+import java.util.List;
+
+// Syntax tree of one parsed statement. Trees are immutable, so a cached statement can be
+// executed by several threads at once with different parameters.
+public abstract class Statement {
+    private int parameterCount;
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    void setParameterCount(int parameterCount) {
+        this.parameterCount = parameterCount;
+    }
+
+    // Whether running the statement reads or writes a file named in it
+    public boolean accessesFiles() {
+        return false;
+    }
+
+    public static class CreateTable extends Statement {
+        final String table;
+        final List<String> columns;
+
+        CreateTable(String table, List<String> columns) {
+            this.table = table;
+            this.columns = columns;
+        }
+    }
+
+    public static class CreateIndex extends Statement {
+        final String index;
+        final String table;
+        final String column;
+        final String type;
+
+        CreateIndex(String index, String table, String column, String type) {
+            this.index = index;
+            this.table = table;
+            this.column = column;
+            this.type = type;
+        }
+    }
+
+    public static class DropTable extends Statement {
+        final String table;
+
+        DropTable(String table) {
+            this.table = table;
+        }
+    }
+
+    public static class DropIndex extends Statement {
+        final String index;
+        final String table;
+
+        DropIndex(String index, String table) {
+            this.index = index;
+            this.table = table;
+        }
+    }
+
+    public static class Insert extends Statement {
+        final String table;
+        final List<String> columns;
+        final List<Value> values;
+
+        // columns is null for INSERT INTO t VALUES (...)
+        Insert(String table, List<String> columns, List<Value> values) {
+            this.table = table;
+            this.columns = columns;
+            this.values = values;
+        }
+    }
+
+    public static class Select extends Statement {
+        final boolean distinct;
+        // Names of the result columns in the order selected: columns and aggregates.
+        // Empty for SELECT *
+        final List<String> items;
+        final List<String> columns;
+        final List<Aggregate> aggregates;
+        // COUNT(DISTINCT column), or APPROX_COUNT_DISTINCT(column) when approximate; the
+        // count is then the only aggregate
+        final boolean distinctCount;
+        final boolean approximate;
+        final String table;
+        // The table joined to the first one, or null
+        final Join join;
+        final Expression where;
+        final List<String> groupBy;
+        final List<SortKey> orderBy;
+        // Null when the query has no LIMIT or OFFSET
+        final Value limit;
+        final Value offset;
+
+        Select(boolean distinct, List<String> items, List<String> columns, List<Aggregate> aggregates, boolean distinctCount,
+               boolean approximate, String table, Join join, Expression where, List<String> groupBy, List<SortKey> orderBy,
+               Value limit, Value offset) {
+            this.distinct = distinct;
+            this.items = items;
+            this.columns = columns;
+            this.aggregates = aggregates;
+            this.distinctCount = distinctCount;
+            this.approximate = approximate;
+            this.table = table;
+            this.join = join;
+            this.where = where;
+            this.groupBy = groupBy;
+            this.orderBy = orderBy;
+            this.limit = limit;
+            this.offset = offset;
+        }
+    }
+
+    // JOIN table ON first = second, where both columns are qualified, as in a.x = b.y
+    public static class Join {
+        final String table;
+        final String first;
+        final String second;
+
+        Join(String table, String first, String second) {
+            this.table = table;
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    public static class Update extends Statement {
+        final String table;
+        final List<String> columns;
+        final List<Value> values;
+        final Expression where;
+
+        Update(String table, List<String> columns, List<Value> values, Expression where) {
+            this.table = table;
+            this.columns = columns;
+            this.values = values;
+            this.where = where;
+        }
+    }
+
+    public static class Delete extends Statement {
+        final String table;
+        final Expression where;
+
+        Delete(String table, Expression where) {
+            this.table = table;
+            this.where = where;
+        }
+    }
+
+    // SAVE and LOAD, optionally in the binary page format and with an explicit file name
+    public static class Persist extends Statement {
+        final boolean save;
+        final boolean binary;
+        final String fileName;
+
+        Persist(boolean save, boolean binary, String fileName) {
+            this.save = save;
+            this.binary = binary;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public boolean accessesFiles() {
+            return true;
+        }
+    }
+
+    public static class Copy extends Statement {
+        final String table;
+        // Null for all columns in table order, or the header's columns with HEADER
+        final List<String> columns;
+        final String fileName;
+        final boolean header;
+
+        Copy(String table, List<String> columns, String fileName, boolean header) {
+            this.table = table;
+            this.columns = columns;
+            this.fileName = fileName;
+            this.header = header;
+        }
+
+        @Override
+        public boolean accessesFiles() {
+            return true;
+        }
+    }
+
+    public static class Vacuum extends Statement {
+    }
+
+    public static class Checkpoint extends Statement {
+    }
+
+    // SHOW STATS, or SHOW SLOW QUERIES when slowQueries is set
+    public static class Show extends Statement {
+        final boolean slowQueries;
+
+        Show(boolean slowQueries) {
+            this.slowQueries = slowQueries;
+        }
+    }
+
+    // EXPLAIN of a SELECT, UPDATE or DELETE
+    public static class Explain extends Statement {
+        final Statement statement;
+
+        Explain(Statement statement) {
+            this.statement = statement;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package database.sql;
+
+public class Token {
+    public enum Type {
+        IDENTIFIER,
+        STRING,
+        NUMBER,
+        SYMBOL,
+        PARAMETER,
+        END
+    }
+
+    private final Type type;
+    private final String text;
+    private final int position;
+
+    Token(Type type, String text, int position) {
+        this.type = type;
+        this.text = text;
+        this.position = position;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    // Keywords are ordinary identifiers compared without regard to case
+    boolean isKeyword(String keyword) {
+        return type == Type.IDENTIFIER && text.equalsIgnoreCase(keyword);
+    }
+
+    boolean isSymbol(String symbol) {
+        return type == Type.SYMBOL && text.equals(symbol);
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.END ? "end of statement" : "'" + text + "'";
+    }
+}
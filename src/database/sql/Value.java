@@ -0,0 +1,44 @@
+package database.sql;
+
+// A literal value in a statement, or a ? parameter bound when the statement is executed
+public class Value {
+    private final String literal;
+    private final int parameter;
+
+    private Value(String literal, int parameter) {
+        this.literal = literal;
+        this.parameter = parameter;
+    }
+
+    static Value literal(String text) {
+        return new Value(text, -1);
+    }
+
+    // NULL: no value at all
+    static Value missing() {
+        return new Value(null, -1);
+    }
+
+    static Value parameter(int index) {
+        return new Value(null, index);
+    }
+
+    public boolean isParameter() {
+        return parameter >= 0;
+    }
+
+    public String resolve(String[] parameters) {
+        if (parameter < 0) {
+            return literal;
+        }
+        if (parameter >= parameters.length || parameters[parameter] == null) {
+            throw new SqlException("No value bound for parameter " + (parameter + 1));
+        }
+        return parameters[parameter];
+    }
+
+    @Override
+    public String toString() {
+        return parameter >= 0 ? "?" : literal == null ? "NULL" : literal;
+    }
+}
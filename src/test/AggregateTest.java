@@ -0,0 +1,152 @@
+package test;
+
+import database.Aggregate;
+import database.Condition;
+import database.Predicate;
+import database.SimpleDatabase;
+import database.SortKey;
+import database.sql.SqlEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregateTest {
+    private static final String[] REGIONS = {"north", "south", "east", "west"};
+
+    // Per region: rows, the sum of the amounts present, how many there are, their minimum
+    // and maximum, all for years from 2005 on
+    private final Map<String, long[]> expected = new HashMap<>();
+
+    private SimpleDatabase database() {
+        SimpleDatabase db = new SimpleDatabase("aggregates");
+        db.createTable("sales", List.of("region", "year INT", "amount LONG"));
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            String region = i % 50 == 0 ? null : REGIONS[random.nextInt(REGIONS.length)];
+            int year = 2000 + random.nextInt(20);
+            Long amount = i % 33 == 0 ? null : (long) random.nextInt(2000) - 500;
+            List<String> columns = new ArrayList<>(List.of("year"));
+            List<String> values = new ArrayList<>(List.of(Integer.toString(year)));
+            if (region != null) {
+                columns.add("region");
+                values.add(region);
+            }
+            if (amount != null) {
+                columns.add("amount");
+                values.add(amount.toString());
+            }
+            db.insertDataWithColumns("sales", columns, values);
+            if (year >= 2005) {
+                long[] group = expected.computeIfAbsent(region, key -> new long[]{0, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE});
+                group[0]++;
+                if (amount != null) {
+                    group[1] += amount;
+                    group[2]++;
+                    group[3] = Math.min(group[3], amount);
+                    group[4] = Math.max(group[4], amount);
+                }
+            }
+        }
+        return db;
+    }
+
+    private static List<Map<String, String>> byRegion(SimpleDatabase db, List<SortKey> orderBy, int limit) {
+        return db.selectAggregate("sales", new Condition("year", Condition.Operator.GE, "2005"), List.of("region"),
+                List.of(Aggregate.count(), Aggregate.sum("amount"), Aggregate.count("amount"),
+                        Aggregate.min("amount"), Aggregate.max("amount"), Aggregate.avg("amount")),
+                orderBy, limit);
+    }
+
+    private void checkGroups(List<Map<String, String>> rows) {
+        assertEquals(expected.size(), rows.size());
+        rows.forEach(this::checkGroup);
+    }
+
+    private void checkGroup(Map<String, String> row) {
+        long[] group = expected.get(row.get("region"));
+        assertNotNull(group, row.toString());
+        assertEquals(Long.toString(group[0]), row.get("COUNT(*)"));
+        assertEquals(Long.toString(group[1]), row.get("SUM(amount)"));
+        assertEquals(Long.toString(group[2]), row.get("COUNT(amount)"));
+        assertEquals(Long.toString(group[3]), row.get("MIN(amount)"));
+        assertEquals(Long.toString(group[4]), row.get("MAX(amount)"));
+        assertEquals((double) group[1] / group[2], Double.parseDouble(row.get("AVG(amount)")), 1e-9);
+    }
+
+    @Test
+    public void groupsMatchRowByRowTotals() {
+        SimpleDatabase db = database();
+        checkGroups(byRegion(db, List.of(), -1));
+        // Rows without a region form a group of their own
+        assertTrue(expected.containsKey(null));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            db.setQueryExecutor(pool);
+            checkGroups(byRegion(db, List.of(), -1));
+        } finally {
+            db.setQueryExecutor(null);
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void topNKeepsTheFirstRowsInOrder() {
+        SimpleDatabase db = database();
+        List<Long> sums = new ArrayList<>();
+        for (long[] group : expected.values()) {
+            sums.add(group[1]);
+        }
+        sums.sort(Comparator.reverseOrder());
+
+        List<Map<String, String>> top = byRegion(db, List.of(SortKey.descending("SUM(amount)")), 3);
+        assertEquals(3, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(Long.toString(sums.get(i)), top.get(i).get("SUM(amount)"));
+        }
+        top.forEach(this::checkGroup);
+
+        // Top-N on a group column rather than an aggregate
+        List<Map<String, String>> years = db.selectAggregate("sales", Predicate.all(), List.of("year"),
+                List.of(Aggregate.count()), List.of(SortKey.descending("year")), 5);
+        List<String> order = new ArrayList<>();
+        for (Map<String, String> row : years) {
+            order.add(row.get("year"));
+        }
+        assertEquals(List.of("2019", "2018", "2017", "2016", "2015"), order);
+    }
+
+    @Test
+    public void globalAggregateOfNoRows() {
+        SimpleDatabase db = database();
+        List<Map<String, String>> none = db.selectAggregate("sales", new Condition("year", Condition.Operator.GT, "3000"),
+                List.of(), List.of(Aggregate.count(), Aggregate.sum("amount")), List.of(), -1);
+        assertEquals(1, none.size());
+        assertEquals("0", none.get(0).get("COUNT(*)"));
+        assertNull(none.get(0).get("SUM(amount)"));
+    }
+
+    @Test
+    public void sqlGroupByAndDistinctCount() {
+        SimpleDatabase db = database();
+        SqlEngine sql = new SqlEngine(db);
+        List<Map<String, String>> rows = sql.execute(
+                "SELECT region, SUM(amount) FROM sales WHERE year >= 2005 GROUP BY region ORDER BY SUM(amount) DESC LIMIT 2").getRows();
+        assertEquals(byRegion(db, List.of(SortKey.descending("SUM(amount)")), 2).stream()
+                .map(row -> row.get("SUM(amount)")).toList(), rows.stream().map(row -> row.get("SUM(amount)")).toList());
+
+        // COUNT(DISTINCT) honours WHERE and, as in SQL, does not count a missing region
+        assertEquals(4, sql.execute("SELECT COUNT(DISTINCT region) FROM sales").getCount());
+        assertEquals(5, db.selectCount("sales", "region"));
+        assertEquals(3, sql.execute("SELECT COUNT(DISTINCT region) FROM sales WHERE region IN ('north', 'south', 'east')").getCount());
+    }
+}
@@ -0,0 +1,90 @@
+package test;
+
+import database.BufferPool;
+import database.Condition;
+import database.Predicate;
+import database.SimpleDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+    private static final int TABLES = 4;
+    private static final int ROWS = 2000;
+
+    @TempDir
+    Path directory;
+
+    private SimpleDatabase populated() {
+        SimpleDatabase db = new SimpleDatabase("pooled");
+        db.openDataDirectory(directory.toString());
+        for (int t = 0; t < TABLES; t++) {
+            db.createTable("t" + t, List.of("id INT", "name"));
+            for (int i = 0; i < ROWS; i++) {
+                db.insertData("t" + t, List.of(Integer.toString(i), "t" + t + "-" + i));
+            }
+        }
+        db.checkpoint();
+        return db;
+    }
+
+    private static long tableBytes(SimpleDatabase db) {
+        BufferPool pool = db.getBufferPool();
+        return pool.getResidentBytes() / pool.getResidentTables();
+    }
+
+    @Test
+    public void coldTablesAreEvictedAndReadAgain() {
+        SimpleDatabase db = populated();
+        BufferPool pool = db.getBufferPool();
+        assertEquals(TABLES, pool.getResidentTables());
+        // Room for about two of the four tables
+        db.setMemoryBudget(tableBytes(db) * 5 / 2);
+        assertTrue(pool.getResidentTables() <= 2, pool.toString());
+        assertTrue(pool.getResidentBytes() <= pool.getMemoryBudget(), pool.toString());
+
+        for (int round = 0; round < 3; round++) {
+            for (int t = 0; t < TABLES; t++) {
+                List<Map<String, String>> rows = db.selectData("t" + t, Condition.equal("id", "7"));
+                assertEquals(List.of(Map.of("id", "7", "name", "t" + t + "-7")), rows);
+                assertTrue(pool.getResidentBytes() <= pool.getMemoryBudget(), pool.toString());
+            }
+        }
+        assertTrue(pool.getMisses() > 0);
+        assertTrue(pool.getEvictions() >= pool.getMisses());
+        assertEquals(0, pool.getWriteBacks());
+    }
+
+    @Test
+    public void changedTableIsWrittenBackBeforeEviction() {
+        SimpleDatabase db = populated();
+        BufferPool pool = db.getBufferPool();
+        db.updateData("t0", Map.of("name", "changed"), Condition.equal("id", "3"));
+        db.setMemoryBudget(tableBytes(db) * 3 / 2);
+
+        for (int t = 1; t < TABLES; t++) {
+            db.selectData("t" + t, Predicate.all());
+        }
+        assertTrue(pool.getWriteBacks() >= 1, pool.toString());
+        assertEquals(List.of(Map.of("id", "3", "name", "changed")), db.selectData("t0", Condition.equal("id", "3")));
+        assertEquals(ROWS, db.selectData("t0", Predicate.all()).size());
+    }
+
+    // The pool caches whole tables: a table larger than the budget is still read in full,
+    // and stays in memory while it is used, with every other table evicted
+    @Test
+    public void tableLargerThanTheBudgetIsReadWhole() {
+        SimpleDatabase db = populated();
+        BufferPool pool = db.getBufferPool();
+        db.setMemoryBudget(tableBytes(db) / 4);
+
+        assertEquals(ROWS, db.selectData("t2", Predicate.all()).size());
+        assertEquals(1, pool.getResidentTables());
+        assertTrue(pool.getResidentBytes() > pool.getMemoryBudget());
+    }
+}
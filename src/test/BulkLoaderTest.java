@@ -0,0 +1,111 @@
+package test;
+
+import database.BulkLoader;
+import database.Condition;
+import database.CsvReader;
+import database.IndexType;
+import database.Predicate;
+import database.SimpleDatabase;
+import database.sql.SqlEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkLoaderTest {
+    @TempDir
+    Path directory;
+
+    private static List<List<String>> records(String csv) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(csv))) {
+            while (reader.next()) {
+                String[] fields = new String[reader.getFieldCount()];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = reader.getField(i);
+                }
+                records.add(Arrays.asList(fields));
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void readerHandlesQuotesLineBreaksAndEmptyFields() throws IOException {
+        List<List<String>> records = records("a,\"b,c\",\"say \"\"hi\"\"\"\r\n\n1,,\"\"\n\"two\nlines\",x\n");
+        assertEquals(List.of(
+                List.of("a", "b,c", "say \"hi\""),
+                Arrays.asList("1", null, ""),
+                List.of("two\nlines", "x")), records);
+
+        try (CsvReader reader = new CsvReader(new StringReader("1\n\"open\n2\n"))) {
+            assertTrue(reader.next());
+            IOException error = assertThrows(IOException.class, reader::next);
+            assertTrue(error.getMessage().contains("line 2"), error.getMessage());
+        }
+        try (CsvReader reader = new CsvReader(new StringReader("0\n1,\"ab\"cd,3\n"))) {
+            assertTrue(reader.next());
+            IOException error = assertThrows(IOException.class, reader::next);
+            assertTrue(error.getMessage().contains("after quoted field") && error.getMessage().contains("line 2"), error.getMessage());
+        }
+    }
+
+    @Test
+    public void loaderCountsRejectedRowsAndRebuildsIndexes() {
+        SimpleDatabase db = new SimpleDatabase("bulk");
+        db.createTable("t", List.of("id INT", "name"));
+        db.createIndex("t", "t_id", "id", IndexType.HASH);
+        int rows = BulkLoader.BATCH_SIZE * 2 + 10;
+        BulkLoader loader = db.openBulkLoader("t", null);
+        try {
+            for (int i = 0; i < rows; i++) {
+                loader.add(List.of(Integer.toString(i), "n" + i));
+            }
+            // Not a number, and a row with more values than columns
+            loader.add(List.of("x", "bad"));
+            loader.add(List.of("1", "2", "3"));
+            // Rows are visible batch by batch
+            assertEquals(BulkLoader.BATCH_SIZE * 2, db.selectData("t", Predicate.all()).size());
+        } finally {
+            loader.close();
+        }
+        assertEquals(rows, loader.getRowsLoaded());
+        assertEquals(2, loader.getRowsRejected());
+
+        assertEquals(List.of(Map.of("id", "4100", "name", "n4100")), db.selectData("t", Condition.equal("id", "4100")));
+        assertTrue(db.explain("t", Condition.equal("id", "4100")).contains("Index lookup using t_id"));
+        assertNull(db.openBulkLoader("t", List.of("id", "nosuch")));
+    }
+
+    @Test
+    public void copyLoadsAFileWithAHeader() throws IOException {
+        Path file = directory.resolve("people.csv");
+        Files.writeString(file, "name,id\n\"Smith, Ann\",1\nBob,2\n,3\n\"multi\nline\",4\nnot,a number\n",
+                StandardCharsets.UTF_8);
+        SqlEngine sql = new SqlEngine(new SimpleDatabase("copied"));
+        sql.execute("CREATE TABLE people (id INT, name)");
+
+        String message = sql.execute("COPY people FROM '" + file + "' HEADER").toString();
+        assertTrue(message.startsWith("Copied 4 rows"), message);
+        assertTrue(message.endsWith("1 rejected."), message);
+        assertEquals(List.of(Map.of("id", "1", "name", "Smith, Ann")), sql.execute("SELECT * FROM people WHERE id = 1").getRows());
+        assertEquals(List.of(Map.of("id", "3")), sql.execute("SELECT * FROM people WHERE id = 3").getRows());
+        assertEquals(List.of(Map.of("name", "multi\nline")), sql.execute("SELECT name FROM people WHERE id = 4").getRows());
+
+        // Without a header the file's columns are the listed ones
+        Path more = directory.resolve("more.csv");
+        Files.writeString(more, "5,Eve\n", StandardCharsets.UTF_8);
+        sql.execute("COPY people (id, name) FROM '" + more + "'");
+        assertEquals(5, sql.execute("SELECT * FROM people").getRows().size());
+    }
+}
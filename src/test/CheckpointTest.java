@@ -0,0 +1,132 @@
+package test;
+
+import database.Condition;
+import database.DatabaseListener;
+import database.IndexType;
+import database.Predicate;
+import database.SimpleDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointTest {
+    @TempDir
+    Path directory;
+
+    private static List<Map<String, String>> rows(SimpleDatabase db, String table) {
+        return db.selectData(table, Predicate.all());
+    }
+
+    // Opens the directory in a fresh database, as a restart would, collecting what the
+    // engine reports
+    private SimpleDatabase restart(List<String> messages) {
+        SimpleDatabase db = new SimpleDatabase("checkpoints");
+        db.setListener((event, text) -> {
+            if (event == DatabaseListener.Event.CHANGED || event == DatabaseListener.Event.REJECTED) {
+                messages.add(event + " " + text);
+            }
+        });
+        db.openDataDirectory(directory.toString());
+        return db;
+    }
+
+    private List<String> tableFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).filter(name -> name.startsWith("table-")).sorted().toList();
+        }
+    }
+
+    private static String last(List<String> messages) {
+        return messages.isEmpty() ? null : messages.get(messages.size() - 1);
+    }
+
+    private SimpleDatabase populated() {
+        SimpleDatabase db = new SimpleDatabase("checkpoints");
+        db.openDataDirectory(directory.toString());
+        db.createTable("a", List.of("id INT", "name"));
+        db.createTable("b", List.of("id INT", "name"));
+        for (int i = 0; i < 1000; i++) {
+            db.insertData("a", List.of(Integer.toString(i), "a" + i));
+            db.insertData("b", List.of(Integer.toString(i), "b"));
+        }
+        db.createIndex("a", "a_id", "id", IndexType.HASH);
+        return db;
+    }
+
+    @Test
+    public void manifestNamesTheTableFilesOfTheCheckpoint() throws IOException {
+        SimpleDatabase db = populated();
+        assertEquals(2, db.checkpoint());
+        assertEquals(0, db.checkpoint());
+
+        List<String> manifest = Files.readAllLines(directory.resolve("MANIFEST"));
+        assertEquals("checkpoint 1", manifest.get(0));
+        assertEquals("number 1", manifest.get(1));
+        assertEquals(List.of("table-1-0.db", "table-1-1.db"),
+                manifest.subList(3, manifest.size()).stream().map(line -> line.split(" ")[2]).sorted().toList());
+
+        db.insertData("a", List.of("5000", "new"));
+        assertEquals(1, db.checkpoint());
+        manifest = Files.readAllLines(directory.resolve("MANIFEST"));
+        assertEquals("number 2", manifest.get(1));
+        // The unchanged table is still read from the first checkpoint's file, and the file
+        // the changed table replaced is deleted
+        List<String> named = manifest.subList(3, manifest.size()).stream().map(line -> line.split(" ")[2]).sorted().toList();
+        assertEquals(named, tableFiles());
+        assertEquals(1, named.stream().filter(name -> name.startsWith("table-1-")).count(), named.toString());
+    }
+
+    @Test
+    public void restartReadsCheckpointAndReplaysLaterChanges() {
+        SimpleDatabase db = populated();
+        db.checkpoint();
+        db.updateData("a", Map.of("name", "changed"), Condition.equal("id", "7"));
+        db.deleteData("b", new Condition("id", Condition.Operator.LT, "10"));
+        List<Map<String, String>> a = rows(db, "a");
+        List<Map<String, String>> b = rows(db, "b");
+        // No close: the checkpoint and the log after it are all a restart has
+
+        List<String> messages = new ArrayList<>();
+        SimpleDatabase restarted = restart(messages);
+        assertEquals("CHANGED Opened checkpoint 1 in " + directory + " and replayed 2 log records.", last(messages));
+        assertEquals(a, rows(restarted, "a"));
+        assertEquals(b, rows(restarted, "b"));
+        assertTrue(restarted.explain("a", Condition.equal("id", "7")).contains("Index"));
+
+        // Replayed tables are written by the next checkpoint, after which nothing is replayed
+        assertEquals(2, restarted.checkpoint());
+        restarted.closeWriteAheadLog();
+        messages.clear();
+        SimpleDatabase again = restart(messages);
+        assertEquals(List.of("CHANGED Opened checkpoint 2 in " + directory + " and replayed 0 log records."), messages);
+        assertEquals(a, rows(again, "a"));
+        assertEquals(b, rows(again, "b"));
+    }
+
+    @Test
+    public void droppedTableStaysDropped() throws IOException {
+        SimpleDatabase db = populated();
+        db.checkpoint();
+        db.dropTable("b");
+        db.createTable("c", List.of("id INT"));
+        db.insertData("c", List.of("1"));
+        db.checkpoint();
+        db.closeWriteAheadLog();
+
+        SimpleDatabase restarted = restart(new ArrayList<>());
+        assertTrue(rows(restarted, "b").isEmpty());
+        assertEquals(List.of(Map.of("id", "1")), rows(restarted, "c"));
+        assertEquals(1000, rows(restarted, "a").size());
+        // Files only the first checkpoint needed are gone
+        assertEquals(2, tableFiles().size(), tableFiles().toString());
+    }
+}
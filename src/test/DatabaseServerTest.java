@@ -0,0 +1,188 @@
+package test;
+
+import database.SimpleDatabase;
+import database.net.DatabaseClient;
+import database.net.DatabaseServer;
+import database.net.RemoteResult;
+import database.sql.SqlEngine;
+import database.sql.SqlException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatabaseServerTest {
+    private SimpleDatabase db;
+    private SqlEngine engine;
+    private DatabaseServer server;
+    private DatabaseClient client;
+
+    @BeforeEach
+    public void start() throws IOException {
+        db = new SimpleDatabase("served");
+        engine = new SqlEngine(db);
+        server = new DatabaseServer(db, 0);
+        server.start();
+        client = DatabaseClient.connect("localhost", server.getPort());
+    }
+
+    @AfterEach
+    public void stop() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    // The rows a statement returns over the wire and in process
+    private void assertSameRows(String sql) throws IOException {
+        RemoteResult remote = client.execute(sql);
+        assertTrue(remote.hasRows(), sql);
+        assertEquals(engine.execute(sql).getRows(), remote.getRows(), sql);
+    }
+
+    @Test
+    public void nullInFirstRowKeepsColumnsOfLaterRows() throws IOException {
+        client.execute("CREATE TABLE t (a INT, b)");
+        client.execute("INSERT INTO t (a) VALUES (1)");
+        client.execute("INSERT INTO t VALUES (2, 'x')");
+
+        assertEquals("[{a=1}, {a=2, b=x}]", client.execute("SELECT * FROM t").toString());
+        assertSameRows("SELECT * FROM t");
+        assertSameRows("SELECT b, a FROM t");
+        assertSameRows("SELECT DISTINCT * FROM t");
+        assertSameRows("SELECT DISTINCT b FROM t");
+        assertSameRows("SELECT b, COUNT(*) FROM t GROUP BY b");
+        assertEquals("[{b=null, a=1}, {b=x, a=2}]", client.execute("SELECT b, a FROM t").toString());
+    }
+
+    @Test
+    public void largeResultsArriveInSeveralFrames() throws IOException {
+        client.execute("CREATE TABLE t (id INT, name)");
+        List<String> inserts = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            inserts.add(i % 1000 == 0 ? "INSERT INTO t (id) VALUES (" + i + ")" : "INSERT INTO t VALUES (" + i + ", 'n" + i + "')");
+        }
+        for (RemoteResult result : client.executeBatch(inserts)) {
+            assertFalse(result.isError(), result.toString());
+        }
+
+        assertEquals(3000, client.execute("SELECT * FROM t").getRows().size());
+        assertSameRows("SELECT * FROM t");
+        assertSameRows("SELECT name FROM t WHERE id >= 900 LIMIT 1500");
+    }
+
+    @Test
+    public void pipelinedRequestsAnswerInOrder() throws Exception {
+        client.execute("CREATE TABLE t (id INT)");
+        List<CompletableFuture<List<RemoteResult>>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(client.submit("INSERT INTO t VALUES (?)", Integer.toString(i)));
+            futures.add(client.submit("SELECT COUNT(*) FROM t WHERE id <= ?", Integer.toString(i)));
+        }
+        futures.add(client.submitBatch(List.of("SELECT id FROM t WHERE id = 7", "SELECT nosuch FROM", "SELECT COUNT(id) FROM t")));
+
+        for (int i = 0; i < 200; i++) {
+            List<RemoteResult> count = futures.get(2 * i + 1).get();
+            assertEquals(List.of(Map.of("COUNT(*)", Integer.toString(i + 1))), count.get(0).getRows());
+        }
+        List<RemoteResult> batch = futures.get(futures.size() - 1).get();
+        assertEquals(3, batch.size());
+        assertEquals("[{id=7}]", batch.get(0).toString());
+        assertTrue(batch.get(1).isError());
+        assertEquals("[{COUNT(id)=200}]", batch.get(2).toString());
+    }
+
+    @Test
+    public void rejectedStatementThrowsAndConnectionStaysUsable() throws IOException {
+        assertThrows(SqlException.class, () -> client.execute("SELEC * FROM t"));
+        client.execute("CREATE TABLE t (id INT)");
+        client.execute("INSERT INTO t VALUES (?)", "5");
+        assertEquals("[{id=5}]", client.execute("SELECT * FROM t").toString());
+        assertEquals(1, server.getOpenConnections());
+    }
+
+    // Sends one frame on a raw connection and returns the type and message of the answer
+    private static String answer(DataOutputStream out, DataInputStream in, byte type, byte[] body) throws IOException {
+        out.writeInt(body.length + 1);
+        out.writeByte(type);
+        out.write(body);
+        out.flush();
+        int length = in.readInt();
+        byte answered = in.readByte();
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        assertEquals(length, 1 + 4 + text.length);
+        return answered + " " + new String(text, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] frame(String sql, int... ints) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        if (sql != null) {
+            byte[] text = sql.getBytes(StandardCharsets.UTF_8);
+            body.writeInt(text.length);
+            body.write(text);
+        }
+        for (int value : ints) {
+            body.writeInt(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void malformedFramesAreAnsweredWithErrors() throws IOException {
+        client.execute("CREATE TABLE t (id INT)");
+        try (Socket socket = new Socket(server.getAddress(), server.getPort());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+             DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            // EXECUTE is 1, BATCH 2 and ERROR 13; a huge and a negative parameter count
+            assertTrue(answer(out, in, (byte) 1, frame("SELECT * FROM t", Integer.MAX_VALUE)).startsWith("13 Malformed request"));
+            assertTrue(answer(out, in, (byte) 1, frame("SELECT * FROM t", -5)).startsWith("13 Malformed request"));
+            // A string claiming more bytes than the frame holds, and a truncated frame
+            assertTrue(answer(out, in, (byte) 1, frame(null, 1 << 30)).startsWith("13 Malformed request"));
+            assertTrue(answer(out, in, (byte) 1, frame("SELECT * FROM t")).startsWith("13 Malformed request"));
+            assertTrue(answer(out, in, (byte) 2, frame(null, Integer.MAX_VALUE)).startsWith("13 Malformed request"));
+            // The connection is still in step
+            out.writeInt(1 + frame("SELECT COUNT(*) FROM t", 0).length);
+            out.writeByte(1);
+            out.write(frame("SELECT COUNT(*) FROM t", 0));
+            out.flush();
+            in.readInt();
+            assertNotEquals(13, in.readByte());
+        }
+        client.execute("INSERT INTO t VALUES (1)");
+        assertEquals("[{id=1}]", client.execute("SELECT * FROM t").toString());
+    }
+
+    @Test
+    public void listensOnLoopbackAndRejectsFileStatements(@TempDir Path directory) throws IOException {
+        assertTrue(server.getAddress().isLoopbackAddress());
+        client.execute("CREATE TABLE t (id INT)");
+        client.execute("INSERT INTO t VALUES (1)");
+        String file = directory.resolve("saved.txt").toString();
+
+        SqlException rejected = assertThrows(SqlException.class, () -> client.execute("SAVE '" + file + "'"));
+        assertTrue(rejected.getMessage().contains("disabled"), rejected.getMessage());
+        assertThrows(SqlException.class, () -> client.execute("LOAD BINARY '" + file + "'"));
+        assertThrows(SqlException.class, () -> client.execute("COPY t FROM '" + file + "'"));
+        assertFalse(Files.exists(directory.resolve("saved.txt")));
+
+        server.setFileAccess(true);
+        client.execute("SAVE '" + file + "'");
+        assertTrue(Files.exists(directory.resolve("saved.txt")));
+    }
+}
@@ -0,0 +1,77 @@
+package test;
+
+import database.Condition;
+import database.Predicate;
+import database.SimpleDatabase;
+import database.sql.SqlEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DistinctCountTest {
+    @Test
+    public void exactCountMatchesSketchAndIgnoresNulls() {
+        SimpleDatabase db = new SimpleDatabase("distinct");
+        SqlEngine sql = new SqlEngine(db);
+        sql.execute("CREATE TABLE t (id INT, name)");
+        sql.execute("INSERT INTO t VALUES (1, 'a')");
+        sql.execute("INSERT INTO t VALUES (2, 'b')");
+        sql.execute("INSERT INTO t VALUES (3, 'a')");
+        sql.execute("INSERT INTO t (id) VALUES (4)");
+
+        assertEquals(2, sql.execute("SELECT COUNT(DISTINCT name) FROM t").getCount());
+        assertEquals(2, sql.execute("SELECT APPROX_COUNT_DISTINCT(name) FROM t").getCount());
+        assertEquals(1, sql.execute("SELECT COUNT(DISTINCT name) FROM t WHERE id >= 3").getCount());
+        assertEquals(0, sql.execute("SELECT COUNT(DISTINCT name) FROM t WHERE id = 4").getCount());
+        assertEquals(0, sql.execute("SELECT COUNT(DISTINCT nosuch) FROM t").getCount());
+        // The command line's count keeps treating the missing value as one
+        assertEquals(3, db.selectCount("t", "name"));
+    }
+
+    @Test
+    public void sketchStaysCloseToExactCount() {
+        SimpleDatabase db = new SimpleDatabase("distinct");
+        db.createTable("t", List.of("id INT", "code LONG"));
+        Set<Long> codes = new HashSet<>();
+        for (int i = 0; i < 50000; i++) {
+            long code = (i * 7919L) % 20011;
+            if (i % 10 == 0) {
+                db.insertDataWithColumns("t", List.of("id"), List.of(Integer.toString(i)));
+            } else {
+                db.insertData("t", List.of(Integer.toString(i), Long.toString(code)));
+                codes.add(code);
+            }
+        }
+
+        SqlEngine sql = new SqlEngine(db);
+        long exact = sql.execute("SELECT COUNT(DISTINCT code) FROM t").getCount();
+        long approximate = sql.execute("SELECT APPROX_COUNT_DISTINCT(code) FROM t").getCount();
+        assertEquals(codes.size(), exact);
+        // About 1.6% standard error; five of them is far outside any honest estimate
+        assertTrue(Math.abs(approximate - exact) <= exact * 0.08, approximate + " vs " + exact);
+    }
+
+    @Test
+    public void distinctRowsKeepFirstOccurrences() {
+        SimpleDatabase db = new SimpleDatabase("distinct");
+        db.createTable("t", List.of("id INT", "name"));
+        List<Map<String, String>> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            db.insertData("t", List.of(Integer.toString(i % 100), "n" + i % 100 % 7));
+            if (i < 100) {
+                expected.add(Map.of("id", Integer.toString(i), "name", "n" + i % 7));
+            }
+        }
+        assertEquals(expected, db.selectDistinctData("t"));
+        assertEquals(7, db.selectDistinctColumns("t", List.of("name")).size());
+        assertEquals(List.of(Map.of("name", "n0")),
+                db.selectDistinctColumns("t", List.of("name"), Predicate.and(List.of(
+                        new Condition("id", Condition.Operator.LT, "10"), Condition.equal("name", "n0")))));
+    }
+}
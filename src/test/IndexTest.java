@@ -0,0 +1,96 @@
+package test;
+
+import database.SimpleDatabase;
+import database.sql.SqlEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexTest {
+    private static final int ROWS = 2000;
+
+    private static SqlEngine engine() {
+        SqlEngine sql = new SqlEngine(new SimpleDatabase("indexed"));
+        sql.execute("CREATE TABLE t (id INT, k INT, name)");
+        for (int i = 0; i < ROWS; i++) {
+            sql.execute("INSERT INTO t VALUES (" + i + ", " + i % 100 + ", 'n" + i + "')");
+        }
+        return sql;
+    }
+
+    private static List<Map<String, String>> rows(SqlEngine sql, String where) {
+        return sql.execute("SELECT * FROM t WHERE " + where).getRows();
+    }
+
+    private static String explain(SqlEngine sql, String where) {
+        return sql.execute("EXPLAIN SELECT * FROM t WHERE " + where).toString();
+    }
+
+    // The same query on an identical table without indexes
+    private static void assertSameAsScan(SqlEngine sql, SqlEngine scan, String where) {
+        assertEquals(rows(scan, where), rows(sql, where), where);
+    }
+
+    @Test
+    public void hashIndexServesEqualityLookups() {
+        SqlEngine sql = engine();
+        SqlEngine scan = engine();
+        assertTrue(explain(sql, "id = 42").contains("Full scan"));
+        sql.execute("CREATE INDEX t_id ON t (id) USING HASH");
+
+        assertTrue(explain(sql, "id = 42").contains("Index lookup using t_id"), explain(sql, "id = 42"));
+        assertEquals(List.of(Map.of("id", "42", "k", "42", "name", "n42")), rows(sql, "id = 42"));
+        assertSameAsScan(sql, scan, "id IN (3, 1999, 5000)");
+        assertSameAsScan(sql, scan, "id = 7 AND name = 'n7'");
+        assertTrue(rows(sql, "id = 5000").isEmpty());
+    }
+
+    @Test
+    public void sortedIndexServesRanges() {
+        SqlEngine sql = engine();
+        SqlEngine scan = engine();
+        sql.execute("CREATE INDEX t_id ON t (id) USING BTREE");
+
+        assertTrue(explain(sql, "id BETWEEN 10 AND 19").contains("Range scan using t_id"), explain(sql, "id BETWEEN 10 AND 19"));
+        assertEquals(10, rows(sql, "id BETWEEN 10 AND 19").size());
+        assertSameAsScan(sql, scan, "id >= 1990");
+        assertSameAsScan(sql, scan, "id < 5");
+        assertSameAsScan(sql, scan, "id = 1000");
+    }
+
+    @Test
+    public void indexesFollowInsertsUpdatesAndDeletes() {
+        SqlEngine sql = engine();
+        SqlEngine scan = engine();
+        sql.execute("CREATE INDEX t_k ON t (k) USING HASH");
+        sql.execute("CREATE INDEX t_id ON t (id) USING BTREE");
+        for (SqlEngine engine : List.of(sql, scan)) {
+            engine.execute("INSERT INTO t VALUES (5000, 7, 'new')");
+            engine.execute("UPDATE t SET k = 101 WHERE id < 50");
+            engine.execute("DELETE FROM t WHERE k = 8");
+            engine.execute("DELETE FROM t WHERE id BETWEEN 1500 AND 1600");
+        }
+
+        assertSameAsScan(sql, scan, "k = 7");
+        // Of the twenty rows with k = 7, id 7 moved to 101 and 1507 was deleted; 5000 was added
+        assertEquals(19, rows(sql, "k = 7").size());
+        assertSameAsScan(sql, scan, "k = 101");
+        assertTrue(rows(sql, "k = 8").isEmpty());
+        assertSameAsScan(sql, scan, "id BETWEEN 1490 AND 1610");
+        assertSameAsScan(sql, scan, "id >= 4999");
+        assertSameAsScan(sql, scan, "id < 50 AND k = 101");
+    }
+
+    @Test
+    public void droppedIndexIsNoLongerUsed() {
+        SqlEngine sql = engine();
+        sql.execute("CREATE INDEX t_id ON t (id) USING HASH");
+        assertTrue(explain(sql, "id = 1").contains("t_id"));
+        sql.execute("DROP INDEX t_id ON t");
+        assertTrue(explain(sql, "id = 1").contains("Full scan"), explain(sql, "id = 1"));
+        assertEquals(1, rows(sql, "id = 1").size());
+    }
+}
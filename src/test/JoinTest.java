@@ -0,0 +1,109 @@
+package test;
+
+import database.Condition;
+import database.IndexType;
+import database.Predicate;
+import database.SimpleDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JoinTest {
+    // Orders refer to customers by an id that may repeat, be missing or match no customer
+    private static SimpleDatabase database() {
+        SimpleDatabase db = new SimpleDatabase("joins");
+        db.createTable("customers", List.of("id INT", "name", "region INT"));
+        db.createTable("orders", List.of("customer INT", "item"));
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            if (i % 97 == 0) {
+                db.insertDataWithColumns("customers", List.of("name", "region"), List.of("c" + i, Integer.toString(i % 5)));
+            } else {
+                db.insertData("customers", List.of(Integer.toString(random.nextInt(1500)), "c" + i, Integer.toString(i % 5)));
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            if (i % 89 == 0) {
+                db.insertDataWithColumns("orders", List.of("item"), List.of("i" + i));
+            } else {
+                db.insertData("orders", List.of(Integer.toString(random.nextInt(2000)), "i" + i % 10));
+            }
+        }
+        return db;
+    }
+
+    // Nested loops over both tables, in the order selectJoin promises
+    private static List<Map<String, String>> expected(SimpleDatabase db, Predicate customers, Predicate orders) {
+        List<Map<String, String>> joined = new ArrayList<>();
+        List<Map<String, String>> right = db.selectData("orders", orders);
+        for (Map<String, String> customer : db.selectData("customers", customers)) {
+            for (Map<String, String> order : right) {
+                String id = customer.get("id");
+                if (id == null || !id.equals(order.get("customer"))) {
+                    continue;
+                }
+                Map<String, String> row = new LinkedHashMap<>();
+                customer.forEach((column, value) -> row.put("customers." + column, value));
+                order.forEach((column, value) -> row.put("orders." + column, value));
+                joined.add(row);
+            }
+        }
+        return joined;
+    }
+
+    private static List<Map<String, String>> join(SimpleDatabase db, Predicate customers, Predicate orders) {
+        return db.selectJoin("customers", "id", customers, "orders", "customer", orders, null);
+    }
+
+    private static String explain(SimpleDatabase db, Predicate customers, Predicate orders) {
+        return db.explainJoin("customers", "id", customers, "orders", "customer", orders);
+    }
+
+    @Test
+    public void hashGraceAndMergeJoinsAgree() {
+        SimpleDatabase db = database();
+        Predicate region = new Condition("region", Condition.Operator.LT, "3");
+        Predicate item = Predicate.in("item", List.of("i1", "i4", "i7"));
+        List<Map<String, String>> all = expected(db, Predicate.all(), Predicate.all());
+        List<Map<String, String>> filtered = expected(db, region, item);
+        assertFalse(all.isEmpty());
+        assertFalse(filtered.isEmpty());
+
+        assertTrue(explain(db, Predicate.all(), Predicate.all()).startsWith("Hash join"));
+        assertFalse(explain(db, Predicate.all(), Predicate.all()).contains("Spills to disk"));
+        assertEquals(all, join(db, Predicate.all(), Predicate.all()));
+        assertEquals(filtered, join(db, region, item));
+
+        db.setJoinMemoryBudget(2000);
+        assertTrue(explain(db, Predicate.all(), Predicate.all()).contains("Spills to disk"));
+        assertEquals(all, join(db, Predicate.all(), Predicate.all()));
+        assertEquals(filtered, join(db, region, item));
+        db.setJoinMemoryBudget(SimpleDatabase.DEFAULT_JOIN_MEMORY_BUDGET);
+
+        db.createIndex("customers", "customers_id", "id", IndexType.SORTED);
+        db.createIndex("orders", "orders_customer", "customer", IndexType.SORTED);
+        assertTrue(explain(db, Predicate.all(), Predicate.all()).startsWith("Merge join"));
+        assertEquals(all, join(db, Predicate.all(), Predicate.all()));
+        assertEquals(filtered, join(db, region, item));
+    }
+
+    @Test
+    public void mergeJoinSeesRowsWrittenAfterIndexing() {
+        SimpleDatabase db = database();
+        db.createIndex("customers", "customers_id", "id", IndexType.SORTED);
+        db.createIndex("orders", "orders_customer", "customer", IndexType.SORTED);
+        db.insertData("customers", List.of("5", "new", "1"));
+        db.insertData("orders", List.of("5", "new"));
+        db.deleteData("orders", Condition.equal("item", "i3"));
+        db.updateData("customers", Map.of("id", "6"), Condition.equal("id", "7"));
+
+        assertTrue(explain(db, Predicate.all(), Predicate.all()).startsWith("Merge join"));
+        assertEquals(expected(db, Predicate.all(), Predicate.all()), join(db, Predicate.all(), Predicate.all()));
+    }
+}
@@ -0,0 +1,118 @@
+package test;
+
+import database.ResultCache;
+import database.SimpleDatabase;
+import database.sql.SqlEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+    private SimpleDatabase db;
+    private SqlEngine sql;
+
+    private ResultCache cache() {
+        db = new SimpleDatabase("cached");
+        sql = new SqlEngine(db);
+        sql.execute("CREATE TABLE t (a INT, b)");
+        sql.execute("INSERT INTO t VALUES (1, 'x1')");
+        sql.execute("INSERT INTO t VALUES (2, 'x2')");
+        sql.execute("INSERT INTO t VALUES (3, 'x3')");
+        return db.getResultCache();
+    }
+
+    private List<Map<String, String>> distinct(int a) {
+        return sql.execute("SELECT DISTINCT b FROM t WHERE a = " + a).getRows();
+    }
+
+    private Map<String, String> cacheStatistics() {
+        List<Map<String, String>> rows = sql.execute("SHOW STATS").getRows();
+        Map<String, String> last = rows.get(rows.size() - 1);
+        assertEquals("RESULT_CACHE", last.get("operation"));
+        return last;
+    }
+
+    @Test
+    public void insertInvalidatesCachedResult() {
+        ResultCache cache = cache();
+        assertEquals(3, db.selectDistinctCount("t", "b", null));
+        assertEquals(3, db.selectDistinctCount("t", "b", null));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getInvalidations());
+
+        sql.execute("INSERT INTO t VALUES (4, 'x4')");
+        assertEquals(4, db.selectDistinctCount("t", "b", null));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void readAfterUpdateIsNotStale() {
+        ResultCache cache = cache();
+        assertEquals(List.of(Map.of("b", "x2")), distinct(2));
+        assertEquals(List.of(Map.of("b", "x2")), distinct(2));
+        assertEquals(1, cache.getHits());
+
+        sql.execute("UPDATE t SET b = 'y2' WHERE a = 2");
+        assertEquals(List.of(Map.of("b", "y2")), distinct(2));
+        assertEquals(1, cache.getInvalidations());
+
+        // A statement that changes nothing leaves the cached result current
+        sql.execute("UPDATE t SET b = 'z' WHERE a = 9");
+        assertEquals(List.of(Map.of("b", "y2")), distinct(2));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedResultUnderBudget() {
+        ResultCache cache = cache();
+        distinct(1);
+        long entryBytes = cache.getCachedBytes();
+        assertTrue(entryBytes > 0);
+        // Room for two results of the same size
+        db.setResultCacheBudget(2 * entryBytes);
+
+        distinct(2);
+        distinct(1);
+        assertEquals(1, cache.getHits());
+        // 2 is now the least recently used result and makes room for 3
+        distinct(3);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+        assertTrue(cache.getCachedBytes() <= cache.getMemoryBudget());
+
+        distinct(1);
+        distinct(3);
+        assertEquals(3, cache.getHits());
+        long misses = cache.getMisses();
+        assertEquals(List.of(Map.of("b", "x2")), distinct(2));
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    public void countersAreShownWithStatistics() {
+        ResultCache cache = cache();
+        distinct(1);
+        distinct(1);
+        sql.execute("INSERT INTO t VALUES (1, 'x1')");
+        distinct(1);
+
+        Map<String, String> statistics = cacheStatistics();
+        assertEquals("1", statistics.get("hits"));
+        assertEquals("2", statistics.get("misses"));
+        assertEquals("1", statistics.get("invalidations"));
+        assertEquals("0", statistics.get("evictions"));
+        assertEquals("1", statistics.get("results"));
+        assertEquals(Long.toString(cache.getCachedBytes()), statistics.get("cached_bytes"));
+        assertEquals(1, db.getMetrics().getResultCacheHits());
+        assertEquals(1, db.getMetrics().getResultCacheInvalidations());
+
+        db.getMetrics().reset();
+        assertEquals("0", cacheStatistics().get("hits"));
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,62 @@
+package test;
+
+import database.Condition;
+import database.Cursor;
+import database.DatabaseMetrics;
+import database.IndexType;
+import database.SimpleDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlowQueryLogTest {
+    private static SimpleDatabase database() {
+        SimpleDatabase db = new SimpleDatabase("slow");
+        db.createTable("t", List.of("id INT", "name"));
+        for (int i = 0; i < 1000; i++) {
+            db.insertData("t", List.of(Integer.toString(i), "n" + i));
+        }
+        db.createIndex("t", "t_id", "id", IndexType.HASH);
+        // Every call is slow
+        db.getMetrics().setSlowQueryThreshold(0, TimeUnit.NANOSECONDS);
+        return db;
+    }
+
+    private static DatabaseMetrics.SlowQuery last(SimpleDatabase db) {
+        List<DatabaseMetrics.SlowQuery> log = db.getMetrics().getSlowQueryLog();
+        return log.get(log.size() - 1);
+    }
+
+    @Test
+    public void logsThePlanTheCursorRanNotALaterOne() {
+        SimpleDatabase db = database();
+        Cursor cursor = db.openCursor("t", Condition.equal("id", "7"), null, 0, -1);
+        // The index is gone before the cursor is recorded, so planning again would scan
+        db.dropIndex("t", "t_id");
+        assertEquals(1, cursor.fetch().size());
+        cursor.close();
+
+        DatabaseMetrics.SlowQuery query = last(db);
+        assertEquals(DatabaseMetrics.Operation.SELECT, query.getOperation());
+        assertTrue(query.getPlan().startsWith("Index lookup using t_id"), query.getPlan());
+        assertTrue(db.explain("t", Condition.equal("id", "7")).contains("Full scan"));
+    }
+
+    @Test
+    public void logsThePlanOfAnUpdateAndNoneForCachedResults() {
+        SimpleDatabase db = database();
+        db.updateData("t", Map.of("name", "x"), Condition.equal("id", "3"));
+        DatabaseMetrics.SlowQuery update = last(db);
+        assertEquals(DatabaseMetrics.Operation.UPDATE, update.getOperation());
+        assertTrue(update.getPlan().startsWith("Index lookup using t_id"), update.getPlan());
+
+        db.selectDistinctCount("t", "name", null);
+        assertTrue(last(db).getPlan().startsWith("Full scan"), last(db).getPlan());
+        db.selectDistinctCount("t", "name", null);
+        assertNull(last(db).getPlan());
+    }
+}
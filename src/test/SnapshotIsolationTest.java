@@ -0,0 +1,103 @@
+package test;
+
+import database.Condition;
+import database.Cursor;
+import database.Predicate;
+import database.SimpleDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotIsolationTest {
+    private static final int ROWS = 2000;
+
+    private static SimpleDatabase database() {
+        SimpleDatabase db = new SimpleDatabase("snapshots");
+        db.createTable("t", List.of("id INT", "version INT"));
+        for (int i = 0; i < ROWS; i++) {
+            db.insertData("t", List.of(Integer.toString(i), "0"));
+        }
+        return db;
+    }
+
+    private static Set<String> versions(List<Map<String, String>> rows) {
+        Set<String> versions = new HashSet<>();
+        for (Map<String, String> row : rows) {
+            versions.add(row.get("version"));
+        }
+        return versions;
+    }
+
+    @Test
+    public void cursorSeesTableAsItWasWhenOpened() {
+        SimpleDatabase db = database();
+        try (Cursor cursor = db.openCursor("t", Predicate.all(), null, 0, -1)) {
+            db.updateData("t", Map.of("version", "1"), Predicate.all());
+            db.deleteData("t", new Condition("id", Condition.Operator.LT, "100"));
+            db.insertData("t", List.of("5000", "1"));
+            // The cursor's snapshot still needs the old versions
+            db.vacuum();
+
+            List<Map<String, String>> seen = new ArrayList<>(cursor.fetch());
+            while (cursor.hasNext()) {
+                seen.addAll(cursor.fetch());
+            }
+            assertEquals(ROWS, seen.size());
+            assertEquals(Set.of("0"), versions(seen));
+        }
+        List<Map<String, String>> now = db.selectData("t", Predicate.all());
+        assertEquals(ROWS - 100 + 1, now.size());
+        assertEquals(Set.of("1"), versions(now));
+    }
+
+    @Test
+    public void vacuumRemovesOnlyDeadVersions() {
+        SimpleDatabase db = database();
+        db.updateData("t", Map.of("version", "1"), new Condition("id", Condition.Operator.LT, "500"));
+        db.deleteData("t", new Condition("id", Condition.Operator.GE, "1500"));
+        List<Map<String, String>> before = db.selectData("t", Predicate.all());
+
+        // 500 replaced versions and 500 deleted rows
+        assertEquals(1000, db.vacuum());
+        assertEquals(0, db.vacuum());
+        assertEquals(before, db.selectData("t", Predicate.all()));
+        assertEquals(500, db.selectData("t", Condition.equal("version", "1")).size());
+    }
+
+    // Every update changes all rows in one commit, so a reader must never see two versions
+    // at once, however the writer grows the table's arrays or vacuum replaces its rows
+    @Test
+    public void readersNeverSeeAPartialCommit() throws InterruptedException {
+        SimpleDatabase db = database();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            readers.add(Thread.ofPlatform().start(() -> {
+                while (!stop.get() && failure.get() == null) {
+                    List<Map<String, String>> rows = db.selectData("t", Predicate.all());
+                    Set<String> versions = versions(rows);
+                    if (rows.size() != ROWS || versions.size() != 1) {
+                        failure.set(rows.size() + " rows with versions " + versions);
+                    }
+                }
+            }));
+        }
+        for (int version = 1; version <= 50 && failure.get() == null; version++) {
+            db.updateData("t", Map.of("version", Integer.toString(version)), Predicate.all());
+            if (version % 10 == 0) {
+                db.vacuum();
+            }
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(Set.of("50"), versions(db.selectData("t", Predicate.all())));
+    }
+}
@@ -0,0 +1,166 @@
+package test;
+
+import database.SimpleDatabase;
+import database.sql.Lexer;
+import database.sql.Parser;
+import database.sql.PlanCache;
+import database.sql.PreparedStatement;
+import database.sql.SqlEngine;
+import database.sql.SqlException;
+import database.sql.Token;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SqlParserTest {
+    private static SqlEngine engine() {
+        SqlEngine sql = new SqlEngine(new SimpleDatabase("sql"));
+        sql.execute("CREATE TABLE t (a INT, b)");
+        sql.execute("INSERT INTO t VALUES (1, 'y')");
+        sql.execute("INSERT INTO t VALUES (2, 'y')");
+        sql.execute("INSERT INTO t VALUES (2, 'x')");
+        sql.execute("INSERT INTO t VALUES (3, 'it''s')");
+        return sql;
+    }
+
+    private static List<String> ids(SqlEngine sql, String where) {
+        return sql.execute("SELECT a FROM t WHERE " + where).getRows().stream().map(row -> row.get("a")).toList();
+    }
+
+    private static String error(String sql) {
+        return assertThrows(SqlException.class, () -> Parser.parse(sql)).getMessage();
+    }
+
+    @Test
+    public void andBindsTighterThanOrAndNotTighterThanAnd() {
+        SqlEngine sql = engine();
+        assertEquals(List.of("1", "2"), ids(sql, "a = 1 OR a = 2 AND b = 'x'"));
+        assertEquals(List.of("2"), ids(sql, "(a = 1 OR a = 2) AND b = 'x'"));
+        assertEquals(List.of("2"), ids(sql, "NOT a = 1 AND b = 'y'"));
+        assertEquals(List.of("2", "3"), ids(sql, "NOT (a = 1 AND b = 'y') AND a >= 2 AND NOT a = 2 OR b = 'x'"));
+        assertEquals(List.of("1", "3"), ids(sql, "a NOT BETWEEN 2 AND 2 AND a IN (1, 3) OR a NOT IN (1, 2, 3)"));
+    }
+
+    @Test
+    public void quotedStringsAndEscapes() {
+        List<Token> tokens = new Lexer("SELECT 'it''s', \"say \"\"hi\"\"\", -12.5, 12abc, ? FROM t;").tokenize();
+        assertEquals(List.of(Token.Type.IDENTIFIER, Token.Type.STRING, Token.Type.SYMBOL, Token.Type.STRING, Token.Type.SYMBOL,
+                        Token.Type.NUMBER, Token.Type.SYMBOL, Token.Type.IDENTIFIER, Token.Type.SYMBOL, Token.Type.PARAMETER,
+                        Token.Type.IDENTIFIER, Token.Type.IDENTIFIER, Token.Type.SYMBOL, Token.Type.END),
+                tokens.stream().map(Token::getType).toList());
+        assertEquals("it's", tokens.get(1).getText());
+        assertEquals("say \"hi\"", tokens.get(3).getText());
+        assertEquals("-12.5", tokens.get(5).getText());
+        assertEquals(7, tokens.get(1).getPosition());
+
+        SqlEngine sql = engine();
+        assertEquals(List.of("3"), ids(sql, "b = 'it''s'"));
+        assertEquals(List.of("1", "2"), ids(sql, "b = \"y\""));
+        // Keywords are not case sensitive, and a bare word is a value as in the old command syntax
+        assertEquals(List.of("1", "2"), ids(sql, "b = y"));
+        assertEquals(List.of(Map.of("a", "1")), sql.execute("select a from t where b = y and a < 2;").getRows());
+    }
+
+    @Test
+    public void nullKeywordStoresAMissingValue() {
+        SqlEngine sql = engine();
+        sql.execute("INSERT INTO t VALUES (5, NULL)");
+        sql.execute("INSERT INTO t (b, a) VALUES ('n', null)");
+        sql.execute("INSERT INTO t VALUES (6, 'NULL')");
+        assertEquals(List.of(Map.of("a", "5")), sql.execute("SELECT * FROM t WHERE a = 5").getRows());
+        assertEquals(List.of(Map.of("b", "n")), sql.execute("SELECT * FROM t WHERE b = 'n'").getRows());
+        assertEquals(List.of(Map.of("a", "6", "b", "NULL")), sql.execute("SELECT * FROM t WHERE b = 'NULL'").getRows());
+
+        sql.execute("UPDATE t SET b = NULL WHERE a = 1");
+        assertEquals(List.of(Map.of("a", "1")), sql.execute("SELECT * FROM t WHERE a = 1").getRows());
+        // Rows 1 and 5 have no b, the row with b = 'n' has no a
+        assertEquals(List.of(Map.of("COUNT(b)", "5", "COUNT(a)", "6")), sql.execute("SELECT COUNT(b), COUNT(a) FROM t").getRows());
+    }
+
+    @Test
+    public void syntaxErrorsGiveTheirPosition() {
+        assertEquals("Expected FROM but found 'FORM' at position 9", error("SELECT * FORM t"));
+        assertEquals("Expected a value but found end of statement at position 31", error("SELECT * FROM t WHERE a BETWEEN"));
+        assertEquals("Expected a comparison operator but found 'b' at position 24", error("SELECT * FROM t WHERE a b"));
+        assertEquals("Expected ')' but found 'VALUES' at position 20", error("INSERT INTO t (a, b VALUES (1, 2)"));
+        assertEquals("Expected end of statement but found 'extra' at position 16", error("SELECT * FROM t extra"));
+        assertEquals("Unknown command 'SELEC' at position 0", error("SELEC * FROM t"));
+        assertEquals("Unterminated string starting at position 22", error("SELECT * FROM t WHERE 'open"));
+        assertEquals("Unexpected character '#' at position 14", error("SELECT * FROM #t"));
+        assertEquals("Expected SELECT, UPDATE or DELETE but found 'DROP' at position 8", error("EXPLAIN DROP TABLE t"));
+    }
+
+    @Test
+    public void planCacheCountsHitsAndEvictsLeastRecentlyUsed() {
+        PlanCache cache = new PlanCache(2);
+        cache.get("SELECT * FROM a");
+        cache.get("SELECT * FROM b");
+        cache.get("SELECT * FROM a");
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // b is now the least recently used statement and makes room for c
+        cache.get("SELECT * FROM c");
+        assertEquals(2, cache.size());
+        cache.get("SELECT * FROM a");
+        assertEquals(2, cache.getHits());
+        cache.get("SELECT * FROM b");
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.size());
+
+        // A statement that does not parse is not cached
+        assertThrows(SqlException.class, () -> cache.get("SELECT FROM"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void literalsAreCachedAsWrittenAndParametersSharePlans() {
+        SqlEngine sql = engine();
+        PlanCache cache = sql.getPlanCache();
+        long misses = cache.getMisses();
+        ids(sql, "a = 1");
+        ids(sql, "a = 2");
+        assertEquals(misses + 2, cache.getMisses());
+
+        for (int i = 1; i <= 3; i++) {
+            PreparedStatement statement = sql.prepare("SELECT a FROM t WHERE a = ?");
+            statement.setParameter(1, i);
+            List<Map<String, String>> rows = statement.execute().getRows();
+            assertFalse(rows.isEmpty());
+            for (Map<String, String> row : rows) {
+                assertEquals(Integer.toString(i), row.get("a"));
+            }
+        }
+        assertEquals(misses + 3, cache.getMisses());
+    }
+
+    @Test
+    public void parametersAreBoundByPosition() {
+        SqlEngine sql = engine();
+        PreparedStatement statement = sql.prepare("SELECT a FROM t WHERE b = ? AND a >= ? LIMIT ?");
+        assertEquals(3, statement.getParameterCount());
+        statement.setParameter(1, "y").setParameter(2, 1).setParameter(3, 1);
+        assertEquals(List.of(Map.of("a", "1")), statement.execute().getRows());
+        statement.setParameter(3, 5);
+        assertEquals(2, statement.execute().getRows().size());
+
+        // Values are bound as data, never parsed as SQL
+        statement.setParameter(1, "y' OR 'a' = 'a");
+        assertTrue(statement.execute().getRows().isEmpty());
+
+        statement.clearParameters();
+        statement.setParameter(2, 1).setParameter(3, 5);
+        assertEquals("No value bound for parameter 1", assertThrows(SqlException.class, statement::execute).getMessage());
+        assertThrows(SqlException.class, () -> statement.setParameter(0, "x"));
+        assertThrows(SqlException.class, () -> statement.setParameter(4, "x"));
+
+        PreparedStatement insert = sql.prepare("INSERT INTO t (b, a) VALUES (?, ?)");
+        insert.setParameter(1, "z").setParameter(2, 9.0).execute();
+        assertTrue(ids(sql, "b = 'z'").isEmpty());
+        insert.setParameter(2, 9).execute();
+        assertEquals(List.of("9"), ids(sql, "b = 'z'"));
+    }
+}
@@ -0,0 +1,112 @@
+package test;
+
+import database.Condition;
+import database.DatabaseListener;
+import database.IndexType;
+import database.Predicate;
+import database.SimpleDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThreeValuedLogicTest {
+    // Row i has score i, except every fourth row, which has none, and name "n<i % 3>"
+    private static SimpleDatabase database() {
+        SimpleDatabase db = new SimpleDatabase("logic");
+        db.createTable("t", List.of("id INT", "score INT", "name"));
+        for (int i = 0; i < 20; i++) {
+            if (i % 4 == 0) {
+                db.insertDataWithColumns("t", List.of("id", "name"), List.of(Integer.toString(i), "n" + i % 3));
+            } else {
+                db.insertData("t", List.of(Integer.toString(i), Integer.toString(i), "n" + i % 3));
+            }
+        }
+        return db;
+    }
+
+    private static TreeSet<Integer> ids(SimpleDatabase db, Predicate predicate) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (Map<String, String> row : db.selectData("t", predicate)) {
+            ids.add(Integer.parseInt(row.get("id")));
+        }
+        return ids;
+    }
+
+    private static TreeSet<Integer> scored(int... ids) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    // Rows without a score satisfy neither a comparison on it nor its negation
+    private static void checkScores(SimpleDatabase db) {
+        Predicate high = new Condition("score", Condition.Operator.GT, "15");
+        assertEquals(scored(17, 18, 19), ids(db, high));
+        assertEquals(scored(1, 2, 3, 5, 6, 7, 9, 10, 11, 13, 14, 15), ids(db, Predicate.not(high)));
+        assertEquals(scored(1, 2, 3, 5, 6, 7, 9, 10, 11, 13, 14, 15, 17, 18, 19),
+                ids(db, new Condition("score", Condition.Operator.NE, "16")));
+
+        Predicate in = Predicate.in("score", List.of("3", "4", "5"));
+        assertEquals(scored(3, 5), ids(db, in));
+        assertEquals(15 - 2, ids(db, Predicate.not(in)).size());
+        assertFalse(ids(db, Predicate.not(in)).contains(4));
+
+        Predicate between = Predicate.between("score", "6", "9");
+        assertEquals(scored(6, 7, 9), ids(db, between));
+        assertEquals(15 - 3, ids(db, Predicate.not(between)).size());
+        assertFalse(ids(db, Predicate.not(between)).contains(8));
+
+        // Unknown OR true is true, unknown AND false is false, and NOT keeps neither
+        Predicate either = Predicate.or(List.of(high, Condition.equal("name", "n0")));
+        assertEquals(scored(0, 3, 6, 9, 12, 15, 17, 18, 19), ids(db, either));
+        TreeSet<Integer> neither = ids(db, Predicate.not(either));
+        assertEquals(scored(1, 2, 5, 7, 10, 11, 13, 14), neither);
+        Predicate both = Predicate.and(List.of(high, Condition.equal("name", "n1")));
+        assertEquals(scored(19), ids(db, both));
+        TreeSet<Integer> notBoth = ids(db, Predicate.not(both));
+        assertEquals(17, notBoth.size());
+        assertTrue(notBoth.containsAll(scored(0, 8, 12)) && !notBoth.contains(4) && !notBoth.contains(16));
+    }
+
+    @Test
+    public void missingValuesAreUnknownWithoutIndexes() {
+        checkScores(database());
+    }
+
+    @Test
+    public void missingValuesAreUnknownWithIndexes() {
+        SimpleDatabase db = database();
+        db.createIndex("t", "t_score", "score", IndexType.SORTED);
+        checkScores(db);
+        db.dropIndex("t", "t_score");
+        db.createIndex("t", "t_score", "score", IndexType.HASH);
+        checkScores(db);
+    }
+
+    @Test
+    public void unknownColumnIsRejectedAndMatchesNothing() {
+        SimpleDatabase db = database();
+        List<String> rejected = new ArrayList<>();
+        db.setListener((event, text) -> {
+            if (event == DatabaseListener.Event.REJECTED) {
+                rejected.add(text);
+            }
+        });
+        Predicate unknown = Condition.equal("nosuch", "1");
+        assertTrue(db.selectData("t", unknown).isEmpty());
+        assertTrue(db.selectData("t", Predicate.not(unknown)).isEmpty());
+        assertTrue(rejected.contains("Unknown column: nosuch"), rejected.toString());
+
+        db.deleteData("t", Predicate.not(new Condition("nosuch", Condition.Operator.LT, "5")));
+        db.updateData("t", Map.of("name", "changed"), unknown);
+        assertEquals(20, db.selectData("t", Predicate.all()).size());
+        assertTrue(db.selectData("t", Condition.equal("name", "changed")).isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package test;
+
+import database.BulkLoader;
+import database.Condition;
+import database.DatabaseListener;
+import database.Predicate;
+import database.SimpleDatabase;
+import database.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+    @TempDir
+    Path directory;
+
+    private static List<Map<String, String>> rows(SimpleDatabase db) {
+        return db.selectData("t", Predicate.all());
+    }
+
+    // Opens the log in a fresh database, as a restart after a crash would, and returns
+    // what the engine reported while replaying it
+    private List<String> reopen(SimpleDatabase db, DatabaseListener.Event event) {
+        List<String> messages = new ArrayList<>();
+        db.setListener((reported, text) -> {
+            if (reported == event) {
+                messages.add(text);
+            }
+        });
+        db.openWriteAheadLog(directory.resolve("wal.log").toString());
+        return messages;
+    }
+
+    @Test
+    public void replaysChangesAfterCrash() {
+        SimpleDatabase db = new SimpleDatabase("wal");
+        db.openWriteAheadLog(directory.resolve("wal.log").toString());
+        db.createTable("t", List.of("id INT", "name"));
+        for (int i = 0; i < 100; i++) {
+            db.insertData("t", List.of(Integer.toString(i), "row" + i));
+        }
+        db.insertDataWithColumns("t", List.of("id"), List.of("100"));
+        db.updateData("t", Map.of("name", "changed"), Condition.equal("id", "7"));
+        db.deleteData("t", new Condition("id", Condition.Operator.GE, "90"));
+        List<Map<String, String>> expected = rows(db);
+        // No close: the log is all a restart has
+
+        SimpleDatabase restarted = new SimpleDatabase("wal");
+        assertTrue(reopen(restarted, DatabaseListener.Event.REJECTED).isEmpty());
+        assertEquals(expected, rows(restarted));
+        assertEquals(90, expected.size());
+        assertEquals(List.of(Map.of("id", "7", "name", "changed")),
+                restarted.selectData("t", Condition.equal("id", "7")));
+    }
+
+    @Test
+    public void rejectedInsertIsNotLogged() {
+        SimpleDatabase db = new SimpleDatabase("wal");
+        db.openWriteAheadLog(directory.resolve("wal.log").toString());
+        db.createTable("t", List.of("id INT", "name"));
+        assertTrue(db.insertData("t", List.of("1", "one")));
+        assertFalse(db.insertData("t", List.of("two", "not a number")));
+        assertFalse(db.insertData("t", List.of("3", "three", "extra")));
+        assertFalse(db.insertDataWithColumns("t", List.of("id", "nosuch"), List.of("4", "x")));
+        assertTrue(db.insertDataWithColumns("t", List.of("id"), List.of("5")));
+        assertEquals(2, rows(db).size());
+
+        SimpleDatabase restarted = new SimpleDatabase("wal");
+        List<String> changes = reopen(restarted, DatabaseListener.Event.CHANGED);
+        // The table and the two accepted rows
+        assertTrue(changes.get(changes.size() - 1).startsWith("Replayed 3 log records"), changes.toString());
+        assertEquals(rows(db), rows(restarted));
+    }
+
+    @Test
+    public void statementsChangingNothingAreNotLogged() {
+        SimpleDatabase db = new SimpleDatabase("wal");
+        db.openWriteAheadLog(directory.resolve("wal.log").toString());
+        db.createTable("t", List.of("id INT", "name"));
+        db.insertData("t", List.of("1", "one"));
+        List<String> messages = new ArrayList<>();
+        db.setListener((event, text) -> messages.add(event + " " + text));
+
+        db.deleteData("t", Condition.equal("nme", "one"));
+        db.updateData("t", Map.of("id", "not a number"), Condition.equal("id", "1"));
+        db.updateData("t", Map.of("nosuch", "9"), Condition.equal("id", "1"));
+        db.updateData("t", Map.of("name", "two"), Condition.equal("id", "2"));
+        db.deleteData("t", Condition.equal("id", "2"));
+        assertEquals(List.of("REJECTED Unknown column: nme",
+                "REJECTED Invalid value for column id (INT): not a number",
+                "REJECTED Unknown column: nosuch"), messages);
+        assertEquals(List.of(Map.of("id", "1", "name", "one")), rows(db));
+
+        db.deleteData("t", Condition.equal("id", "1"));
+        assertEquals("CHANGED Data deleted from table \"t\".", messages.get(messages.size() - 1));
+
+        SimpleDatabase restarted = new SimpleDatabase("wal");
+        List<String> changes = reopen(restarted, DatabaseListener.Event.CHANGED);
+        // The table, the row and the one delete that removed it
+        assertTrue(changes.get(changes.size() - 1).startsWith("Replayed 3 log records"), changes.toString());
+        assertTrue(rows(restarted).isEmpty());
+    }
+
+    @Test
+    public void bulkLoadLogsOnlyAcceptedRows() {
+        SimpleDatabase db = new SimpleDatabase("wal");
+        db.openWriteAheadLog(directory.resolve("wal.log").toString());
+        db.createTable("t", List.of("id INT", "name"));
+        try (BulkLoader loader = db.openBulkLoader("t", null)) {
+            loader.add(List.of("1", "one"));
+            loader.add(List.of("two", "not a number"));
+            loader.add(List.of("3", "three"));
+        }
+        try (BulkLoader loader = db.openBulkLoader("t", null)) {
+            loader.add(List.of("four", "not a number"));
+        }
+        assertEquals(2, rows(db).size());
+
+        SimpleDatabase restarted = new SimpleDatabase("wal");
+        List<String> changes = reopen(restarted, DatabaseListener.Event.CHANGED);
+        // The table and the one batch that appended rows
+        assertTrue(changes.get(changes.size() - 1).startsWith("Replayed 2 log records"), changes.toString());
+        assertEquals(rows(db), rows(restarted));
+    }
+
+    @Test
+    public void failedLogWriteIsRejectedInsteadOfReported() throws Exception {
+        SimpleDatabase db = new SimpleDatabase("wal");
+        db.openWriteAheadLog(directory.resolve("wal.log").toString());
+        db.createTable("t", List.of("id INT"));
+        // Closing the log underneath the database makes the next fsync fail
+        Field field = SimpleDatabase.class.getDeclaredField("writeAheadLog");
+        field.setAccessible(true);
+        ((WriteAheadLog) field.get(db)).close();
+        List<String> messages = new ArrayList<>();
+        db.setListener((event, text) -> {
+            if (event != DatabaseListener.Event.ROW_WRITTEN) {
+                messages.add(event + " " + text);
+            }
+        });
+
+        assertFalse(db.insertData("t", List.of("1")));
+        db.deleteData("t", Predicate.all());
+        BulkLoader loader = db.openBulkLoader("t", null);
+        loader.add(List.of("2"));
+        loader.close();
+        assertEquals(0, loader.getRowsLoaded());
+        assertEquals(1, loader.getRowsRejected());
+        assertEquals(3, messages.size(), messages.toString());
+        for (String message : messages) {
+            assertTrue(message.startsWith("REJECTED The change could not be made durable"), message);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package test;
+
+import database.Condition;
+import database.DatabaseMetrics;
+import database.OperationStats;
+import database.Predicate;
+import database.SimpleDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZoneMapTest {
+    private static final int ROWS = 50_000;
+    // Rows per block of a zone map
+    private static final int BLOCK = 4096;
+
+    @TempDir
+    Path directory;
+
+    // Ids and timestamps rise with the row, colours come in runs of 5000 rows, and every
+    // third row in the first half has no group
+    private static SimpleDatabase database() {
+        SimpleDatabase db = new SimpleDatabase("zones");
+        db.createTable("t", List.of("id INT", "ts LONG", "colour", "price DOUBLE", "grp INT"));
+        String[] colours = {"red", "green", "blue", "black"};
+        Random random = new Random(1);
+        for (int i = 0; i < ROWS; i++) {
+            List<String> columns = new ArrayList<>(List.of("id", "ts", "colour", "price"));
+            List<String> values = new ArrayList<>(List.of(Integer.toString(i), Long.toString(1_700_000_000_000L + i * 1000L),
+                    colours[i / 5000 % colours.length], Double.toString(random.nextInt(100_000) / 100.0 - 100)));
+            if (i % 3 != 0 || i >= ROWS / 2) {
+                columns.add("grp");
+                values.add(Integer.toString(i / 1000));
+            }
+            db.insertDataWithColumns("t", columns, values);
+        }
+        return db;
+    }
+
+    private SimpleDatabase saved(SimpleDatabase db) {
+        String file = directory.resolve("zones.db").toString();
+        db.saveToBinaryFile(file);
+        SimpleDatabase opened = new SimpleDatabase("zones");
+        opened.openBinaryFile(file);
+        return opened;
+    }
+
+    private static long scanned(SimpleDatabase db, Predicate predicate) {
+        OperationStats stats = db.getMetrics().get("t", DatabaseMetrics.Operation.SELECT);
+        long before = stats == null ? 0 : stats.getRowsScanned();
+        db.selectData("t", predicate);
+        return db.getMetrics().get("t", DatabaseMetrics.Operation.SELECT).getRowsScanned() - before;
+    }
+
+    @Test
+    public void compressedSegmentsRoundTrip() throws Exception {
+        SimpleDatabase db = database();
+        SimpleDatabase opened = saved(db);
+        assertEquals(db.selectData("t", Predicate.all()), opened.selectData("t", Predicate.all()));
+        // Five plain columns would take at least 28 bytes a row
+        assertTrue(Files.size(directory.resolve("zones.db")) < ROWS * 28L / 2);
+
+        // Changes to a table read from segments are written back the same way
+        for (SimpleDatabase each : List.of(db, opened)) {
+            each.insertData("t", List.of("7", "5", "red", "1.5", "1"));
+            each.updateData("t", Map.of("price", "0.5"), Condition.equal("id", "50"));
+            each.deleteData("t", new Condition("id", Condition.Operator.LT, "20000"));
+        }
+        assertEquals(db.selectData("t", Predicate.all()), saved(opened).selectData("t", Predicate.all()));
+    }
+
+    @Test
+    public void scansSkipBlocksTheirZoneMapsRuleOut() {
+        SimpleDatabase db = database();
+        SimpleDatabase opened = saved(db);
+        // A table in memory gets its zone maps when vacuum compacts it; one read from a
+        // file keeps those of its segments until then
+        assertTrue(scanned(opened, Condition.equal("id", "33333")) <= BLOCK);
+        for (SimpleDatabase each : List.of(db, opened)) {
+            each.deleteData("t", Condition.equal("id", "0"));
+            assertEquals(1, each.vacuum());
+        }
+        List<Predicate> predicates = List.of(
+                Condition.equal("id", "33333"),
+                Predicate.between("id", "10000", "10100"),
+                new Condition("ts", Condition.Operator.GT, "1700000099000000"),
+                Predicate.in("id", List.of("5", "49999")),
+                Condition.equal("grp", "40"),
+                Predicate.not(Predicate.between("id", "0", "49000")));
+        for (Predicate predicate : predicates) {
+            assertEquals(db.selectData("t", predicate), opened.selectData("t", predicate), predicate.toString());
+            for (SimpleDatabase each : List.of(db, opened)) {
+                long scanned = scanned(each, predicate);
+                assertTrue(scanned <= 2 * BLOCK, predicate + " scanned " + scanned);
+            }
+        }
+        // A value no block holds needs no rows read at all
+        assertEquals(0, scanned(opened, new Condition("ts", Condition.Operator.LT, "0")));
+    }
+}